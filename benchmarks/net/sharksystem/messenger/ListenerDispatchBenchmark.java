@@ -0,0 +1,36 @@
+package net.sharksystem.messenger;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tell received-messages listeners about new messages in a channel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListenerDispatchBenchmark {
+    @Param({"1", "10", "100"})
+    int listeners;
+
+    private SharkMessagesReceivedListenerManager manager;
+    private long received = 0;
+
+    @Setup
+    public void setup() {
+        this.manager = new SharkMessagesReceivedListenerManager();
+        for(int i = 0; i < this.listeners; i++) {
+            this.manager.addSharkMessagesReceivedListener(uri -> this.received++);
+        }
+    }
+
+    @Benchmark
+    public long notifyListeners() {
+        this.manager.notifySharkMessageReceivedListener("sn2://benchmark");
+        return this.received;
+    }
+}
@@ -0,0 +1,38 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message comparison as used by the asap engine to sort a channel. Each comparison parses both messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageComparisonBenchmark {
+    @Param({"100", "10000", "1000000"})
+    int payloadSize;
+
+    private SharkMessageComparison comparison;
+    private byte[] messageA;
+    private byte[] messageB;
+
+    @Setup
+    public void setup() throws IOException, ASAPException {
+        // plain messages need no pki
+        this.comparison = new SharkMessageComparison(null);
+        this.messageA = InMemoSharkMessage.serializeMessage(new byte[this.payloadSize], "Alice", "Bob");
+        this.messageB = InMemoSharkMessage.serializeMessage(new byte[this.payloadSize], "Bob", "Alice");
+    }
+
+    @Benchmark
+    public boolean earlier() {
+        return this.comparison.earlier(this.messageA, this.messageB);
+    }
+}
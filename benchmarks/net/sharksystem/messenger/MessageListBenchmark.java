@@ -0,0 +1,52 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read messages from a message list - front to back and in random order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageListBenchmark {
+    @Param({"100", "10000", "100000"})
+    int size;
+
+    private SharkMessageList messageList;
+    private int[] randomPositions;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException, ASAPException {
+        InMemoSharkMessageStore store = new InMemoSharkMessageStore("sn2://benchmark");
+        for(int i = 0; i < this.size; i++) {
+            store.append(InMemoSharkMessage.serializeMessage(("message " + i).getBytes(), "Alice", "Bob"));
+        }
+        // plain messages need no pki
+        this.messageList = new SharkMessageListImpl(null, store, false, true);
+
+        Random random = new Random(42);
+        this.randomPositions = new int[this.size];
+        for(int i = 0; i < this.size; i++) this.randomPositions[i] = random.nextInt(this.size);
+    }
+
+    @Benchmark
+    public SharkMessage sequential() throws SharkMessengerException {
+        if(this.next == this.size) this.next = 0;
+        return this.messageList.getSharkMessage(this.next++, true);
+    }
+
+    @Benchmark
+    public SharkMessage random() throws SharkMessengerException {
+        if(this.next == this.size) this.next = 0;
+        return this.messageList.getSharkMessage(this.randomPositions[this.next++], true);
+    }
+}
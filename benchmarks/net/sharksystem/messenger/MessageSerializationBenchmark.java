@@ -0,0 +1,67 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.crypto.InMemoASAPKeyStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.security.KeyPair;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialize and parse a message - for any sign / encrypt combination and payloads from 100 bytes to 10 MB.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageSerializationBenchmark {
+    private static final String ALICE_ID = "Alice";
+    private static final String BOB_ID = "Bob";
+
+    @Param({"100", "10000", "1000000", "10000000"})
+    int payloadSize;
+
+    @Param({"false", "true"})
+    boolean sign;
+
+    @Param({"false", "true"})
+    boolean encrypt;
+
+    private InMemoASAPKeyStore aliceKeyStore;
+    private InMemoASAPKeyStore bobKeyStore;
+    private Set<CharSequence> recipients;
+    private byte[] content;
+    private byte[] serialized;
+    private final List<ASAPHop> noHops = new ArrayList<>();
+
+    @Setup
+    public void setup() throws IOException, ASAPException {
+        this.aliceKeyStore = new InMemoASAPKeyStore(ALICE_ID);
+        KeyPair bobKeyPair = this.aliceKeyStore.createTestPeer(BOB_ID);
+        this.bobKeyStore = new InMemoASAPKeyStore(BOB_ID, bobKeyPair, System.currentTimeMillis());
+        this.bobKeyStore.addKeyPair(ALICE_ID, this.aliceKeyStore.getKeyPair());
+
+        this.recipients = new HashSet<>();
+        this.recipients.add(BOB_ID);
+        this.content = new byte[this.payloadSize];
+        new Random(42).nextBytes(this.content);
+        this.serialized = InMemoSharkMessage.serializeMessage(
+                this.content, ALICE_ID, this.recipients, this.sign, this.encrypt, this.aliceKeyStore);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException, ASAPException {
+        return InMemoSharkMessage.serializeMessage(
+                this.content, ALICE_ID, this.recipients, this.sign, this.encrypt, this.aliceKeyStore);
+    }
+
+    @Benchmark
+    public InMemoSharkMessage parse() throws IOException, ASAPException {
+        return InMemoSharkMessage.parseMessage(this.serialized, this.noHops, this.bobKeyStore);
+    }
+}
@@ -0,0 +1,34 @@
+package net.sharksystem.messenger;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Produce a sorted message on top of a growing history. Each measurement gets a fresh history - producing a
+ * message grows it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class SortedMessageFactoryBenchmark {
+    @Param({"10", "100", "1000"})
+    int historySize;
+
+    private SortedSharkMessageFactory factory;
+    private final byte[] content = "benchmark".getBytes();
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        this.factory = new SortedSharkMessageFactory();
+        for(int i = 0; i < this.historySize; i++) this.factory.produceSortedMessage(this.content, null);
+    }
+
+    @Benchmark
+    public Object produceSortedMessage() {
+        return this.factory.produceSortedMessage(this.content, null);
+    }
+}
@@ -0,0 +1,18 @@
+rem Runs JMH benchmarks (folder benchmarks) and writes results to benchmarks\results\<release>.json
+rem usage: runBenchmarks.bat [release] - JMH is taken from the local maven repository
+set RELEASE=%1
+if "%RELEASE%"=="" set RELEASE=snapshot
+set JMH_VERSION=1.37
+if "%MAVEN_REPOSITORY%"=="" set MAVEN_REPOSITORY=%USERPROFILE%\.m2\repository
+set JMH=%MAVEN_REPOSITORY%\org\openjdk\jmh\jmh-core\%JMH_VERSION%\jmh-core-%JMH_VERSION%.jar;%MAVEN_REPOSITORY%\org\openjdk\jmh\jmh-generator-annprocess\%JMH_VERSION%\jmh-generator-annprocess-%JMH_VERSION%.jar;%MAVEN_REPOSITORY%\net\sf\jopt-simple\jopt-simple\5.0.4\jopt-simple-5.0.4.jar;%MAVEN_REPOSITORY%\org\apache\commons\commons-math3\3.6.1\commons-math3-3.6.1.jar
+if not exist "%MAVEN_REPOSITORY%\org\openjdk\jmh\jmh-generator-annprocess\%JMH_VERSION%" (
+call mvn -q dependency:get -Dartifact=org.openjdk.jmh:jmh-core:%JMH_VERSION%
+call mvn -q dependency:get -Dartifact=org.openjdk.jmh:jmh-generator-annprocess:%JMH_VERSION%
+)
+if exist out\benchmarks rmdir /s /q out\benchmarks
+mkdir out\benchmarks
+if not exist benchmarks\results mkdir benchmarks\results
+dir /s /b src\*.java benchmarks\*.java > benchmarkSources.txt
+javac -nowarn -d out\benchmarks -cp "libs\*;%JMH%" @benchmarkSources.txt
+del benchmarkSources.txt
+java -cp "out\benchmarks;libs\*;%JMH%" org.openjdk.jmh.Main -rf json -rff benchmarks\results\%RELEASE%.json
@@ -0,0 +1,26 @@
+#!/bin/sh
+# Runs JMH benchmarks (folder benchmarks) and writes results to benchmarks/results/<release>.json
+# usage: ./runBenchmarks.sh [release] [jmh options - like a benchmark name pattern]
+# JMH is taken from the local maven repository - fetched with maven if missing.
+set -e
+RELEASE=${1:-snapshot}
+[ $# -gt 0 ] && shift
+
+JMH_VERSION=1.37
+M2=${MAVEN_REPOSITORY:-$HOME/.m2/repository}
+JMH_CORE=$M2/org/openjdk/jmh/jmh-core/$JMH_VERSION/jmh-core-$JMH_VERSION.jar
+JMH_ANNPROCESS=$M2/org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION/jmh-generator-annprocess-$JMH_VERSION.jar
+JOPT=$M2/net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar
+MATH=$M2/org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar
+
+if [ ! -f "$JMH_CORE" ] || [ ! -f "$JMH_ANNPROCESS" ]; then
+    mvn -q dependency:get -Dartifact=org.openjdk.jmh:jmh-core:$JMH_VERSION
+    mvn -q dependency:get -Dartifact=org.openjdk.jmh:jmh-generator-annprocess:$JMH_VERSION
+fi
+JMH=$JMH_CORE:$JMH_ANNPROCESS:$JOPT:$MATH
+
+rm -rf out/benchmarks
+mkdir -p out/benchmarks benchmarks/results
+# annotation processor generates benchmark classes and list
+javac -nowarn -d out/benchmarks -cp "libs/*:$JMH" $(find src benchmarks -name "*.java")
+java -cp "out/benchmarks:libs/*:$JMH" org.openjdk.jmh.Main -rf json -rff benchmarks/results/$RELEASE.json "$@"
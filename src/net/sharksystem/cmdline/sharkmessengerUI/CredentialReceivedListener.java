@@ -10,6 +10,9 @@ public class CredentialReceivedListener extends SharkMessengerAppListener implem
 
     @Override
     public void credentialReceived(CredentialMessage credentialMessage) {
-        // TODO
+        // runs on asap threads - post and return
+        this.sharkMessengerApp.getNotifications().post("credential received: " + credentialMessage.getSubjectName()
+                + " (" + credentialMessage.getSubjectID() + ") | random number: "
+                + credentialMessage.getRandomInt() + " - compare it with the sender before signing");
     }
 }
@@ -0,0 +1,35 @@
+package net.sharksystem.cmdline.sharkmessengerUI;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event: connect to or disconnect from a hub - by user or by supervisor.
+ */
+@Name("net.sharksystem.messenger.HubConnection")
+@Label("Hub Connection")
+@Category({"Shark Messenger"})
+@StackTrace(false)
+class HubConnectionEvent extends Event {
+    static final String CONNECT = "connect";
+    static final String DISCONNECT = "disconnect";
+    static final String RECONNECT = "reconnect";
+    static final String DROPPED = "dropped";
+
+    @Label("Action")
+    String action;
+
+    @Label("Hub")
+    String hub;
+
+    @Label("Outcome")
+    String outcome;
+
+    void commit(String action, Object hub, String outcome) {
+        this.end();
+        if(!this.shouldCommit()) return;
+        this.action = action;
+        this.hub = String.valueOf(hub);
+        this.outcome = outcome;
+        this.commit();
+    }
+}
@@ -0,0 +1,454 @@
+package net.sharksystem.cmdline.sharkmessengerUI;
+
+import net.sharksystem.hub.ASAPHubException;
+import net.sharksystem.hub.HubConnectionManager;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.hub.protocol.HubPDUHubStatusRQ;
+import net.sharksystem.utils.Log;
+
+import javax.management.ObjectName;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Keeps hubs connected. Each hub a user connected to is supervised until the user disconnects it:
+ * <ul>
+ *     <li>a lost connection is re-established right away</li>
+ *     <li>failed attempts are retried with exponential backoff - jittered, peers of a restarted hub
+ *     do not come back all at once</li>
+ *     <li>after {@link #FAILURES_TO_OPEN_CIRCUIT} failures in a row the circuit of that hub opens: no connection
+ *     attempts for {@link #CIRCUIT_OPEN_IN_MILLIS}. Then a cheap liveness probe decides about a single attempt.</li>
+ *     <li>connected hubs are probed every {@link #HEALTH_CHECK_INTERVAL_IN_MILLIS} - a hub that cannot be
+ *     reached is disconnected and reconnected</li>
+ * </ul>
+ * The hub connection manager tells which hubs are connected - it is checked each interval. Probes and connection
+ * attempts run as tasks of their own - a dead or slow hub holds up neither other hubs nor users connecting and
+ * disconnecting. States and counters are registered as platform MBean {@link #OBJECT_NAME_PREFIX}peerName.
+ */
+public class HubConnectionSupervisor implements HubConnectionSupervisorMXBean, Runnable {
+    public static final String OBJECT_NAME_PREFIX = "net.sharksystem.messenger:type=HubConnectionSupervisor,peer=";
+    public static final long DEFAULT_CHECK_INTERVAL_IN_MILLIS = 500;
+    public static final long CONNECT_TIMEOUT_IN_MILLIS = 5000;
+    public static final long INITIAL_BACKOFF_IN_MILLIS = 500;
+    public static final long MAX_BACKOFF_IN_MILLIS = 30000;
+    public static final int FAILURES_TO_OPEN_CIRCUIT = 8;
+    public static final long CIRCUIT_OPEN_IN_MILLIS = 30000;
+    public static final long HEALTH_CHECK_INTERVAL_IN_MILLIS = 10000;
+    public static final int PROBE_TIMEOUT_IN_MILLIS = 1000;
+
+    public enum State { CONNECTING, CONNECTED, BACKOFF, CIRCUIT_OPEN }
+
+    private final HubConnectionManager hubConnectionManager;
+    private final Predicate<HubConnectorDescription> probe;
+    private final Random random;
+    private final List<SupervisedHub> hubs = new CopyOnWriteArrayList<>();
+    private volatile ScheduledExecutorService executor; // null: probes and attempts run in checking thread
+    private ScheduledFuture<?> scheduledCheck;
+    private ObjectName objectName;
+
+    /**
+     * @param hubConnectionManager calls to it are synchronized on it
+     */
+    public HubConnectionSupervisor(HubConnectionManager hubConnectionManager) {
+        this(hubConnectionManager, HubConnectionSupervisor::isReachable, new Random());
+    }
+
+    /**
+     * @param probe liveness probe - true if hub can be reached
+     */
+    HubConnectionSupervisor(HubConnectionManager hubConnectionManager,
+                            Predicate<HubConnectorDescription> probe, Random random) {
+        this.hubConnectionManager = hubConnectionManager;
+        this.probe = probe;
+        this.random = random;
+    }
+
+    /**
+     * Default liveness probe: hub answers a status request - like {@link HubSelector#measureHubStatus}. A stuck hub
+     * or anything else listening on that port still accepts tcp connections.
+     */
+    static boolean isReachable(HubConnectorDescription hubDescription) {
+        try(Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(hubDescription.getHostName().toString(),
+                    hubDescription.getPortNumber()), PROBE_TIMEOUT_IN_MILLIS);
+            socket.setSoTimeout(PROBE_TIMEOUT_IN_MILLIS);
+            OutputStream os = new BufferedOutputStream(socket.getOutputStream());
+            new HubPDUHubStatusRQ().sendPDU(os);
+            os.flush();
+            HubSelector.readStatusReply(new BufferedInputStream(socket.getInputStream()));
+            return true;
+        } catch (IOException | ASAPHubException e) {
+            return false;
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                              life cycle                                                //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Check hubs in background and register as platform MBean.
+     * @param executor runs checks, probes and connection attempts - may be shared, not shut down on stop
+     */
+    public synchronized void start(String peerName, ScheduledExecutorService executor, long intervalInMillis) {
+        this.stop();
+        this.executor = executor;
+        this.scheduledCheck = this.executor.scheduleWithFixedDelay(
+                this, intervalInMillis, intervalInMillis, TimeUnit.MILLISECONDS);
+        try {
+            this.objectName = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(peerName));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.objectName);
+        } catch (Exception e) {
+            // works without jmx
+            this.objectName = null;
+            Log.writeLogErr(this, "cannot register supervisor mbean: " + e.getLocalizedMessage());
+        }
+    }
+
+    public synchronized void stop() {
+        if(this.scheduledCheck != null) {
+            this.scheduledCheck.cancel(false);
+            this.scheduledCheck = null;
+        }
+        this.executor = null;
+        if(this.objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            } catch (Exception e) {
+                // gone anyway
+            }
+            this.objectName = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            this.check(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            // keep supervising
+            Log.writeLogErr(this, "hub check failed: " + e.getLocalizedMessage());
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                             supervision                                                //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Keep hub connected from now on - a connection attempt is expected to be under way.
+     */
+    public void supervise(HubConnectorDescription hubDescription) {
+        synchronized(this.hubs) {
+            if(this.find(hubDescription) != null) return;
+            SupervisedHub hub = new SupervisedHub(hubDescription);
+            hub.attemptStarted = System.currentTimeMillis();
+            this.hubs.add(hub);
+        }
+    }
+
+    /**
+     * Stop supervising a hub - e.g. before disconnecting on purpose.
+     */
+    public void release(HubConnectorDescription hubDescription) {
+        synchronized(this.hubs) {
+            SupervisedHub hub = this.find(hubDescription);
+            if(hub != null) this.hubs.remove(hub);
+        }
+    }
+
+    public boolean isSupervised(HubConnectorDescription hubDescription) {
+        return this.find(hubDescription) != null;
+    }
+
+    private SupervisedHub find(HubConnectorDescription hubDescription) {
+        for(SupervisedHub hub : this.hubs) {
+            if(hub.description.isSame(hubDescription)) return hub;
+        }
+        return null;
+    }
+
+    /**
+     * One round: compare connected hubs with supervised ones, (re-)connect those that are due. Hubs to be probed
+     * or connected are busy until that is done - they are skipped meanwhile.
+     * @param now current time in millis
+     */
+    void check(long now) {
+        List<HubConnectorDescription> connectedHubs;
+        synchronized(this.hubConnectionManager) {
+            connectedHubs = new ArrayList<>(this.hubConnectionManager.getConnectedHubs());
+        }
+
+        for(SupervisedHub hub : this.hubs) {
+            boolean live = false;
+            for(HubConnectorDescription connectedHub : connectedHubs) {
+                if(connectedHub.isSame(hub.description)) {
+                    live = true;
+                    break;
+                }
+            }
+
+            Runnable work = null;
+            synchronized(hub) {
+                if(hub.busy) continue;
+                switch(hub.state) {
+                    case CONNECTED:
+                        if(!live) {
+                            this.dropped(hub, now, "connection lost");
+                        } else if(now >= hub.nextHealthCheck) {
+                            hub.nextHealthCheck = now + HEALTH_CHECK_INTERVAL_IN_MILLIS;
+                            work = () -> this.checkHealth(hub, now);
+                        }
+                        break;
+                    case CONNECTING:
+                        if(live) this.connected(hub, now);
+                        else if(now - hub.attemptStarted >= CONNECT_TIMEOUT_IN_MILLIS) this.failed(hub, now);
+                        break;
+                    case BACKOFF:
+                        if(live) this.connected(hub, now);
+                        else if(now >= hub.nextAttempt) {
+                            this.attemptStarted(hub, now);
+                            work = () -> this.attempt(hub, now);
+                        }
+                        break;
+                    case CIRCUIT_OPEN:
+                        if(live) this.connected(hub, now);
+                        else if(now >= hub.nextAttempt) work = () -> this.halfOpen(hub, now);
+                        break;
+                }
+                hub.busy = work != null;
+            }
+            if(work != null) this.execute(hub, work);
+        }
+    }
+
+    /**
+     * Run probe or connection attempt - without holding the lock of that hub.
+     */
+    private void execute(SupervisedHub hub, Runnable work) {
+        Runnable task = () -> {
+            try {
+                work.run();
+            } catch (RuntimeException e) {
+                Log.writeLogErr(this, "hub " + hub + " check failed: " + e.getLocalizedMessage());
+            } finally {
+                synchronized(hub) {
+                    hub.busy = false;
+                }
+            }
+        };
+        ScheduledExecutorService executor = this.executor;
+        if(executor == null) {
+            task.run();
+            return;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // stopped meanwhile
+            synchronized(hub) {
+                hub.busy = false;
+            }
+        }
+    }
+
+    private void checkHealth(SupervisedHub hub, long now) {
+        if(this.probe.test(hub.description)) return;
+        this.disconnect(hub);
+        synchronized(hub) {
+            this.dropped(hub, now, "liveness probe failed");
+        }
+    }
+
+    private void halfOpen(SupervisedHub hub, long now) {
+        // half open: a single attempt - if hub can be reached at all
+        boolean reachable = this.probe.test(hub.description);
+        synchronized(hub) {
+            if(!reachable) {
+                this.failed(hub, now);
+                return;
+            }
+            this.attemptStarted(hub, now);
+        }
+        this.attempt(hub, now);
+    }
+
+    private void attemptStarted(SupervisedHub hub, long now) {
+        hub.setState(State.CONNECTING, now);
+        hub.attemptStarted = now;
+        hub.attempts++;
+    }
+
+    private void attempt(SupervisedHub hub, long now) {
+        HubConnectionEvent event = new HubConnectionEvent();
+        event.begin();
+        String outcome = "failed";
+        try {
+            synchronized(this.hubConnectionManager) {
+                this.hubConnectionManager.connectHub(hub.description);
+            }
+            outcome = "attempted";
+        } catch (Exception e) {
+            Log.writeLogErr(this, "reconnect to " + hub + " failed: " + e.getLocalizedMessage());
+            synchronized(hub) {
+                this.failed(hub, now);
+            }
+        } finally {
+            event.commit(HubConnectionEvent.RECONNECT, hub, outcome);
+        }
+    }
+
+    private void disconnect(SupervisedHub hub) {
+        try {
+            synchronized(this.hubConnectionManager) {
+                this.hubConnectionManager.disconnectHub(hub.description);
+            }
+        } catch (Exception e) {
+            Log.writeLogErr(this, "cannot disconnect " + hub + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    private void connected(SupervisedHub hub, long now) {
+        hub.setState(State.CONNECTED, now);
+        hub.consecutiveFailures = 0;
+        hub.connects++;
+        hub.nextHealthCheck = now + HEALTH_CHECK_INTERVAL_IN_MILLIS;
+    }
+
+    private void dropped(SupervisedHub hub, long now, String reason) {
+        Log.writeLog(this, "hub " + hub + ": " + reason + " - reconnect");
+        new HubConnectionEvent().commit(HubConnectionEvent.DROPPED, hub, reason);
+        hub.drops++;
+        hub.consecutiveFailures = 0;
+        // first attempt right away
+        hub.setState(State.BACKOFF, now);
+        hub.nextAttempt = now;
+    }
+
+    private void failed(SupervisedHub hub, long now) {
+        hub.consecutiveFailures++;
+        hub.failedAttempts++;
+        if(hub.consecutiveFailures >= FAILURES_TO_OPEN_CIRCUIT) {
+            if(hub.state != State.CIRCUIT_OPEN) {
+                Log.writeLog(this, "hub " + hub + ": " + hub.consecutiveFailures + " failures - circuit open");
+            }
+            hub.setState(State.CIRCUIT_OPEN, now);
+            hub.nextAttempt = now + CIRCUIT_OPEN_IN_MILLIS;
+        } else {
+            hub.setState(State.BACKOFF, now);
+            hub.nextAttempt = now + this.backoff(hub.consecutiveFailures);
+        }
+    }
+
+    /**
+     * @return exponential backoff after a number of failures - equal jitter: between half and full delay
+     */
+    long backoff(int failures) {
+        long delay = INITIAL_BACKOFF_IN_MILLIS << Math.min(failures - 1, 30);
+        delay = Math.min(MAX_BACKOFF_IN_MILLIS, delay);
+        return delay / 2 + (long) (this.random.nextDouble() * (delay / 2));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                               metrics                                                  //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public List<HubSnapshot> getHubs() {
+        long now = System.currentTimeMillis();
+        List<HubSnapshot> snapshots = new ArrayList<>();
+        for(SupervisedHub hub : this.hubs) {
+            synchronized(hub) {
+                snapshots.add(new HubSnapshot(hub.toString(), hub.state.name(), now - hub.stateSince,
+                        hub.consecutiveFailures, hub.attempts, hub.failedAttempts, hub.connects, hub.drops));
+            }
+        }
+        return snapshots;
+    }
+
+    private static class SupervisedHub {
+        final HubConnectorDescription description;
+        State state = State.CONNECTING;
+        long stateSince = System.currentTimeMillis();
+        long attemptStarted;
+        long nextAttempt;
+        long nextHealthCheck;
+        int consecutiveFailures;
+        long attempts;
+        long failedAttempts;
+        long connects;
+        long drops;
+        /** probe or connection attempt under way */
+        boolean busy;
+
+        SupervisedHub(HubConnectorDescription description) {
+            this.description = description;
+        }
+
+        void setState(State state, long now) {
+            if(this.state != state) this.stateSince = now;
+            this.state = state;
+        }
+
+        @Override
+        public String toString() {
+            return SharkMessengerApp.describe(this.description);
+        }
+    }
+
+    /**
+     * State and counters of a supervised hub when snapshot was taken.
+     */
+    public static class HubSnapshot {
+        private final String hub;
+        private final String state;
+        private final long millisInState;
+        private final int consecutiveFailures;
+        private final long attempts;
+        private final long failedAttempts;
+        private final long connects;
+        private final long drops;
+
+        public HubSnapshot(String hub, String state, long millisInState, int consecutiveFailures,
+                           long attempts, long failedAttempts, long connects, long drops) {
+            this.hub = hub;
+            this.state = state;
+            this.millisInState = millisInState;
+            this.consecutiveFailures = consecutiveFailures;
+            this.attempts = attempts;
+            this.failedAttempts = failedAttempts;
+            this.connects = connects;
+            this.drops = drops;
+        }
+
+        public String getHub() { return this.hub; }
+        public String getState() { return this.state; }
+        public long getMillisInState() { return this.millisInState; }
+        public int getConsecutiveFailures() { return this.consecutiveFailures; }
+        public long getAttempts() { return this.attempts; }
+        public long getFailedAttempts() { return this.failedAttempts; }
+        public long getConnects() { return this.connects; }
+        public long getDrops() { return this.drops; }
+
+        @Override
+        public String toString() {
+            return this.hub + ": " + this.state + " since " + this.millisInState / 1000 + " s | failures in a row "
+                    + this.consecutiveFailures + " | attempts " + this.attempts + " (" + this.failedAttempts
+                    + " failed) | connected " + this.connects + " | dropped " + this.drops;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package net.sharksystem.cmdline.sharkmessengerUI;
+
+import java.util.List;
+
+/**
+ * Hub connection states as platform MBean - see {@link HubConnectionSupervisor#OBJECT_NAME_PREFIX}.
+ */
+public interface HubConnectionSupervisorMXBean {
+    /**
+     * @return state and counters of each supervised hub
+     */
+    List<HubConnectionSupervisor.HubSnapshot> getHubs();
+}
@@ -0,0 +1,369 @@
+package net.sharksystem.cmdline.sharkmessengerUI;
+
+import net.sharksystem.SharkException;
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.hub.ASAPHubException;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.hub.protocol.HubPDU;
+import net.sharksystem.hub.protocol.HubPDUHubStatusRPLY;
+import net.sharksystem.hub.protocol.HubPDUHubStatusRQ;
+import net.sharksystem.utils.Log;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Automatic hub selection: keeps a peer connected to the best K of its described hubs.
+ * <br/><br/>
+ * Each interval every described hub is measured with hub status requests on a connection of its own - no peer
+ * is registered with it. Round trip time is the fastest of some sequential requests. Throughput is estimated
+ * from replies to a burst of pipelined requests. Both are smoothed (exponentially weighted moving average).
+ * <br/><br/>
+ * Hubs are ranked by the time to send {@link #REFERENCE_TRANSFER_BYTES}: round trip time plus transfer time.
+ * A selected hub is only replaced by one that is at least {@link #REBALANCE_MARGIN} better - peers do not hop
+ * between hubs of similar quality. Selected hubs are connected by {@link SharkMessengerApp#connectHub} and kept
+ * connected by its supervisor.
+ */
+public class HubSelector implements Runnable {
+    public static final long DEFAULT_SELECTION_INTERVAL_IN_MILLIS = 30000;
+    public static final int ROUND_TRIPS_PER_MEASUREMENT = 4;
+    public static final int BURST_REQUESTS = 32;
+    public static final int PROBE_TIMEOUT_IN_MILLIS = 2000;
+    /** weight of a new measurement in smoothed values */
+    public static final double SMOOTHING = 0.3;
+    public static final double REBALANCE_MARGIN = 0.2;
+    public static final int REFERENCE_TRANSFER_BYTES = 64 * 1024;
+
+    /**
+     * Measures a hub.
+     */
+    interface Probe {
+        Measurement measure(HubConnectorDescription hubDescription) throws IOException;
+    }
+
+    static class Measurement {
+        final long roundTripNanos;
+        final double bytesPerSecond;
+
+        Measurement(long roundTripNanos, double bytesPerSecond) {
+            this.roundTripNanos = roundTripNanos;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+    }
+
+    private final SharkMessengerApp sharkMessengerApp;
+    private final Probe probe;
+    private final List<HubStatistics> statistics = new ArrayList<>();
+    private int hubs = 0; // 0: off
+    private ScheduledFuture<?> scheduledSelection;
+
+    HubSelector(SharkMessengerApp sharkMessengerApp) {
+        this(sharkMessengerApp, HubSelector::measureHubStatus);
+    }
+
+    HubSelector(SharkMessengerApp sharkMessengerApp, Probe probe) {
+        this.sharkMessengerApp = sharkMessengerApp;
+        this.probe = probe;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                              life cycle                                                //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Select hubs now and each interval - on background threads of the app.
+     * @param hubs number of hubs to stay connected to
+     */
+    public synchronized void start(int hubs, long intervalInMillis) {
+        this.stop();
+        this.hubs = hubs;
+        ScheduledExecutorService executor = this.sharkMessengerApp.getBackgroundExecutor();
+        this.scheduledSelection = executor.scheduleWithFixedDelay(
+                this, 0, intervalInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop selecting - connected hubs stay connected.
+     */
+    public synchronized void stop() {
+        this.hubs = 0;
+        if(this.scheduledSelection != null) {
+            this.scheduledSelection.cancel(false);
+            this.scheduledSelection = null;
+        }
+    }
+
+    /**
+     * @return number of hubs to stay connected to - 0: selection is off
+     */
+    public synchronized int getHubs() {
+        return this.hubs;
+    }
+
+    @Override
+    public void run() {
+        try {
+            this.selectHubs();
+        } catch (Exception e) {
+            // try again next interval
+            Log.writeLogErr(this, "hub selection failed: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Measure described hubs, then connect the best ones and disconnect the others.
+     */
+    void selectHubs() throws SharkException, IOException {
+        int hubs = this.getHubs();
+        if(hubs <= 0) return;
+
+        List<HubConnectorDescription> candidates =
+                new ArrayList<>(this.sharkMessengerApp.getSharkPeer().getHubDescriptions());
+        for(HubConnectorDescription candidate : candidates) this.measure(candidate);
+
+        HubConnectionSupervisor supervisor = this.sharkMessengerApp.getHubConnectionSupervisor();
+        List<HubConnectorDescription> selected = new ArrayList<>();
+        for(HubConnectorDescription candidate : candidates) {
+            if(supervisor.isSupervised(candidate)) selected.add(candidate);
+        }
+
+        List<HubConnectorDescription> target = this.select(candidates, selected, hubs);
+        for(HubConnectorDescription hub : selected) {
+            if(!contains(target, hub)) {
+                Log.writeLog(this, "deselect hub " + SharkMessengerApp.describe(hub));
+                this.sharkMessengerApp.disconnectHub(hub);
+            }
+        }
+        for(HubConnectorDescription hub : target) {
+            if(!contains(selected, hub)) {
+                Log.writeLog(this, "select hub " + SharkMessengerApp.describe(hub));
+                try {
+                    this.sharkMessengerApp.connectHub(hub);
+                } catch (SharkException | IOException e) {
+                    // supervisor retries
+                    Log.writeLogErr(this, "cannot connect selected hub: " + e.getLocalizedMessage());
+                }
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         ranking and selection                                          //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    void measure(HubConnectorDescription hubDescription) {
+        HubStatistics hubStatistics = this.getStatistics(hubDescription);
+        try {
+            Measurement measurement = this.probe.measure(hubDescription);
+            synchronized(hubStatistics) {
+                hubStatistics.add(measurement);
+            }
+        } catch (IOException e) {
+            synchronized(hubStatistics) {
+                hubStatistics.reachable = false;
+            }
+        }
+    }
+
+    /**
+     * @param candidates described hubs
+     * @param selected hubs selected so far
+     * @param hubs number of hubs to select
+     * @return hubs to be connected - best first
+     */
+    List<HubConnectorDescription> select(List<HubConnectorDescription> candidates,
+                                         List<HubConnectorDescription> selected, int hubs) {
+        List<HubConnectorDescription> ranked = new ArrayList<>();
+        for(HubConnectorDescription candidate : candidates) {
+            if(this.score(candidate) < Double.MAX_VALUE) ranked.add(candidate);
+        }
+        ranked.sort(Comparator.comparingDouble(this::score));
+
+        // keep selected hubs that can still be reached
+        List<HubConnectorDescription> target = new ArrayList<>();
+        for(HubConnectorDescription hub : ranked) {
+            if(contains(selected, hub) && target.size() < hubs) target.add(hub);
+        }
+
+        for(HubConnectorDescription candidate : ranked) {
+            if(contains(target, candidate)) continue;
+            if(target.size() < hubs) {
+                target.add(candidate);
+                continue;
+            }
+            // replace worst selected hub if clearly better
+            HubConnectorDescription worst = target.get(target.size() - 1);
+            if(this.score(candidate) < this.score(worst) * (1 - REBALANCE_MARGIN)) {
+                target.set(target.size() - 1, candidate);
+                target.sort(Comparator.comparingDouble(this::score));
+            }
+        }
+        return target;
+    }
+
+    /**
+     * @return estimated millis to send reference amount of bytes - Double.MAX_VALUE if unknown or unreachable
+     */
+    double score(HubConnectorDescription hubDescription) {
+        HubStatistics hubStatistics = this.findStatistics(hubDescription);
+        if(hubStatistics == null) return Double.MAX_VALUE;
+        synchronized(hubStatistics) {
+            if(!hubStatistics.reachable || hubStatistics.samples == 0) return Double.MAX_VALUE;
+            return hubStatistics.roundTripNanos / 1000000.0
+                    + REFERENCE_TRANSFER_BYTES * 1000.0 / Math.max(1, hubStatistics.bytesPerSecond);
+        }
+    }
+
+    private static boolean contains(List<HubConnectorDescription> hubs, HubConnectorDescription hub) {
+        for(HubConnectorDescription other : hubs) {
+            if(other.isSame(hub)) return true;
+        }
+        return false;
+    }
+
+    private HubStatistics findStatistics(HubConnectorDescription hubDescription) {
+        synchronized(this.statistics) {
+            for(HubStatistics hubStatistics : this.statistics) {
+                if(hubStatistics.description.isSame(hubDescription)) return hubStatistics;
+            }
+            return null;
+        }
+    }
+
+    private HubStatistics getStatistics(HubConnectorDescription hubDescription) {
+        synchronized(this.statistics) {
+            HubStatistics hubStatistics = this.findStatistics(hubDescription);
+            if(hubStatistics == null) {
+                hubStatistics = new HubStatistics(hubDescription);
+                this.statistics.add(hubStatistics);
+            }
+            return hubStatistics;
+        }
+    }
+
+    /**
+     * @return measured hubs - best first, unreachable ones last
+     */
+    public List<String> describeHubs() {
+        List<HubStatistics> hubStatistics;
+        synchronized(this.statistics) {
+            hubStatistics = new ArrayList<>(this.statistics);
+        }
+        hubStatistics.sort(Comparator.comparingDouble(s -> this.score(s.description)));
+        List<String> descriptions = new ArrayList<>();
+        for(HubStatistics s : hubStatistics) {
+            synchronized(s) {
+                descriptions.add(s.toString());
+            }
+        }
+        return descriptions;
+    }
+
+    private static class HubStatistics {
+        final HubConnectorDescription description;
+        double roundTripNanos;
+        double bytesPerSecond;
+        long samples;
+        boolean reachable = false;
+
+        HubStatistics(HubConnectorDescription description) {
+            this.description = description;
+        }
+
+        void add(Measurement measurement) {
+            if(this.samples == 0 || !this.reachable) {
+                // no history - or it is outdated
+                this.roundTripNanos = measurement.roundTripNanos;
+                this.bytesPerSecond = measurement.bytesPerSecond;
+            } else {
+                this.roundTripNanos += SMOOTHING * (measurement.roundTripNanos - this.roundTripNanos);
+                this.bytesPerSecond += SMOOTHING * (measurement.bytesPerSecond - this.bytesPerSecond);
+            }
+            this.samples++;
+            this.reachable = true;
+        }
+
+        @Override
+        public String toString() {
+            String hub = SharkMessengerApp.describe(this.description);
+            if(!this.reachable) return hub + ": unreachable";
+            return hub + ": rtt " + (long) (this.roundTripNanos / 1000) + " us | " + (long) (this.bytesPerSecond / 1024)
+                    + " KiB/s | " + this.samples + " measurements";
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         hub status measurement                                         //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Default probe: hub status requests on a connection of its own.
+     */
+    static Measurement measureHubStatus(HubConnectorDescription hubDescription) throws IOException {
+        try(Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(hubDescription.getHostName().toString(),
+                    hubDescription.getPortNumber()), PROBE_TIMEOUT_IN_MILLIS);
+            socket.setSoTimeout(PROBE_TIMEOUT_IN_MILLIS);
+            socket.setTcpNoDelay(true);
+            OutputStream os = new BufferedOutputStream(socket.getOutputStream());
+            CountingInputStream is = new CountingInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            long roundTripNanos = Long.MAX_VALUE;
+            for(int i = 0; i < ROUND_TRIPS_PER_MEASUREMENT; i++) {
+                long start = System.nanoTime();
+                new HubPDUHubStatusRQ().sendPDU(os);
+                os.flush();
+                readStatusReply(is);
+                roundTripNanos = Math.min(roundTripNanos, System.nanoTime() - start);
+            }
+
+            long start = System.nanoTime();
+            long startBytes = is.count;
+            for(int i = 0; i < BURST_REQUESTS; i++) new HubPDUHubStatusRQ().sendPDU(os);
+            os.flush();
+            for(int i = 0; i < BURST_REQUESTS; i++) readStatusReply(is);
+            long nanos = Math.max(1, System.nanoTime() - start);
+            return new Measurement(roundTripNanos, (is.count - startBytes) * 1000000000.0 / nanos);
+        } catch (ASAPHubException e) {
+            throw new IOException(e.getLocalizedMessage(), e);
+        }
+    }
+
+    static void readStatusReply(InputStream is) throws IOException {
+        try {
+            HubPDU pdu = HubPDU.readPDU(is);
+            if(!(pdu instanceof HubPDUHubStatusRPLY)) throw new IOException("unexpected reply: " + pdu);
+        } catch (ASAPException e) {
+            throw new IOException(e.getLocalizedMessage(), e);
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b >= 0) this.count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if(n > 0) this.count += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package net.sharksystem.cmdline.sharkmessengerUI;
+
+import java.util.*;
+
+/**
+ * Just enough JSON for the daemon protocol - objects, arrays, strings, numbers, booleans and null. Objects are
+ * read into maps, arrays into lists, integral numbers into Long, other numbers into Double.
+ */
+class JSON {
+    /** objects and arrays nested deeper are rejected - parser is recursive */
+    static final int MAX_DEPTH = 64;
+
+    private final String text;
+    private int position = 0;
+    private int depth = 0;
+
+    private JSON(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @return parsed object
+     * @throws IllegalArgumentException if text is no JSON object or nested deeper than {@link #MAX_DEPTH}
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> parseObject(String text) {
+        JSON json = new JSON(text);
+        Object value = json.value();
+        json.skipWhitespace();
+        if(json.position != text.length()) throw json.error("unexpected content after value");
+        if(!(value instanceof Map)) throw new IllegalArgumentException("not a json object");
+        return (Map<String, Object>) value;
+    }
+
+    /**
+     * @param value map, collection, array of strings, CharSequence, Number, Boolean or null
+     */
+    static String write(Object value) {
+        StringBuilder sb = new StringBuilder();
+        write(sb, value);
+        return sb.toString();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         parser                                          //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    private Object value() {
+        this.skipWhitespace();
+        if(this.position >= this.text.length()) throw this.error("value expected");
+        char c = this.text.charAt(this.position);
+        switch(c) {
+            case '{': return this.object();
+            case '[': return this.array();
+            case '"': return this.string();
+            case 't': this.literal("true"); return Boolean.TRUE;
+            case 'f': this.literal("false"); return Boolean.FALSE;
+            case 'n': this.literal("null"); return null;
+            default:
+                if(c == '-' || (c >= '0' && c <= '9')) return this.number();
+                throw this.error("unexpected character " + c);
+        }
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        this.enter();
+        this.position++; // {
+        this.skipWhitespace();
+        if(this.consume('}')) {
+            this.depth--;
+            return object;
+        }
+        do {
+            this.skipWhitespace();
+            if(!this.peek('"')) throw this.error("member name expected");
+            String name = this.string();
+            this.skipWhitespace();
+            if(!this.consume(':')) throw this.error("':' expected");
+            object.put(name, this.value());
+            this.skipWhitespace();
+        } while(this.consume(','));
+        if(!this.consume('}')) throw this.error("'}' expected");
+        this.depth--;
+        return object;
+    }
+
+    private List<Object> array() {
+        List<Object> array = new ArrayList<>();
+        this.enter();
+        this.position++; // [
+        this.skipWhitespace();
+        if(this.consume(']')) {
+            this.depth--;
+            return array;
+        }
+        do {
+            array.add(this.value());
+            this.skipWhitespace();
+        } while(this.consume(','));
+        if(!this.consume(']')) throw this.error("']' expected");
+        this.depth--;
+        return array;
+    }
+
+    private void enter() {
+        if(++this.depth > MAX_DEPTH) throw this.error("nested deeper than " + MAX_DEPTH);
+    }
+
+    private String string() {
+        this.position++; // "
+        StringBuilder sb = new StringBuilder();
+        while(this.position < this.text.length()) {
+            char c = this.text.charAt(this.position++);
+            if(c == '"') return sb.toString();
+            if(c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if(this.position >= this.text.length()) break;
+            char escaped = this.text.charAt(this.position++);
+            switch(escaped) {
+                case '"': case '\\': case '/': sb.append(escaped); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if(this.position + 4 > this.text.length()) throw this.error("incomplete unicode escape");
+                    try {
+                        sb.append((char) Integer.parseInt(this.text.substring(this.position, this.position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw this.error("malformed unicode escape");
+                    }
+                    this.position += 4;
+                    break;
+                default: throw this.error("unknown escape \\" + escaped);
+            }
+        }
+        throw this.error("unterminated string");
+    }
+
+    private Number number() {
+        int start = this.position;
+        boolean integral = true;
+        if(this.peek('-')) this.position++;
+        while(this.position < this.text.length()) {
+            char c = this.text.charAt(this.position);
+            if(c >= '0' && c <= '9') {
+                this.position++;
+            } else if(c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                integral = false;
+                this.position++;
+            } else break;
+        }
+        String number = this.text.substring(start, this.position);
+        try {
+            return integral ? (Number) Long.parseLong(number) : (Number) Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw this.error("malformed number " + number);
+        }
+    }
+
+    private void literal(String literal) {
+        if(!this.text.startsWith(literal, this.position)) throw this.error(literal + " expected");
+        this.position += literal.length();
+    }
+
+    private void skipWhitespace() {
+        while(this.position < this.text.length() && Character.isWhitespace(this.text.charAt(this.position))) {
+            this.position++;
+        }
+    }
+
+    private boolean peek(char c) {
+        return this.position < this.text.length() && this.text.charAt(this.position) == c;
+    }
+
+    private boolean consume(char c) {
+        if(!this.peek(c)) return false;
+        this.position++;
+        return true;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + this.position);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                         writer                                          //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static void write(StringBuilder sb, Object value) {
+        if(value == null) {
+            sb.append("null");
+        } else if(value instanceof Map) {
+            sb.append('{');
+            boolean first = true;
+            for(Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if(!first) sb.append(',');
+                first = false;
+                writeString(sb, String.valueOf(entry.getKey()));
+                sb.append(':');
+                write(sb, entry.getValue());
+            }
+            sb.append('}');
+        } else if(value instanceof Collection) {
+            sb.append('[');
+            boolean first = true;
+            for(Object element : (Collection<?>) value) {
+                if(!first) sb.append(',');
+                first = false;
+                write(sb, element);
+            }
+            sb.append(']');
+        } else if(value instanceof Number || value instanceof Boolean) {
+            sb.append(value);
+        } else {
+            writeString(sb, value.toString());
+        }
+    }
+
+    private static void writeString(StringBuilder sb, String s) {
+        sb.append('"');
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch(c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if(c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
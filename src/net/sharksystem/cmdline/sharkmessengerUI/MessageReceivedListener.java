@@ -1,10 +1,6 @@
 package net.sharksystem.cmdline.sharkmessengerUI;
 
-import net.sharksystem.messenger.SharkMessageList;
 import net.sharksystem.messenger.SharkMessagesReceivedListener;
-import net.sharksystem.messenger.SharkMessengerException;
-
-import java.io.IOException;
 
 public class MessageReceivedListener extends SharkMessengerAppListener implements SharkMessagesReceivedListener {
     public MessageReceivedListener(SharkMessengerApp sharkMessengerApp) {
@@ -13,15 +9,7 @@ public class MessageReceivedListener extends SharkMessengerAppListener implement
 
     @Override
     public void sharkMessagesReceived(CharSequence uri) {
-        try {
-            SharkMessageList messages = this.sharkMessengerApp.getMessengerComponent().getChannel(uri).getMessages();
-            System.out.println("TODO in MessageReceivedListener: show messages");
-            //cliModel.observer.displayMessages(messages);
-
-        } catch (SharkMessengerException | IOException e) {
-            System.out.println("TODO: exception in MessageReceivedListener:" + e.getLocalizedMessage());
-
-//            cliModel.observer.onChannelDisappeared(uri.toString());
-        }
+        // runs on asap threads - post and return. Channel is not re-read: tail prints messages as they land
+        this.sharkMessengerApp.getNotifications().post("messages received in " + uri);
     }
 }
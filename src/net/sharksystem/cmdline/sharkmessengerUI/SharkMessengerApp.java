@@ -8,13 +8,22 @@ import net.sharksystem.asap.ASAPEncounterManager;
 import net.sharksystem.asap.ASAPEncounterManagerImpl;
 import net.sharksystem.asap.ASAPPeer;
 import net.sharksystem.hub.HubConnectionManager;
+import net.sharksystem.hub.ASAPHubException;
 import net.sharksystem.hub.HubConnectionManagerImpl;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.hub.peerside.TCPHubConnectorDescriptionImpl;
+import net.sharksystem.messenger.SharkMessageStoreType;
 import net.sharksystem.messenger.SharkMessengerComponent;
 import net.sharksystem.messenger.SharkMessengerComponentFactory;
+import net.sharksystem.messenger.SharkMessengerSharedResources;
 import net.sharksystem.pki.SharkPKIComponent;
 import net.sharksystem.pki.SharkPKIComponentFactory;
 import net.sharksystem.utils.Log;
 
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
 /**
  * Proposed and suggested pattern for Shark app. Implement a central entity (could even be a singleton)
  * that provides access to any component that is part of this application
@@ -26,9 +35,33 @@ public class SharkMessengerApp {
     private final SharkMessengerComponent messengerComponent;
     private final SharkPKIComponent pkiComponent;
     private final HubConnectionManager hubConnectionManager;
+    private final ScheduledExecutorService backgroundExecutor;
+    private final HubConnectionSupervisor hubConnectionSupervisor;
+    private final HubSelector hubSelector = new HubSelector(this);
+    private final SharkMessengerNotifications notifications = new SharkMessengerNotifications();
+    private SharkMessengerEmbeddedHub embeddedHub;
+    private HubConnectorDescription embeddedHubDescription;
 
     SharkMessengerApp(String peerName) throws SharkException {
+        this(peerName, null);
+    }
+
+    /**
+     * @param sharedResources threads and caches shared with other peers in this process - null: none shared
+     */
+    SharkMessengerApp(String peerName, SharkMessengerSharedResources sharedResources) throws SharkException {
         this.sharkPeerFS = new SharkPeerFS(peerName, ROOTFOLDER + "/" + peerName);
+        // hosted peers share background threads
+        if(sharedResources != null) {
+            this.backgroundExecutor = sharedResources.getBackgroundExecutor();
+        } else {
+            this.backgroundExecutor = Executors.newScheduledThreadPool(
+                    SharkMessengerSharedResources.DEFAULT_BACKGROUND_THREADS, runnable -> {
+                        Thread thread = new Thread(runnable, "SharkMessengerApp " + peerName);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
 
         // set up shark components
 
@@ -40,7 +73,8 @@ public class SharkMessengerApp {
 
         // get messenger factory with pki component as parameter.
         SharkMessengerComponentFactory messengerComponentFactory = new SharkMessengerComponentFactory(
-                (SharkPKIComponent) sharkPeerFS.getComponent(SharkPKIComponent.class));
+                (SharkPKIComponent) sharkPeerFS.getComponent(SharkPKIComponent.class),
+                SharkMessageStoreType.ASAP, null, sharedResources);
 
         // tell peer
         this.sharkPeerFS.addComponent(messengerComponentFactory, SharkMessengerComponent.class);
@@ -62,20 +96,33 @@ public class SharkMessengerApp {
         ASAPPeer asapPeer = this.sharkPeerFS.getASAPPeer();
         // this code runs on service side - this peer should be a connection handler
         if (asapPeer instanceof ASAPConnectionHandler) { // TODO: aaaaargs
-            // yes it is
-            ASAPEncounterManager encounterManager = new ASAPEncounterManagerImpl((ASAPConnectionHandler) asapPeer);
+            // yes it is - messenger keeps track of connections for hub fan-out
+            ASAPEncounterManager encounterManager =
+                    new ASAPEncounterManagerImpl(this.messengerComponent.getConnectionHandler());
             this.hubConnectionManager = new HubConnectionManagerImpl(encounterManager, asapPeer);
         } else {
             Log.writeLogErr(this,
                     "ASAP peer set but is not a connection handler - cannot set up connection management");
             throw new SharkException("Cannot set up connection management, see error logs.");
         }
+
+        // keep connected hubs connected
+        this.hubConnectionSupervisor = new HubConnectionSupervisor(this.hubConnectionManager);
+        this.hubConnectionSupervisor.start(peerName, this.backgroundExecutor,
+                HubConnectionSupervisor.DEFAULT_CHECK_INTERVAL_IN_MILLIS);
     }
 
     public SharkPeer getSharkPeer() {
         return this.sharkPeerFS;
     }
 
+    /**
+     * @return notifications for the user - posted by listeners, rendered by user interface
+     */
+    public SharkMessengerNotifications getNotifications() {
+        return this.notifications;
+    }
+
     public SharkMessengerComponent getMessengerComponent() {
         return this.messengerComponent;
     }
@@ -84,6 +131,113 @@ public class SharkMessengerApp {
         return this.hubConnectionManager;
     }
 
+    /**
+     * @return runs periodic work of this app - shared with other hosted peers
+     */
+    ScheduledExecutorService getBackgroundExecutor() {
+        return this.backgroundExecutor;
+    }
+
+    /**
+     * @return supervisor keeping hubs connected
+     */
+    public HubConnectionSupervisor getHubConnectionSupervisor() {
+        return this.hubConnectionSupervisor;
+    }
+
+    /**
+     * @return automatic selection of best hubs - off until started
+     */
+    public HubSelector getHubSelector() {
+        return this.hubSelector;
+    }
+
+    /**
+     * Connect to a hub - recorded as flight recorder event. The hub is supervised from now on: it is reconnected
+     * whenever the connection is lost - until {@link #disconnectHub(HubConnectorDescription)}.
+     */
+    public void connectHub(HubConnectorDescription hubDescription) throws SharkException, IOException {
+        HubConnectionEvent event = new HubConnectionEvent();
+        event.begin();
+        String outcome = "failed";
+        // retried by supervisor if this attempt fails
+        this.hubConnectionSupervisor.supervise(hubDescription);
+        try {
+            synchronized(this.hubConnectionManager) {
+                this.hubConnectionManager.connectHub(hubDescription);
+            }
+            outcome = "connected";
+        } finally {
+            event.commit(HubConnectionEvent.CONNECT, describe(hubDescription), outcome);
+        }
+    }
+
+    /**
+     * Disconnect from a hub - recorded as flight recorder event.
+     */
+    public void disconnectHub(HubConnectorDescription hubDescription) throws SharkException, IOException {
+        HubConnectionEvent event = new HubConnectionEvent();
+        event.begin();
+        String outcome = "failed";
+        this.hubConnectionSupervisor.release(hubDescription);
+        try {
+            synchronized(this.hubConnectionManager) {
+                this.hubConnectionManager.disconnectHub(hubDescription);
+            }
+            outcome = "disconnected";
+        } finally {
+            event.commit(HubConnectionEvent.DISCONNECT, describe(hubDescription), outcome);
+        }
+    }
+
+    /**
+     * Run a hub inside this app - other local peers can connect to it. This peer connects to it as well.
+     * @param port 0: any free port
+     * @param maxConnections further connections are closed right away
+     * @param connectorThreads size of thread pool serving connections - 0: a new thread for each connection
+     * @return running hub
+     */
+    public synchronized SharkMessengerEmbeddedHub startEmbeddedHub(int port, int maxConnections,
+                                                                   int connectorThreads)
+            throws SharkException, IOException {
+        if(this.embeddedHub != null) throw new SharkException("hub already running: " + this.embeddedHub);
+        SharkMessengerEmbeddedHub embeddedHub = new SharkMessengerEmbeddedHub(port, maxConnections, connectorThreads);
+        embeddedHub.start(this.sharkPeerFS.getPeerID().toString());
+        this.embeddedHub = embeddedHub;
+        this.embeddedHubDescription = new TCPHubConnectorDescriptionImpl("localhost", embeddedHub.getPort());
+        this.connectHub(this.embeddedHubDescription);
+        return embeddedHub;
+    }
+
+    /**
+     * Stop embedded hub - if any. Peers connected to it lose their connection.
+     */
+    public synchronized void stopEmbeddedHub() throws SharkException, IOException {
+        if(this.embeddedHub == null) return;
+        try {
+            this.disconnectHub(this.embeddedHubDescription);
+        } finally {
+            this.embeddedHub.close();
+            this.embeddedHub = null;
+            this.embeddedHubDescription = null;
+        }
+    }
+
+    /**
+     * @return hub running inside this app - null if none
+     */
+    public synchronized SharkMessengerEmbeddedHub getEmbeddedHub() {
+        return this.embeddedHub;
+    }
+
+    static String describe(HubConnectorDescription hubDescription) {
+        try {
+            return hubDescription.getHostName() + ":" + hubDescription.getPortNumber();
+        } catch (ASAPHubException e) {
+            return "unknown hub";
+        }
+    }
+
     public SharkPKIComponent getSharkPKIComponent() {
         return this.pkiComponent;
     }
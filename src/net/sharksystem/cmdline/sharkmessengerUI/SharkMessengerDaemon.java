@@ -0,0 +1,421 @@
+package net.sharksystem.cmdline.sharkmessengerUI;
+
+import net.sharksystem.messenger.*;
+import net.sharksystem.utils.Log;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Headless messenger: serves a line-delimited JSON protocol on a unix domain socket or a localhost tcp port.
+ * <br/><br/>
+ * Each line is a request with an id and a command, e.g.
+ * <pre>
+ * {"id":1, "cmd":"send", "uri":"sn://chat", "content":"hi", "receivers":["Bob"], "sign":true, "encrypt":false}
+ * </pre>
+ * Each request gets a response line with its id - {"id":1, "ok":true, ...} or {"id":1, "ok":false, "error":"..."}.
+ * Clients can send requests without waiting for responses. Requests run concurrently - those on the same channel
+ * in the order they arrived. Responses come in the order requests are done. A connection has at most
+ * {@link #MAX_PENDING_REQUESTS} requests in progress - further lines are read when one is done. Lines longer than
+ * {@link #MAX_LINE_LENGTH} characters are answered with an error.
+ * <br/><br/>
+ * Commands: ping, lsChannels, mkChannel (uri, name), send (uri, content, receivers, sign, encrypt),
+ * lsMessages (uri, from, count), subscribe, unsubscribe. Subscribers get a line
+ * {"event":"messagesReceived", "uri":"..."} whenever messages arrive in a channel - in order with requests on
+ * that channel.
+ */
+public class SharkMessengerDaemon implements SharkMessagesReceivedListener, Closeable {
+    public static final String PING = "ping";
+    public static final String LIST_CHANNELS = "lsChannels";
+    public static final String CREATE_CHANNEL = "mkChannel";
+    public static final String SEND = "send";
+    public static final String LIST_MESSAGES = "lsMessages";
+    public static final String SUBSCRIBE = "subscribe";
+    public static final String UNSUBSCRIBE = "unsubscribe";
+    public static final String MESSAGES_RECEIVED_EVENT = "messagesReceived";
+
+    public static final int DEFAULT_MAX_MESSAGES = 100;
+    public static final int MAX_PENDING_REQUESTS = 64;
+    public static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+    private final SharkMessengerApp sharkMessengerApp;
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    /** last request on each channel - next one runs when it is done */
+    private final Map<String, CompletableFuture<Void>> channelLanes = new HashMap<>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private ServerSocketChannel serverChannel;
+    private Path socketPath;
+
+    public SharkMessengerDaemon(SharkMessengerApp sharkMessengerApp) {
+        this(sharkMessengerApp, Runtime.getRuntime().availableProcessors());
+    }
+
+    public SharkMessengerDaemon(SharkMessengerApp sharkMessengerApp, int threads) {
+        this(sharkMessengerApp, Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "shark-messenger-daemon-worker");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * @param executor runs requests - shared with daemons of other peers, not shut down on close
+     */
+    public SharkMessengerDaemon(SharkMessengerApp sharkMessengerApp, ExecutorService executor) {
+        this(sharkMessengerApp, executor, false);
+    }
+
+    private SharkMessengerDaemon(SharkMessengerApp sharkMessengerApp, ExecutorService executor,
+                                 boolean ownExecutor) {
+        this.sharkMessengerApp = sharkMessengerApp;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+    }
+
+    /**
+     * Serve on a unix domain socket. An existing socket file is replaced.
+     */
+    public void start(Path socketPath) throws IOException {
+        Files.deleteIfExists(socketPath);
+        ServerSocketChannel serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+        this.socketPath = socketPath;
+        this.start(serverChannel);
+    }
+
+    /**
+     * Serve on a tcp port - reachable from this host only.
+     * @param port 0: any free port
+     * @return port the daemon listens on
+     */
+    public int start(int port) throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.start(serverChannel);
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    private void start(ServerSocketChannel serverChannel) throws IOException {
+        this.serverChannel = serverChannel;
+        this.sharkMessengerApp.getMessengerComponent().addSharkMessagesReceivedListener(this);
+        Log.writeLog(this, "daemon listens on " + serverChannel.getLocalAddress());
+
+        Thread acceptThread = new Thread(this::acceptLoop, "shark-messenger-daemon");
+        acceptThread.start();
+    }
+
+    private void acceptLoop() {
+        while(this.serverChannel.isOpen()) {
+            try {
+                Connection connection = new Connection(this.serverChannel.accept());
+                this.connections.add(connection);
+                Thread readerThread = new Thread(connection::readLoop, "shark-messenger-daemon-connection");
+                readerThread.setDaemon(true);
+                readerThread.start();
+            } catch (IOException e) {
+                if(this.serverChannel.isOpen()) Log.writeLogErr(this, "accept failed: " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.sharkMessengerApp.getMessengerComponent().removeSharkMessagesReceivedListener(this);
+        if(this.serverChannel != null) this.serverChannel.close();
+        for(Connection connection : this.connections) connection.close();
+        if(this.ownExecutor) this.executor.shutdown();
+        if(this.socketPath != null) Files.deleteIfExists(this.socketPath);
+    }
+
+    @Override
+    public void sharkMessagesReceived(CharSequence uri) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("event", MESSAGES_RECEIVED_EVENT);
+        event.put("uri", uri.toString());
+        String line = JSON.write(event);
+        // a slow subscriber must not hold up the messenger - channel lane keeps events of a channel in order
+        this.enqueue(uri.toString(), () -> {
+            for(Connection connection : this.connections) {
+                if(connection.subscribed) connection.send(line);
+            }
+        });
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                       dispatching                                       //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Run a request and send its response. The connection got a permit for it - released when it is answered.
+     */
+    private void dispatch(Connection connection, String line) {
+        Map<String, Object> request;
+        try {
+            request = JSON.parseObject(line);
+        } catch (RuntimeException e) {
+            connection.respond(this.errorResponse(null, "malformed request: " + e.getLocalizedMessage()));
+            return;
+        }
+
+        Runnable task = () -> {
+            Map<String, Object> response;
+            try {
+                response = this.handle(connection, request);
+            } catch (RuntimeException e) {
+                response = this.errorResponse(request.get("id"), e.toString());
+            }
+            connection.respond(response);
+        };
+        Object uri = request.get("uri");
+        try {
+            if(uri == null) this.executor.execute(task);
+            else this.enqueue(uri.toString(), task);
+        } catch (RuntimeException e) {
+            connection.respond(this.errorResponse(request.get("id"), "not accepted: " + e.getLocalizedMessage()));
+        }
+    }
+
+    /**
+     * Run a task after all tasks of that channel - even if one of them failed.
+     */
+    private void enqueue(String channel, Runnable task) {
+        synchronized(this.channelLanes) {
+            CompletableFuture<Void> previous =
+                    this.channelLanes.getOrDefault(channel, CompletableFuture.completedFuture(null));
+            CompletableFuture<Void> next = previous.handleAsync((result, throwable) -> {
+                task.run();
+                return null;
+            }, this.executor);
+            this.channelLanes.put(channel, next);
+            next.whenComplete((result, throwable) -> {
+                synchronized(this.channelLanes) {
+                    this.channelLanes.remove(channel, next);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return response to a request - never null
+     */
+    Map<String, Object> handle(Connection connection, Map<String, Object> request) {
+        Object id = request.get("id");
+        String cmd = this.getString(request, "cmd", null);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("id", id);
+        response.put("ok", true);
+        try {
+            if(cmd == null) throw new SharkMessengerException("no command");
+            SharkMessengerComponent messenger = this.sharkMessengerApp.getMessengerComponent();
+            switch(cmd) {
+                case PING:
+                    response.put("peer", this.sharkMessengerApp.getSharkPeer().getPeerID().toString());
+                    break;
+                case LIST_CHANNELS:
+                    List<Object> channels = new ArrayList<>();
+                    for(CharSequence uri : messenger.getChannelUris()) {
+                        SharkMessengerChannel channel = messenger.getChannel(uri);
+                        Map<String, Object> description = new LinkedHashMap<>();
+                        description.put("uri", uri.toString());
+                        description.put("name", channel.getName().toString());
+                        description.put("size", channel.getMessages().size());
+                        channels.add(description);
+                    }
+                    response.put("channels", channels);
+                    break;
+                case CREATE_CHANNEL:
+                    String uri = this.getString(request, "uri", null);
+                    messenger.createChannel(uri, this.getString(request, "name", uri), true);
+                    break;
+                case SEND:
+                    Set<CharSequence> receivers = new HashSet<>();
+                    Object receiverList = request.get("receivers");
+                    if(receiverList instanceof List) {
+                        for(Object receiver : (List<?>) receiverList) receivers.add(receiver.toString());
+                    }
+                    messenger.sendSharkMessage(
+                            this.getString(request, "content", "").getBytes(StandardCharsets.UTF_8),
+                            this.getString(request, "uri", null),
+                            receivers,
+                            Boolean.TRUE.equals(request.get("sign")),
+                            Boolean.TRUE.equals(request.get("encrypt")));
+                    break;
+                case LIST_MESSAGES:
+                    response.put("messages", this.listMessages(messenger, request));
+                    break;
+                case SUBSCRIBE:
+                    connection.subscribed = true;
+                    break;
+                case UNSUBSCRIBE:
+                    connection.subscribed = false;
+                    break;
+                default:
+                    throw new SharkMessengerException("unknown command: " + cmd);
+            }
+        } catch (Exception e) {
+            return this.errorResponse(id, e.getLocalizedMessage());
+        }
+        return response;
+    }
+
+    private List<Object> listMessages(SharkMessengerComponent messenger, Map<String, Object> request)
+            throws Exception {
+        SharkMessageList messageList = messenger.getChannel(this.getString(request, "uri", null)).getMessages();
+        int from = this.getInt(request, "from", 0);
+        int to = Math.min(messageList.size(), from + this.getInt(request, "count", DEFAULT_MAX_MESSAGES));
+
+        List<Object> messages = new ArrayList<>();
+        for(int i = Math.max(0, from); i < to; i++) {
+            SharkMessage message = messageList.getSharkMessage(i, true);
+            Map<String, Object> description = new LinkedHashMap<>();
+            description.put("index", i);
+            description.put("encrypted", message.encrypted());
+            if(message.couldBeDecrypted()) {
+                description.put("sender", message.getSender().toString());
+                description.put("verified", message.verified());
+                description.put("creationTime", message.getCreationTime());
+                description.put("content", new String(message.getContent(), StandardCharsets.UTF_8));
+            }
+            messages.add(description);
+        }
+        return messages;
+    }
+
+    private Map<String, Object> errorResponse(Object id, String error) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("id", id);
+        response.put("ok", false);
+        response.put("error", error);
+        return response;
+    }
+
+    private String getString(Map<String, Object> request, String name, String defaultValue) {
+        Object value = request.get(name);
+        return value == null ? defaultValue : value.toString();
+    }
+
+    private int getInt(Map<String, Object> request, String name, int defaultValue) {
+        Object value = request.get(name);
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                        connection                                       //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    class Connection implements Closeable {
+        private final SocketChannel channel;
+        /** requests read but not answered yet */
+        private final Semaphore pendingRequests = new Semaphore(MAX_PENDING_REQUESTS);
+        volatile boolean subscribed = false;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void readLoop() {
+            // streams of Channels lock the channel - reading would block writing
+            InputStream is = new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] b = new byte[1];
+                    return this.read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return Connection.this.channel.read(ByteBuffer.wrap(b, off, len));
+                }
+            };
+
+            try(BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+                String line;
+                while((line = this.readLine(reader)) != null) {
+                    if(line.isBlank()) continue;
+                    // client waits for responses if too many requests are in progress
+                    this.pendingRequests.acquire();
+                    SharkMessengerDaemon.this.dispatch(this, line);
+                }
+            } catch (IOException | InterruptedException e) {
+                Log.writeLog(SharkMessengerDaemon.this, "connection closed: " + e.getLocalizedMessage());
+            } finally {
+                this.close();
+            }
+        }
+
+        /**
+         * Like {@link BufferedReader#readLine()} - but lines longer than {@link #MAX_LINE_LENGTH} are answered
+         * with an error and skipped.
+         * @return null: end of stream
+         */
+        private String readLine(Reader reader) throws IOException {
+            StringBuilder line = new StringBuilder();
+            boolean tooLong = false;
+            int c;
+            while((c = reader.read()) >= 0) {
+                if(c == '\n') {
+                    if(!tooLong) return stripCarriageReturn(line);
+                    this.send(JSON.write(SharkMessengerDaemon.this.errorResponse(
+                            null, "request longer than " + MAX_LINE_LENGTH + " characters")));
+                    tooLong = false;
+                } else if(!tooLong) {
+                    if(line.length() < MAX_LINE_LENGTH) {
+                        line.append((char) c);
+                        continue;
+                    }
+                    tooLong = true;
+                }
+                line.setLength(0);
+            }
+            return line.length() == 0 || tooLong ? null : stripCarriageReturn(line);
+        }
+
+        private String stripCarriageReturn(StringBuilder line) {
+            int length = line.length();
+            if(length > 0 && line.charAt(length - 1) == '\r') line.setLength(length - 1);
+            return line.toString();
+        }
+
+        /**
+         * Send response to a request and take next request.
+         */
+        void respond(Map<String, Object> response) {
+            try {
+                this.send(JSON.write(response));
+            } finally {
+                this.pendingRequests.release();
+            }
+        }
+
+        void send(String line) {
+            ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+            synchronized(this) {
+                try {
+                    while(buffer.hasRemaining()) this.channel.write(buffer);
+                } catch (IOException e) {
+                    Log.writeLog(SharkMessengerDaemon.this, "cannot write to client: " + e.getLocalizedMessage());
+                    this.close();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            SharkMessengerDaemon.this.connections.remove(this);
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package net.sharksystem.cmdline.sharkmessengerUI;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.hub.hubside.ConnectorInternal;
+import net.sharksystem.hub.hubside.HubSingleEntitySharedChannel;
+import net.sharksystem.hub.hubside.SharedChannelConnectorHubSideImpl;
+import net.sharksystem.hub.protocol.ConnectorThread;
+import net.sharksystem.utils.Log;
+import net.sharksystem.utils.streams.StreamPair;
+
+import javax.management.ObjectName;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An ASAP hub running inside the messenger - like {@link net.sharksystem.hub.hubside.ASAPTCPHub} but with
+ * <ul>
+ *     <li>a limit of open connections - further connections are closed right away</li>
+ *     <li>a choice of thread model: a new thread for each connection or a fixed number of pooled threads which
+ *     are reused when connections are closed. Admitted connections wait for a free thread if all are busy.</li>
+ *     <li>metrics - registered as platform MBean {@link #OBJECT_NAME_PREFIX}peerName</li>
+ * </ul>
+ * One always-on peer of a site can relay for all others - no extra hub process. Peers share one tcp connection
+ * with this hub, relayed data flows through it as well.
+ */
+public class SharkMessengerEmbeddedHub extends HubSingleEntitySharedChannel
+        implements SharkMessengerEmbeddedHubMXBean, Runnable, Closeable {
+    public static final String OBJECT_NAME_PREFIX = "net.sharksystem.messenger:type=EmbeddedHub,peer=";
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+    /** no pool - a new thread for each connection */
+    public static final int THREAD_PER_CONNECTION = 0;
+
+    private final int maxConnections;
+    private final int connectorThreads;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connectorExecutor; // null: thread per connection
+    private final Set<Socket> openConnections = new HashSet<>();
+    private final Set<String> connectedPeers = ConcurrentHashMap.newKeySet();
+    /** peer pairs - a relayed channel is announced by both of its ends */
+    private final Set<String> activeChannels = ConcurrentHashMap.newKeySet();
+    private final AtomicLong rejectedConnections = new AtomicLong();
+    private final AtomicLong relayedChannels = new AtomicLong();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private ObjectName objectName;
+
+    /**
+     * @param port 0: any free port - see {@link #getPort()}
+     * @param maxConnections further connections are closed right away
+     * @param connectorThreads size of thread pool serving connections - {@link #THREAD_PER_CONNECTION}: a new
+     *                         thread for each connection
+     */
+    public SharkMessengerEmbeddedHub(int port, int maxConnections, int connectorThreads) throws IOException {
+        this.maxConnections = maxConnections;
+        this.connectorThreads = Math.max(connectorThreads, THREAD_PER_CONNECTION);
+        this.serverSocket = new ServerSocket(port);
+        this.connectorExecutor = this.connectorThreads == THREAD_PER_CONNECTION ? null
+                : Executors.newFixedThreadPool(this.connectorThreads, runnable -> {
+                    Thread thread = new Thread(runnable, "SharkMessengerEmbeddedHub connector");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                              life cycle                                                //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Accept connections in a background thread and register as platform MBean.
+     */
+    public void start(String peerName) {
+        Thread acceptThread = new Thread(this, "SharkMessengerEmbeddedHub " + this.getPort());
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        try {
+            this.objectName = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(peerName));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.objectName);
+        } catch (Exception e) {
+            // works without jmx
+            this.objectName = null;
+            Log.writeLogErr(this, "cannot register embedded hub mbean: " + e.getLocalizedMessage());
+        }
+        Log.writeLog(this, "embedded hub listens on port " + this.getPort());
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.serverSocket.close();
+        List<Socket> connections;
+        synchronized(this.openConnections) {
+            connections = new ArrayList<>(this.openConnections);
+            this.openConnections.clear();
+        }
+        for(Socket connection : connections) connection.close();
+        if(this.connectorExecutor != null) this.connectorExecutor.shutdown();
+        if(this.objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            } catch (Exception e) {
+                // gone anyway
+            }
+            this.objectName = null;
+        }
+        Log.writeLog(this, "embedded hub on port " + this.getPort() + " closed");
+    }
+
+    @Override
+    public void run() {
+        while(!this.serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = this.serverSocket.accept();
+            } catch (IOException e) {
+                if(!this.serverSocket.isClosed()) Log.writeLogErr(this, "accept failed: " + e.getLocalizedMessage());
+                continue;
+            }
+            if(!this.admit(socket)) continue;
+            try {
+                HubSideConnection connection = new HubSideConnection(socket);
+                ConnectorThread connectorThread = new ConnectorThread(connection, connection.getInputStream());
+                if(this.connectorExecutor != null) this.connectorExecutor.execute(connectorThread::run);
+                else connectorThread.start();
+            } catch (IOException | ASAPException e) {
+                Log.writeLogErr(this, "cannot launch hub connector: " + e.getLocalizedMessage());
+                this.closed(socket);
+            }
+        }
+    }
+
+    private boolean admit(Socket socket) {
+        synchronized(this.openConnections) {
+            if(this.openConnections.size() < this.maxConnections) {
+                this.openConnections.add(socket);
+                return true;
+            }
+        }
+        this.rejectedConnections.incrementAndGet();
+        Log.writeLog(this, "connection limit reached (" + this.maxConnections + ") - reject "
+                + socket.getRemoteSocketAddress());
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closed anyway
+        }
+        return false;
+    }
+
+    private void closed(Socket socket) {
+        synchronized(this.openConnections) {
+            if(!this.openConnections.remove(socket)) return;
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closed anyway
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                          hub bookkeeping                                               //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void register(CharSequence peerId, ConnectorInternal hubConnectorSession) {
+        super.register(peerId, hubConnectorSession);
+        this.connectedPeers.add(peerId.toString());
+    }
+
+    @Override
+    public void register(CharSequence peerId, ConnectorInternal hubConnectorSession, boolean canCreateConnections) {
+        super.register(peerId, hubConnectorSession, canCreateConnections);
+        this.connectedPeers.add(peerId.toString());
+    }
+
+    @Override
+    public void unregister(CharSequence peerId) {
+        super.unregister(peerId);
+        // connections which never registered are unregistered as well
+        if(peerId != null) this.connectedPeers.remove(peerId.toString());
+    }
+
+    private static String channel(CharSequence peerA, CharSequence peerB) {
+        String a = peerA.toString(), b = peerB.toString();
+        return a.compareTo(b) < 0 ? a + " <-> " + b : b + " <-> " + a;
+    }
+
+    /**
+     * Hub side of a peer connection. Tells when it relays and when it is gone.
+     */
+    private class HubSideConnection extends SharedChannelConnectorHubSideImpl {
+        private final Socket socket;
+        private String channel;
+
+        HubSideConnection(Socket socket) throws IOException, ASAPException {
+            super(new CountingInputStream(socket.getInputStream(), bytesReceived),
+                    new CountingOutputStream(socket.getOutputStream(), bytesSent),
+                    SharkMessengerEmbeddedHub.this);
+            this.socket = socket;
+        }
+
+        @Override
+        protected void dataSessionStarted(CharSequence targetPeerID, StreamPair streamPair) {
+            super.dataSessionStarted(targetPeerID, streamPair);
+            CharSequence peerID = this.getPeerID();
+            if(peerID == null || targetPeerID == null) return;
+            this.channel = channel(peerID, targetPeerID);
+            if(activeChannels.add(this.channel)) relayedChannels.incrementAndGet();
+        }
+
+        @Override
+        protected void actionWhenBackFromDataSession() {
+            this.channelEnded();
+            super.actionWhenBackFromDataSession();
+        }
+
+        @Override
+        protected void connectionLost() {
+            this.channelEnded();
+            super.connectionLost();
+            closed(this.socket);
+        }
+
+        @Override
+        protected void shutdown() {
+            this.channelEnded();
+            super.shutdown();
+            closed(this.socket);
+        }
+
+        private void channelEnded() {
+            if(this.channel != null) activeChannels.remove(this.channel);
+            this.channel = null;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongAdder count;
+
+        CountingInputStream(InputStream in, LongAdder count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b >= 0) this.count.increment();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if(n > 0) this.count.add(n);
+            return n;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private final LongAdder count;
+
+        CountingOutputStream(OutputStream out, LongAdder count) {
+            super(out);
+            this.count = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.count.increment();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            this.count.add(len);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                                metrics                                                 //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return this.maxConnections;
+    }
+
+    @Override
+    public int getConnectorThreads() {
+        return this.connectorThreads;
+    }
+
+    @Override
+    public int getOpenConnections() {
+        synchronized(this.openConnections) {
+            return this.openConnections.size();
+        }
+    }
+
+    @Override
+    public long getRejectedConnections() {
+        return this.rejectedConnections.get();
+    }
+
+    @Override
+    public List<String> getConnectedPeers() {
+        return new ArrayList<>(this.connectedPeers);
+    }
+
+    @Override
+    public int getActiveChannels() {
+        return this.activeChannels.size();
+    }
+
+    @Override
+    public long getRelayedChannels() {
+        return this.relayedChannels.get();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return this.bytesReceived.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return this.bytesSent.sum();
+    }
+
+    @Override
+    public String toString() {
+        String threads = this.connectorThreads == THREAD_PER_CONNECTION
+                ? "dedicated threads" : this.connectorThreads + " pooled threads";
+        return "embedded hub on port " + this.getPort() + " | " + threads
+                + " | connections " + this.getOpenConnections() + "/" + this.maxConnections
+                + " (" + this.getRejectedConnections() + " rejected) | peers " + this.connectedPeers.size()
+                + " | channels " + this.getActiveChannels() + " (" + this.getRelayedChannels() + " relayed)"
+                + " | bytes in " + this.getBytesReceived() + " out " + this.getBytesSent();
+    }
+}
@@ -0,0 +1,52 @@
+package net.sharksystem.cmdline.sharkmessengerUI;
+
+import java.util.List;
+
+/**
+ * Embedded hub metrics as platform MBean - see {@link SharkMessengerEmbeddedHub#OBJECT_NAME_PREFIX}.
+ */
+public interface SharkMessengerEmbeddedHubMXBean {
+    int getPort();
+
+    int getMaxConnections();
+
+    /**
+     * @return size of thread pool serving connections - 0: a new thread for each connection
+     */
+    int getConnectorThreads();
+
+    /**
+     * @return tcp connections currently open - registered or not
+     */
+    int getOpenConnections();
+
+    /**
+     * @return connections closed right away - limit was reached
+     */
+    long getRejectedConnections();
+
+    /**
+     * @return ids of peers registered with this hub
+     */
+    List<String> getConnectedPeers();
+
+    /**
+     * @return peer to peer channels relayed right now
+     */
+    int getActiveChannels();
+
+    /**
+     * @return peer to peer channels relayed since start
+     */
+    long getRelayedChannels();
+
+    /**
+     * @return bytes received from peers - hub protocol and relayed data
+     */
+    long getBytesReceived();
+
+    /**
+     * @return bytes sent to peers - hub protocol and relayed data
+     */
+    long getBytesSent();
+}
@@ -0,0 +1,96 @@
+package net.sharksystem.cmdline.sharkmessengerUI;
+
+import net.sharksystem.SharkException;
+import net.sharksystem.messenger.SharkMessengerSharedResources;
+import net.sharksystem.utils.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Hosts many peers in one process - like a relay operator running identities for others. Each peer keeps its own
+ * storage folder, key store and peer id. Background threads, crypto workers, cached channel views and daemon
+ * workers are shared by all of them - a process with hundreds of peers does not run hundreds of pools.
+ * <br/><br/>
+ * Hub connections are not shared: a hub registers exactly one peer id with each connection.
+ */
+public class SharkMessengerHost implements Closeable {
+    private final SharkMessengerSharedResources sharedResources;
+    private final ExecutorService daemonExecutor;
+    private final Map<String, SharkMessengerApp> peers = new LinkedHashMap<>();
+    private final List<SharkMessengerDaemon> daemons = new ArrayList<>();
+
+    public SharkMessengerHost() {
+        this(new SharkMessengerSharedResources(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param sharedResources messenger resources shared by all hosted peers
+     * @param daemonThreads number of threads serving requests of all daemons
+     */
+    public SharkMessengerHost(SharkMessengerSharedResources sharedResources, int daemonThreads) {
+        this.sharedResources = sharedResources;
+        this.daemonExecutor = Executors.newFixedThreadPool(daemonThreads, runnable -> {
+            Thread thread = new Thread(runnable, "shark-messenger-host-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public synchronized SharkMessengerApp addPeer(String peerName) throws SharkException {
+        if(this.peers.containsKey(peerName)) throw new SharkException("peer already hosted: " + peerName);
+        SharkMessengerApp sharkMessengerApp = new SharkMessengerApp(peerName, this.sharedResources);
+        this.peers.put(peerName, sharkMessengerApp);
+        return sharkMessengerApp;
+    }
+
+    /**
+     * @return hosted peer - null if there is none with that name
+     */
+    public synchronized SharkMessengerApp getPeer(String peerName) {
+        return this.peers.get(peerName);
+    }
+
+    public synchronized Set<String> getPeerNames() {
+        return new LinkedHashSet<>(this.peers.keySet());
+    }
+
+    public SharkMessengerSharedResources getSharedResources() {
+        return this.sharedResources;
+    }
+
+    /**
+     * Serve each hosted peer with a daemon on a unix domain socket socketFolder/peerName.sock
+     */
+    public synchronized void serve(Path socketFolder) throws IOException {
+        Files.createDirectories(socketFolder);
+        for(Map.Entry<String, SharkMessengerApp> peer : this.peers.entrySet()) {
+            SharkMessengerDaemon daemon = new SharkMessengerDaemon(peer.getValue(), this.daemonExecutor);
+            daemon.start(socketFolder.resolve(peer.getKey() + ".sock"));
+            this.daemons.add(daemon);
+        }
+        Log.writeLog(this, "serves " + this.peers.size() + " peers in " + socketFolder);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for(SharkMessengerDaemon daemon : this.daemons) daemon.close();
+        this.daemons.clear();
+        for(SharkMessengerApp peer : this.peers.values()) {
+            peer.getHubSelector().stop();
+            peer.getHubConnectionSupervisor().stop();
+            try {
+                peer.stopEmbeddedHub();
+            } catch (SharkException e) {
+                Log.writeLogErr(this, "cannot stop embedded hub: " + e.getLocalizedMessage());
+            }
+        }
+        this.daemonExecutor.shutdown();
+        this.sharedResources.shutdown();
+    }
+}
@@ -0,0 +1,48 @@
+package net.sharksystem.cmdline.sharkmessengerUI;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Notifications produced on other threads (received messages, credentials, tails) - rendered by the user interface
+ * between prompts. Posting never blocks: if the user interface falls behind, the oldest notifications are dropped
+ * and counted.
+ */
+public class SharkMessengerNotifications {
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    private final BlockingQueue<String> notifications;
+    private final AtomicLong dropped = new AtomicLong();
+
+    public SharkMessengerNotifications() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SharkMessengerNotifications(int capacity) {
+        this.notifications = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public void post(String notification) {
+        while(!this.notifications.offer(notification)) {
+            if(this.notifications.poll() != null) this.dropped.incrementAndGet();
+        }
+    }
+
+    public boolean isEmpty() {
+        return this.notifications.isEmpty() && this.dropped.get() == 0;
+    }
+
+    /**
+     * @return pending notifications - oldest first. Empty if none.
+     */
+    public List<String> drain() {
+        List<String> pending = new ArrayList<>();
+        long dropped = this.dropped.getAndSet(0);
+        if(dropped > 0) pending.add("... " + dropped + " notifications dropped");
+        this.notifications.drainTo(pending);
+        return pending;
+    }
+}
@@ -0,0 +1,88 @@
+package net.sharksystem.cmdline.sharkmessengerUI;
+
+import net.sharksystem.SharkException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Commands with inline arguments - one per line, e.g.
+ * <pre>
+ * mkChannel sn://chat "our chat"
+ * sendMessage 0 true false "hello" ""
+ * </pre>
+ * Lines are parsed once and executed back to back without questions. Blank lines and lines starting with # are
+ * ignored; exit ends a script. Command history (see saveLog) is written in this syntax - it can be replayed.
+ */
+public class SharkMessengerScript {
+    public static final String COMMENT = "#";
+
+    private final List<List<String>> commands;
+
+    private SharkMessengerScript(List<List<String>> commands) {
+        this.commands = commands;
+    }
+
+    public static SharkMessengerScript parse(List<String> lines) {
+        List<List<String>> commands = new ArrayList<>();
+        for(String line : lines) {
+            if(line.isBlank() || line.trim().startsWith(COMMENT)) continue;
+            List<String> command = SharkMessengerUI.tokenize(line);
+            if(command.get(0).equals(UICommandQuestionnaire.EXIT_SEQUENCE)) break;
+            commands.add(command);
+        }
+        return new SharkMessengerScript(commands);
+    }
+
+    public static SharkMessengerScript load(Path file) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return commands - identifier followed by arguments
+     */
+    public List<List<String>> getCommands() {
+        return Collections.unmodifiableList(this.commands);
+    }
+
+    /**
+     * Execute all commands. A failing command is reported, following commands are executed anyway.
+     */
+    public void run(SharkMessengerUI sharkMessengerUI) {
+        for(List<String> command : this.commands) {
+            try {
+                sharkMessengerUI.handleCommand(command);
+            } catch (Exception e) {
+                sharkMessengerUI.printError(SharkMessengerUI.toCommandLine(command) + ": " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Run this script on several peers at the same time - each with its own storage folder. Output of each peer
+     * goes to its own stream. Peers are hosted for this run only - their threads are stopped when it is done.
+     * @param outputs output stream for each peer
+     */
+    public void runOnPeers(List<String> peerNames, List<PrintStream> outputs)
+            throws SharkException, IOException, InterruptedException {
+        try(SharkMessengerHost host = new SharkMessengerHost()) {
+            List<SharkMessengerUI> peerUIs = new ArrayList<>();
+            for(int i = 0; i < peerNames.size(); i++) {
+                // no input - a command without arguments ends at once
+                peerUIs.add(SharkMessengerUI.createSharkMessengerUI(InputStream.nullInputStream(),
+                        outputs.get(i), outputs.get(i), host.addPeer(peerNames.get(i))));
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(peerUIs.size());
+            for(SharkMessengerUI peerUI : peerUIs) executor.execute(() -> this.run(peerUI));
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+    }
+}
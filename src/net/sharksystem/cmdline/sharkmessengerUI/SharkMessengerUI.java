@@ -6,12 +6,17 @@ import net.sharksystem.cmdline.sharkmessengerUI.commands.messenger.*;
 import net.sharksystem.cmdline.sharkmessengerUI.commands.pki.*;
 import net.sharksystem.utils.Log;
 import net.sharksystem.cmdline.sharkmessengerUI.commands.general.UICommandExit;
+import net.sharksystem.cmdline.sharkmessengerUI.commands.general.UICommandRunScript;
 import net.sharksystem.cmdline.sharkmessengerUI.commands.general.UICommandSaveLog;
 import net.sharksystem.cmdline.sharkmessengerUI.commands.general.UICommandShowLog;
 
 import java.io.*;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 public class SharkMessengerUI {
 
@@ -21,6 +26,24 @@ public class SharkMessengerUI {
         Log.setOutStream(asapLogMessages);
         Log.setErrStream(asapLogMessages);
 
+        // headless: --daemon username socketPath|port
+        if(args.length > 0 && args[0].equals("--daemon")) {
+            runDaemon(args);
+            return;
+        }
+
+        // headless: --host socketFolder username [username ...]
+        if(args.length > 0 && args[0].equals("--host")) {
+            runHost(args);
+            return;
+        }
+
+        // headless: --batch scriptFile username [username ...]
+        if(args.length > 0 && args[0].equals("--batch")) {
+            runBatch(args);
+            return;
+        }
+
         // figure out user name
         System.out.println("Welcome to SharkMessenger version 0.1");
         String username = "";
@@ -39,7 +62,20 @@ public class SharkMessengerUI {
         System.out.println("Startup your messenger instance");
 
         SharkMessengerApp sharkMessengerApp = new SharkMessengerApp(username);
-        SharkMessengerUI smUI = new SharkMessengerUI(System.in, System.out, System.err, sharkMessengerApp);
+        SharkMessengerUI smUI = createSharkMessengerUI(System.in, System.out, System.err, sharkMessengerApp);
+
+        //controller.startCLI();
+
+        smUI.printUsage();
+        smUI.runCommandLoop();
+    }
+
+    /**
+     * @return user interface with all commands
+     */
+    static SharkMessengerUI createSharkMessengerUI(InputStream is, PrintStream out, PrintStream err,
+                                                   SharkMessengerApp sharkMessengerApp) {
+        SharkMessengerUI smUI = new SharkMessengerUI(is, out, err, sharkMessengerApp);
 
         //CLIModelInterface model = new CLIModel();
 
@@ -50,6 +86,7 @@ public class SharkMessengerUI {
         //General
         smUI.addCommand(new UICommandSaveLog(sharkMessengerApp, smUI, "saveLog", false));
         smUI.addCommand(new UICommandShowLog(sharkMessengerApp, smUI, "showLog", false));
+        smUI.addCommand(new UICommandRunScript(sharkMessengerApp, smUI, "runScript", false));
         smUI.addCommand(new UICommandExit(sharkMessengerApp, smUI, "exit", false));
 
         //Messenger
@@ -61,11 +98,16 @@ public class SharkMessengerUI {
         smUI.addCommand(new UICommandSendMessage(sharkMessengerApp, smUI, "sendMessage", true));
         smUI.addCommand(new UICommandListMessages(sharkMessengerApp, smUI, "listMessages", true));
         smUI.addCommand(new UICommandGetMessageDetails(sharkMessengerApp, smUI, "getMessageDetails", true));
+        smUI.addCommand(new UICommandTail(sharkMessengerApp, smUI, "tail", true));
+        smUI.addCommand(new UICommandSetDeliveryTracing(sharkMessengerApp, smUI, "traceDelivery", true));
+        smUI.addCommand(new UICommandShowDeliveryLatency(sharkMessengerApp, smUI, "lsLatency", true));
 
         // channels
         smUI.addCommand(new UICommandListChannels(sharkMessengerApp, smUI, "lsChannel", true));
         smUI.addCommand(new UICommandCreateChannel(sharkMessengerApp, smUI, "mkChannel", true));
         smUI.addCommand(new UICommandSetChannelAge(sharkMessengerApp, smUI, "setChAge", true));
+        smUI.addCommand(new UICommandSetChannelRetention(sharkMessengerApp, smUI, "setChRetention", true));
+        smUI.addCommand(new UICommandSetChannelPriority(sharkMessengerApp, smUI, "setChPriority", true));
         smUI.addCommand(new UICommandRemoveChannel(sharkMessengerApp, smUI, "rmCh", true));
 
         //PKI
@@ -88,16 +130,97 @@ public class SharkMessengerUI {
         smUI.addCommand(new UICommandRemoveHubDescription(sharkMessengerApp, smUI, "rmHubDescr", true));
         smUI.addCommand(new UICommandListConnectedHubs(sharkMessengerApp, smUI, "lsHubs", true));
         smUI.addCommand(new UICommandConnectHub(sharkMessengerApp, smUI, "connectHub", true));
+        smUI.addCommand(new UICommandDisconnectHub(sharkMessengerApp, smUI, "disconnectHub", true));
+        smUI.addCommand(new UICommandSelectHubs(sharkMessengerApp, smUI, "selectHubs", true));
+        smUI.addCommand(new UICommandSetHubFanOut(sharkMessengerApp, smUI, "hubFanOut", true));
+        smUI.addCommand(new UICommandStartEmbeddedHub(sharkMessengerApp, smUI, "startHub", true));
+        smUI.addCommand(new UICommandStopEmbeddedHub(sharkMessengerApp, smUI, "stopHub", true));
         /*
         smUI.addCommand(new CLICReconnectHubs(sharkMessengerApp, smUI, "reconnectHubs", true));
          */
 
-        //controller.startCLI();
+        return smUI;
+    }
 
-        smUI.printUsage();
-        smUI.runCommandLoop();
+    private static void runBatch(String[] args) throws SharkException {
+        if(args.length < 3) {
+            System.err.println("usage: --batch scriptFile username [username ...]");
+            System.exit(1);
+        }
+        List<PrintStream> outputFiles = new ArrayList<>();
+        try {
+            SharkMessengerScript script = SharkMessengerScript.load(Path.of(args[1]));
+            List<String> peerNames = new ArrayList<>(List.of(args).subList(2, args.length));
+            if(peerNames.size() == 1) {
+                script.runOnPeers(peerNames, List.of(System.out));
+                System.out.flush();
+                return;
+            }
+            // several peers: an output file each
+            for(String peerName : peerNames) outputFiles.add(new PrintStream(peerName + "_batch.txt"));
+            script.runOnPeers(peerNames, outputFiles);
+        } catch (IOException | InterruptedException e) {
+            System.err.println("cannot run script: " + e.getLocalizedMessage());
+            System.exit(1);
+        } finally {
+            // also those opened before one failed
+            for(PrintStream outputFile : outputFiles) outputFile.close();
+        }
+    }
+
+    private static void runHost(String[] args) throws SharkException {
+        if(args.length < 3) {
+            System.err.println("usage: --host socketFolder username [username ...]");
+            System.exit(1);
+        }
+        SharkMessengerHost host = new SharkMessengerHost();
+        for(int i = 2; i < args.length; i++) host.addPeer(args[i]);
+        try {
+            host.serve(Path.of(args[1]));
+            System.out.println("SharkMessenger hosts " + (args.length - 2) + " peers in " + args[1]);
+        } catch (IOException e) {
+            System.err.println("cannot start host: " + e.getLocalizedMessage());
+            System.exit(1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                host.close();
+            } catch (IOException e) {
+                // shutting down anyway
+            }
+        }));
     }
 
+    private static void runDaemon(String[] args) throws SharkException {
+        if(args.length < 3) {
+            System.err.println("usage: --daemon username socketPath|port");
+            System.exit(1);
+        }
+        SharkMessengerApp sharkMessengerApp = new SharkMessengerApp(args[1]);
+        SharkMessengerDaemon daemon = new SharkMessengerDaemon(sharkMessengerApp);
+        try {
+            if(args[2].matches("\\d+")) {
+                System.out.println("SharkMessenger daemon listens on localhost:"
+                        + daemon.start(Integer.parseInt(args[2])));
+            } else {
+                daemon.start(Path.of(args[2]));
+                System.out.println("SharkMessenger daemon listens on " + args[2]);
+            }
+        } catch (IOException e) {
+            System.err.println("cannot start daemon: " + e.getLocalizedMessage());
+            System.exit(1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.close();
+            } catch (IOException e) {
+                // shutting down anyway
+            }
+        }));
+    }
+
+    public static final long NOTIFICATION_INTERVAL_IN_MILLIS = 100;
+
     private final List<UICommand> commands = new ArrayList<>();
     private final List<String> commandStrings = new ArrayList<>();
     private final PrintStream outStream;
@@ -105,6 +228,13 @@ public class SharkMessengerUI {
     private final SharkMessengerApp sharkMessengerApp;
     private final BufferedReader bufferedReader;
 
+    /** lines read by input thread */
+    private final BlockingQueue<String> inputLines = new LinkedBlockingQueue<>();
+    private volatile boolean inputEnded = false;
+    private Thread inputThread = null;
+    /** current prompt - printed again after notifications */
+    private String prompt = "";
+
     public SharkMessengerUI(InputStream is, PrintStream out, PrintStream err, SharkMessengerApp sharkMessengerApp) {
         this.outStream = out;
         this.errStream = err;
@@ -113,7 +243,15 @@ public class SharkMessengerUI {
     }
 
     public void handleUserInput(String input) throws Exception {
-        List<String> cmd = optimizeUserInputString(input);
+        this.handleCommand(tokenize(input));
+    }
+
+    /**
+     * @param cmd command identifier followed by its arguments - no arguments: ask user
+     */
+    public void handleCommand(List<String> cmd) throws Exception {
+        if(cmd.isEmpty()) return;
+        cmd = new ArrayList<>(cmd);
 
         //the reason for removing the first argument (=command identifier) is that this here is the only
         //  place where it's needed. A method performing the action of a command only needs the arguments
@@ -124,10 +262,14 @@ public class SharkMessengerUI {
         for(UICommand command : this.commands) {
             if (command.getIdentifier().equals(commandIdentifier)) {
                 foundCommand = true;
-                if (command.rememberCommand()) {
-                    this.addCommandToHistory(command.getIdentifier());
+                List<String> answers = command.startCommandExecution(cmd);
+                if (answers != null && command.rememberCommand()) {
+                    // history is a script - it can be replayed
+                    List<String> scriptLine = new ArrayList<>();
+                    scriptLine.add(commandIdentifier);
+                    scriptLine.addAll(answers);
+                    this.addCommandToHistory(toCommandLine(scriptLine));
                 }
-                command.startCommandExecution();
             }
         }
         if(!foundCommand){
@@ -139,6 +281,13 @@ public class SharkMessengerUI {
         this.commandStrings.add(commandIdentifier);
     }
 
+    /**
+     * @return executed commands with their arguments - a line each, in script syntax
+     */
+    public List<String> getCommandHistory() {
+        return this.commandStrings;
+    }
+
     public List<UICommand> getCommands() {
         return this.commands;
     }
@@ -159,27 +308,118 @@ public class SharkMessengerUI {
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     public boolean letUserFillOutQuestionnaire(UICommandQuestionnaire questionnaire) {
+        return this.letUserFillOutQuestionnaire(questionnaire, new ArrayList<>());
+    }
+
+    /**
+     * @param answers accepted answers are added
+     * @return false if user terminated questionnaire - or input ended
+     */
+    public boolean letUserFillOutQuestionnaire(UICommandQuestionnaire questionnaire, List<String> answers) {
         for (UICommandQuestion question : questionnaire.getQuestions()) {
             String userInput = "";
             try {
                 do {
-                    this.outStream.print(question.getQuestionText());
-                    try {
-                        userInput = bufferedReader.readLine();
-                        if (userInput.equals(UICommandQuestionnaire.EXIT_SEQUENCE)) {
-                            this.addCommandToHistory(UICommandQuestionnaire.EXIT_SEQUENCE);
-//                            this.controller.logQuestionAnswer(CLICQuestionnaire.EXIT_SEQUENCE);
-                            return false;
-                        }
-                    } catch (IOException e) {
-                        this.printError(e.getLocalizedMessage());
+                    userInput = this.readLine(question.getQuestionText());
+                    if (userInput == null || userInput.equals(UICommandQuestionnaire.EXIT_SEQUENCE)) {
+                        return false;
                     }
                 } while (!question.submitAnswer(userInput));
             } catch (Exception e) {
                 this.printError(e.getLocalizedMessage());
             }
             this.printRecall(userInput);
-            this.addCommandToHistory(userInput);
+            answers.add(userInput);
+        }
+        return true;
+    }
+
+    /**
+     * Fill out questionnaire with arguments given in advance - no questions asked.
+     * @param arguments an answer for each question
+     * @param answers accepted answers are added
+     * @return false if number of arguments does not match or an argument is invalid
+     */
+    public boolean fillOutQuestionnaire(UICommandQuestionnaire questionnaire, List<String> arguments,
+                                        List<String> answers) {
+        List<UICommandQuestion> questions = questionnaire.getQuestions();
+        if(arguments.size() != questions.size()) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("expected ").append(questions.size()).append(" arguments:");
+            for(UICommandQuestion question : questions) {
+                sb.append(" [").append(question.getQuestionText().trim()).append("]");
+            }
+            this.printError(sb.toString());
+            return false;
+        }
+
+        for(int i = 0; i < questions.size(); i++) {
+            String argument = arguments.get(i);
+            try {
+                if(!questions.get(i).submitAnswer(argument)) {
+                    this.printError("invalid argument '" + argument + "' for: " + questions.get(i).getQuestionText());
+                    return false;
+                }
+            } catch (Exception e) {
+                this.printError(e.getLocalizedMessage());
+                return false;
+            }
+            answers.add(argument);
+        }
+        return true;
+    }
+
+    /**
+     * Print a prompt and wait for a line of input. Notifications that come in while waiting are rendered in
+     * between - this thread is the only one writing to out stream.
+     * @return line - null if input is closed
+     */
+    private String readLine(String prompt) {
+        this.startInputThread();
+        this.renderNotifications();
+        this.prompt = prompt;
+        this.outStream.print(prompt);
+        try {
+            while (true) {
+                boolean ended = this.inputEnded;
+                String line = this.inputLines.poll(NOTIFICATION_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+                if (line != null) return line;
+                if (ended) return null;
+                if (this.renderNotifications()) this.outStream.print(this.prompt);
+            }
+        } catch (InterruptedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Input is read by a thread of its own - user interface thread is free to render notifications.
+     */
+    private synchronized void startInputThread() {
+        if (this.inputThread != null) return;
+        this.inputThread = new Thread(() -> {
+            try {
+                String line;
+                while ((line = this.bufferedReader.readLine()) != null) {
+                    this.inputLines.add(line);
+                }
+            } catch (IOException e) {
+                this.sharkMessengerApp.getNotifications().post("cannot read input: " + e.getLocalizedMessage());
+            }
+            this.inputEnded = true;
+        }, "shark-messenger-input");
+        this.inputThread.setDaemon(true);
+        this.inputThread.start();
+    }
+
+    /**
+     * @return true if anything was rendered
+     */
+    private boolean renderNotifications() {
+        if (this.sharkMessengerApp == null || this.sharkMessengerApp.getNotifications().isEmpty()) return false;
+        this.outStream.println();
+        for (String notification : this.sharkMessengerApp.getNotifications().drain()) {
+            this.outStream.println("* " + notification);
         }
         return true;
     }
@@ -247,14 +487,14 @@ public class SharkMessengerUI {
         while (running) {
             try {
                 this.outStream.println();
-                this.outStream.print("Run a command by entering its name from the list above:");
-
-                String userInputString = this.bufferedReader.readLine();
-                this.outStream.println("> " + userInputString);
-
-                if (userInputString != null) {
-                    this.handleUserInput(userInputString);
+                String userInputString = this.readLine("Run a command by entering its name from the list above:");
+                if (userInputString == null) {
+                    // input closed
+                    running = false;
+                    continue;
                 }
+                this.outStream.println("> " + userInputString);
+                this.handleUserInput(userInputString);
 
             } catch (Exception e) {
                 this.errStream.println("exception caught: " + e.getLocalizedMessage());
@@ -268,27 +508,58 @@ public class SharkMessengerUI {
 
     /**
      * Converts a string representing a command input by the user into a list of all command arguments.
-     * All arguments are freed up from any spaces. All elements of the list are in lower case.
-     * Example: (upper cases, too many spaces)
-     * > gIt   hElp
-     * > {"git", "help"}
+     * Arguments are separated by spaces. Arguments in double quotes can contain spaces, \" and \\ or be empty.
+     * Example:
+     * > sendMessage 0  false false "hello world" ""
+     * > {"sendMessage", "0", "false", "false", "hello world", ""}
      *
      * @param input the string inputted by the user
      * @return a list of all command arguments
      */
-    private List<String> optimizeUserInputString(String input) {
+    static List<String> tokenize(String input) {
         List<String> cmd = new ArrayList<>();
-        final String space = " ";
-
-        String[] unfinishedCmd = input.split(space);
-        for (String attribute : unfinishedCmd) {
-            //attribute = attribute.toLowerCase();
-            attribute = attribute.trim();
-
-            if (!attribute.equals(space)) {
-                cmd.add(attribute);
+        StringBuilder argument = null;
+        boolean quoted = false;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (quoted) {
+                if (c == '\\' && i + 1 < input.length()) {
+                    argument.append(input.charAt(++i));
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    argument.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (argument != null) {
+                    cmd.add(argument.toString());
+                    argument = null;
+                }
+            } else {
+                if (argument == null) argument = new StringBuilder();
+                if (c == '"') quoted = true;
+                else argument.append(c);
             }
         }
+        if (argument != null) cmd.add(argument.toString());
         return cmd;
     }
+
+    /**
+     * @return command line that is tokenized into arguments again - arguments quoted if needed
+     */
+    static String toCommandLine(List<String> arguments) {
+        StringBuilder sb = new StringBuilder();
+        for (String argument : arguments) {
+            if (sb.length() > 0) sb.append(' ');
+            if (argument.isEmpty() || argument.chars().anyMatch(c -> Character.isWhitespace(c) || c == '"')) {
+                sb.append('"');
+                sb.append(argument.replace("\\", "\\\\").replace("\"", "\\\""));
+                sb.append('"');
+            } else {
+                sb.append(argument);
+            }
+        }
+        return sb.toString();
+    }
 }
@@ -1,6 +1,8 @@
 package net.sharksystem.cmdline.sharkmessengerUI;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Command which can be executed from the command line.
@@ -67,15 +69,31 @@ public abstract class UICommand {
      * @throws Exception Which might occur when executing the command.
      */
     public void startCommandExecution() throws Exception {
+        this.startCommandExecution(null);
+    }
+
+    /**
+     * Runs the command with arguments given in advance - one for each question, no questions asked. The user is
+     * asked if there are no arguments.
+     * @param arguments answers in order of questions - null or empty: ask user
+     * @return answers the command was executed with - null if it was not executed
+     * @throws Exception Which might occur when executing the command.
+     */
+    public List<String> startCommandExecution(List<String> arguments) throws Exception {
         this.runBefore();
+        List<String> answers = new ArrayList<>();
         UICommandQuestionnaire questionnaire = this.specifyCommandStructure();
-//        if(questionnaire != null && !CLIController.getView().letUserFillOutQuestionnaire(questionnaire)) {
-        if(questionnaire != null && !this.sharkMessengerUI.letUserFillOutQuestionnaire(questionnaire)) {
-//            ui.commandWasTerminated(this.identifier);
-            this.sharkMessengerUI.commandWasTerminated(this.identifier);
-        } else {
-            this.execute();
+        if(questionnaire != null) {
+            boolean filledOut = arguments == null || arguments.isEmpty() ?
+                    this.sharkMessengerUI.letUserFillOutQuestionnaire(questionnaire, answers) :
+                    this.sharkMessengerUI.fillOutQuestionnaire(questionnaire, arguments, answers);
+            if(!filledOut) {
+                this.sharkMessengerUI.commandWasTerminated(this.identifier);
+                return null;
+            }
         }
+        this.execute();
+        return answers;
     }
 
     protected void runBefore() {
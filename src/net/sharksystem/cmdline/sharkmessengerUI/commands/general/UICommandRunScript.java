@@ -0,0 +1,62 @@
+package net.sharksystem.cmdline.sharkmessengerUI.commands.general;
+
+import net.sharksystem.cmdline.sharkmessengerUI.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Command for running commands from a script file - e.g. a saved log. Scripts can run other scripts - but not one
+ * that is running already: a script running itself (directly or via others) is refused.
+ */
+public class UICommandRunScript extends UICommand {
+
+    private final UICommandStringArgument fileName;
+    /** canonical paths of scripts running in this user interface */
+    private final Set<Path> runningScripts = new HashSet<>();
+
+    public UICommandRunScript(SharkMessengerApp sharkMessengerApp, SharkMessengerUI sharkMessengerUI,
+                              String identifier, boolean rememberCommand) {
+        super(sharkMessengerApp, sharkMessengerUI, identifier, rememberCommand);
+        this.fileName = new UICommandStringArgument(sharkMessengerApp);
+    }
+
+    @Override
+    public UICommandQuestionnaire specifyCommandStructure() {
+        return new UICommandQuestionnaireBuilder().
+                addQuestion("File path: ", this.fileName).
+                build();
+    }
+
+    @Override
+    public void execute() throws Exception {
+        Path script;
+        try {
+            script = Path.of(this.fileName.getValue()).toRealPath();
+        } catch (IOException e) {
+            this.printErrorMessage("Couldn't read file " + this.fileName.getValue());
+            return;
+        }
+        if(!this.runningScripts.add(script)) {
+            this.printErrorMessage("Script is running already - not run again: " + script);
+            return;
+        }
+        try {
+            SharkMessengerScript.load(script).run(this.getSharkMessengerUI());
+        } catch (IOException e) {
+            this.printErrorMessage("Couldn't read file " + this.fileName.getValue());
+        } finally {
+            this.runningScripts.remove(script);
+        }
+    }
+
+    @Override
+    public String getDescription() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Runs commands from a file (e.g. a saved log) without asking questions.");
+        return sb.toString();
+    }
+
+}
@@ -7,6 +7,11 @@ import net.sharksystem.cmdline.sharkmessengerUI.UICommand;
 import net.sharksystem.cmdline.sharkmessengerUI.UICommandQuestionnaire;
 import net.sharksystem.cmdline.sharkmessengerUI.UICommandStringArgument;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Command for saving the log in a file.
  */
@@ -29,35 +34,27 @@ public class UICommandSaveLog extends UICommand {
 
     @Override
     public void execute() throws Exception {
-        this.printTODOReimplement();
-        /*
         String fileName = this.fileName.getValue();
         File file = new File(fileName);
-        if (file.createNewFile()) {
-            try {
-                PrintWriter pw = new PrintWriter(fileName);
-                List<String> log = model.getCommandHistoryList();
-
-                for (String s : log) {
-                    pw.println(s);
-                }
-
-                pw.println("exit");
-                pw.close();
+        if (file.exists()) {
+            this.printErrorMessage("Specified file name already exists!");
+            return;
+        }
 
-            } catch (FileNotFoundException e) {
-                ui.printError("Couldn't write to or create file " + fileName);
+        try (PrintWriter pw = new PrintWriter(file, StandardCharsets.UTF_8)) {
+            // a script - replay it with runScript or --batch
+            for (String s : this.getSharkMessengerUI().getCommandHistory()) {
+                pw.println(s);
             }
-        } else {
-            ui.printError("Specified file name already exists!");
+        } catch (IOException e) {
+            this.printErrorMessage("Couldn't write to or create file " + fileName);
         }
-         */
     }
 
     @Override
     public String getDescription() {
         StringBuilder sb = new StringBuilder();
-        sb.append("Saves the current log to a file.");
+        sb.append("Saves the current log to a file - a script that can be replayed.");
         return sb.toString();
     }
 
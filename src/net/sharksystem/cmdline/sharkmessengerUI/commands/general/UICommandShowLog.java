@@ -22,9 +22,9 @@ public class UICommandShowLog extends UICommand {
 
     @Override
     public void execute() throws Exception {
-        this.printTODOReimplement();
-
-//        ui.printInfo(model.getCommandHistory());
+        for (String s : this.getSharkMessengerUI().getCommandHistory()) {
+            this.getPrintStream().println(s);
+        }
     }
 
     @Override
@@ -37,7 +37,7 @@ public class UICommandConnectHub extends UICommand {
         this.getSharkMessengerUI().getOutStream().println("try to connect to hub");
         HubDescriptionPrinter.print(this.getSharkMessengerUI().getOutStream(), hubDescription);
 
-        this.getSharkMessengerApp().getHubConnectionManager().connectHub(hubDescription);
+        this.getSharkMessengerApp().connectHub(hubDescription);
     }
 
     @Override
@@ -2,10 +2,17 @@ package net.sharksystem.cmdline.sharkmessengerUI.commands.hubcontrol;
 
 import net.sharksystem.cmdline.sharkmessengerUI.SharkMessengerApp;
 import net.sharksystem.cmdline.sharkmessengerUI.SharkMessengerUI;
+import net.sharksystem.cmdline.sharkmessengerUI.UICommandIntegerArgument;
 import net.sharksystem.cmdline.sharkmessengerUI.UICommandQuestionnaire;
 import net.sharksystem.cmdline.sharkmessengerUI.UICommand;
+import net.sharksystem.cmdline.sharkmessengerUI.UICommandQuestionnaireBuilder;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+
+import java.util.List;
 
 public class UICommandDisconnectHub extends UICommand {
+    private final UICommandIntegerArgument hubIndex;
+
     /**
      * Creates a command object.
      *
@@ -16,20 +23,44 @@ public class UICommandDisconnectHub extends UICommand {
      */
     public UICommandDisconnectHub(SharkMessengerApp sharkMessengerApp, SharkMessengerUI sharkMessengerUI, String identifier, boolean rememberCommand) {
         super(sharkMessengerApp, sharkMessengerUI, identifier, rememberCommand);
+        this.hubIndex = new UICommandIntegerArgument(sharkMessengerApp);
+    }
+
+    protected void runBefore() {
+        try {
+            HubDescriptionPrinter.printConnectedHubs(
+                    this.getPrintStream(), this.getSharkMessengerApp().getHubConnectionManager());
+        } catch (Exception e) {
+            this.printErrorMessage(e.getLocalizedMessage());
+        }
     }
 
     @Override
     protected UICommandQuestionnaire specifyCommandStructure() {
-        return null;
+        return new UICommandQuestionnaireBuilder()
+                .addQuestion("choose hub index from list above", this.hubIndex)
+                .build();
     }
 
     @Override
     protected void execute() throws Exception {
+        List<HubConnectorDescription> connectedHubs =
+                this.getSharkMessengerApp().getHubConnectionManager().getConnectedHubs();
+        int index = this.hubIndex.getValue();
+        if(index < 0 || index >= connectedHubs.size()) {
+            this.printErrorMessage("no connected hub with index " + index);
+            return;
+        }
+
+        HubConnectorDescription hubDescription = connectedHubs.get(index);
+        this.getSharkMessengerUI().getOutStream().println("disconnect from hub");
+        HubDescriptionPrinter.print(this.getSharkMessengerUI().getOutStream(), hubDescription);
 
+        this.getSharkMessengerApp().disconnectHub(hubDescription);
     }
 
     @Override
     public String getDescription() {
-        return null;
+        return "disconnect from a hub";
     }
 }
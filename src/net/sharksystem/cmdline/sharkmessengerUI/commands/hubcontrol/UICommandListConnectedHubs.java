@@ -1,6 +1,8 @@
 package net.sharksystem.cmdline.sharkmessengerUI.commands.hubcontrol;
 
 import net.sharksystem.asap.utils.DateTimeHelper;
+import net.sharksystem.cmdline.sharkmessengerUI.HubConnectionSupervisor;
+import net.sharksystem.cmdline.sharkmessengerUI.SharkMessengerEmbeddedHub;
 import net.sharksystem.cmdline.sharkmessengerUI.SharkMessengerUI;
 import net.sharksystem.cmdline.sharkmessengerUI.UICommandQuestionnaire;
 import net.sharksystem.hub.HubConnectionManager;
@@ -38,6 +40,18 @@ public class UICommandListConnectedHubs extends UICommand {
                         this.getPrintStream(), failedConnectionAttempt.getHubConnectorDescription());
             }
         }
+
+        List<HubConnectionSupervisor.HubSnapshot> supervisedHubs =
+                this.getSharkMessengerApp().getHubConnectionSupervisor().getHubs();
+        if(!supervisedHubs.isEmpty()) {
+            this.getPrintStream().println("supervised hubs:");
+            for(HubConnectionSupervisor.HubSnapshot supervisedHub : supervisedHubs) {
+                this.getPrintStream().println(supervisedHub);
+            }
+        }
+
+        SharkMessengerEmbeddedHub embeddedHub = this.getSharkMessengerApp().getEmbeddedHub();
+        if(embeddedHub != null) this.getPrintStream().println(embeddedHub);
     }
 
     @Override
@@ -0,0 +1,54 @@
+package net.sharksystem.cmdline.sharkmessengerUI.commands.hubcontrol;
+
+import net.sharksystem.cmdline.sharkmessengerUI.HubSelector;
+import net.sharksystem.cmdline.sharkmessengerUI.SharkMessengerApp;
+import net.sharksystem.cmdline.sharkmessengerUI.SharkMessengerUI;
+import net.sharksystem.cmdline.sharkmessengerUI.UICommand;
+import net.sharksystem.cmdline.sharkmessengerUI.UICommandIntegerArgument;
+import net.sharksystem.cmdline.sharkmessengerUI.UICommandQuestionnaire;
+import net.sharksystem.cmdline.sharkmessengerUI.UICommandQuestionnaireBuilder;
+
+/**
+ * Automatic hub selection: stay connected to the best hubs of the hub description list.
+ */
+public class UICommandSelectHubs extends UICommand {
+    private final UICommandIntegerArgument hubs;
+
+    public UICommandSelectHubs(SharkMessengerApp sharkMessengerApp, SharkMessengerUI sharkMessengerUI,
+                               String identifier, boolean rememberCommand) {
+        super(sharkMessengerApp, sharkMessengerUI, identifier, rememberCommand);
+        this.hubs = new UICommandIntegerArgument(sharkMessengerApp);
+    }
+
+    protected void runBefore() {
+        HubSelector hubSelector = this.getSharkMessengerApp().getHubSelector();
+        int hubs = hubSelector.getHubs();
+        this.getPrintStream().println(hubs > 0 ? "connected to best " + hubs + " hubs" : "hub selection is off");
+        for(String hub : hubSelector.describeHubs()) this.getPrintStream().println(hub);
+    }
+
+    @Override
+    protected UICommandQuestionnaire specifyCommandStructure() {
+        return new UICommandQuestionnaireBuilder()
+                .addQuestion("number of hubs to stay connected to (0: off)", this.hubs)
+                .build();
+    }
+
+    @Override
+    protected void execute() throws Exception {
+        HubSelector hubSelector = this.getSharkMessengerApp().getHubSelector();
+        int hubs = this.hubs.getValue();
+        if(hubs <= 0) {
+            hubSelector.stop();
+            this.getPrintStream().println("hub selection stopped - connected hubs stay connected");
+        } else {
+            hubSelector.start(hubs, HubSelector.DEFAULT_SELECTION_INTERVAL_IN_MILLIS);
+            this.getPrintStream().println("measure hubs and connect to best " + hubs);
+        }
+    }
+
+    @Override
+    public String getDescription() {
+        return "connect to best hubs automatically - measured by latency and throughput";
+    }
+}
@@ -0,0 +1,32 @@
+package net.sharksystem.cmdline.sharkmessengerUI.commands.hubcontrol;
+
+import net.sharksystem.cmdline.sharkmessengerUI.*;
+
+public class UICommandSetHubFanOut extends UICommand {
+    private final UICommandBooleanArgument on;
+
+    public UICommandSetHubFanOut(SharkMessengerApp sharkMessengerApp, SharkMessengerUI sharkMessengerUI,
+                                 String identifier, boolean rememberCommand) {
+        super(sharkMessengerApp, sharkMessengerUI, identifier, rememberCommand);
+        this.on = new UICommandBooleanArgument(sharkMessengerApp);
+    }
+
+    @Override
+    public UICommandQuestionnaire specifyCommandStructure() {
+        return new UICommandQuestionnaireBuilder()
+                .addQuestion("Fan out over all connected hubs (true/false)? ", this.on)
+                .build();
+    }
+
+    @Override
+    public void execute() throws Exception {
+        this.getSharkMessengerApp().getMessengerComponent().setHubFanOut(this.on.getValue());
+        this.getPrintStream().println("hub fan-out " + (this.on.getValue() ? "on" : "off"));
+    }
+
+    @Override
+    public String getDescription() {
+        return "Push messages of Internet age channels over all connected hubs in the background. " +
+                "Copies arriving over more than one hub are dropped.";
+    }
+}
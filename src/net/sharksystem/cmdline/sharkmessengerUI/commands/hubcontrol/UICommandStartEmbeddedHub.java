@@ -0,0 +1,50 @@
+package net.sharksystem.cmdline.sharkmessengerUI.commands.hubcontrol;
+
+import net.sharksystem.cmdline.sharkmessengerUI.SharkMessengerApp;
+import net.sharksystem.cmdline.sharkmessengerUI.SharkMessengerEmbeddedHub;
+import net.sharksystem.cmdline.sharkmessengerUI.SharkMessengerUI;
+import net.sharksystem.cmdline.sharkmessengerUI.UICommand;
+import net.sharksystem.cmdline.sharkmessengerUI.UICommandIntegerArgument;
+import net.sharksystem.cmdline.sharkmessengerUI.UICommandQuestionnaire;
+import net.sharksystem.cmdline.sharkmessengerUI.UICommandQuestionnaireBuilder;
+
+/**
+ * Run a hub inside this messenger - other peers of this site connect to it.
+ */
+public class UICommandStartEmbeddedHub extends UICommand {
+    private final UICommandIntegerArgument port;
+    private final UICommandIntegerArgument maxConnections;
+    private final UICommandIntegerArgument connectorThreads;
+
+    public UICommandStartEmbeddedHub(SharkMessengerApp sharkMessengerApp, SharkMessengerUI sharkMessengerUI,
+                                     String identifier, boolean rememberCommand) {
+        super(sharkMessengerApp, sharkMessengerUI, identifier, rememberCommand);
+        this.port = new UICommandIntegerArgument(sharkMessengerApp);
+        this.maxConnections = new UICommandIntegerArgument(sharkMessengerApp);
+        this.connectorThreads = new UICommandIntegerArgument(sharkMessengerApp);
+    }
+
+    @Override
+    protected UICommandQuestionnaire specifyCommandStructure() {
+        return new UICommandQuestionnaireBuilder()
+                .addQuestion("port: ", this.port)
+                .addQuestion("max connections (default " + SharkMessengerEmbeddedHub.DEFAULT_MAX_CONNECTIONS + "): ",
+                        this.maxConnections)
+                .addQuestion("connector threads (0: a new thread for each connection): ", this.connectorThreads)
+                .build();
+    }
+
+    @Override
+    protected void execute() throws Exception {
+        int maxConnections = this.maxConnections.getValue();
+        if(maxConnections <= 0) maxConnections = SharkMessengerEmbeddedHub.DEFAULT_MAX_CONNECTIONS;
+        SharkMessengerEmbeddedHub embeddedHub = this.getSharkMessengerApp().startEmbeddedHub(
+                this.port.getValue(), maxConnections, this.connectorThreads.getValue());
+        this.getPrintStream().println(embeddedHub);
+    }
+
+    @Override
+    public String getDescription() {
+        return "run a hub inside this messenger - other local peers can connect to it";
+    }
+}
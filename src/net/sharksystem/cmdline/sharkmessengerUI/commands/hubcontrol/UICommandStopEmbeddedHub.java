@@ -0,0 +1,34 @@
+package net.sharksystem.cmdline.sharkmessengerUI.commands.hubcontrol;
+
+import net.sharksystem.cmdline.sharkmessengerUI.SharkMessengerApp;
+import net.sharksystem.cmdline.sharkmessengerUI.SharkMessengerUI;
+import net.sharksystem.cmdline.sharkmessengerUI.UICommand;
+import net.sharksystem.cmdline.sharkmessengerUI.UICommandQuestionnaire;
+import net.sharksystem.cmdline.sharkmessengerUI.UICommandQuestionnaireBuilder;
+
+public class UICommandStopEmbeddedHub extends UICommand {
+    public UICommandStopEmbeddedHub(SharkMessengerApp sharkMessengerApp, SharkMessengerUI sharkMessengerUI,
+                                    String identifier, boolean rememberCommand) {
+        super(sharkMessengerApp, sharkMessengerUI, identifier, rememberCommand);
+    }
+
+    @Override
+    protected UICommandQuestionnaire specifyCommandStructure() {
+        return new UICommandQuestionnaireBuilder().build();
+    }
+
+    @Override
+    protected void execute() throws Exception {
+        if(this.getSharkMessengerApp().getEmbeddedHub() == null) {
+            this.getPrintStream().println("no embedded hub running");
+            return;
+        }
+        this.getSharkMessengerApp().stopEmbeddedHub();
+        this.getPrintStream().println("embedded hub stopped");
+    }
+
+    @Override
+    public String getDescription() {
+        return "stop hub running inside this messenger";
+    }
+}
@@ -5,8 +5,7 @@ import net.sharksystem.asap.ASAPHop;
 import net.sharksystem.asap.utils.DateTimeHelper;
 import net.sharksystem.messenger.*;
 
-import java.io.IOException;
-import java.io.PrintStream;
+import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Set;
@@ -43,83 +42,128 @@ public class ChannelPrinter {
                 if(printIndex) ps.print(i++ + ": ");
                 SharkMessengerChannel channel = messengerComponent.getChannel(channelUri);
                 printChannelDescription(ps, channel);
+                ps.print("\n");
             }
-            ps.print("\n");
         }
     }
 
-    private static void printYesNo(PrintStream ps, boolean value) {
-        if(value) ps.print("yes");
-        else ps.print("no");
+    public static final int ALL_MESSAGES = 0;
+
+    private static void printYesNo(PrintWriter pw, boolean value) {
+        if(value) pw.print("yes");
+        else pw.print("no");
     }
 
     public static void printMessages(PrintStream ps, SharkMessageList messages)
             throws IOException, SharkMessengerException, ASAPException {
-        if(messages.size() < 1) ps.print("no messages");
-        else {
-            for (int i = 0; i < messages.size(); i++) {
-                ps.println("#" + i++);
-                ps.println("--------------------------------------------------------------------------------");
-                SharkMessage message = messages.getSharkMessage(i, true);
-                ChannelPrinter.printMessageDetails(ps, message);
-                ps.println("--------------------------------------------------------------------------------");
+        printMessages(ps, messages, ALL_MESSAGES, 0, false);
+    }
+
+    /**
+     * Print a page of messages in a single pass. Messages are rendered one after another - nothing is collected.
+     * Messages keep their chronological index - #0 is the oldest.
+     * @param pageSize maximum number of messages - ALL_MESSAGES: no limit
+     * @param offset number of messages to skip
+     * @param newestFirst start with the latest message
+     */
+    public static void printMessages(PrintStream ps, SharkMessageList messages,
+                                     int pageSize, int offset, boolean newestFirst)
+            throws IOException, SharkMessengerException, ASAPException {
+        // one buffered writer - not a system call for each field
+        PrintWriter pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(ps, StandardCharsets.UTF_8)));
+        try {
+            int size = messages.size();
+            if(size < 1) {
+                pw.println("no messages");
+                return;
+            }
+
+            int first = Math.max(0, offset);
+            int end = pageSize == ALL_MESSAGES ? size : Math.min(size, first + pageSize);
+            for (int i = first; i < end; i++) {
+                int position = newestFirst ? size - 1 - i : i;
+                pw.println("#" + position);
+                pw.println("--------------------------------------------------------------------------------");
+                SharkMessage message = messages.getSharkMessage(position, true);
+                ChannelPrinter.printMessageDetails(pw, message);
+                pw.println("--------------------------------------------------------------------------------");
             }
+            if(first >= end) pw.println("no messages at offset " + first);
+            else pw.println("messages " + first + ".." + (end - 1) + " of " + size
+                    + (newestFirst ? " (newest first)" : ""));
+        } finally {
+            pw.flush();
         }
     }
+
     public static void printMessageDetails(PrintStream ps, SharkMessage message)
             throws IOException, SharkMessengerException, ASAPException {
+        PrintWriter pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(ps, StandardCharsets.UTF_8)));
+        try {
+            printMessageDetails(pw, message);
+        } finally {
+            pw.flush();
+        }
+    }
+
+    public static void printMessageDetails(PrintWriter pw, SharkMessage message)
+            throws IOException, SharkMessengerException, ASAPException {
 
-        ps.print("sender: ");
-        ps.print(message.getSender());
-        ps.print(" | recipients: ");
+        pw.print("sender: ");
+        pw.print(message.getSender());
+        pw.print(" | recipients: ");
         Set<CharSequence> recipients = message.getRecipients();
-        if(recipients.size() < 1) ps.print("not specified");
+        if(recipients.size() < 1) pw.print("not specified");
         boolean first = true;
         for(CharSequence recipient : recipients) {
             if(first) first = false;
-            else ps.print(";");
-            ps.print(recipient);
+            else pw.print(";");
+            pw.print(recipient);
         }
 
-        ps.print(" | time: ");
-        ps.print(DateTimeHelper.long2ExactTimeString(message.getCreationTime()));
+        pw.print(" | time: ");
+        pw.print(DateTimeHelper.long2ExactTimeString(message.getCreationTime()));
 
         // encryption
-        ps.print("\n");
-        ps.print("encrypted: ");
-        printYesNo(ps, message.encrypted());
+        pw.print("\n");
+        pw.print("encrypted: ");
+        printYesNo(pw, message.encrypted());
 
-        ps.print(" | couldBeDecrypted: ");
-        printYesNo(ps, message.couldBeDecrypted());
+        pw.print(" | couldBeDecrypted: ");
+        printYesNo(pw, message.couldBeDecrypted());
 
-        ps.print(" | verified: ");
-        printYesNo(ps, message.verified());
+        pw.print(" | verified: ");
+        printYesNo(pw, message.verified());
 
         // hoping list
-        ps.print("\n");
-        ps.print("hoping list: ");
+        pw.print("\n");
+        pw.print("hoping list: ");
         List<ASAPHop> asapHopsList = message.getASAPHopsList();
         if(asapHopsList.isEmpty()) {
-            ps.print("no hops");
+            pw.print("no hops");
         } else {
             int i = 0;
-            ps.print("++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
+            pw.print("++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
             for(ASAPHop hop : asapHopsList) {
-                ps.print(i++ + ": ");
-                ps.println(hop);
+                pw.print(i++ + ": ");
+                pw.println(hop);
             }
-            ps.print("++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
+            pw.print("++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
+        }
+        for(List<ASAPHop> alternativeRoute : message.getAlternativeRoutes()) {
+            pw.print("\nalso arrived via: ");
+            pw.print(alternativeRoute);
         }
 
 
         // content
-        ps.print("\n");
+        pw.print("\n");
         byte[] content = message.getContent();
         if(content.length < 1) {
-            ps.print("no content");
+            pw.print("no content");
         }
-        ps.print("message content interpreted as String:\n");
-        ps.print(new String(content, StandardCharsets.UTF_8));
-        ps.print("\n");
+        pw.print("message content interpreted as String:\n");
+        pw.print(new String(content, StandardCharsets.UTF_8));
+        pw.print("\n");
     }
 }
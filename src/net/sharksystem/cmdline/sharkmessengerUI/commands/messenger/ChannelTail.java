@@ -0,0 +1,103 @@
+package net.sharksystem.cmdline.sharkmessengerUI.commands.messenger;
+
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.crypto.ASAPKeyStore;
+import net.sharksystem.asap.utils.DateTimeHelper;
+import net.sharksystem.cmdline.sharkmessengerUI.SharkMessengerNotifications;
+import net.sharksystem.messenger.InMemoSharkMessage;
+import net.sharksystem.messenger.SharkMessage;
+import net.sharksystem.messenger.SharkMessageStoreIndexHook;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Follows a channel: renders messages as they land - nothing else. Messages are queued as they arrive, parsed
+ * by a thread of its own and posted as notifications. If they arrive faster than they can be parsed, the oldest
+ * queued ones are dropped - their number is posted instead.
+ */
+class ChannelTail implements SharkMessageStoreIndexHook {
+    static final int DEFAULT_CAPACITY = 1000;
+
+    private final CharSequence uri;
+    private final SharkMessengerNotifications notifications;
+    private final ASAPKeyStore asapKeyStore;
+    private final BlockingQueue<Arrival> arrivals;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean running = true;
+
+    private static class Arrival {
+        final byte[] message;
+        final List<ASAPHop> hops;
+
+        Arrival(byte[] message, List<ASAPHop> hops) {
+            this.message = message;
+            this.hops = hops;
+        }
+    }
+
+    ChannelTail(CharSequence uri, SharkMessengerNotifications notifications, ASAPKeyStore asapKeyStore,
+                int capacity) {
+        this.uri = uri;
+        this.notifications = notifications;
+        this.asapKeyStore = asapKeyStore;
+        this.arrivals = new ArrayBlockingQueue<>(capacity);
+
+        Thread printer = new Thread(this::printLoop, "tail " + uri);
+        printer.setDaemon(true);
+        printer.start();
+    }
+
+    @Override
+    public void messageAppended(CharSequence uri, int position, byte[] message, List<ASAPHop> hops) {
+        // called by messenger - never block it
+        Arrival arrival = new Arrival(message, hops);
+        while(!this.arrivals.offer(arrival)) {
+            if(this.arrivals.poll() != null) this.dropped.incrementAndGet();
+        }
+    }
+
+    void stop() {
+        this.running = false;
+    }
+
+    private void printLoop() {
+        while(this.running) {
+            try {
+                Arrival arrival = this.arrivals.poll(100, TimeUnit.MILLISECONDS);
+                if(arrival == null) continue;
+
+                long dropped = this.dropped.getAndSet(0);
+                if(dropped > 0) this.notifications.post("[" + this.uri + "] ... " + dropped + " messages skipped");
+                this.notifications.post(this.render(arrival));
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    private String render(Arrival arrival) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[").append(this.uri).append("] ");
+        try {
+            SharkMessage message = InMemoSharkMessage.parseMessage(arrival.message, arrival.hops, this.asapKeyStore);
+            if(!message.couldBeDecrypted()) {
+                return sb.append("encrypted message - not for this peer").toString();
+            }
+            sb.append(DateTimeHelper.long2ExactTimeString(message.getCreationTime()));
+            sb.append(" | ");
+            sb.append(message.getSender());
+            if(message.verified()) sb.append(" (verified)");
+            if(arrival.hops != null && !arrival.hops.isEmpty()) sb.append(" | hops: ").append(arrival.hops.size());
+            sb.append(": ");
+            sb.append(new String(message.getContent(), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            sb.append("cannot read message: ").append(e.getLocalizedMessage());
+        }
+        return sb.toString();
+    }
+}
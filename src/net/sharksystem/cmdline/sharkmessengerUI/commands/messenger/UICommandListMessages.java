@@ -9,17 +9,26 @@ import java.io.IOException;
 
 public class UICommandListMessages extends UICommandProduceChannelListBefore {
     private final UICommandIntegerArgument channelIndex;
+    private final UICommandIntegerArgument pageSize;
+    private final UICommandIntegerArgument offset;
+    private final UICommandBooleanArgument newestFirst;
 
     public UICommandListMessages(SharkMessengerApp sharkMessengerApp, SharkMessengerUI sharkMessengerUI,
                                  String identifier, boolean rememberCommand) {
         super(sharkMessengerApp, sharkMessengerUI, identifier, rememberCommand);
         this.channelIndex = new UICommandIntegerArgument(sharkMessengerApp);
+        this.pageSize = new UICommandIntegerArgument(sharkMessengerApp);
+        this.offset = new UICommandIntegerArgument(sharkMessengerApp);
+        this.newestFirst = new UICommandBooleanArgument(sharkMessengerApp);
     }
 
     @Override
     public UICommandQuestionnaire specifyCommandStructure() {
         return new UICommandQuestionnaireBuilder()
                 .addQuestion("Index target channel (0..n): ", this.channelIndex)
+                .addQuestion("Page size (0 for all): ", this.pageSize)
+                .addQuestion("Offset: ", this.offset)
+                .addQuestion("Newest first? ", this.newestFirst)
                 .build();
     }
 
@@ -30,7 +39,8 @@ public class UICommandListMessages extends UICommandProduceChannelListBefore {
                 this.getSharkMessengerApp().getMessengerComponent().getChannel(
                         this.channelIndex.getValue()).getMessages();
 
-            ChannelPrinter.printMessages(this.getPrintStream(), messages);
+            ChannelPrinter.printMessages(this.getPrintStream(), messages,
+                    this.pageSize.getValue(), this.offset.getValue(), this.newestFirst.getValue());
         } catch (SharkException | IOException e) {
             this.printErrorMessage(e.getLocalizedMessage());
         }
@@ -38,6 +48,6 @@ public class UICommandListMessages extends UICommandProduceChannelListBefore {
 
     @Override
     public String getDescription() {
-        return "Returns one or more messages a peer received.";
+        return "Returns a page of messages a peer received.";
     }
 }
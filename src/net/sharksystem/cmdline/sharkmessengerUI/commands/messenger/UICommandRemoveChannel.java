@@ -2,6 +2,9 @@ package net.sharksystem.cmdline.sharkmessengerUI.commands.messenger;
 
 import net.sharksystem.cmdline.sharkmessengerUI.*;
 import net.sharksystem.cmdline.sharkmessengerUI.SharkMessengerUI;
+import net.sharksystem.messenger.SharkMessengerException;
+
+import java.io.IOException;
 
 public class UICommandRemoveChannel extends UICommand {
 
@@ -23,16 +26,11 @@ public class UICommandRemoveChannel extends UICommand {
 
     @Override
     public void execute() throws Exception {
-        this.printTODOReimplement();
-        /*
         try {
-            SharkMessengerComponent peerMessenger = model.getMessengerComponent();
-            peerMessenger.removeChannel(this.channel.getValue().getURI());
-
-        } catch (SharkException | IOException e) {
-            ui.printError(e.getLocalizedMessage());
+            this.getSharkMessengerApp().getMessengerComponent().removeChannel(this.channel.getValue().getURI());
+        } catch (SharkMessengerException | IOException e) {
+            this.printErrorMessage(e.getLocalizedMessage());
         }
-         */
     }
 
     @Override
@@ -4,6 +4,8 @@ import net.sharksystem.cmdline.sharkmessengerUI.*;
 import net.sharksystem.messenger.SharkCommunicationAge;
 import net.sharksystem.cmdline.sharkmessengerUI.SharkMessengerUI;
 
+import java.util.Arrays;
+
 public class UICommandSetChannelAge extends UICommand {
     private final UICommandChannelArgument channel;
     private final UICommandStringArgument channelAge;
@@ -25,14 +27,27 @@ public class UICommandSetChannelAge extends UICommand {
 
     @Override
     public void execute() throws Exception {
-        SharkCommunicationAge age = SharkCommunicationAge.valueOf(this.channelAge.getValue());
-        this.channel.getValue().setAge(age);
+        SharkCommunicationAge age;
+        try {
+            age = SharkCommunicationAge.valueOf(this.channelAge.getValue().trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            this.printErrorMessage("unknown age - use one of " + Arrays.toString(SharkCommunicationAge.values()));
+            return;
+        }
+
+        try {
+            this.channel.getValue().setAge(age);
+            this.getPrintStream().println("channel age set: " + age);
+        } catch (IllegalStateException e) {
+            this.printErrorMessage(e.getLocalizedMessage());
+        }
     }
 
     @Override
     public String getDescription() {
         StringBuilder sb = new StringBuilder();
-        sb.append("Changes channel age.");
+        sb.append("Changes channel age: STONE_AGE (direct ad-hoc exchange only), ");
+        sb.append("BRONZE_AGE (ad-hoc routing), NETWORK_AGE (any transport).");
         return sb.toString();
     }
 
@@ -0,0 +1,44 @@
+package net.sharksystem.cmdline.sharkmessengerUI.commands.messenger;
+
+import net.sharksystem.cmdline.sharkmessengerUI.*;
+import net.sharksystem.cmdline.sharkmessengerUI.SharkMessengerUI;
+
+import java.io.IOException;
+
+public class UICommandSetChannelPriority extends UICommand {
+    private final UICommandChannelArgument channel;
+    private final UICommandIntegerArgument priority;
+
+    public UICommandSetChannelPriority(SharkMessengerApp sharkMessengerApp, SharkMessengerUI sharkMessengerUI,
+                                       String identifier, boolean rememberCommand) {
+        super(sharkMessengerApp, sharkMessengerUI, identifier, rememberCommand);
+        this.channel = new UICommandChannelArgument(sharkMessengerApp);
+        this.priority = new UICommandIntegerArgument(sharkMessengerApp);
+    }
+
+    @Override
+    public UICommandQuestionnaire specifyCommandStructure() {
+        return new UICommandQuestionnaireBuilder()
+                .addQuestion("Channel URI: ", this.channel)
+                .addQuestion("Transfer priority (higher first, default 0): ", this.priority)
+                .build();
+    }
+
+    @Override
+    public void execute() throws Exception {
+        try {
+            this.channel.getValue().setTransferPriority(this.priority.getValue());
+            this.getPrintStream().println("transfer priority set: " + this.priority.getValue());
+        } catch (IOException e) {
+            this.printErrorMessage(e.getLocalizedMessage());
+        }
+    }
+
+    @Override
+    public String getDescription() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Sets transfer priority of a channel. Its messages are sent earlier during an encounter.");
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,56 @@
+package net.sharksystem.cmdline.sharkmessengerUI.commands.messenger;
+
+import net.sharksystem.cmdline.sharkmessengerUI.*;
+import net.sharksystem.cmdline.sharkmessengerUI.SharkMessengerUI;
+import net.sharksystem.messenger.SharkMessengerRetentionPolicy;
+
+import java.io.IOException;
+
+public class UICommandSetChannelRetention extends UICommand {
+    private final UICommandChannelArgument channel;
+    private final UICommandIntegerArgument maxAgeInSeconds;
+    private final UICommandIntegerArgument maxCount;
+    private final UICommandIntegerArgument maxBytes;
+
+    public UICommandSetChannelRetention(SharkMessengerApp sharkMessengerApp, SharkMessengerUI sharkMessengerUI,
+                                        String identifier, boolean rememberCommand) {
+        super(sharkMessengerApp, sharkMessengerUI, identifier, rememberCommand);
+        this.channel = new UICommandChannelArgument(sharkMessengerApp);
+        this.maxAgeInSeconds = new UICommandIntegerArgument(sharkMessengerApp);
+        this.maxCount = new UICommandIntegerArgument(sharkMessengerApp);
+        this.maxBytes = new UICommandIntegerArgument(sharkMessengerApp);
+    }
+
+    @Override
+    public UICommandQuestionnaire specifyCommandStructure() {
+        return new UICommandQuestionnaireBuilder()
+                .addQuestion("Channel URI: ", this.channel)
+                .addQuestion("Max age in seconds (0: unlimited): ", this.maxAgeInSeconds)
+                .addQuestion("Max number of messages (0: unlimited): ", this.maxCount)
+                .addQuestion("Max bytes (0: unlimited): ", this.maxBytes)
+                .build();
+    }
+
+    @Override
+    public void execute() throws Exception {
+        SharkMessengerRetentionPolicy policy = new SharkMessengerRetentionPolicy(
+                this.maxAgeInSeconds.getValue() * 1000L,
+                this.maxCount.getValue(),
+                this.maxBytes.getValue());
+
+        try {
+            this.channel.getValue().setRetentionPolicy(policy);
+            this.getPrintStream().println("retention policy set: " + policy);
+        } catch (IOException e) {
+            this.printErrorMessage(e.getLocalizedMessage());
+        }
+    }
+
+    @Override
+    public String getDescription() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Sets retention rules of a channel. Older messages are dropped in background.");
+        return sb.toString();
+    }
+
+}
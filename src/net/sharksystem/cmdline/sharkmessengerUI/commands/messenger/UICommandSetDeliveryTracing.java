@@ -0,0 +1,31 @@
+package net.sharksystem.cmdline.sharkmessengerUI.commands.messenger;
+
+import net.sharksystem.cmdline.sharkmessengerUI.*;
+
+public class UICommandSetDeliveryTracing extends UICommand {
+    private final UICommandBooleanArgument on;
+
+    public UICommandSetDeliveryTracing(SharkMessengerApp sharkMessengerApp, SharkMessengerUI sharkMessengerUI,
+                                       String identifier, boolean rememberCommand) {
+        super(sharkMessengerApp, sharkMessengerUI, identifier, rememberCommand);
+        this.on = new UICommandBooleanArgument(sharkMessengerApp);
+    }
+
+    @Override
+    public UICommandQuestionnaire specifyCommandStructure() {
+        return new UICommandQuestionnaireBuilder()
+                .addQuestion("Trace sent messages (true/false)? ", this.on)
+                .build();
+    }
+
+    @Override
+    public void execute() throws Exception {
+        this.getSharkMessengerApp().getMessengerComponent().setDeliveryTracing(this.on.getValue());
+        this.getPrintStream().println("delivery tracing " + (this.on.getValue() ? "on" : "off"));
+    }
+
+    @Override
+    public String getDescription() {
+        return "Sent messages carry a trace id and send time. Receiving peers measure delivery latency with it.";
+    }
+}
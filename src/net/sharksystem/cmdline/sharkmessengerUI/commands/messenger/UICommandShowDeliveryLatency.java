@@ -0,0 +1,51 @@
+package net.sharksystem.cmdline.sharkmessengerUI.commands.messenger;
+
+import net.sharksystem.asap.utils.DateTimeHelper;
+import net.sharksystem.cmdline.sharkmessengerUI.*;
+import net.sharksystem.messenger.SharkMessengerDeliveryTracer;
+
+import java.io.PrintStream;
+import java.util.List;
+
+public class UICommandShowDeliveryLatency extends UICommand {
+    /** recent traces printed */
+    private static final int RECENT_TRACES = 10;
+
+    public UICommandShowDeliveryLatency(SharkMessengerApp sharkMessengerApp, SharkMessengerUI sharkMessengerUI,
+                                        String identifier, boolean rememberCommand) {
+        super(sharkMessengerApp, sharkMessengerUI, identifier, rememberCommand);
+    }
+
+    @Override
+    public UICommandQuestionnaire specifyCommandStructure() {
+        return new UICommandQuestionnaireBuilder().build();
+    }
+
+    @Override
+    public void execute() throws Exception {
+        SharkMessengerDeliveryTracer tracer = this.getSharkMessengerApp().getMessengerComponent().getDeliveryTracer();
+        PrintStream ps = this.getPrintStream();
+
+        List<SharkMessengerDeliveryTracer.Distribution> distributions = tracer.getDistributions();
+        if(distributions.isEmpty()) {
+            ps.println("no traced messages received yet");
+            return;
+        }
+        ps.println("delivery latency:");
+        for(SharkMessengerDeliveryTracer.Distribution distribution : distributions) {
+            ps.println(distribution);
+        }
+
+        ps.println("recent traces:");
+        List<SharkMessengerDeliveryTracer.Trace> traces = tracer.getRecentTraces();
+        for(int i = 0; i < traces.size() && i < RECENT_TRACES; i++) {
+            SharkMessengerDeliveryTracer.Trace trace = traces.get(i);
+            ps.println(DateTimeHelper.long2DateString(trace.getReceivedAt()) + " | " + trace);
+        }
+    }
+
+    @Override
+    public String getDescription() {
+        return "Shows delivery latency of traced messages - per channel, route length and transport.";
+    }
+}
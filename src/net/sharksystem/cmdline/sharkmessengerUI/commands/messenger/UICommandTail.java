@@ -0,0 +1,64 @@
+package net.sharksystem.cmdline.sharkmessengerUI.commands.messenger;
+
+import net.sharksystem.SharkException;
+import net.sharksystem.cmdline.sharkmessengerUI.*;
+import net.sharksystem.messenger.SharkMessengerComponent;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Follow a channel - print messages as they arrive.
+ */
+public class UICommandTail extends UICommandProduceChannelListBefore {
+    private final UICommandIntegerArgument channelIndex;
+    private final UICommandBooleanArgument follow;
+    private final Map<String, ChannelTail> tails = new HashMap<>();
+
+    public UICommandTail(SharkMessengerApp sharkMessengerApp, SharkMessengerUI sharkMessengerUI,
+                         String identifier, boolean rememberCommand) {
+        super(sharkMessengerApp, sharkMessengerUI, identifier, rememberCommand);
+        this.channelIndex = new UICommandIntegerArgument(sharkMessengerApp);
+        this.follow = new UICommandBooleanArgument(sharkMessengerApp);
+    }
+
+    @Override
+    public UICommandQuestionnaire specifyCommandStructure() {
+        return new UICommandQuestionnaireBuilder()
+                .addQuestion("Index target channel (0..n): ", this.channelIndex)
+                .addQuestion("Follow (false to stop)? ", this.follow)
+                .build();
+    }
+
+    @Override
+    public void execute() throws Exception {
+        try {
+            SharkMessengerComponent messenger = this.getSharkMessengerApp().getMessengerComponent();
+            CharSequence uri = messenger.getChannel(this.channelIndex.getValue()).getURI();
+
+            ChannelTail tail = this.tails.remove(uri.toString());
+            if(tail != null) {
+                messenger.removeMessageStoreHook(uri, tail);
+                tail.stop();
+            }
+
+            if(this.follow.getValue()) {
+                tail = new ChannelTail(uri, this.getSharkMessengerApp().getNotifications(),
+                        this.getSharkMessengerApp().getSharkPKIComponent(), ChannelTail.DEFAULT_CAPACITY);
+                this.tails.put(uri.toString(), tail);
+                messenger.addMessageStoreHook(uri, tail);
+                this.getPrintStream().println("following " + uri);
+            } else {
+                this.getPrintStream().println("stopped following " + uri);
+            }
+        } catch (SharkException | IOException e) {
+            this.printErrorMessage(e.getLocalizedMessage());
+        }
+    }
+
+    @Override
+    public String getDescription() {
+        return "Follows a channel - prints messages as they arrive.";
+    }
+}
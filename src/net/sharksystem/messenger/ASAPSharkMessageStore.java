@@ -0,0 +1,314 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.*;
+import net.sharksystem.asap.engine.ASAPInternalChunk;
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Message store on top of the ASAP storage of a peer. That is the original behaviour of this messenger: messages
+ * are persisted in ASAP chunks and exchanged era by era during encounters.
+ * <br/><br/>
+ * Compaction can only drop whole chunks. A chunk is dropped if all its messages violate a retention policy.
+ * ASAP chunks have no timestamp. The compactor marks each chunk when it sees it first. Age is calculated from that
+ * mark - it is as precise as the compaction interval.
+ * <br/><br/>
+ * A chunk is also dropped if all its messages are outdated: expired or received on a route longer than allowed.
+ * That time is calculated once from unencrypted message heads and kept with the chunk. Channels without
+ * retention policy are not read at all unless a message can become outdated.
+ */
+class ASAPSharkMessageStore extends AbstractSharkMessageStore implements SharkMessengerCacheBudget.Cache {
+    static final String KEY_CHUNK_FIRST_SEEN = "sharkMessengerFirstSeen";
+    /** number of messages : time when all of them are outdated */
+    static final String KEY_CHUNK_OUTDATED = "sharkMessengerOutdated";
+
+    private final ASAPPeer asapPeer;
+    private final ASAPChannel asapChannel;
+    private volatile ASAPMessages asapMessages; // cache - dropped with each change
+    private final SharkMessengerCacheBudget cacheBudget; // can be null
+    /** false: no message can become outdated - compaction without retention policy reads no chunk */
+    private volatile boolean mayOutdate = true; // unknown before first compaction
+
+    ASAPSharkMessageStore(ASAPPeer asapPeer, ASAPChannel asapChannel) throws IOException {
+        this(asapPeer, asapChannel, null);
+    }
+
+    /**
+     * @param cacheBudget cached message view counts against this budget - null: no limit
+     */
+    ASAPSharkMessageStore(ASAPPeer asapPeer, ASAPChannel asapChannel, SharkMessengerCacheBudget cacheBudget)
+            throws IOException {
+        super(asapChannel.getUri());
+        this.asapPeer = asapPeer;
+        this.asapChannel = asapChannel;
+        this.cacheBudget = cacheBudget;
+    }
+
+    ASAPChannel getASAPChannel() {
+        return this.asapChannel;
+    }
+
+    private synchronized ASAPMessages getASAPMessages() throws IOException {
+        ASAPMessages asapMessages = this.asapMessages;
+        if(asapMessages == null) {
+            try {
+                asapMessages = this.asapChannel.getMessages(false);
+            } catch (ASAPException e) {
+                throw new IOException(e.getLocalizedMessage(), e);
+            }
+            this.asapMessages = asapMessages;
+        }
+        if(this.cacheBudget != null) this.cacheBudget.used(this);
+        return asapMessages;
+    }
+
+    /**
+     * ASAP storage changed. Asap engine merges chunks of all senders - positions can change.
+     */
+    private synchronized void invalidate() {
+        this.asapMessages = null;
+        this.dropListIndex();
+        if(this.cacheBudget != null) this.cacheBudget.released(this);
+    }
+
+    @Override
+    boolean keepsCopies() {
+        // asap engine stores each received copy
+        return true;
+    }
+
+    @Override
+    public void dropCache() {
+        // no lock - a reader keeps the view it got
+        this.asapMessages = null;
+    }
+
+    @Override
+    public void append(byte[] message) throws IOException {
+        try {
+            // stored and sent by asap engine
+            this.asapPeer.sendASAPMessage(SharkMessengerComponent.SHARK_MESSENGER_FORMAT, this.getURI(), message);
+        } catch (ASAPException e) {
+            throw new IOException(e.getLocalizedMessage(), e);
+        }
+        this.invalidate();
+        if(canOutdate(message)) this.mayOutdate = true;
+        this.notifyIndexHooks(-1, message, NO_HOPS);
+    }
+
+    /**
+     * Store a message without sending it - asap engine would send it over each open connection right away.
+     */
+    void appendWithoutSending(byte[] message) throws IOException {
+        this.asapChannel.addMessage(message);
+        this.invalidate();
+        if(canOutdate(message)) this.mayOutdate = true;
+        this.notifyIndexHooks(-1, message, NO_HOPS);
+    }
+
+    @Override
+    public void assimilate(byte[] message, List<ASAPHop> hops) {
+        // already stored by asap engine
+        this.invalidate();
+        if(canOutdate(message)) this.mayOutdate = true;
+        this.notifyIndexHooks(-1, message, hops);
+    }
+
+    @Override
+    public byte[] getMessage(int position) throws IOException {
+        try {
+            return this.getASAPMessages().getMessage(position, true);
+        } catch (ASAPException e) {
+            throw new IndexOutOfBoundsException(e.getLocalizedMessage());
+        }
+    }
+
+    @Override
+    public List<ASAPHop> getASAPHops(int position) throws IOException {
+        try {
+            return this.getASAPMessages().getChunk(position, true).getASAPHopList();
+        } catch (ASAPException e) {
+            throw new IndexOutOfBoundsException(e.getLocalizedMessage());
+        }
+    }
+
+    @Override
+    public int size() throws IOException {
+        try {
+            return this.getASAPMessages().size();
+        } catch (IndexOutOfBoundsException e) {
+            // asap message merger fails on a channel without any message
+            return 0;
+        }
+    }
+
+    @Override
+    public int compact(SharkMessengerRetentionPolicy policy, long now) throws IOException {
+        if(policy.isUnlimited() && !this.mayOutdate) return 0; // nothing to drop
+        // messages stored from now on tell if they can become outdated
+        this.mayOutdate = false;
+
+        List<ASAPInternalChunk> chunks = new ArrayList<>();
+        List<Long> firstSeen = new ArrayList<>();
+        List<Long> outdated = new ArrayList<>();
+        try {
+            ASAPStorage asapStorage = this.asapPeer.getASAPStorage(SharkMessengerComponent.SHARK_MESSENGER_FORMAT);
+            // current era of own storage is still written - leave it alone
+            this.collectChunks(asapStorage, false, now, chunks, firstSeen, outdated);
+            for(CharSequence sender : asapStorage.getSender()) {
+                this.collectChunks(asapStorage.getExistingIncomingStorage(sender), true, now,
+                        chunks, firstSeen, outdated);
+            }
+        } catch (ASAPException | IOException e) {
+            this.mayOutdate = true;
+            throw e instanceof IOException ? (IOException) e : new IOException(e.getLocalizedMessage(), e);
+        }
+        for(long chunkOutdated : outdated) {
+            if(chunkOutdated != Long.MAX_VALUE) this.mayOutdate = true;
+        }
+
+        // oldest first
+        Integer[] order = new Integer[chunks.size()];
+        for(int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(firstSeen.get(a), firstSeen.get(b)));
+
+        // message level view - each message gets the mark of its chunk
+        int number = 0;
+        for(ASAPInternalChunk chunk : chunks) number += chunk.getNumberMessage();
+        long[] times = new long[number];
+        int[] sizes = new int[number];
+        int i = 0;
+        for(Integer chunkIndex : order) {
+            ASAPInternalChunk chunk = chunks.get(chunkIndex);
+            List<Long> offsets = chunk.getOffsetList();
+            int chunkMessages = chunk.getNumberMessage();
+            for(int m = 0; m < chunkMessages; m++) {
+                long start = m < offsets.size() ? offsets.get(m) : 0;
+                long end = m + 1 < offsets.size() ? offsets.get(m + 1) : chunk.getLength();
+                times[i] = firstSeen.get(chunkIndex);
+                sizes[i++] = (int) Math.max(0, end - start);
+            }
+        }
+
+        // never drop more than policy demands - round down to whole chunks
+        int drop = policy.messagesToDrop(times, sizes, number, now);
+        int dropped = 0;
+        boolean[] droppedChunks = new boolean[chunks.size()];
+        for(Integer chunkIndex : order) {
+            ASAPInternalChunk chunk = chunks.get(chunkIndex);
+            if(dropped + chunk.getNumberMessage() > drop) break;
+            dropped += chunk.getNumberMessage();
+            chunk.drop();
+            droppedChunks[chunkIndex] = true;
+        }
+
+        // outdated chunks are neither kept nor offered in encounters
+        for(int chunkIndex = 0; chunkIndex < chunks.size(); chunkIndex++) {
+            if(!droppedChunks[chunkIndex] && outdated.get(chunkIndex) < now) {
+                ASAPInternalChunk chunk = chunks.get(chunkIndex);
+                dropped += chunk.getNumberMessage();
+                chunk.drop();
+            }
+        }
+
+        if(dropped > 0) {
+            this.invalidate();
+            this.notifyCompacted();
+            Log.writeLog(this, "compacted: dropped " + dropped + " messages in " + this.getURI());
+        }
+        return dropped;
+    }
+
+    /**
+     * @return true if unencrypted head carries an expiry time or a hop limit
+     */
+    private static boolean canOutdate(byte[] message) {
+        try {
+            SharkMessageHeader header = SharkMessageHeader.read(message);
+            return header.getExpiryTime() != SharkMessageHeader.NO_EXPIRY
+                    || header.getHopLimit() != SharkMessageHeader.NO_HOP_LIMIT;
+        } catch (IOException e) {
+            // malformed - kept anyway
+            return false;
+        }
+    }
+
+    private void collectChunks(ASAPStorage asapStorage, boolean includeCurrentEra, long now,
+                               List<ASAPInternalChunk> chunks, List<Long> firstSeen, List<Long> outdated)
+            throws IOException {
+        ASAPChunkStorage chunkStorage = asapStorage.getChunkStorage();
+        int currentEra = asapStorage.getEra();
+        int era = asapStorage.getOldestEra();
+        while(true) {
+            boolean isCurrentEra = era == currentEra;
+            if((includeCurrentEra || !isCurrentEra) && chunkStorage.existsChunk(this.getURI(), era)) {
+                ASAPInternalChunk chunk = chunkStorage.getChunk(this.getURI(), era);
+                if(chunk.getNumberMessage() > 0) {
+                    chunks.add(chunk);
+                    firstSeen.add(this.getFirstSeen(chunk, now));
+                    outdated.add(this.getOutdated(chunk));
+                }
+            }
+            if(isCurrentEra) break;
+            era = asapStorage.getNextEra(era);
+        }
+    }
+
+    private long getFirstSeen(ASAPInternalChunk chunk, long now) throws IOException {
+        CharSequence mark = chunk.getExtra(KEY_CHUNK_FIRST_SEEN);
+        if(mark != null) {
+            try {
+                return Long.parseLong(mark.toString());
+            } catch (NumberFormatException e) {
+                // overwrite
+            }
+        }
+        chunk.putExtra(KEY_CHUNK_FIRST_SEEN, Long.toString(now));
+        return now;
+    }
+
+    /**
+     * @return time after which all messages in this chunk are outdated - Long.MAX_VALUE: never
+     */
+    private long getOutdated(ASAPInternalChunk chunk) throws IOException {
+        int number = chunk.getNumberMessage();
+        CharSequence mark = chunk.getExtra(KEY_CHUNK_OUTDATED);
+        if(mark != null) {
+            // incoming chunks can grow - mark is valid for a number of messages
+            String[] parts = mark.toString().split(":");
+            try {
+                if(parts.length == 2 && Integer.parseInt(parts[0]) == number) return Long.parseLong(parts[1]);
+            } catch (NumberFormatException e) {
+                // overwrite
+            }
+        }
+
+        List<ASAPHop> hops = chunk.getASAPHopList();
+        int routeLength = hops == null ? 0 : hops.size();
+        long outdated = Long.MIN_VALUE;
+        Iterator<byte[]> messages = chunk.getMessages();
+        while(messages.hasNext() && outdated < Long.MAX_VALUE) {
+            long messageOutdated;
+            try {
+                SharkMessageHeader header = SharkMessageHeader.read(messages.next());
+                if(header.exceedsHopLimit(routeLength)) messageOutdated = 0;
+                else if(header.getExpiryTime() != SharkMessageHeader.NO_EXPIRY) {
+                    messageOutdated = header.getExpiryTime();
+                }
+                else messageOutdated = Long.MAX_VALUE;
+            } catch (IOException e) {
+                // malformed - keep it
+                messageOutdated = Long.MAX_VALUE;
+            }
+            outdated = Math.max(outdated, messageOutdated);
+        }
+
+        chunk.putExtra(KEY_CHUNK_OUTDATED, number + ":" + outdated);
+        return outdated;
+    }
+}
@@ -0,0 +1,117 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Index hook handling and range reads - common to all stores.
+ */
+abstract class AbstractSharkMessageStore implements SharkMessageStore {
+    static final List<ASAPHop> NO_HOPS = Collections.emptyList();
+
+    private final CharSequence uri;
+    private final List<SharkMessageStoreIndexHook> indexHooks = new CopyOnWriteArrayList<>();
+    private SharkMessageListIndex listIndex; // created when first listed
+
+    AbstractSharkMessageStore(CharSequence uri) {
+        this.uri = uri;
+    }
+
+    @Override
+    public CharSequence getURI() {
+        return this.uri;
+    }
+
+    @Override
+    public List<byte[]> getMessages(int fromPosition, int toPosition) throws IOException {
+        int size = this.size();
+        if(fromPosition < 0 || fromPosition > toPosition || toPosition > size) {
+            throw new IndexOutOfBoundsException("range " + fromPosition + ".." + toPosition + " / size " + size);
+        }
+        List<byte[]> messages = new ArrayList<>(toPosition - fromPosition);
+        for(int position = fromPosition; position < toPosition; position++) {
+            messages.add(this.getMessage(position));
+        }
+        return messages;
+    }
+
+    @Override
+    public void addIndexHook(SharkMessageStoreIndexHook hook) {
+        this.indexHooks.add(hook);
+    }
+
+    @Override
+    public void removeIndexHook(SharkMessageStoreIndexHook hook) {
+        this.indexHooks.remove(hook);
+    }
+
+    /**
+     * @return index for message lists - extended with messages stored since last call
+     */
+    SharkMessageListIndex getListIndex() throws IOException {
+        SharkMessageListIndex listIndex;
+        synchronized(this) {
+            if(this.listIndex == null) this.listIndex = new SharkMessageListIndex(this.keepsCopies());
+            listIndex = this.listIndex;
+        }
+        listIndex.extend(this);
+        return listIndex;
+    }
+
+    /**
+     * Positions of messages changed - index is built again when it is needed.
+     */
+    protected synchronized void dropListIndex() {
+        this.listIndex = null;
+    }
+
+    /**
+     * @return true if this store keeps each received copy of a message
+     */
+    boolean keepsCopies() {
+        return false;
+    }
+
+    /**
+     * @return true if unencrypted head of a message tells it is expired. Malformed messages are kept.
+     */
+    static boolean isExpired(byte[] message, long now) {
+        try {
+            return SharkMessageHeader.read(message).isExpired(now);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Tell index hooks and list index that positions changed. Call without holding the store lock.
+     */
+    protected void notifyCompacted() {
+        this.dropListIndex();
+        for(SharkMessageStoreIndexHook hook : this.indexHooks) {
+            try {
+                hook.storeCompacted(this.uri);
+            }
+            catch(RuntimeException e) {
+                Log.writeLogErr(this, "index hook failed: " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    protected void notifyIndexHooks(int position, byte[] message, List<ASAPHop> hops) {
+        for(SharkMessageStoreIndexHook hook : this.indexHooks) {
+            try {
+                hook.messageAppended(this.uri, position, message, hops);
+            }
+            catch(RuntimeException e) {
+                Log.writeLogErr(this, "index hook failed: " + e.getLocalizedMessage());
+            }
+        }
+    }
+}
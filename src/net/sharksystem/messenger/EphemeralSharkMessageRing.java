@@ -0,0 +1,104 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPHop;
+
+import java.util.List;
+
+/**
+ * Bounded in-memory store for ephemeral messages of a channel. The oldest message is overwritten when the ring
+ * is full. Nothing is written to disk.
+ *
+ * @see SharkMessage#isEphemeral()
+ */
+class EphemeralSharkMessageRing extends AbstractSharkMessageStore {
+    static final int DEFAULT_CAPACITY = 100;
+
+    private final byte[][] messages;
+    private final List<ASAPHop>[] hopsLists;
+    private final long[] appendTimes;
+    private int head = 0; // oldest message
+    private int size = 0;
+
+    EphemeralSharkMessageRing(CharSequence uri) {
+        this(uri, DEFAULT_CAPACITY);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    EphemeralSharkMessageRing(CharSequence uri, int capacity) {
+        super(uri);
+        this.messages = new byte[capacity][];
+        this.hopsLists = new List[capacity];
+        this.appendTimes = new long[capacity];
+    }
+
+    int getCapacity() {
+        return this.messages.length;
+    }
+
+    @Override
+    public void append(byte[] message) {
+        this.notifyIndexHooks(this.add(message, NO_HOPS), message, NO_HOPS);
+    }
+
+    @Override
+    public void assimilate(byte[] message, List<ASAPHop> hops) {
+        if(hops == null) hops = NO_HOPS;
+        this.notifyIndexHooks(this.add(message, hops), message, hops);
+    }
+
+    private synchronized int add(byte[] message, List<ASAPHop> hops) {
+        int slot;
+        if(this.size < this.messages.length) {
+            slot = (this.head + this.size++) % this.messages.length;
+        } else {
+            // overwrite oldest
+            slot = this.head;
+            this.head = (this.head + 1) % this.messages.length;
+        }
+        this.messages[slot] = message;
+        this.hopsLists[slot] = hops;
+        this.appendTimes[slot] = System.currentTimeMillis();
+        return this.size - 1;
+    }
+
+    private int slot(int position) {
+        if(position < 0 || position >= this.size) {
+            throw new IndexOutOfBoundsException("position " + position + " / size " + this.size);
+        }
+        return (this.head + position) % this.messages.length;
+    }
+
+    @Override
+    public synchronized byte[] getMessage(int position) {
+        return this.messages[this.slot(position)];
+    }
+
+    @Override
+    public synchronized List<ASAPHop> getASAPHops(int position) {
+        return this.hopsLists[this.slot(position)];
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.size;
+    }
+
+    @Override
+    public synchronized int compact(SharkMessengerRetentionPolicy policy, long now) {
+        long[] times = new long[this.size];
+        int[] sizes = new int[this.size];
+        for(int i = 0; i < this.size; i++) {
+            int slot = this.slot(i);
+            times[i] = this.appendTimes[slot];
+            sizes[i] = this.messages[slot].length;
+        }
+        int drop = policy.messagesToDrop(times, sizes, this.size, now);
+        for(int i = 0; i < drop; i++) {
+            this.messages[this.head] = null;
+            this.hopsLists[this.head] = null;
+            this.head = (this.head + 1) % this.messages.length;
+        }
+        this.size -= drop;
+        return drop;
+    }
+}
@@ -11,9 +11,11 @@ import net.sharksystem.asap.utils.DateTimeHelper;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * A SharkNet message is issued by a peer (sender), has content and can be tagged with an URI. It can have
@@ -28,7 +30,12 @@ public class InMemoSharkMessage implements SharkMessage {
     private boolean encrypted;
     private Set<CharSequence> snRecipients;
     private long creationTime;
+    private boolean ephemeral;
+    private long expiryTime = SharkMessageHeader.NO_EXPIRY;
+    private int hopLimit = SharkMessageHeader.NO_HOP_LIMIT;
+    private long traceID = NO_TRACE;
     private final List<ASAPHop> hopsList;
+    private List<List<ASAPHop>> alternativeRoutes = Collections.emptyList();
 
     /**
      * Received
@@ -99,6 +106,43 @@ public class InMemoSharkMessage implements SharkMessage {
         boolean sign, boolean encrypt, ASAPKeyStore asapKeyStore)
             throws IOException, ASAPException {
 
+        return InMemoSharkMessage.serializeMessage(content, sender, receiver, sign, encrypt, false, asapKeyStore);
+    }
+
+    /**
+     * @param ephemeral flag is set in unencrypted head - receiver won't store this message
+     * @see SharkMessage#isEphemeral()
+     */
+    public static byte[] serializeMessage(byte[] content, CharSequence sender, Set<CharSequence> receiver,
+        boolean sign, boolean encrypt, boolean ephemeral, ASAPKeyStore asapKeyStore)
+            throws IOException, ASAPException {
+
+        return InMemoSharkMessage.serializeMessage(content, sender, receiver, sign, encrypt, ephemeral,
+                SharkMessageHeader.NO_EXPIRY, SharkMessageHeader.NO_HOP_LIMIT, asapKeyStore);
+    }
+
+    /**
+     * @param expiryTime absolute expiry time - 0: never
+     * @param hopLimit maximum route length - 0: unlimited
+     * @see SharkMessage#getExpiryTime()
+     * @see SharkMessage#getHopLimit()
+     */
+    public static byte[] serializeMessage(byte[] content, CharSequence sender, Set<CharSequence> receiver,
+        boolean sign, boolean encrypt, boolean ephemeral, long expiryTime, int hopLimit,
+        ASAPKeyStore asapKeyStore) throws IOException, ASAPException {
+
+        return InMemoSharkMessage.serializeMessage(content, sender, receiver, sign, encrypt, ephemeral,
+                expiryTime, hopLimit, false, asapKeyStore);
+    }
+
+    /**
+     * @param trace message gets a random trace id and its send time in its unencrypted head
+     * @see SharkMessage#getTraceID()
+     */
+    public static byte[] serializeMessage(byte[] content, CharSequence sender, Set<CharSequence> receiver,
+        boolean sign, boolean encrypt, boolean ephemeral, long expiryTime, int hopLimit, boolean trace,
+        ASAPKeyStore asapKeyStore) throws IOException, ASAPException {
+
         if( (receiver != null && receiver.size() > 1) && encrypt) {
             throw new ASAPSecurityException("cannot (yet) encrypt one message for more than one recipient - split it into more messages");
         }
@@ -130,9 +174,15 @@ public class InMemoSharkMessage implements SharkMessage {
 
         content = baos.toByteArray();
 
+        SharkMessengerMetrics metrics = SharkMessengerMetrics.getMetrics();
         byte flags = 0;
         if(sign) {
+            SharkMessengerCryptoEvent event = new SharkMessengerCryptoEvent();
+            event.begin();
+            long start = System.nanoTime();
             byte[] signature = ASAPCryptoAlgorithms.sign(content, asapKeyStore);
+            metrics.record(SharkMessengerOperation.SIGN, null, start);
+            event.commit(SharkMessengerOperation.SIGN, content.length, true);
             baos = new ByteArrayOutputStream();
             ASAPSerialization.writeByteArray(content, baos); // message has three parts: content, sender, receiver
             // append signature
@@ -143,16 +193,31 @@ public class InMemoSharkMessage implements SharkMessage {
         }
 
         if(encrypt) {
+            SharkMessengerCryptoEvent event = new SharkMessengerCryptoEvent();
+            event.begin();
+            long start = System.nanoTime();
+            int size = content.length;
             content = ASAPCryptoAlgorithms.produceEncryptedMessagePackage(
                     content,
                     receiver.iterator().next(), // already checked if one and only one is recipient
                     asapKeyStore);
+            metrics.record(SharkMessengerOperation.ENCRYPT, null, start);
+            event.commit(SharkMessengerOperation.ENCRYPT, size, true);
             flags += ENCRYPTED_MASK;
         }
 
+        if(ephemeral) flags += EPHEMERAL_MASK;
+        if(expiryTime > 0) flags += EXPIRY_MASK;
+        if(hopLimit > 0) flags += HOP_LIMIT_MASK;
+        long traceID = NO_TRACE;
+        if(trace) {
+            flags += TRACE_MASK;
+            do { traceID = ThreadLocalRandom.current().nextLong(); } while(traceID == NO_TRACE);
+        }
+
         // serialize SN message
         baos = new ByteArrayOutputStream();
-        ASAPSerialization.writeByteParameter(flags, baos);
+        new SharkMessageHeader(flags, expiryTime, hopLimit, traceID, System.currentTimeMillis()).write(baos);
         ASAPSerialization.writeByteArray(content, baos);
 
         return baos.toByteArray();
@@ -222,15 +287,105 @@ public class InMemoSharkMessage implements SharkMessage {
         return this.hopsList;
     }
 
+    @Override
+    public List<List<ASAPHop>> getAlternativeRoutes() {
+        return this.alternativeRoutes;
+    }
+
+    void setAlternativeRoutes(List<List<ASAPHop>> alternativeRoutes) {
+        this.alternativeRoutes = alternativeRoutes;
+    }
+
+    @Override
+    public boolean isEphemeral() {
+        return this.ephemeral;
+    }
+
+    @Override
+    public long getExpiryTime() {
+        return this.expiryTime;
+    }
+
+    @Override
+    public int getHopLimit() {
+        return this.hopLimit;
+    }
+
+    @Override
+    public long getTraceID() {
+        return this.traceID;
+    }
+
+    /**
+     * Read flag from unencrypted head of a serialized message - no parsing, no decryption.
+     */
+    static boolean isEphemeral(byte[] message) throws IOException {
+        return SharkMessageHeader.read(message).isEphemeral();
+    }
+
+    private void setHeader(SharkMessageHeader header) {
+        this.ephemeral = header.isEphemeral();
+        this.expiryTime = header.getExpiryTime();
+        this.hopLimit = header.getHopLimit();
+        this.traceID = header.getTraceID();
+    }
+
     //////////////////////////////////////////////////////////////////////////////////////////
     //                                    factory methods                                   //
     //////////////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Receivers of a message without parsing it completely. Nothing is decrypted or verified. The receiver of an
+     * encrypted message is taken from its unencrypted package head.
+     * @return receivers - {@link SharkMessage#ANY_RECEIVER} for broadcast messages
+     */
+    static Set<CharSequence> readReceivers(byte[] message) throws IOException, ASAPException {
+        ByteArrayInputStream bais = new ByteArrayInputStream(message);
+        byte flags = SharkMessageHeader.read(bais).getFlags();
+        byte[] tmpMessage = ASAPSerialization.readByteArray(bais);
+
+        if((flags & SharkMessage.ENCRYPTED_MASK) != 0) {
+            Set<CharSequence> receivers = new HashSet<>();
+            receivers.add(ASAPCryptoAlgorithms.parseEncryptedMessagePackage(tmpMessage).getReceiver());
+            return receivers;
+        }
+        if((flags & SharkMessage.SIGNED_MASK) != 0) {
+            tmpMessage = ASAPSerialization.readByteArray(new ByteArrayInputStream(tmpMessage));
+        }
+
+        bais = new ByteArrayInputStream(tmpMessage);
+        ASAPSerialization.readByteArray(bais); // content
+        ASAPSerialization.readCharSequenceParameter(bais); // sender
+        return ASAPSerialization.readCharSequenceSetParameter(bais);
+    }
+
     public static InMemoSharkMessage parseMessage(byte[] message, List<ASAPHop> hopsList, ASAPKeyStore asapKeyStore)
             throws IOException, ASAPException {
 
+        SharkMessengerMetrics metrics = SharkMessengerMetrics.getMetrics();
+        SharkMessengerParseEvent event = new SharkMessengerParseEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int size = message == null ? 0 : message.length;
+        byte flags = size == 0 ? 0 : message[0];
+        try {
+            InMemoSharkMessage sharkMessage = InMemoSharkMessage.parse(message, hopsList, asapKeyStore, metrics);
+            metrics.record(SharkMessengerOperation.PARSE, null, start);
+            event.commit(size, flags, sharkMessage.verified, sharkMessage.couldBeDecrypted() ?
+                    SharkMessengerParseEvent.PARSED : SharkMessengerParseEvent.NOT_FOR_ME);
+            return sharkMessage;
+        } catch (IOException | ASAPException | RuntimeException e) {
+            event.commit(size, flags, false, SharkMessengerParseEvent.FAILED);
+            throw e;
+        }
+    }
+
+    private static InMemoSharkMessage parse(byte[] message, List<ASAPHop> hopsList, ASAPKeyStore asapKeyStore,
+                                            SharkMessengerMetrics metrics) throws IOException, ASAPException {
+
         ByteArrayInputStream bais = new ByteArrayInputStream(message);
-        byte flags = ASAPSerialization.readByte(bais);
+        SharkMessageHeader header = SharkMessageHeader.read(bais);
+        byte flags = header.getFlags();
         byte[] tmpMessage = ASAPSerialization.readByteArray(bais);
 
         boolean signed = (flags & SharkMessage.SIGNED_MASK) != 0;
@@ -244,13 +399,20 @@ public class InMemoSharkMessage implements SharkMessage {
 
             // for me?
             if (!asapKeyStore.isOwner(encryptedMessagePackage.getReceiver())) {
-                return new InMemoSharkMessage(encryptedMessagePackage, hopsList);
+                InMemoSharkMessage notForMe = new InMemoSharkMessage(encryptedMessagePackage, hopsList);
+                notForMe.setHeader(header);
+                return notForMe;
                 //throw new ASAPException("SharkNetMessage: message not for me");
             }
 
             // replace message with decrypted message
+            SharkMessengerCryptoEvent event = new SharkMessengerCryptoEvent();
+            event.begin();
+            long start = System.nanoTime();
             tmpMessage = ASAPCryptoAlgorithms.decryptPackage(
                     encryptedMessagePackage, asapKeyStore);
+            metrics.record(SharkMessengerOperation.DECRYPT, null, start);
+            event.commit(SharkMessengerOperation.DECRYPT, tmpMessage.length, true);
         }
 
         byte[] signature = null;
@@ -277,6 +439,9 @@ public class InMemoSharkMessage implements SharkMessage {
 
         boolean verified = false; // initialize
         if (signature != null) {
+            SharkMessengerCryptoEvent event = new SharkMessengerCryptoEvent();
+            event.begin();
+            long start = System.nanoTime();
             try {
                 verified = ASAPCryptoAlgorithms.verify(
                         signedMessage, signature, snSender, asapKeyStore);
@@ -284,10 +449,15 @@ public class InMemoSharkMessage implements SharkMessage {
                 // verified definitely false
                 verified = false;
             }
+            metrics.record(SharkMessengerOperation.VERIFY, null, start);
+            event.commit(SharkMessengerOperation.VERIFY, signedMessage.length, verified);
         }
 
         // replace special sn symbols
-        return new InMemoSharkMessage(snMessage, snSender, snReceivers, creationTime, verified, encrypted, hopsList);
+        InMemoSharkMessage sharkMessage =
+                new InMemoSharkMessage(snMessage, snSender, snReceivers, creationTime, verified, encrypted, hopsList);
+        sharkMessage.setHeader(header);
+        return sharkMessage;
     }
 
     public boolean isAnonymousSender(CharSequence peerID) {
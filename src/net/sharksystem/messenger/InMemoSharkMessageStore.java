@@ -0,0 +1,98 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPHop;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps messages in memory. Nothing is written to disk. Content is lost when the peer stops. That is fine for
+ * relays without durable history and for tests.
+ */
+class InMemoSharkMessageStore extends AbstractSharkMessageStore {
+    private final List<byte[]> messages = new ArrayList<>();
+    private final List<List<ASAPHop>> hopsLists = new ArrayList<>();
+    private final List<Long> appendTimes = new ArrayList<>();
+
+    InMemoSharkMessageStore(CharSequence uri) {
+        super(uri);
+    }
+
+    @Override
+    public void append(byte[] message) {
+        this.notifyIndexHooks(this.add(message, NO_HOPS), message, NO_HOPS);
+    }
+
+    @Override
+    public void assimilate(byte[] message, List<ASAPHop> hops) {
+        if(hops == null) hops = NO_HOPS;
+        this.notifyIndexHooks(this.add(message, hops), message, hops);
+    }
+
+    private synchronized int add(byte[] message, List<ASAPHop> hops) {
+        this.messages.add(message);
+        this.hopsLists.add(hops);
+        this.appendTimes.add(System.currentTimeMillis());
+        return this.messages.size() - 1;
+    }
+
+    @Override
+    public synchronized byte[] getMessage(int position) {
+        return this.messages.get(position);
+    }
+
+    @Override
+    public synchronized List<ASAPHop> getASAPHops(int position) {
+        return this.hopsLists.get(position);
+    }
+
+    @Override
+    public synchronized List<byte[]> getMessages(int fromPosition, int toPosition) {
+        return new ArrayList<>(this.messages.subList(fromPosition, toPosition));
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.messages.size();
+    }
+
+    @Override
+    public int compact(SharkMessengerRetentionPolicy policy, long now) {
+        int drop = this.drop(policy, now);
+        if(drop > 0) this.notifyCompacted();
+        return drop;
+    }
+
+    private synchronized int drop(SharkMessengerRetentionPolicy policy, long now) {
+        int number = this.messages.size();
+        long[] times = new long[number];
+        int[] sizes = new int[number];
+        for(int i = 0; i < number; i++) {
+            times[i] = this.appendTimes.get(i);
+            sizes[i] = this.messages.get(i).length;
+        }
+
+        // remaining messages are moved down in one pass
+        int drop = policy.messagesToDrop(times, sizes, number, now);
+        int kept = 0;
+        for(int i = drop; i < number; i++) {
+            // expired messages can be anywhere
+            if(isExpired(this.messages.get(i), now)) continue;
+            this.messages.set(kept, this.messages.get(i));
+            this.hopsLists.set(kept, this.hopsLists.get(i));
+            this.appendTimes.set(kept, this.appendTimes.get(i));
+            kept++;
+        }
+        this.messages.subList(kept, number).clear();
+        this.hopsLists.subList(kept, number).clear();
+        this.appendTimes.subList(kept, number).clear();
+        return number - kept;
+    }
+
+    synchronized void clear() {
+        this.dropListIndex();
+        this.messages.clear();
+        this.hopsLists.clear();
+        this.appendTimes.clear();
+    }
+}
@@ -0,0 +1,159 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.utils.ASAPSerialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+
+/**
+ * Invertible Bloom lookup table over 64 bit message digests. Two peers exchange tables of same size, subtract
+ * them and decode the difference. Size of a table depends on the expected difference - not on the number of
+ * messages in a channel.
+ * <br/><br/>
+ * Layout: int cell number | cell number * (int count | long key sum | long hash sum)
+ */
+class InvertibleBloomLookupTable {
+    static final int HASH_FUNCTIONS = 3;
+
+    private final int[] counts;
+    private final long[] keySums;
+    private final long[] hashSums;
+
+    /**
+     * @param cells number of cells - roughly 1.5 times of the expected difference. At least HASH_FUNCTIONS.
+     */
+    InvertibleBloomLookupTable(int cells) {
+        if(cells < HASH_FUNCTIONS) throw new IllegalArgumentException("at least " + HASH_FUNCTIONS + " cells");
+        this.counts = new int[cells];
+        this.keySums = new long[cells];
+        this.hashSums = new long[cells];
+    }
+
+    int getCells() {
+        return this.counts.length;
+    }
+
+    void insert(long key) {
+        this.update(key, 1);
+    }
+
+    void delete(long key) {
+        this.update(key, -1);
+    }
+
+    private void update(long key, int delta) {
+        long hash = checkHash(key);
+        for(int cell : this.cells(key)) {
+            this.counts[cell] += delta;
+            this.keySums[cell] ^= key;
+            this.hashSums[cell] ^= hash;
+        }
+    }
+
+    /**
+     * Cells of a key. Table is split in HASH_FUNCTIONS partitions - a key never hits a cell twice.
+     */
+    private int[] cells(long key) {
+        int partition = this.counts.length / HASH_FUNCTIONS;
+        int[] cells = new int[HASH_FUNCTIONS];
+        for(int i = 0; i < HASH_FUNCTIONS; i++) {
+            long h = mix(key + i * 0x9E3779B97F4A7C15L);
+            int size = i == HASH_FUNCTIONS - 1 ? this.counts.length - i * partition : partition;
+            cells[i] = i * partition + (int) Long.remainderUnsigned(h, size);
+        }
+        return cells;
+    }
+
+    private static long checkHash(long key) {
+        return mix(key ^ 0xC2B2AE3D27D4EB4FL);
+    }
+
+    // murmur3 finalizer
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @return this minus other - keys only in this table have count 1, keys only in other -1
+     */
+    InvertibleBloomLookupTable subtract(InvertibleBloomLookupTable other) {
+        if(other.getCells() != this.getCells()) {
+            throw new IllegalArgumentException("tables differ in size: " + this.getCells() + " / " + other.getCells());
+        }
+        InvertibleBloomLookupTable difference = new InvertibleBloomLookupTable(this.getCells());
+        for(int i = 0; i < this.counts.length; i++) {
+            difference.counts[i] = this.counts[i] - other.counts[i];
+            difference.keySums[i] = this.keySums[i] ^ other.keySums[i];
+            difference.hashSums[i] = this.hashSums[i] ^ other.hashSums[i];
+        }
+        return difference;
+    }
+
+    /**
+     * Decode a difference table. This table is consumed.
+     * @param onlyHere filled with keys of the minuend
+     * @param onlyThere filled with keys of the subtrahend
+     * @return false if difference was too large for this table - sets are incomplete in that case
+     */
+    boolean decode(Set<Long> onlyHere, Set<Long> onlyThere) {
+        Deque<Integer> pure = new ArrayDeque<>();
+        for(int i = 0; i < this.counts.length; i++) {
+            if(this.isPure(i)) pure.add(i);
+        }
+
+        while(!pure.isEmpty()) {
+            int cell = pure.poll();
+            if(!this.isPure(cell)) continue; // changed meanwhile
+            long key = this.keySums[cell];
+            int count = this.counts[cell];
+            if(count > 0) onlyHere.add(key); else onlyThere.add(key);
+            this.update(key, -count);
+            for(int other : this.cells(key)) {
+                if(this.isPure(other)) pure.add(other);
+            }
+        }
+
+        for(int i = 0; i < this.counts.length; i++) {
+            if(this.counts[i] != 0 || this.keySums[i] != 0 || this.hashSums[i] != 0) return false;
+        }
+        return true;
+    }
+
+    private boolean isPure(int cell) {
+        return (this.counts[cell] == 1 || this.counts[cell] == -1)
+                && this.hashSums[cell] == checkHash(this.keySums[cell]);
+    }
+
+    void write(OutputStream os) throws IOException {
+        ASAPSerialization.writeIntegerParameter(this.counts.length, os);
+        for(int i = 0; i < this.counts.length; i++) {
+            ASAPSerialization.writeIntegerParameter(this.counts[i], os);
+            ASAPSerialization.writeLongParameter(this.keySums[i], os);
+            ASAPSerialization.writeLongParameter(this.hashSums[i], os);
+        }
+    }
+
+    static InvertibleBloomLookupTable read(InputStream is) throws IOException, ASAPException {
+        int cells = ASAPSerialization.readIntegerParameter(is);
+        if(cells < HASH_FUNCTIONS || cells > SharkMessengerSync.MAX_CELLS) {
+            throw new ASAPException("invalid table size: " + cells);
+        }
+        InvertibleBloomLookupTable table = new InvertibleBloomLookupTable(cells);
+        for(int i = 0; i < cells; i++) {
+            table.counts[i] = ASAPSerialization.readIntegerParameter(is);
+            table.keySums[i] = ASAPSerialization.readLongParameter(is);
+            table.hashSums[i] = ASAPSerialization.readLongParameter(is);
+        }
+        return table;
+    }
+}
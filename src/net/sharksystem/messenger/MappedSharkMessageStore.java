@@ -0,0 +1,340 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.utils.ASAPSerialization;
+import net.sharksystem.utils.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps messages in memory mapped segment files. Each record is written once and never changed. Records are
+ * read directly from mapped memory - there is no read system call and no copy of the whole channel.
+ * <br/><br/>
+ * Record layout: int record length | long append time | int hops length | hops | message. A record length of 0
+ * marks the end of a segment.
+ * <br/><br/>
+ * Compaction copies remaining records into fresh segments in a sub folder. Readers and writers go on in the
+ * meantime. Finally, new segments replace old ones in a short critical section: all segments are unmapped -
+ * mapped files cannot be replaced on each platform - files are renamed and mapped again. Readers copy records
+ * while holding the store lock - no reader uses a segment that is unmapped.
+ */
+class MappedSharkMessageStore extends AbstractSharkMessageStore {
+    static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    static final String SEGMENT_PREFIX = "segment_";
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String COMPACTION_FOLDER = "compaction";
+
+    private static final int TIME_OFFSET = 4;
+    private static final int HOPS_LENGTH_OFFSET = 12;
+    private static final int RECORD_HEADER_SIZE = 16;
+
+    private final File folder;
+    private final int segmentSize;
+    private final Object compactionLock = new Object(); // one compaction at a time
+    private List<MappedByteBuffer> segments = new ArrayList<>();
+    /** record position: segment index in upper, offset in lower 32 bits */
+    private long[] index = new long[64];
+    private int size = 0;
+    private int writeOffset = 0;
+
+    MappedSharkMessageStore(CharSequence uri, File folder) throws IOException {
+        this(uri, folder, DEFAULT_SEGMENT_SIZE);
+    }
+
+    MappedSharkMessageStore(CharSequence uri, File folder, int segmentSize) throws IOException {
+        super(uri);
+        this.folder = folder;
+        this.segmentSize = segmentSize;
+        if(!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("cannot create folder: " + folder.getAbsolutePath());
+        }
+        // leftovers of an interrupted compaction - original segments are still valid
+        File compactionFolder = new File(folder, COMPACTION_FOLDER);
+        if(compactionFolder.exists()) deleteFolder(compactionFolder);
+        this.openSegments();
+    }
+
+    File getFolder() {
+        return this.folder;
+    }
+
+    private File segmentFile(int segmentIndex) {
+        return new File(this.folder, SEGMENT_PREFIX + segmentIndex + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Release mapped memory now - not when garbage collected. Buffer must not be used afterwards.
+     */
+    private static void unmap(MappedByteBuffer segment) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), segment);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // unmapped when garbage collected
+            Log.writeLogErr(MappedSharkMessageStore.class, "cannot unmap segment: " + e.getLocalizedMessage());
+        }
+    }
+
+    private static MappedByteBuffer map(File file, long size) throws IOException {
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if(raf.length() < size) raf.setLength(size);
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, raf.length()));
+        }
+    }
+
+    /**
+     * Map existing segments and rebuild index
+     */
+    private void openSegments() throws IOException {
+        int segmentIndex = 0;
+        File segmentFile = this.segmentFile(segmentIndex);
+        while(segmentFile.exists()) {
+            MappedByteBuffer segment = map(segmentFile, segmentFile.length());
+            this.segments.add(segment);
+            int offset = 0;
+            while(offset + RECORD_HEADER_SIZE <= segment.capacity()) {
+                int recordLength = segment.getInt(offset);
+                if(recordLength <= 0) break;
+                this.addToIndex(segmentIndex, offset);
+                offset += recordLength;
+            }
+            this.writeOffset = offset;
+            segmentIndex++;
+            segmentFile = this.segmentFile(segmentIndex);
+        }
+        Log.writeLog(this, "opened " + this.segments.size() + " segments with "
+                + this.size + " messages: " + this.folder.getAbsolutePath());
+    }
+
+    private void addToIndex(int segmentIndex, int offset) {
+        if(this.size == this.index.length) {
+            long[] newIndex = new long[this.index.length * 2];
+            System.arraycopy(this.index, 0, newIndex, 0, this.size);
+            this.index = newIndex;
+        }
+        this.index[this.size++] = ((long) segmentIndex << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public void append(byte[] message) throws IOException {
+        this.notifyIndexHooks(this.write(message, NO_HOPS), message, NO_HOPS);
+    }
+
+    @Override
+    public void assimilate(byte[] message, List<ASAPHop> hops) throws IOException {
+        if(hops == null) hops = NO_HOPS;
+        this.notifyIndexHooks(this.write(message, hops), message, hops);
+    }
+
+    private synchronized int write(byte[] message, List<ASAPHop> hops) throws IOException {
+        byte[] hopsBytes = hops.isEmpty() ? new byte[0] : ASAPSerialization.asapHopList2ByteArray(hops);
+        int recordLength = RECORD_HEADER_SIZE + hopsBytes.length + message.length;
+
+        MappedByteBuffer segment = this.segmentFor(recordLength);
+        ByteBuffer buffer = segment.duplicate();
+        buffer.position(this.writeOffset + TIME_OFFSET);
+        buffer.putLong(System.currentTimeMillis());
+        buffer.putInt(hopsBytes.length);
+        buffer.put(hopsBytes);
+        buffer.put(message);
+        return this.commitRecord(segment, recordLength);
+    }
+
+    /**
+     * Copy a complete record - used by compaction.
+     */
+    private synchronized void writeRecord(ByteBuffer record) throws IOException {
+        int recordLength = record.remaining();
+        MappedByteBuffer segment = this.segmentFor(recordLength);
+        ByteBuffer buffer = segment.duplicate();
+        buffer.position(this.writeOffset + TIME_OFFSET);
+        record.position(TIME_OFFSET);
+        buffer.put(record);
+        this.commitRecord(segment, recordLength);
+    }
+
+    private MappedByteBuffer segmentFor(int recordLength) throws IOException {
+        MappedByteBuffer segment = this.segments.isEmpty() ? null : this.segments.get(this.segments.size() - 1);
+        // keep space for an end mark
+        if(segment == null || this.writeOffset + recordLength + 4 > segment.capacity()) {
+            File segmentFile = this.segmentFile(this.segments.size());
+            segment = map(segmentFile, Math.max(this.segmentSize, recordLength + 4));
+            this.segments.add(segment);
+            this.writeOffset = 0;
+        }
+        return segment;
+    }
+
+    private int commitRecord(MappedByteBuffer segment, int recordLength) {
+        // length is written last - a record is visible when it is complete
+        segment.putInt(this.writeOffset, recordLength);
+        this.addToIndex(this.segments.size() - 1, this.writeOffset);
+        this.writeOffset += recordLength;
+        return this.size - 1;
+    }
+
+    private synchronized ByteBuffer record(int position) {
+        if(position < 0 || position >= this.size) {
+            throw new IndexOutOfBoundsException("position " + position + " / size " + this.size);
+        }
+        long location = this.index[position];
+        MappedByteBuffer segment = this.segments.get((int) (location >>> 32));
+        ByteBuffer buffer = segment.duplicate();
+        int offset = (int) location;
+        buffer.position(offset);
+        buffer.limit(offset + segment.getInt(offset));
+        return buffer.slice();
+    }
+
+    @Override
+    public synchronized byte[] getMessage(int position) {
+        ByteBuffer record = this.record(position);
+        int hopsLength = record.getInt(HOPS_LENGTH_OFFSET);
+        record.position(RECORD_HEADER_SIZE + hopsLength);
+        byte[] message = new byte[record.remaining()];
+        record.get(message);
+        return message;
+    }
+
+    @Override
+    public List<ASAPHop> getASAPHops(int position) throws IOException {
+        byte[] hopsBytes;
+        synchronized(this) {
+            ByteBuffer record = this.record(position);
+            int hopsLength = record.getInt(HOPS_LENGTH_OFFSET);
+            if(hopsLength == 0) return NO_HOPS;
+            hopsBytes = new byte[hopsLength];
+            record.position(RECORD_HEADER_SIZE);
+            record.get(hopsBytes);
+        }
+        try {
+            return ASAPSerialization.byteArray2ASAPHopList(hopsBytes);
+        } catch (ASAPException e) {
+            throw new IOException("corrupted hop list in " + this.folder.getAbsolutePath(), e);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.size;
+    }
+
+    @Override
+    public int compact(SharkMessengerRetentionPolicy policy, long now) throws IOException {
+        synchronized(this.compactionLock) {
+            int drop = this.copyAndSwap(policy, now);
+            if(drop > 0) this.notifyCompacted();
+            return drop;
+        }
+    }
+
+    private int copyAndSwap(SharkMessengerRetentionPolicy policy, long now) throws IOException {
+        int headDrop, drop, copiedUntil;
+        boolean[] expired;
+        synchronized(this) {
+            int number = this.size;
+            long[] times = new long[number];
+            int[] sizes = new int[number];
+            expired = new boolean[number];
+            for(int i = 0; i < number; i++) {
+                ByteBuffer record = this.record(i);
+                times[i] = record.getLong(TIME_OFFSET);
+                sizes[i] = record.remaining();
+                expired[i] = isExpired(this.getMessage(i), now);
+            }
+            headDrop = policy.messagesToDrop(times, sizes, number, now);
+            // expired messages can be anywhere
+            drop = headDrop;
+            for(int i = headDrop; i < number; i++) if(expired[i]) drop++;
+            if(drop == 0) return 0;
+            copiedUntil = number;
+        }
+
+        // copy remaining records - readers and writers are not blocked. Segments are only unmapped by compaction.
+        File compactionFolder = new File(this.folder, COMPACTION_FOLDER);
+        if(compactionFolder.exists()) deleteFolder(compactionFolder);
+        MappedSharkMessageStore compacted = new MappedSharkMessageStore(this.getURI(), compactionFolder,
+                this.segmentSize);
+        for(int i = headDrop; i < copiedUntil; i++) {
+            if(!expired[i]) compacted.writeRecord(this.record(i));
+        }
+
+        synchronized(this) {
+            // records appended in the meantime
+            for(int i = copiedUntil; i < this.size; i++) compacted.writeRecord(this.record(i));
+
+            // swap - no segment is mapped while its file is replaced
+            List<MappedByteBuffer> oldSegments = this.segments;
+            int newSegmentNumber = compacted.segments.size();
+            for(MappedByteBuffer segment : oldSegments) unmap(segment);
+            for(MappedByteBuffer segment : compacted.segments) unmap(segment);
+            List<MappedByteBuffer> segments = new ArrayList<>(newSegmentNumber);
+            for(int i = 0; i < newSegmentNumber; i++) {
+                File segmentFile = this.segmentFile(i);
+                Files.move(compacted.segmentFile(i).toPath(), segmentFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                segments.add(map(segmentFile, segmentFile.length()));
+            }
+            for(int i = newSegmentNumber; i < oldSegments.size(); i++) {
+                File segmentFile = this.segmentFile(i);
+                if(!segmentFile.delete()) Log.writeLogErr(this, "cannot delete: " + segmentFile.getAbsolutePath());
+            }
+            this.segments = segments;
+            this.index = compacted.index;
+            this.size = compacted.size;
+            this.writeOffset = compacted.writeOffset;
+        }
+        deleteFolder(compactionFolder);
+
+        Log.writeLog(this, "compacted: dropped " + drop + " messages in " + this.folder.getAbsolutePath());
+        return drop;
+    }
+
+    /**
+     * Unmap all segments - files are kept. Store must not be used afterwards.
+     */
+    void close() {
+        synchronized(this.compactionLock) {
+            synchronized(this) {
+                for(MappedByteBuffer segment : this.segments) unmap(segment);
+                this.segments = new ArrayList<>();
+                this.size = 0;
+                this.writeOffset = 0;
+            }
+        }
+    }
+
+    /**
+     * Unmap all segments and remove files.
+     */
+    void delete() {
+        this.close();
+        deleteFolder(this.folder);
+    }
+
+    static void deleteFolder(File folder) {
+        File[] files = folder.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                if(file.isDirectory()) deleteFolder(file);
+                else if(!file.delete()) Log.writeLogErr(MappedSharkMessageStore.class,
+                        "cannot delete: " + file.getAbsolutePath());
+            }
+        }
+        if(!folder.delete()) Log.writeLogErr(MappedSharkMessageStore.class,
+                "cannot delete: " + folder.getAbsolutePath());
+    }
+}
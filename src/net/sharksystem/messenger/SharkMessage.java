@@ -6,6 +6,7 @@ import net.sharksystem.asap.ASAPSecurityException;
 
 import java.io.IOException;
 import java.sql.Timestamp;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -24,6 +25,16 @@ public interface SharkMessage {
     String ANONYMOUS = "SHARK_ANONYMOUS";
     int SIGNED_MASK = 0x1;
     int ENCRYPTED_MASK = 0x2;
+    /** ephemeral messages are sent to connected peers only - they are never stored nor routed */
+    int EPHEMERAL_MASK = 0x4;
+    /** message has an expiry time in its unencrypted head */
+    int EXPIRY_MASK = 0x8;
+    /** message has a hop limit in its unencrypted head */
+    int HOP_LIMIT_MASK = 0x10;
+    /** message carries a trace id and its send time in its unencrypted head */
+    int TRACE_MASK = 0x20;
+    /** trace id of messages without trace */
+    long NO_TRACE = 0;
 
     /**
      * Content - can be encrypted and signed
@@ -105,4 +116,50 @@ public interface SharkMessage {
      * @return
      */
     List<ASAPHop> getASAPHopsList();
+
+    /**
+     * Copies of a message can arrive on more than one route. Only the first copy is stored.
+     * @return routes of the other copies - empty if there were none or they are not known
+     * @since 1.2
+     */
+    default List<List<ASAPHop>> getAlternativeRoutes() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Ephemeral messages are short-lived signals like presence, typing indicators or read receipts. They are
+     * only sent to peers which are currently connected. They are kept in a small in-memory ring and are never
+     * written to disk or routed later.
+     * @return true if this message is ephemeral. This flag is part of the unencrypted head.
+     */
+    default boolean isEphemeral() {
+        return false;
+    }
+
+    /**
+     * Messages can expire. Peers neither store nor forward expired messages. Stored messages are purged when
+     * they expire. Like creation time, expiry relies on local clocks.
+     * @return absolute expiry time (ms since 1970) or 0 if this message never expires
+     */
+    default long getExpiryTime() {
+        return 0;
+    }
+
+    /**
+     * Routed messages can be limited to a maximum route length. A peer drops a message that arrives with a
+     * longer route.
+     * @return maximum number of hops or 0 if there is no limit
+     */
+    default int getHopLimit() {
+        return 0;
+    }
+
+    /**
+     * Messages can carry a trace id and their send time. Each peer measures delivery latency with it.
+     * @return trace id or NO_TRACE
+     * @see SharkMessengerDeliveryTracer
+     */
+    default long getTraceID() {
+        return NO_TRACE;
+    }
 }
@@ -17,25 +17,23 @@ class SharkMessageComparison implements ASAPMessageCompare {
 
     @Override
     public boolean earlier(byte[] msgA, byte[] msgB) {
-        try {
-            InMemoSharkMessage sharkMsgA = InMemoSharkMessage.parseMessage(msgA, new ArrayList<ASAPHop>(), this.pki);
-            InMemoSharkMessage sharkMsgB = InMemoSharkMessage.parseMessage(msgB, new ArrayList<ASAPHop>(), this.pki);
-
-            long creationTimeA = -1;
-            long creationTimeB = -1;
+        return this.getCreationTime(msgA) < this.getCreationTime(msgB);
+    }
 
-            if(sharkMsgA.couldBeDecrypted()) {
-                creationTimeA = sharkMsgA.getCreationTime();
-            }
-            if(sharkMsgB.couldBeDecrypted()) {
-                creationTimeB = sharkMsgA.getCreationTime();
+    /**
+     * @param msg serialized message
+     * @return creation time or -1 if message could not be decrypted or parsed
+     */
+    long getCreationTime(byte[] msg) {
+        try {
+            InMemoSharkMessage sharkMsg = InMemoSharkMessage.parseMessage(msg, new ArrayList<ASAPHop>(), this.pki);
+            if(sharkMsg.couldBeDecrypted()) {
+                return sharkMsg.getCreationTime();
             }
-
-            return creationTimeA < creationTimeB;
-
+            return -1;
         } catch (IOException | ASAPException e) {
             // no choice: interface prevents me from throwing an exception
-            return false;
+            return -1;
         }
     }
 }
@@ -0,0 +1,239 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.utils.ASAPSerialization;
+import net.sharksystem.utils.Log;
+
+import java.io.*;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Digests of all messages in channel stores. The same message can arrive more than once - directly, via a hub or
+ * via routing peers. A copy is recognized before it is stored. Its route is kept as alternative route.
+ * <br/><br/>
+ * A message digest covers the whole serialized message - sender, time stamp and (maybe encrypted) content. It is
+ * the same on any route. Check and reservation of a digest are a single step: of two copies arriving at the
+ * same time only one is stored.
+ * <br/><br/>
+ * Digests are appended to a file for each channel (8 bytes each). The index is rebuilt from the store if the file
+ * has fewer entries than the store - like after a crash. Alternative routes are appended to a second file.
+ * <br/><br/>
+ * Not used with {@link SharkMessageStoreType#ASAP} stores: the ASAP engine stores each received copy before the
+ * messenger sees it. Their message lists hide copies instead.
+ */
+class SharkMessageDuplicateIndex implements SharkMessageStoreIndexHook {
+    static final String INDEX_FILE_EXTENSION = ".dup";
+    static final String ROUTES_FILE_EXTENSION = ".routes";
+    /** alternative routes kept for each message */
+    static final int MAX_ALTERNATIVE_ROUTES = 4;
+
+    private final File folder;
+    private final Map<String, ChannelIndex> channelIndices = new ConcurrentHashMap<>();
+
+    /**
+     * @param folder index files - can be null - index is rebuilt from stores on each start in that case
+     */
+    SharkMessageDuplicateIndex(File folder) {
+        this.folder = folder;
+        if(this.folder != null) this.folder.mkdirs();
+    }
+
+    /**
+     * Reserve a message before it is stored.
+     * @param store store a message would be assimilated in
+     * @param message serialized message
+     * @param route route of this copy
+     * @return true if message is new - store it or {@link #release(CharSequence, byte[])} it. false: store
+     * already holds this message or it is reserved by another copy. Route is remembered as alternative route.
+     */
+    boolean tryReserve(SharkMessageStore store, byte[] message, List<ASAPHop> route) throws IOException {
+        long digest = SharkMessengerSync.digest(message);
+        ChannelIndex index = this.getChannelIndex(store);
+        synchronized(index) {
+            if(index.digests.add(digest)) {
+                index.reserved.add(digest);
+                return true;
+            }
+            index.addAlternativeRoute(digest, route, true);
+            return false;
+        }
+    }
+
+    /**
+     * Give up a reservation - reserved message could not be stored.
+     */
+    void release(CharSequence uri, byte[] message) {
+        ChannelIndex index = this.channelIndices.get(uri.toString());
+        if(index == null) return;
+        long digest = SharkMessengerSync.digest(message);
+        synchronized(index) {
+            if(index.reserved.remove(digest)) index.digests.remove(digest);
+        }
+    }
+
+    /**
+     * @return routes of copies that were dropped as duplicates - empty if none
+     */
+    List<List<ASAPHop>> getAlternativeRoutes(CharSequence uri, byte[] message) {
+        ChannelIndex index = this.channelIndices.get(uri.toString());
+        if(index == null) return Collections.emptyList();
+        synchronized(index) {
+            List<List<ASAPHop>> routes = index.alternativeRoutes.get(SharkMessengerSync.digest(message));
+            return routes == null ? Collections.emptyList() : new ArrayList<>(routes);
+        }
+    }
+
+    @Override
+    public void messageAppended(CharSequence uri, int position, byte[] message, List<ASAPHop> hops) {
+        ChannelIndex index = this.channelIndices.get(uri.toString());
+        if(index == null) return;
+        long digest = SharkMessengerSync.digest(message);
+        synchronized(index) {
+            // reserved digests are in memory already - written now that message is stored
+            if(index.digests.add(digest) || index.reserved.remove(digest)) index.persist(digest);
+        }
+    }
+
+    /**
+     * Forget a channel - like after it was removed.
+     */
+    void remove(CharSequence uri) {
+        ChannelIndex index = this.channelIndices.remove(uri.toString());
+        if(index != null) index.close();
+        for(String extension : new String[] {INDEX_FILE_EXTENSION, ROUTES_FILE_EXTENSION}) {
+            File file = this.getFile(uri, extension);
+            if(file != null && file.exists() && !file.delete()) {
+                Log.writeLogErr(this, "cannot delete index file " + file);
+            }
+        }
+    }
+
+    private File getFile(CharSequence uri, String extension) {
+        if(this.folder == null) return null;
+        return new File(this.folder, URLEncoder.encode(uri.toString(), StandardCharsets.UTF_8) + extension);
+    }
+
+    private ChannelIndex getChannelIndex(SharkMessageStore store) throws IOException {
+        String key = store.getURI().toString();
+        ChannelIndex index = this.channelIndices.get(key);
+        if(index != null) return index;
+
+        synchronized(this.channelIndices) {
+            index = this.channelIndices.get(key);
+            if(index == null) {
+                index = this.open(store);
+                this.channelIndices.put(key, index);
+                store.addIndexHook(this);
+            }
+        }
+        return index;
+    }
+
+    private ChannelIndex open(SharkMessageStore store) throws IOException {
+        File file = this.getFile(store.getURI(), INDEX_FILE_EXTENSION);
+        int storeSize = store.size();
+        List<Long> persisted = new ArrayList<>();
+        if(file != null && file.exists()) {
+            try(DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                for(long i = file.length() / Long.BYTES; i > 0; i--) persisted.add(dis.readLong());
+            }
+        }
+
+        ChannelIndex index = new ChannelIndex();
+        if(persisted.size() >= storeSize) {
+            index.digests.addAll(persisted);
+        } else {
+            // incomplete - rebuild from store
+            Log.writeLog(this, "rebuild duplicate index of " + store.getURI());
+            for(int position = 0; position < storeSize; position++) {
+                index.digests.add(SharkMessengerSync.digest(store.getMessage(position)));
+            }
+        }
+        if(file != null) index.openFile(file, persisted.size() < storeSize);
+
+        File routesFile = this.getFile(store.getURI(), ROUTES_FILE_EXTENSION);
+        if(routesFile != null) {
+            if(routesFile.exists()) {
+                try(DataInputStream dis =
+                            new DataInputStream(new BufferedInputStream(new FileInputStream(routesFile)))) {
+                    while(dis.available() > 0) {
+                        long digest = dis.readLong();
+                        index.addAlternativeRoute(digest, ASAPSerialization.readASAPHopList(dis), false);
+                    }
+                } catch (IOException | ASAPException e) {
+                    // keep what was read
+                    Log.writeLogErr(this, "cannot read alternative routes: " + e.getLocalizedMessage());
+                }
+            }
+            index.routesFile = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(routesFile, true)));
+        }
+        return index;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                      channel index                                      //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static class ChannelIndex {
+        final Set<Long> digests = new HashSet<>();
+        /** in digests but not stored yet */
+        final Set<Long> reserved = new HashSet<>();
+        final Map<Long, List<List<ASAPHop>>> alternativeRoutes = new HashMap<>();
+        private DataOutputStream indexFile;
+        private DataOutputStream routesFile;
+
+        void persist(long digest) {
+            if(this.indexFile == null) return;
+            try {
+                this.indexFile.writeLong(digest);
+                this.indexFile.flush();
+            } catch (IOException e) {
+                // rebuilt on next start
+                Log.writeLogErr(this, "cannot write duplicate index: " + e.getLocalizedMessage());
+            }
+        }
+
+        void addAlternativeRoute(long digest, List<ASAPHop> route, boolean persist) {
+            if(route == null || route.isEmpty()) return;
+            List<List<ASAPHop>> routes = this.alternativeRoutes.computeIfAbsent(digest, k -> new ArrayList<>());
+            if(routes.size() >= MAX_ALTERNATIVE_ROUTES) return;
+            routes.add(route);
+
+            if(persist && this.routesFile != null) {
+                try {
+                    this.routesFile.writeLong(digest);
+                    ASAPSerialization.writeASAPHopList(route, this.routesFile);
+                    this.routesFile.flush();
+                } catch (IOException e) {
+                    // route is lost after a restart - message is not
+                    Log.writeLogErr(this, "cannot write alternative route: " + e.getLocalizedMessage());
+                }
+            }
+        }
+
+        void openFile(File file, boolean rewrite) throws IOException {
+            this.indexFile = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, !rewrite)));
+            if(rewrite) {
+                for(long digest : this.digests) this.indexFile.writeLong(digest);
+                this.indexFile.flush();
+            }
+        }
+
+        void close() {
+            for(DataOutputStream file : new DataOutputStream[] {this.indexFile, this.routesFile}) {
+                if(file == null) continue;
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    // nothing to lose - it was flushed
+                }
+            }
+            this.indexFile = null;
+            this.routesFile = null;
+        }
+    }
+}
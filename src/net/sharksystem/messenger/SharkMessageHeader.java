@@ -0,0 +1,135 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.utils.ASAPSerialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Unencrypted head of a serialized shark message: flags and optional routing limits. It can be read without
+ * parsing or decrypting the message. Peers decide with it whether a message is stored or forwarded.
+ * <br/><br/>
+ * Layout: byte flags | long expiry time (if EXPIRY_MASK) | int hop limit (if HOP_LIMIT_MASK) |
+ * long trace id, long send time (if TRACE_MASK) | ... message
+ * <br/><br/>
+ * Note: the head is not signed. It is a routing hint like the ASAP hop list.
+ */
+class SharkMessageHeader {
+    static final long NO_EXPIRY = 0;
+    static final int NO_HOP_LIMIT = 0;
+
+    private final byte flags;
+    private final long expiryTime;
+    private final int hopLimit;
+    private final long traceID;
+    private final long sendTime;
+
+    SharkMessageHeader(byte flags, long expiryTime, int hopLimit) {
+        this(flags, expiryTime, hopLimit, SharkMessage.NO_TRACE, 0);
+    }
+
+    SharkMessageHeader(byte flags, long expiryTime, int hopLimit, long traceID, long sendTime) {
+        this.flags = flags;
+        this.expiryTime = expiryTime;
+        this.hopLimit = hopLimit;
+        this.traceID = traceID;
+        this.sendTime = sendTime;
+    }
+
+    /**
+     * @param message serialized message
+     * @return unencrypted head of this message
+     * @throws IOException malformed message
+     */
+    static SharkMessageHeader read(byte[] message) throws IOException {
+        if(message == null || message.length == 0) throw new IOException("empty message");
+        return SharkMessageHeader.read(new ByteArrayInputStream(message));
+    }
+
+    static SharkMessageHeader read(InputStream is) throws IOException {
+        try {
+            byte flags = ASAPSerialization.readByte(is);
+            long expiryTime = NO_EXPIRY;
+            int hopLimit = NO_HOP_LIMIT;
+            if((flags & SharkMessage.EXPIRY_MASK) != 0) expiryTime = ASAPSerialization.readLongParameter(is);
+            if((flags & SharkMessage.HOP_LIMIT_MASK) != 0) hopLimit = ASAPSerialization.readIntegerParameter(is);
+            long traceID = SharkMessage.NO_TRACE;
+            long sendTime = 0;
+            if((flags & SharkMessage.TRACE_MASK) != 0) {
+                traceID = ASAPSerialization.readLongParameter(is);
+                sendTime = ASAPSerialization.readLongParameter(is);
+            }
+            return new SharkMessageHeader(flags, expiryTime, hopLimit, traceID, sendTime);
+        } catch (ASAPException e) {
+            throw new IOException("malformed message head: " + e.getLocalizedMessage(), e);
+        }
+    }
+
+    void write(OutputStream os) throws IOException {
+        ASAPSerialization.writeByteParameter(this.flags, os);
+        if((this.flags & SharkMessage.EXPIRY_MASK) != 0) ASAPSerialization.writeLongParameter(this.expiryTime, os);
+        if((this.flags & SharkMessage.HOP_LIMIT_MASK) != 0) ASAPSerialization.writeIntegerParameter(this.hopLimit, os);
+        if((this.flags & SharkMessage.TRACE_MASK) != 0) {
+            ASAPSerialization.writeLongParameter(this.traceID, os);
+            ASAPSerialization.writeLongParameter(this.sendTime, os);
+        }
+    }
+
+    byte getFlags() {
+        return this.flags;
+    }
+
+    /**
+     * @return absolute expiry time or NO_EXPIRY
+     */
+    long getExpiryTime() {
+        return this.expiryTime;
+    }
+
+    /**
+     * @return maximum route length a message may have on arrival - or NO_HOP_LIMIT
+     */
+    int getHopLimit() {
+        return this.hopLimit;
+    }
+
+    /**
+     * @return trace id or NO_TRACE
+     */
+    long getTraceID() {
+        return this.traceID;
+    }
+
+    /**
+     * @return send time on clock of sender - only with trace id
+     */
+    long getSendTime() {
+        return this.sendTime;
+    }
+
+    boolean isEphemeral() {
+        return (this.flags & SharkMessage.EPHEMERAL_MASK) != 0;
+    }
+
+    boolean isExpired(long now) {
+        return this.expiryTime != NO_EXPIRY && this.expiryTime < now;
+    }
+
+    /**
+     * @param routeLength number of hops this message has travelled
+     * @return true if route is longer than allowed
+     */
+    boolean exceedsHopLimit(int routeLength) {
+        return this.hopLimit != NO_HOP_LIMIT && routeLength > this.hopLimit;
+    }
+
+    /**
+     * @return true if a message with this head must be neither stored nor forwarded
+     */
+    boolean isOutdated(long now, int routeLength) {
+        return this.isExpired(now) || this.exceedsHopLimit(routeLength);
+    }
+}
@@ -0,0 +1,62 @@
+package net.sharksystem.messenger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ids of messages seen recently - oldest are forgotten first. With hub fan-out the same message arrives on more than
+ * one path within a short time. Only the first copy passes. A message id is a digest of the serialized message -
+ * the same on any path.
+ * <br/><br/>
+ * The window is bounded by number of ids and by age. Copies that arrive later are left to other checks (like the
+ * duplicate index of a store).
+ */
+class SharkMessageIdWindow {
+    static final int DEFAULT_CAPACITY = 4096;
+    static final long DEFAULT_MAX_AGE_IN_MILLIS = 10 * 60 * 1000;
+
+    private final int capacity;
+    private final long maxAgeInMillis;
+    /** id : time first seen - insertion ordered, oldest first */
+    private final LinkedHashMap<Long, Long> ids = new LinkedHashMap<>();
+
+    SharkMessageIdWindow() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_AGE_IN_MILLIS);
+    }
+
+    SharkMessageIdWindow(int capacity, long maxAgeInMillis) {
+        this.capacity = capacity;
+        this.maxAgeInMillis = maxAgeInMillis;
+    }
+
+    /**
+     * @return true if id was not seen within window - it is remembered from now on
+     */
+    synchronized boolean firstSeen(long id, long now) {
+        this.forgetOld(now);
+        if(this.ids.containsKey(id)) return false;
+        this.ids.put(id, now);
+        if(this.ids.size() > this.capacity) this.ids.remove(this.ids.keySet().iterator().next());
+        return true;
+    }
+
+    /**
+     * Forget an id - e.g. if its message could not be kept after all.
+     */
+    synchronized void forget(long id) {
+        this.ids.remove(id);
+    }
+
+    synchronized int size() {
+        return this.ids.size();
+    }
+
+    private void forgetOld(long now) {
+        Iterator<Map.Entry<Long, Long>> iterator = this.ids.entrySet().iterator();
+        while(iterator.hasNext()) {
+            if(now - iterator.next().getValue() <= this.maxAgeInMillis) break;
+            iterator.remove();
+        }
+    }
+}
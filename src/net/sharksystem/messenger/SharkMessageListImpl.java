@@ -4,41 +4,161 @@ import net.sharksystem.asap.*;
 import net.sharksystem.pki.SharkPKIComponent;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Messages of a channel as seen by a user: received messages that came on a route not allowed for this channel are
+ * hidden, so are outdated messages and (with ASAP stores) further copies of a message.
+ * <br/><br/>
+ * A list is a view. Messages are filtered and ordered with an index kept by the store
+ * ({@link SharkMessageListIndex}). Visibility is resolved while a list is walked - from its oldest or from its
+ * latest message, depending on how it is read. Only returned messages are parsed.
+ */
 public class SharkMessageListImpl implements SharkMessageList {
     private final SharkPKIComponent pkiComponent;
-    private final ASAPMessages asapMessages;
+    private final SharkMessageStore messageStore;
+    private final SharkMessageDuplicateIndex duplicateIndex; // can be null
+    private final SharkMessageListIndex listIndex;
+    private final boolean sentMessagesOnly;
+    private final SharkMessengerRoutingPolicy routingPolicy;
+    private final long now;
+    /** number of messages in store when this list was created */
+    private final int number;
+    /** maps walk position to store position - null: identity */
+    private final int[] storePositions;
+    private int size = -1; // not yet counted
 
-    public SharkMessageListImpl(SharkPKIComponent pkiComponent, ASAPChannel asapChannel,
-                    boolean sentMessagesOnly, boolean ordered) throws IOException, ASAPException {
+    // visible store positions found by walks from both ends - walks stop where they meet
+    private int[] fromOldest = new int[16];
+    private int foundFromOldest = 0;
+    private int oldestWalk = 0; // next walk position
+    private int[] fromLatest = new int[16];
+    private int foundFromLatest = 0;
+    private int latestWalk; // walk positions from here on are done
+
+    public SharkMessageListImpl(SharkPKIComponent pkiComponent, SharkMessageStore messageStore,
+                    boolean sentMessagesOnly, boolean ordered) throws IOException {
+        this(pkiComponent, messageStore, sentMessagesOnly, ordered, SharkMessengerRoutingPolicy.ANY_TRANSPORT);
+    }
+
+    /**
+     * @param routingPolicy received messages that came on a route this policy does not accept are hidden
+     */
+    public SharkMessageListImpl(SharkPKIComponent pkiComponent, SharkMessageStore messageStore,
+                    boolean sentMessagesOnly, boolean ordered, SharkMessengerRoutingPolicy routingPolicy)
+            throws IOException {
+        this(pkiComponent, messageStore, sentMessagesOnly, ordered, routingPolicy, null);
+    }
+
+    /**
+     * @param duplicateIndex messages get alternative routes of their dropped copies - can be null
+     */
+    SharkMessageListImpl(SharkPKIComponent pkiComponent, SharkMessageStore messageStore,
+                    boolean sentMessagesOnly, boolean ordered, SharkMessengerRoutingPolicy routingPolicy,
+                    SharkMessageDuplicateIndex duplicateIndex) throws IOException {
         this.pkiComponent = pkiComponent;
+        this.messageStore = messageStore;
+        this.duplicateIndex = duplicateIndex;
+        this.sentMessagesOnly = sentMessagesOnly;
+        this.routingPolicy = routingPolicy;
+        this.now = System.currentTimeMillis();
 
-        if(sentMessagesOnly) {
-            this.asapMessages = asapChannel.getMessages();
+        if(messageStore instanceof AbstractSharkMessageStore) {
+            // extended with new messages only
+            this.listIndex = ((AbstractSharkMessageStore) messageStore).getListIndex();
         } else {
-            if(ordered) {
-                this.asapMessages = asapChannel.getMessages(new SharkMessageComparison(pkiComponent));
-            } else {
-                this.asapMessages = asapChannel.getMessages(false);
+            // other store implementations - index of this list only
+            this.listIndex = new SharkMessageListIndex(false);
+        }
+        this.number = this.listIndex.extend(messageStore);
+        this.latestWalk = this.number;
+
+        // sent messages are already ordered
+        this.storePositions = ordered && !sentMessagesOnly ? this.listIndex.getCreationOrder(
+                messageStore, new SharkMessageComparison(pkiComponent), this.number) : null;
+    }
+
+    /**
+     * Walk from oldest message until position is found or walks met.
+     */
+    private int walkFromOldest(int position) {
+        while(this.foundFromOldest <= position && this.oldestWalk < this.latestWalk) {
+            int storePosition = this.storePosition(this.oldestWalk++);
+            if(this.isVisible(storePosition)) {
+                if(this.foundFromOldest == this.fromOldest.length) {
+                    this.fromOldest = Arrays.copyOf(this.fromOldest, this.fromOldest.length * 2);
+                }
+                this.fromOldest[this.foundFromOldest++] = storePosition;
             }
         }
+        return this.foundFromOldest;
+    }
+
+    /**
+     * Walk from latest message until position is found or walks met.
+     */
+    private int walkFromLatest(int position) {
+        while(this.foundFromLatest <= position && this.latestWalk > this.oldestWalk) {
+            int storePosition = this.storePosition(--this.latestWalk);
+            if(this.isVisible(storePosition)) {
+                if(this.foundFromLatest == this.fromLatest.length) {
+                    this.fromLatest = Arrays.copyOf(this.fromLatest, this.fromLatest.length * 2);
+                }
+                this.fromLatest[this.foundFromLatest++] = storePosition;
+            }
+        }
+        return this.foundFromLatest;
+    }
+
+    private int storePosition(int walkPosition) {
+        return this.storePositions == null ? walkPosition : this.storePositions[walkPosition];
+    }
+
+    private boolean isVisible(int storePosition) {
+        return this.listIndex.isVisible(storePosition, this.sentMessagesOnly, this.routingPolicy, this.now);
+    }
+
+    private synchronized int storePositionOf(int position, boolean chronologically) {
+        if(position >= 0) {
+            if(chronologically && this.walkFromOldest(position) > position) return this.fromOldest[position];
+            if(!chronologically && this.walkFromLatest(position) > position) return this.fromLatest[position];
+            if(this.oldestWalk == this.latestWalk) {
+                // walks met - position is on the other side
+                int total = this.foundFromOldest + this.foundFromLatest;
+                int other = total - 1 - position;
+                if(other >= 0) return chronologically ? this.fromLatest[other] : this.fromOldest[other];
+            }
+        }
+        throw new IndexOutOfBoundsException("position " + position + " / size " + this.size());
     }
 
     @Override
     public SharkMessage getSharkMessage(int position, boolean chronologically) throws SharkMessengerException {
         try {
-            List<ASAPHop> hopsList = this.asapMessages.getChunk(position, chronologically).getASAPHopList();
-            byte[] content = this.asapMessages.getMessage(position, chronologically);
-            return InMemoSharkMessage.parseMessage(content, hopsList, this.pkiComponent);
+            int storePosition = this.storePositionOf(position, chronologically);
+            List<ASAPHop> hopsList = this.messageStore.getASAPHops(storePosition);
+            byte[] content = this.messageStore.getMessage(storePosition);
+            InMemoSharkMessage sharkMessage = InMemoSharkMessage.parseMessage(content, hopsList, this.pkiComponent);
+            if(this.duplicateIndex != null) {
+                sharkMessage.setAlternativeRoutes(
+                        this.duplicateIndex.getAlternativeRoutes(this.messageStore.getURI(), content));
+            }
+            return sharkMessage;
         }
-        catch(ASAPException | IOException asapException) {
-            throw new SharkMessengerException(asapException);
+        catch(ASAPException | IOException | IndexOutOfBoundsException e) {
+            throw new SharkMessengerException(e);
         }
     }
 
+    /**
+     * @return number of visible messages - counted by store index, messages are not read
+     */
     @Override
-    public int size() throws IOException {
-        return this.asapMessages.size();
+    public synchronized int size() {
+        if(this.size < 0) {
+            this.size = this.listIndex.countVisible(this.number, this.sentMessagesOnly, this.routingPolicy, this.now);
+        }
+        return this.size;
     }
 }
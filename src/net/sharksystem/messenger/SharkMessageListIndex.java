@@ -0,0 +1,214 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPHop;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What a message list needs to know about each message of a store - kept with the store and extended with new
+ * messages only. Message lists filter and order with it. They do not read, hash or parse a message unless it is
+ * returned.
+ * <br/><br/>
+ * Each message is read once when the index is extended: its route and its unencrypted head. Creation times need a
+ * parsed (and maybe decrypted) message. They are only taken when an ordered list is asked for the first time.
+ * <br/><br/>
+ * Entries are never changed, arrays are only replaced when they grow: a list keeps working with the index it got.
+ * Stores drop their index whenever positions of their messages change.
+ */
+class SharkMessageListIndex {
+    /** message was produced on this peer */
+    static final byte SENT = 0x01;
+    /** received copy of a message that is already on a lower position - asap engine stores each copy */
+    static final byte COPY = 0x02;
+    /** route is accepted by {@link SharkMessengerRoutingPolicy#DIRECT_ONLY} */
+    static final byte DIRECT_ROUTE = 0x04;
+    /** route is accepted by {@link SharkMessengerRoutingPolicy#AD_HOC_ROUTING} */
+    static final byte AD_HOC_ROUTE = 0x08;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Set<Long> digests; // null: store keeps no copies
+    // replaced when grown - lists read without lock
+    private volatile byte[] flags = new byte[INITIAL_CAPACITY];
+    /** message is hidden from that time on - expired or over its hop limit */
+    private volatile long[] hiddenFrom = new long[INITIAL_CAPACITY];
+    private int size = 0;
+    /** by routing policy and sent messages only - expiry not considered */
+    private final int[] visibleCounts = new int[SharkMessengerRoutingPolicy.values().length * 2];
+    /** positions of messages with an expiry time */
+    private int[] expiring = new int[INITIAL_CAPACITY];
+    private int expiringSize = 0;
+
+    private long[] creationTimes; // taken with first ordered list
+    private int creationTimesSize = 0;
+    private boolean chronological = true; // storage order is creation order
+    private int[] order; // creation order - null: storage order or not yet sorted
+    private int orderSize = 0;
+
+    /**
+     * @param keepsCopies true: store keeps each received copy of a message. Copies are marked.
+     */
+    SharkMessageListIndex(boolean keepsCopies) {
+        this.digests = keepsCopies ? new HashSet<>() : null;
+    }
+
+    /**
+     * Take messages the store got since last call.
+     * @return number of indexed messages
+     */
+    synchronized int extend(SharkMessageStore store) throws IOException {
+        int storeSize = store.size();
+        byte[] flags = this.flags;
+        long[] hiddenFrom = this.hiddenFrom;
+        if(storeSize > flags.length) {
+            int capacity = Math.max(storeSize, flags.length * 2);
+            flags = Arrays.copyOf(flags, capacity);
+            hiddenFrom = Arrays.copyOf(hiddenFrom, capacity);
+        }
+        for(int position = this.size; position < storeSize; position++) {
+            List<ASAPHop> hops = store.getASAPHops(position);
+            byte[] message = store.getMessage(position);
+            byte messageFlags = 0;
+            if(hops.isEmpty()) messageFlags |= SENT;
+            if(SharkMessengerRoutingPolicy.DIRECT_ONLY.accepts(hops)) messageFlags |= DIRECT_ROUTE;
+            if(SharkMessengerRoutingPolicy.AD_HOC_ROUTING.accepts(hops)) messageFlags |= AD_HOC_ROUTE;
+            if(this.digests != null && !this.digests.add(SharkMessengerSync.digest(message))) messageFlags |= COPY;
+            flags[position] = messageFlags;
+            hiddenFrom[position] = hiddenFrom(message, hops.size());
+            if(hiddenFrom[position] == Long.MIN_VALUE) continue; // never visible
+            for(SharkMessengerRoutingPolicy policy : SharkMessengerRoutingPolicy.values()) {
+                if(isVisible(messageFlags, false, policy)) this.visibleCounts[countIndex(false, policy)]++;
+                if(isVisible(messageFlags, true, policy)) this.visibleCounts[countIndex(true, policy)]++;
+            }
+            if(hiddenFrom[position] != Long.MAX_VALUE) {
+                if(this.expiringSize == this.expiring.length) {
+                    this.expiring = Arrays.copyOf(this.expiring, this.expiring.length * 2);
+                }
+                this.expiring[this.expiringSize++] = position;
+            }
+        }
+        // published after entries are written
+        this.hiddenFrom = hiddenFrom;
+        this.flags = flags;
+        this.size = Math.max(this.size, storeSize);
+        return this.size;
+    }
+
+    private static long hiddenFrom(byte[] message, int routeLength) {
+        SharkMessageHeader header;
+        try {
+            header = SharkMessageHeader.read(message);
+        } catch (IOException e) {
+            // malformed - reported when parsed
+            return Long.MAX_VALUE;
+        }
+        if(header.exceedsHopLimit(routeLength)) return Long.MIN_VALUE;
+        return header.getExpiryTime() == SharkMessageHeader.NO_EXPIRY ? Long.MAX_VALUE : header.getExpiryTime();
+    }
+
+    /**
+     * @param position not more than returned by last extension
+     * @return true if a message list shows the message on that position
+     */
+    boolean isVisible(int position, boolean sentMessagesOnly, SharkMessengerRoutingPolicy routingPolicy,
+                      long now) {
+        // expiry time is the last moment a message is valid
+        return now <= this.hiddenFrom[position] && isVisible(this.flags[position], sentMessagesOnly, routingPolicy);
+    }
+
+    private static boolean isVisible(byte messageFlags, boolean sentMessagesOnly,
+                                     SharkMessengerRoutingPolicy routingPolicy) {
+        if((messageFlags & COPY) != 0) return false;
+        if(sentMessagesOnly && (messageFlags & SENT) == 0) return false;
+        switch(routingPolicy) {
+            case DIRECT_ONLY: return (messageFlags & DIRECT_ROUTE) != 0;
+            case AD_HOC_ROUTING: return (messageFlags & AD_HOC_ROUTE) != 0;
+            default: return true;
+        }
+    }
+
+    private static int countIndex(boolean sentMessagesOnly, SharkMessengerRoutingPolicy routingPolicy) {
+        return routingPolicy.ordinal() * 2 + (sentMessagesOnly ? 1 : 0);
+    }
+
+    /**
+     * @param number messages to count - not more than returned by last extension
+     * @return number of messages a message list shows. Only messages with an expiry time are looked at.
+     */
+    synchronized int countVisible(int number, boolean sentMessagesOnly, SharkMessengerRoutingPolicy routingPolicy,
+                                  long now) {
+        if(number != this.size) {
+            // index grew since - count
+            int count = 0;
+            for(int position = 0; position < number; position++) {
+                if(this.isVisible(position, sentMessagesOnly, routingPolicy, now)) count++;
+            }
+            return count;
+        }
+        int count = this.visibleCounts[countIndex(sentMessagesOnly, routingPolicy)];
+        for(int i = 0; i < this.expiringSize; i++) {
+            int position = this.expiring[i];
+            if(now > this.hiddenFrom[position] && isVisible(this.flags[position], sentMessagesOnly, routingPolicy)) {
+                count--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Positions in order of creation time - messages with same creation time remain in storage order. Each
+     * message is parsed once for its creation time - when it is ordered the first time.
+     * @param number positions to order - not more than returned by last extension
+     * @return positions in creation order - null: storage order is creation order
+     */
+    synchronized int[] getCreationOrder(SharkMessageStore store, SharkMessageComparison comparison, int number)
+            throws IOException {
+        if(this.creationTimes == null) this.creationTimes = new long[Math.max(number, INITIAL_CAPACITY)];
+        if(number > this.creationTimes.length) {
+            this.creationTimes = Arrays.copyOf(this.creationTimes, Math.max(number, this.creationTimes.length * 2));
+        }
+        for(int position = this.creationTimesSize; position < number; position++) {
+            long creationTime = comparison.getCreationTime(store.getMessage(position));
+            this.creationTimes[position] = creationTime;
+            if(position > 0 && creationTime < this.creationTimes[position - 1]) this.chronological = false;
+        }
+        this.creationTimesSize = Math.max(this.creationTimesSize, number);
+        if(this.chronological) return null;
+
+        if(this.order == null || this.orderSize != number) {
+            this.order = sortByKeys(this.creationTimes, number);
+            this.orderSize = number;
+        }
+        return this.order;
+    }
+
+    /**
+     * Stable merge sort of positions by their keys - no boxing.
+     */
+    static int[] sortByKeys(long[] keys, int number) {
+        int[] positions = new int[number];
+        for(int i = 0; i < number; i++) positions[i] = i;
+        int[] buffer = new int[number];
+        for(int width = 1; width < number; width *= 2) {
+            for(int from = 0; from < number; from += 2 * width) {
+                int middle = Math.min(from + width, number), to = Math.min(from + 2 * width, number);
+                int left = from, right = middle, target = from;
+                while(left < middle && right < to) {
+                    // left first on same key - stable
+                    buffer[target++] = keys[positions[right]] < keys[positions[left]]
+                            ? positions[right++] : positions[left++];
+                }
+                while(left < middle) buffer[target++] = positions[left++];
+                while(right < to) buffer[target++] = positions[right++];
+            }
+            int[] swap = positions;
+            positions = buffer;
+            buffer = swap;
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,29 @@
+package net.sharksystem.messenger;
+
+import java.io.IOException;
+
+/**
+ * Provides message stores for channels.
+ */
+public interface SharkMessageStorage {
+    /**
+     * @param uri channel uri
+     * @return message store of this channel. It is created if it does not exist yet.
+     * @throws IOException problems when accessing storage
+     */
+    SharkMessageStore getStore(CharSequence uri) throws IOException;
+
+    /**
+     * Remove a store and any message in it. The store is detached at once. Its content can be deleted in
+     * background.
+     * @param uri channel uri
+     * @throws IOException problems when accessing storage
+     */
+    void removeStore(CharSequence uri) throws IOException;
+
+    /**
+     * @return true if messages are persisted by the ASAP engine. Messages are sent with the usual ASAP mechanisms
+     * in that case. Messages of other stores are sent as transient ASAP messages.
+     */
+    boolean persistedByASAP();
+}
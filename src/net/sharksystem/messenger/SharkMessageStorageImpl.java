@@ -0,0 +1,170 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPPeer;
+import net.sharksystem.asap.ASAPStorage;
+import net.sharksystem.utils.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Produces and caches message stores of a given type. There is exactly one store object for each channel. Index
+ * hooks can rely on that.
+ * <br/><br/>
+ * Removed stores are detached at once. Their content is deleted by a background executor.
+ */
+class SharkMessageStorageImpl implements SharkMessageStorage {
+    /** URLEncoder encodes ~ - no store folder can end like this */
+    static final String REMOVED_FOLDER_SUFFIX = "~removed~";
+
+    private final SharkMessageStoreType storeType;
+    private final ASAPPeer asapPeer;
+    private final File rootFolder;
+    private final Executor backgroundExecutor;
+    private final SharkMessengerCacheBudget cacheBudget;
+    private final Map<String, SharkMessageStore> stores = new ConcurrentHashMap<>();
+
+    /**
+     * @param storeType type of store
+     * @param asapPeer asap peer - required with ASAP stores
+     * @param rootFolder folder for mapped files - required with mapped file stores
+     */
+    SharkMessageStorageImpl(SharkMessageStoreType storeType, ASAPPeer asapPeer, CharSequence rootFolder)
+            throws SharkMessengerException {
+        // remove content in calling thread
+        this(storeType, asapPeer, rootFolder, Runnable::run);
+    }
+
+    /**
+     * @param storeType type of store
+     * @param asapPeer asap peer - required with ASAP stores
+     * @param rootFolder folder for mapped files - required with mapped file stores
+     * @param backgroundExecutor deletes content of removed stores
+     */
+    SharkMessageStorageImpl(SharkMessageStoreType storeType, ASAPPeer asapPeer, CharSequence rootFolder,
+                            Executor backgroundExecutor) throws SharkMessengerException {
+        this(storeType, asapPeer, rootFolder, backgroundExecutor, null);
+    }
+
+    /**
+     * @param storeType type of store
+     * @param asapPeer asap peer - required with ASAP stores
+     * @param rootFolder folder for mapped files - required with mapped file stores
+     * @param backgroundExecutor deletes content of removed stores
+     * @param cacheBudget limits cached message views of ASAP stores - null: no limit
+     */
+    SharkMessageStorageImpl(SharkMessageStoreType storeType, ASAPPeer asapPeer, CharSequence rootFolder,
+                            Executor backgroundExecutor, SharkMessengerCacheBudget cacheBudget)
+            throws SharkMessengerException {
+
+        if(storeType == SharkMessageStoreType.MAPPED_FILE && rootFolder == null) {
+            throw new SharkMessengerException("mapped file store requires a root folder");
+        }
+        this.storeType = storeType;
+        this.asapPeer = asapPeer;
+        this.rootFolder = rootFolder != null ? new File(rootFolder.toString()) : null;
+        this.backgroundExecutor = backgroundExecutor;
+        this.cacheBudget = cacheBudget;
+
+        // stores removed before last shutdown but not yet deleted
+        if(this.storeType == SharkMessageStoreType.MAPPED_FILE) {
+            File[] leftovers = this.rootFolder.listFiles(
+                    (dir, name) -> name.endsWith(REMOVED_FOLDER_SUFFIX));
+            if(leftovers != null) {
+                for(File leftover : leftovers) {
+                    this.backgroundExecutor.execute(() -> MappedSharkMessageStore.deleteFolder(leftover));
+                }
+            }
+        }
+    }
+
+    SharkMessageStoreType getStoreType() {
+        return this.storeType;
+    }
+
+    @Override
+    public boolean persistedByASAP() {
+        return this.storeType == SharkMessageStoreType.ASAP;
+    }
+
+    @Override
+    public SharkMessageStore getStore(CharSequence uri) throws IOException {
+        String key = uri.toString();
+        SharkMessageStore store = this.stores.get(key);
+        if(store != null) return store;
+
+        synchronized(this.stores) {
+            store = this.stores.get(key);
+            if(store == null) {
+                store = this.createStore(uri);
+                this.stores.put(key, store);
+            }
+        }
+        return store;
+    }
+
+    private SharkMessageStore createStore(CharSequence uri) throws IOException {
+        switch (this.storeType) {
+            case IN_MEMORY:
+                return new InMemoSharkMessageStore(uri);
+            case MAPPED_FILE:
+                return new MappedSharkMessageStore(uri, this.getFolder(uri));
+            case ASAP:
+            default:
+                try {
+                    ASAPStorage asapStorage =
+                            this.asapPeer.getASAPStorage(SharkMessengerComponent.SHARK_MESSENGER_FORMAT);
+                    if(!asapStorage.channelExists(uri)) asapStorage.createChannel(uri);
+                    return new ASAPSharkMessageStore(this.asapPeer, asapStorage.getChannel(uri), this.cacheBudget);
+                } catch (ASAPException e) {
+                    throw new IOException(e.getLocalizedMessage(), e);
+                }
+        }
+    }
+
+    File getFolder(CharSequence uri) {
+        return new File(this.rootFolder, URLEncoder.encode(uri.toString(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void removeStore(CharSequence uri) throws IOException {
+        SharkMessageStore store = this.stores.remove(uri.toString());
+        switch (this.storeType) {
+            case IN_MEMORY:
+                if(store != null) ((InMemoSharkMessageStore) store).clear();
+                break;
+            case MAPPED_FILE:
+                if(store != null) ((MappedSharkMessageStore) store).close();
+                File folder = this.getFolder(uri);
+                if(!folder.exists()) break;
+                // rename is cheap - a new store with same uri can be created at once
+                File removed = new File(this.rootFolder, folder.getName() + REMOVED_FOLDER_SUFFIX);
+                if(removed.exists()) MappedSharkMessageStore.deleteFolder(removed);
+                File toBeDeleted = folder.renameTo(removed) ? removed : folder;
+                this.backgroundExecutor.execute(() -> MappedSharkMessageStore.deleteFolder(toBeDeleted));
+                break;
+            case ASAP:
+            default:
+                // own chunks are removed with asap channel - received chunks are kept in incoming storages
+                this.backgroundExecutor.execute(() -> this.removeReceivedChunks(uri));
+                break;
+        }
+    }
+
+    private void removeReceivedChunks(CharSequence uri) {
+        try {
+            ASAPStorage asapStorage = this.asapPeer.getASAPStorage(SharkMessengerComponent.SHARK_MESSENGER_FORMAT);
+            for(CharSequence sender : asapStorage.getSender()) {
+                asapStorage.getExistingIncomingStorage(sender).removeChannel(uri);
+            }
+        } catch (IOException | ASAPException e) {
+            Log.writeLogErr(this, "cannot remove received messages of " + uri + ": " + e.getLocalizedMessage());
+        }
+    }
+}
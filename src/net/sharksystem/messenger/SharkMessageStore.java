@@ -0,0 +1,83 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPHop;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Storage of serialized shark messages of a single channel. Messages are kept in storage order. Positions start
+ * with 0. The first message that was appended has position 0.
+ * <br/><br/>
+ * There are different implementations. Default is a store that uses the ASAP storage of the peer. There are also
+ * stores that keep messages in memory or in memory mapped segment files.
+ *
+ * @see SharkMessageStorage
+ * @see SharkMessageStoreType
+ */
+public interface SharkMessageStore {
+    /**
+     * @return uri of the channel this store belongs to
+     */
+    CharSequence getURI();
+
+    /**
+     * Append a message that was produced on this peer.
+     * @param message serialized shark message
+     * @throws IOException problems when writing
+     */
+    void append(byte[] message) throws IOException;
+
+    /**
+     * Append a message that was received from another peer. ASAP based stores do not store anything - the
+     * ASAP engine already did it. Index hooks are notified in any case.
+     * @param message serialized shark message
+     * @param hops route of this message
+     * @throws IOException problems when writing
+     */
+    void assimilate(byte[] message, List<ASAPHop> hops) throws IOException;
+
+    /**
+     * @param position position in storage order
+     * @return serialized shark message
+     * @throws IOException problems when reading
+     * @throws IndexOutOfBoundsException no message on that position
+     */
+    byte[] getMessage(int position) throws IOException;
+
+    /**
+     * @param position position in storage order
+     * @return route of this message - empty if it was produced on this peer.
+     * @throws IOException problems when reading
+     */
+    List<ASAPHop> getASAPHops(int position) throws IOException;
+
+    /**
+     * Range read.
+     * @param fromPosition first position (inclusive)
+     * @param toPosition last position (exclusive)
+     * @return serialized shark messages in storage order
+     * @throws IOException problems when reading
+     */
+    List<byte[]> getMessages(int fromPosition, int toPosition) throws IOException;
+
+    /**
+     * @return number of messages in this store
+     * @throws IOException problems when reading
+     */
+    int size() throws IOException;
+
+    /**
+     * Drop oldest messages that violate a retention policy. Readers are not blocked while a store is rewritten.
+     * Positions of remaining messages change: oldest remaining message gets position 0.
+     * @param policy retention policy
+     * @param now current time
+     * @return number of dropped messages
+     * @throws IOException problems when rewriting
+     */
+    int compact(SharkMessengerRetentionPolicy policy, long now) throws IOException;
+
+    void addIndexHook(SharkMessageStoreIndexHook hook);
+
+    void removeIndexHook(SharkMessageStoreIndexHook hook);
+}
@@ -0,0 +1,28 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPHop;
+
+import java.util.List;
+
+/**
+ * Called whenever a message became part of a message store. Indices (like a duplicate index) can be
+ * kept up to date without re-reading a channel.
+ */
+public interface SharkMessageStoreIndexHook {
+    /**
+     * @param uri channel uri
+     * @param position position of this message in storage order. Can be -1 if a store does not know positions
+     *                 of received messages (ASAP based stores).
+     * @param message serialized shark message
+     * @param hops route of this message - empty if produced on this peer
+     */
+    void messageAppended(CharSequence uri, int position, byte[] message, List<ASAPHop> hops);
+
+    /**
+     * Store was compacted - messages were dropped, positions of remaining messages changed.
+     * @param uri channel uri
+     */
+    default void storeCompacted(CharSequence uri) {
+        // indices without positions are still valid
+    }
+}
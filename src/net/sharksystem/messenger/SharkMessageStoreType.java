@@ -0,0 +1,25 @@
+package net.sharksystem.messenger;
+
+/**
+ * Available message store implementations.
+ * <br/><br/>
+ * Delivery depends on the store. ASAP stores are exchanged by the ASAP engine era by era. Other stores are not:
+ * a new message is sent as transient message to peers connected right now. Peers that are not connected get it
+ * when they meet a peer holding it - channels are reconciled on each encounter (see SharkMessengerSync). Peers
+ * with ASAP stores take no part in that reconciliation: they only get messages of other stores while connected.
+ */
+public enum SharkMessageStoreType {
+    /**
+     * messages are kept in the ASAP storage of the peer - default. The ASAP engine stores each received copy
+     * before the messenger sees it: there is no duplicate index, received duplicates are not dropped. Message
+     * lists hide copies - and in Internet age channels copies over further hubs are not reported as received.
+     */
+    ASAP,
+    /**
+     * messages are kept in memory only - nothing is written to disk. Suitable for relays and tests. Received
+     * duplicates are dropped before they are stored.
+     */
+    IN_MEMORY,
+    /** messages are kept in memory mapped segment files. Received duplicates are dropped before they are stored. */
+    MAPPED_FILE
+}
@@ -15,10 +15,12 @@ public class SharkMessagesReceivedListenerManager extends GenericListenerImpleme
     protected void notifySharkMessageReceivedListener(
             CharSequence uri) {
 
+        long start = System.nanoTime();
         SharkMessagesReceivedNotifier sharkMessagesReceivedNotifier =
                 new SharkMessagesReceivedNotifier(uri);
 
         this.notifyAll(sharkMessagesReceivedNotifier, false);
+        SharkMessengerMetrics.getMetrics().record(SharkMessengerOperation.LISTENER_DISPATCH, uri, start);
     }
 
     private class SharkMessagesReceivedNotifier implements GenericNotifier<SharkMessagesReceivedListener> {
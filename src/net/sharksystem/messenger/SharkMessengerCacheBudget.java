@@ -0,0 +1,62 @@
+package net.sharksystem.messenger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Limits the number of caches kept at the same time - across all stores it is shared by. A cache reports each use.
+ * If there are more caches than allowed, the least recently used one is told to drop its content. It is rebuilt
+ * on next use.
+ */
+class SharkMessengerCacheBudget {
+    interface Cache {
+        /**
+         * Drop cached content. Called by other threads - must not block.
+         */
+        void dropCache();
+    }
+
+    private final int maxCaches;
+    /** access ordered - least recently used first */
+    private final LinkedHashMap<Cache, Boolean> caches = new LinkedHashMap<>(16, 0.75f, true);
+
+    SharkMessengerCacheBudget(int maxCaches) {
+        this.maxCaches = maxCaches;
+    }
+
+    /**
+     * A cache was filled or read.
+     */
+    void used(Cache cache) {
+        Cache evicted = null;
+        synchronized(this.caches) {
+            this.caches.put(cache, Boolean.TRUE);
+            if(this.caches.size() > this.maxCaches) {
+                Iterator<Cache> iterator = this.caches.keySet().iterator();
+                evicted = iterator.next();
+                iterator.remove();
+            }
+        }
+        // outside of lock - caches lock themselves
+        if(evicted != null) evicted.dropCache();
+    }
+
+    /**
+     * A cache dropped its content on its own.
+     */
+    void released(Cache cache) {
+        synchronized(this.caches) {
+            this.caches.remove(cache);
+        }
+    }
+
+    int size() {
+        synchronized(this.caches) {
+            return this.caches.size();
+        }
+    }
+
+    int getMaxCaches() {
+        return this.maxCaches;
+    }
+}
@@ -33,6 +33,14 @@ import java.util.Set;
  * @author Thomas Schwotzer
  */
 public interface SharkMessengerChannel {
+    /**
+     * Set communication age of this channel. It is persisted and decides how messages of this channel travel.
+     * Stone age: direct exchange in ad-hoc networks only. Bronze age: routing over ad-hoc networks. Network age:
+     * any transport. Channels without an age (UNDEFINED) are not restricted.
+     * @param channelAge communication age
+     * @throws IllegalStateException problems when writing channel settings
+     * @see SharkMessengerRoutingPolicy
+     */
     void setAge(SharkCommunicationAge channelAge);
 
     SharkCommunicationAge getAge();
@@ -49,6 +57,34 @@ public interface SharkMessengerChannel {
     boolean isBronzeAge();
     boolean isInternetAge();
 
+    /**
+     * Set retention rules of this channel. Oldest messages are dropped by a background compactor if they violate
+     * those rules.
+     * @param retentionPolicy retention rules - {@link SharkMessengerRetentionPolicy#UNLIMITED} keeps anything
+     * @throws IOException problems when writing channel settings
+     */
+    void setRetentionPolicy(SharkMessengerRetentionPolicy retentionPolicy) throws IOException;
+
+    /**
+     * @return retention rules of this channel - {@link SharkMessengerRetentionPolicy#UNLIMITED} if none are set
+     * @throws IOException problems when reading channel settings
+     */
+    SharkMessengerRetentionPolicy getRetentionPolicy() throws IOException;
+
+    /**
+     * Messages of channels with higher transfer priority are offered first during an encounter.
+     * @param priority transfer priority - default is 0
+     * @throws IOException problems when writing channel settings
+     * @see SharkMessengerTransferPriority#CHANNEL_PRIORITY
+     */
+    void setTransferPriority(int priority) throws IOException;
+
+    /**
+     * @return transfer priority of this channel - 0 if none is set
+     * @throws IOException problems when reading channel settings
+     */
+    int getTransferPriority() throws IOException;
+
     /**
      * Produce a list of messages in this channel.
      * @param sentMessagesOnly true: only messages sent by this peer; false: also received messages
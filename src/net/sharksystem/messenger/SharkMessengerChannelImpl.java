@@ -10,17 +10,70 @@ import java.util.HashMap;
 
 public class SharkMessengerChannelImpl implements SharkMessengerChannel {
     private static final String KEY_NAME_SHARK_MESSENGER_CHANNEL_NAME = "sharkMessengerChannelName";
-    private static final String KEY_AGE_SHARK_MESSENGER_CHANNEL_NAME = "sharkMessengerAge";
+    private static final String KEY_TRANSFER_PRIORITY_SHARK_MESSENGER_CHANNEL = "sharkMessengerTransferPriority";
 
     private final ASAPChannel asapChannel;
     private final ASAPPeer asapPeer;
     private final SharkPKIComponent pkiComponent;
+    private final SharkMessageStore messageStore;
+    private final SharkMessengerRoutingTable routingTable;
+    private final SharkMessageDuplicateIndex duplicateIndex; // can be null
     private CharSequence channelName;
 
     public SharkMessengerChannelImpl(ASAPPeer asapPeer, SharkPKIComponent pkiComponent, ASAPChannel asapChannel) {
+        this(asapPeer, pkiComponent, asapChannel, asapStore(asapPeer, asapChannel), new SharkMessengerRoutingTable(),
+                null);
+        try {
+            this.routingTable.add(asapChannel);
+        } catch (IOException e) {
+            Log.writeLogErr(this, "cannot read communication age: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Call this constructor to set up a new channel - set a name
+     * @param asapPeer
+     * @param pkiComponent
+     * @param asapChannel
+     * @param channelName
+     */
+    public SharkMessengerChannelImpl(ASAPPeer asapPeer,
+                SharkPKIComponent pkiComponent,
+                ASAPChannel asapChannel,
+                CharSequence channelName) throws IOException {
+
+        this(asapPeer, pkiComponent, asapChannel);
+        this.putName(asapChannel, channelName);
+    }
+
+    /**
+     * Messages are kept in asap storage - like with any channel before message stores were pluggable.
+     */
+    private static SharkMessageStore asapStore(ASAPPeer asapPeer, ASAPChannel asapChannel) {
+        try {
+            return new ASAPSharkMessageStore(asapPeer, asapChannel);
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot open asap channel: " + e.getLocalizedMessage(), e);
+        }
+    }
+
+    /**
+     * @param asapPeer
+     * @param pkiComponent
+     * @param asapChannel asap channel - keeps channel settings like its name
+     * @param messageStore keeps messages of this channel
+     * @param routingTable communication ages of all channels
+     * @param duplicateIndex knows alternative routes of messages - null if there is none
+     */
+    SharkMessengerChannelImpl(ASAPPeer asapPeer, SharkPKIComponent pkiComponent, ASAPChannel asapChannel,
+                              SharkMessageStore messageStore, SharkMessengerRoutingTable routingTable,
+                              SharkMessageDuplicateIndex duplicateIndex) {
         this.asapPeer = asapPeer;
         this.pkiComponent = pkiComponent;
         this.asapChannel = asapChannel;
+        this.messageStore = messageStore;
+        this.routingTable = routingTable;
+        this.duplicateIndex = duplicateIndex;
     }
 
     /**
@@ -28,15 +81,24 @@ public class SharkMessengerChannelImpl implements SharkMessengerChannel {
      * @param asapPeer
      * @param pkiComponent
      * @param asapChannel
+     * @param messageStore
+     * @param routingTable
+     * @param duplicateIndex
      * @param channelName
      */
-    public SharkMessengerChannelImpl(ASAPPeer asapPeer,
+    SharkMessengerChannelImpl(ASAPPeer asapPeer,
                 SharkPKIComponent pkiComponent,
                 ASAPChannel asapChannel,
+                SharkMessageStore messageStore,
+                SharkMessengerRoutingTable routingTable,
+                SharkMessageDuplicateIndex duplicateIndex,
                 CharSequence channelName) throws IOException {
 
-        this(asapPeer, pkiComponent, asapChannel);
+        this(asapPeer, pkiComponent, asapChannel, messageStore, routingTable, duplicateIndex);
+        this.putName(asapChannel, channelName);
+    }
 
+    private void putName(ASAPChannel asapChannel, CharSequence channelName) throws IOException {
         if(channelName != null) {
             asapChannel.putExtraData(KEY_NAME_SHARK_MESSENGER_CHANNEL_NAME, channelName.toString());
         } else {
@@ -51,12 +113,20 @@ public class SharkMessengerChannelImpl implements SharkMessengerChannel {
 
     @Override
     public void setAge(SharkCommunicationAge channelAge) {
-        Log.writeLog(this, "not yet implemented");
+        try {
+            this.routingTable.setAge(this.asapChannel, channelAge);
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot write channel age: " + e.getLocalizedMessage(), e);
+        }
     }
 
     @Override
     public SharkCommunicationAge getAge() {
-        return SharkCommunicationAge.UNDEFINED;
+        return this.routingTable.getAge(this.uri());
+    }
+
+    private CharSequence uri() {
+        return this.messageStore.getURI();
     }
 
     @Override
@@ -83,32 +153,56 @@ public class SharkMessengerChannelImpl implements SharkMessengerChannel {
 
     @Override
     public boolean isStoneAge() {
-        Log.writeLog(this, "not yet implemented");
-        return false;
+        return this.getAge() == SharkCommunicationAge.STONE_AGE;
     }
 
     @Override
     public boolean isBronzeAge() {
-        Log.writeLog(this, "not yet implemented");return false;
+        return this.getAge() == SharkCommunicationAge.BRONZE_AGE;
     }
 
     @Override
     public boolean isInternetAge() {
-        Log.writeLog(this, "not yet implemented");return false;
+        return this.getAge() == SharkCommunicationAge.NETWORK_AGE;
     }
 
     @Override
-    public SharkMessageList getMessages(boolean sentMessagesOnly, boolean ordered)
-            throws SharkMessengerException, IOException {
+    public void setRetentionPolicy(SharkMessengerRetentionPolicy retentionPolicy) throws IOException {
+        if(retentionPolicy == null) retentionPolicy = SharkMessengerRetentionPolicy.UNLIMITED;
+        retentionPolicy.writeToChannel(this.asapChannel);
+    }
+
+    @Override
+    public SharkMessengerRetentionPolicy getRetentionPolicy() throws IOException {
+        return SharkMessengerRetentionPolicy.readFromChannel(this.asapChannel);
+    }
 
+    @Override
+    public void setTransferPriority(int priority) throws IOException {
+        this.asapChannel.putExtraData(KEY_TRANSFER_PRIORITY_SHARK_MESSENGER_CHANNEL, Integer.toString(priority));
+    }
+
+    @Override
+    public int getTransferPriority() throws IOException {
+        HashMap<String, String> extraData = this.asapChannel.getExtraData();
+        String priority = extraData == null ? null : extraData.get(KEY_TRANSFER_PRIORITY_SHARK_MESSENGER_CHANNEL);
+        if(priority == null) return 0;
         try {
-            return new SharkMessageListImpl(this.pkiComponent, this.asapChannel, sentMessagesOnly, ordered);
-        }
-        catch(ASAPException e) {
-            throw new SharkMessengerException(e.getLocalizedMessage(), e);
+            return Integer.parseInt(priority);
+        } catch (NumberFormatException e) {
+            Log.writeLogErr(this, "malformed transfer priority: " + priority);
+            return 0;
         }
     }
 
+    @Override
+    public SharkMessageList getMessages(boolean sentMessagesOnly, boolean ordered)
+            throws SharkMessengerException, IOException {
+
+        return new SharkMessageListImpl(this.pkiComponent, this.messageStore, sentMessagesOnly, ordered,
+                this.routingTable.getPolicy(this.uri()), this.duplicateIndex);
+    }
+
     @Override
     public SharkMessageList getMessages() throws SharkMessengerException, IOException {
         return this.getMessages(false, true);
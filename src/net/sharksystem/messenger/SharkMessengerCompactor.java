@@ -0,0 +1,98 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPStorage;
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies retention policies of all channels and purges expired messages periodically. It runs in its own (daemon) thread. Removed stores
+ * are deleted in that thread as well. Nothing of that work blocks readers or senders.
+ */
+class SharkMessengerCompactor implements Runnable {
+    static final long DEFAULT_COMPACTION_INTERVAL_IN_MILLIS = 60 * 1000;
+
+    private final ASAPStorage asapStorage;
+    private final SharkMessageStorage messageStorage;
+    private final ScheduledExecutorService executor;
+    private ScheduledFuture<?> scheduledCompaction;
+
+    /**
+     * @param asapStorage asap storage - keeps channel settings
+     * @param messageStorage store provider
+     * @param executor runs compaction - should be shared with storage for deleting removed stores
+     * @see #createExecutor()
+     */
+    SharkMessengerCompactor(ASAPStorage asapStorage, SharkMessageStorage messageStorage,
+                            ScheduledExecutorService executor) {
+        this.asapStorage = asapStorage;
+        this.messageStorage = messageStorage;
+        this.executor = executor;
+    }
+
+    /**
+     * @return single daemon thread for background work like compaction and deleting removed stores
+     */
+    static ScheduledExecutorService createExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SharkMessengerCompactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    synchronized void start(long intervalInMillis) {
+        this.stop();
+        this.scheduledCompaction = this.executor.scheduleWithFixedDelay(
+                this, intervalInMillis, intervalInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() {
+        if(this.scheduledCompaction != null) {
+            this.scheduledCompaction.cancel(false);
+            this.scheduledCompaction = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            this.compact(System.currentTimeMillis());
+        }
+        catch(RuntimeException e) {
+            // an exception would cancel any further compaction
+            Log.writeLogErr(this, "compaction failed: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Apply retention policy of each channel.
+     * @param now current time
+     * @return number of dropped messages
+     */
+    int compact(long now) {
+        int dropped = 0;
+        try {
+            for(CharSequence uri : this.asapStorage.getChannelURIs()) {
+                try {
+                    // expired messages are purged even without a retention policy
+                    SharkMessengerRetentionPolicy policy =
+                            SharkMessengerRetentionPolicy.readFromChannel(this.asapStorage.getChannel(uri));
+                    dropped += this.messageStorage.getStore(uri).compact(policy, now);
+                }
+                catch(IOException | ASAPException e) {
+                    Log.writeLogErr(this, "cannot compact channel " + uri + ": " + e.getLocalizedMessage());
+                }
+            }
+        }
+        catch(IOException e) {
+            Log.writeLogErr(this, "cannot read channel list: " + e.getLocalizedMessage());
+        }
+        return dropped;
+    }
+}
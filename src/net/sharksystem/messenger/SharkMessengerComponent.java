@@ -2,6 +2,7 @@ package net.sharksystem.messenger;
 
 import net.sharksystem.ASAPFormats;
 import net.sharksystem.SharkComponent;
+import net.sharksystem.asap.ASAPConnectionHandler;
 import net.sharksystem.pki.SharkPKIComponent;
 
 import java.io.IOException;
@@ -96,7 +97,8 @@ import java.util.Set;
  * @author Thomas Schwotzer
  *
  */
-@ASAPFormats(formats = {SharkMessengerComponent.SHARK_MESSENGER_FORMAT})
+@ASAPFormats(formats = {SharkMessengerComponent.SHARK_MESSENGER_FORMAT,
+        SharkMessengerComponent.SHARK_MESSENGER_SYNC_FORMAT})
 public interface SharkMessengerComponent extends SharkComponent {
     String CHANNEL_DEFAULT_NAME = "channel has no name";
 
@@ -107,6 +109,9 @@ public interface SharkMessengerComponent extends SharkComponent {
 
     String SHARK_MESSENGER_FORMAT = "shark/messenger";
 
+    /** digests and missing messages exchanged during an encounter - only used with stores not exchanged by ASAP */
+    String SHARK_MESSENGER_SYNC_FORMAT = "shark/messenger/sync";
+
     // behaviour flags
     String SHARK_MESSENGER_STONE_AGE_MODE = "shark/messenger/mode/stone_age";
     String SHARK_MESSENGER_BRONZE_AGE_MODE = "shark/messenger/mode/bronze_age";
@@ -151,6 +156,108 @@ public interface SharkMessengerComponent extends SharkComponent {
     void sendSharkMessage(byte[] content, CharSequence uri, boolean sign, boolean encrypt)
             throws SharkMessengerException, IOException;
 
+    /**
+     * Variant. Message is limited in time and route length. Limits are part of the unencrypted message head. Peers
+     * check them without decrypting. Outdated messages are neither stored nor forwarded.
+     *
+     * @param timeToLiveInMillis message expires after that time - 0: never
+     * @param hopLimit maximum route length - 0: no limit
+     * @see #sendSharkMessage(byte[], CharSequence, Set, boolean, boolean)
+     * @see SharkMessage#getExpiryTime()
+     * @see SharkMessage#getHopLimit()
+     * @since 1.2
+     */
+    void sendSharkMessage(byte[] content, CharSequence uri, Set<CharSequence> receiver,
+                          boolean sign, boolean encrypt, long timeToLiveInMillis, int hopLimit)
+            throws SharkMessengerException, IOException;
+
+    /**
+     * Send an ephemeral message - like presence, typing indicators or read receipts. It is only sent to peers
+     * which are currently connected. It is neither stored on disk nor routed later. Receivers keep it in a
+     * small in-memory ring.
+     *
+     * @see #sendSharkMessage(byte[], CharSequence, Set, boolean, boolean)
+     * @see #getEphemeralMessages(CharSequence)
+     * @since 1.2
+     */
+    void sendEphemeralSharkMessage(byte[] content, CharSequence uri, Set<CharSequence> receiver,
+                          boolean sign, boolean encrypt) throws SharkMessengerException, IOException;
+
+    /**
+     * Recent ephemeral messages of a channel - sent and received. Older ones are dropped when the ring is full.
+     * @param uri channel uri
+     * @return ephemeral messages ordered by creation time
+     * @throws IOException problems when reading
+     * @since 1.2
+     */
+    SharkMessageList getEphemeralMessages(CharSequence uri) throws SharkMessengerException, IOException;
+
+    /**
+     * Decide which messages are sent first during an encounter and how much is sent at all. It applies to
+     * channels reconciled by this messenger (in-memory and mapped file stores). ASAP stores are exchanged by
+     * the ASAP engine in storage order.
+     * @param priorities criteria - first one decides, next ones break ties. Default: channel priority, direct
+     *                   recipient, recency
+     * @param byteBudget maximum number of message bytes sent to a peer per encounter - 0: unlimited
+     * @param timeBudgetInMillis messages are sent within this time after an encounter started - 0: unlimited
+     * @see SharkMessengerChannel#setTransferPriority(int)
+     * @since 1.2
+     */
+    void setTransferSchedule(List<SharkMessengerTransferPriority> priorities, int byteBudget,
+                             long timeBudgetInMillis);
+
+    /**
+     * Counts and latencies of send, crypto, parse, storage and listener operations - for all messengers in this
+     * process. Also available as platform MBean.
+     * @since 1.2
+     */
+    SharkMessengerMetrics getMetrics();
+
+    /**
+     * Messages sent with tracing on carry a trace id and their send time in their unencrypted head. Receiving
+     * peers measure delivery latency with it. Default: off.
+     * @see #getDeliveryTracer()
+     * @since 1.2
+     */
+    void setDeliveryTracing(boolean on);
+
+    boolean isDeliveryTracing();
+
+    /**
+     * Peers connected to several hubs get messages of Internet age channels over each of them. With fan-out on,
+     * new messages are pushed over each open connection - each with its own thread, see
+     * {@link #getConnectionHandler()} - and copies arriving over more than one hub are dropped on arrival.
+     * Default: off.
+     * @since 1.2
+     */
+    void setHubFanOut(boolean on);
+
+    boolean isHubFanOut();
+
+    /**
+     * Connection handler for encounter managers of this peer. It hands connections to the ASAP peer and keeps
+     * track of them - the messenger can push messages over each open connection (hub fan-out).
+     * @throws SharkMessengerException component not running or its ASAP peer handles no connections
+     * @since 1.2
+     */
+    ASAPConnectionHandler getConnectionHandler() throws SharkMessengerException;
+
+    /**
+     * @return delivery latencies of traced messages that arrived on this peer
+     * @since 1.2
+     */
+    SharkMessengerDeliveryTracer getDeliveryTracer();
+
+    /**
+     * Follow a channel: hook is told about each message that becomes part of this channel - sent or received,
+     * ephemeral or not. The channel is not re-read.
+     * @param uri channel uri
+     * @since 1.2
+     */
+    void addMessageStoreHook(CharSequence uri, SharkMessageStoreIndexHook hook) throws IOException;
+
+    void removeMessageStoreHook(CharSequence uri, SharkMessageStoreIndexHook hook) throws IOException;
+
     /**
      * Create a new channel.
      *
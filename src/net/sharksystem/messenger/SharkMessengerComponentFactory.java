@@ -6,6 +6,9 @@ import net.sharksystem.pki.SharkPKIComponent;
 
 public class SharkMessengerComponentFactory implements SharkComponentFactory {
     private final SharkPKIComponent pkiComponent;
+    private final SharkMessageStoreType storeType;
+    private final CharSequence storageFolder;
+    private final SharkMessengerSharedResources sharedResources;
 //    private final SharkContactInformationComponent contactsComponent;
 
     /*
@@ -19,11 +22,38 @@ public class SharkMessengerComponentFactory implements SharkComponentFactory {
 
     public SharkMessengerComponentFactory(SharkPKIComponent pkiComponent) {
 //        this(pkiComponent, null);
+        this(pkiComponent, SharkMessageStoreType.ASAP, null);
+    }
+
+    /**
+     * @param pkiComponent pki
+     * @param storeType where messages are kept
+     * @param storageFolder folder for message stores - required for mapped file stores, ignored otherwise
+     */
+    public SharkMessengerComponentFactory(SharkPKIComponent pkiComponent,
+                                          SharkMessageStoreType storeType, CharSequence storageFolder) {
+        this(pkiComponent, storeType, storageFolder, null);
+    }
+
+    /**
+     * @param pkiComponent pki
+     * @param storeType where messages are kept
+     * @param storageFolder folder for message stores - required for mapped file stores, ignored otherwise
+     * @param sharedResources threads and caches shared with messengers of other peers in this process -
+     *                        null: messenger has its own
+     */
+    public SharkMessengerComponentFactory(SharkPKIComponent pkiComponent,
+                                          SharkMessageStoreType storeType, CharSequence storageFolder,
+                                          SharkMessengerSharedResources sharedResources) {
         this.pkiComponent = pkiComponent;
+        this.storeType = storeType;
+        this.storageFolder = storageFolder;
+        this.sharedResources = sharedResources;
     }
 
     @Override
     public SharkComponent getComponent() {
-        return new SharkMessengerComponentImpl(pkiComponent);
+        return new SharkMessengerComponentImpl(this.pkiComponent, this.storeType, this.storageFolder,
+                this.sharedResources);
     }
 }
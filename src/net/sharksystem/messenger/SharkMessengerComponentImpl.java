@@ -12,22 +12,93 @@ import net.sharksystem.utils.Log;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 
 class SharkMessengerComponentImpl extends SharkMessagesReceivedListenerManager
-        implements SharkMessengerComponent, ASAPMessageReceivedListener {
+        implements SharkMessengerComponent, ASAPMessageReceivedListener, SharkMessengerSyncContext {
+
+    /** below storage folder - url encoded channel folders never contain a ~ */
+    static final String DUPLICATE_INDEX_FOLDER = "~duplicates";
 
     private final SharkPKIComponent sharkPKIComponent;
+    private final SharkMessageStoreType storeType;
+    private final CharSequence storageFolder;
+    private final SharkMessengerSharedResources sharedResources; // can be null
     private ASAPPeer asapPeer;
+    private SharkMessageStorage messageStorage;
+    private SharkMessengerCompactor compactor;
+    private final SharkMessengerRoutingTable routingTable = new SharkMessengerRoutingTable();
+    private SharkMessageDuplicateIndex duplicateIndex; // null with ASAP stores - engine stores each copy first
+    private final SharkMessengerTransferScheduler transferScheduler = new SharkMessengerTransferScheduler();
+    private SharkMessengerDeliveryWatermarks deliveryWatermarks;
+    private final Map<String, EphemeralSharkMessageRing> ephemeralMessages = new ConcurrentHashMap<>();
+    private final SharkMessengerMetrics metrics = SharkMessengerMetrics.getMetrics();
+    private final SharkMessengerDeliveryTracer deliveryTracer = new SharkMessengerDeliveryTracer();
+    private volatile boolean deliveryTracing = false;
+    private volatile boolean hubFanOut = false;
+    private volatile SharkMessengerConnections connections; // created when encounter manager asks for connection handler
+    private final SharkMessageIdWindow idWindow = new SharkMessageIdWindow();
 
     public SharkMessengerComponentImpl(SharkPKIComponent sharkPKIComponent) {
+        this(sharkPKIComponent, SharkMessageStoreType.ASAP, null);
+    }
+
+    public SharkMessengerComponentImpl(SharkPKIComponent sharkPKIComponent,
+                                       SharkMessageStoreType storeType, CharSequence storageFolder) {
+        this(sharkPKIComponent, storeType, storageFolder, null);
+    }
+
+    /**
+     * @param sharedResources threads and caches shared with messengers of other peers - null: own ones
+     */
+    public SharkMessengerComponentImpl(SharkPKIComponent sharkPKIComponent,
+                                       SharkMessageStoreType storeType, CharSequence storageFolder,
+                                       SharkMessengerSharedResources sharedResources) {
         this.sharkPKIComponent = sharkPKIComponent;
+        this.storeType = storeType;
+        this.storageFolder = storageFolder;
+        this.sharedResources = sharedResources;
     }
 
     @Override
     public void onStart(ASAPPeer asapPeer) throws SharkException {
         this.asapPeer = asapPeer;
+        ScheduledExecutorService backgroundExecutor;
+        SharkMessengerCacheBudget cacheBudget = null;
+        if(this.sharedResources != null) {
+            backgroundExecutor = this.sharedResources.getBackgroundExecutor();
+            cacheBudget = this.sharedResources.getCacheBudget();
+        } else {
+            backgroundExecutor = SharkMessengerCompactor.createExecutor();
+        }
+        this.messageStorage = new SharkMessageStorageImpl(this.storeType, asapPeer, this.storageFolder,
+                backgroundExecutor, cacheBudget);
+        ASAPStorage asapStorage;
+        try {
+            asapStorage = asapPeer.getASAPStorage(SharkMessengerComponent.SHARK_MESSENGER_FORMAT);
+            this.compactor = new SharkMessengerCompactor(asapStorage, this.messageStorage, backgroundExecutor);
+            this.routingTable.load(asapStorage);
+        } catch (IOException | ASAPException e) {
+            throw new SharkMessengerException("cannot set up compactor: " + e.getLocalizedMessage(), e);
+        }
+        this.compactor.start(SharkMessengerCompactor.DEFAULT_COMPACTION_INTERVAL_IN_MILLIS);
+        if(!this.messageStorage.persistedByASAP()) {
+            // in-memory stores are empty after a restart - so is their duplicate index
+            this.duplicateIndex = new SharkMessageDuplicateIndex(this.storeType == SharkMessageStoreType.MAPPED_FILE ?
+                    new File(this.storageFolder.toString(), DUPLICATE_INDEX_FOLDER) : null);
+
+            // not exchanged by asap engine - reconcile channels on each encounter
+            this.deliveryWatermarks = new SharkMessengerDeliveryWatermarks(asapStorage);
+            SharkMessengerSync sync = new SharkMessengerSync(this, this.transferScheduler, this.deliveryWatermarks);
+            this.asapPeer.addASAPEnvironmentChangesListener(sync);
+            this.asapPeer.addASAPMessageReceivedListener(SharkMessengerComponent.SHARK_MESSENGER_SYNC_FORMAT, sync);
+        }
         Log.writeLog(this, "MAKE URI LISTENER PUBLIC AGAIN. Thank you :)");
         this.asapPeer.addASAPMessageReceivedListener(
                 SharkMessengerComponent.SHARK_MESSENGER_FORMAT,
@@ -41,6 +112,148 @@ class SharkMessengerComponentImpl extends SharkMessagesReceivedListenerManager
             throw new SharkMessengerException("peer not started an/or pki not initialized");
     }
 
+    SharkMessageStorage getMessageStorage() {
+        return this.messageStorage;
+    }
+
+    SharkMessengerCompactor getCompactor() {
+        return this.compactor;
+    }
+
+    /**
+     * @return routing policy derived from communication age of a channel - a table lookup
+     */
+    @Override
+    public SharkMessengerRoutingPolicy getRoutingPolicy(CharSequence uri) {
+        return this.routingTable.getPolicy(uri);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                      sync context                                       //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public CharSequence getPeerID() {
+        return this.asapPeer.getPeerID();
+    }
+
+    @Override
+    public SharkMessageStore getStore(CharSequence uri) throws IOException {
+        return this.messageStorage.getStore(uri);
+    }
+
+    @Override
+    public int getTransferPriority(CharSequence uri) throws IOException, SharkMessengerException {
+        return this.getChannel(uri).getTransferPriority();
+    }
+
+    @Override
+    public void syncedMessagesReceived(CharSequence uri) {
+        this.notifySharkMessageReceivedListener(uri);
+    }
+
+    @Override
+    public void sendSyncPDU(CharSequence uri, byte[] pdu) throws IOException {
+        if(this.isRestricted(uri)) {
+            // messages of this channel must not pass other connections
+            this.connections.push(SharkMessengerComponent.SHARK_MESSENGER_SYNC_FORMAT, uri, pdu,
+                    this.routingTable.getPolicy(uri));
+            return;
+        }
+        try {
+            this.asapPeer.sendTransientASAPMessage(SharkMessengerComponent.SHARK_MESSENGER_SYNC_FORMAT, uri, pdu);
+        } catch (ASAPException e) {
+            // peer went offline - next encounter will do
+            Log.writeLog(this, "sync pdu not sent: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Channel settings (like its name) are kept in asap storage with any store type. Make sure it exists.
+     */
+    private ASAPChannel getOrCreateASAPChannel(CharSequence uri) throws IOException, ASAPException {
+        ASAPStorage asapStorage = this.asapPeer.getASAPStorage(SharkMessengerComponent.SHARK_MESSENGER_FORMAT);
+        if(!asapStorage.channelExists(uri)) asapStorage.createChannel(uri);
+        return asapStorage.getChannel(uri);
+    }
+
+    /**
+     * Store a serialized message and send it. ASAP stores send with asap engine - right away over each open
+     * connection. Messages of other stores are sent as transient messages to peers we are currently connected to -
+     * others get them by channel reconciliation on their next encounter, see {@link SharkMessageStoreType}.
+     * Messages of channels with a restricted routing policy go over connections that policy allows only.
+     */
+    private void storeAndSend(CharSequence uri, byte[] serializedMessage) throws IOException, ASAPException {
+        if(!this.messageStorage.persistedByASAP()) this.getOrCreateASAPChannel(uri);
+        long start = System.nanoTime();
+        SharkMessageStore store = this.messageStorage.getStore(uri);
+        boolean restricted = this.isRestricted(uri);
+        if(restricted && store instanceof ASAPSharkMessageStore) {
+            // asap engine would send it over each open connection - hub connections included
+            ((ASAPSharkMessageStore) store).appendWithoutSending(serializedMessage);
+        } else {
+            if(this.isDeduplicatedByIdWindow(uri)) {
+                // our own copy can come back over hubs - fanned out by us or by a routing peer
+                this.idWindow.firstSeen(SharkMessengerSync.digest(serializedMessage), System.currentTimeMillis());
+            }
+            store.append(serializedMessage);
+        }
+        this.metrics.record(SharkMessengerOperation.STORAGE_APPEND, uri, start);
+        if(!this.messageStorage.persistedByASAP() || restricted) this.sendToConnectedPeers(uri, serializedMessage);
+    }
+
+    /**
+     * @return true if messages in this channel go over each connected hub and copies are dropped on arrival
+     */
+    private boolean isFannedOut(CharSequence uri) {
+        return this.hubFanOut && this.routingTable.getAge(uri) == SharkCommunicationAge.NETWORK_AGE;
+    }
+
+    /**
+     * @return true if copies of messages in this channel are recognized by the id window - Internet age channels
+     * without duplicate index. Copies can arrive over several hubs whether or not fan-out is on here.
+     */
+    private boolean isDeduplicatedByIdWindow(CharSequence uri) {
+        return this.duplicateIndex == null && this.routingTable.getAge(uri) == SharkCommunicationAge.NETWORK_AGE;
+    }
+
+    /**
+     * @return true if routing policy of this channel excludes some transports and we know how each connection
+     * was made
+     */
+    private boolean isRestricted(CharSequence uri) {
+        return this.connections != null
+                && this.routingTable.getPolicy(uri) != SharkMessengerRoutingPolicy.ANY_TRANSPORT;
+    }
+
+    /**
+     * Send a transient message to peers we are currently connected to. It is fine if there are none.
+     * With hub fan-out, messages of Internet age channels are handed to each open connection - hub connections
+     * included. Each connection sends with its own thread - a slow hub does not hold up the others. Messages of
+     * channels with a restricted routing policy are handed to connections that policy allows only.
+     */
+    private void sendToConnectedPeers(CharSequence uri, byte[] serializedMessage) throws IOException {
+        if(this.isRestricted(uri)) {
+            int pushed = this.connections.push(SHARK_MESSENGER_FORMAT, uri, serializedMessage,
+                    this.routingTable.getPolicy(uri));
+            Log.writeLog(this, "message in " + uri + " pushed over " + pushed + " allowed connections");
+            return;
+        }
+        if(this.isFannedOut(uri) && this.connections != null) {
+            // our own copy comes back over the other hubs
+            this.idWindow.firstSeen(SharkMessengerSync.digest(serializedMessage), System.currentTimeMillis());
+            int pushed = this.connections.push(SHARK_MESSENGER_FORMAT, uri, serializedMessage);
+            Log.writeLog(this, "message in " + uri + " pushed over " + pushed + " connections");
+            return;
+        }
+        try {
+            this.asapPeer.sendTransientASAPMessage(SHARK_MESSENGER_FORMAT, uri, serializedMessage);
+        } catch (ASAPException e) {
+            // asap engine complains if no peer is online
+            Log.writeLog(this, "message not sent to connected peers: " + e.getLocalizedMessage());
+        }
+    }
+
     @Override
     public void sendSharkMessage(byte[] content, CharSequence uri, boolean sign,
                                  boolean encrypt) throws IOException, SharkMessengerException {
@@ -63,35 +276,196 @@ class SharkMessengerComponentImpl extends SharkMessagesReceivedListenerManager
                                  boolean encrypt)
             throws SharkMessengerException, IOException {
 
+        this.sendSharkMessage(content, uri, selectedRecipients, sign, encrypt, 0, SharkMessageHeader.NO_HOP_LIMIT);
+    }
+
+    @Override
+    public void sendSharkMessage(byte[] content, CharSequence uri,
+                                 Set<CharSequence> selectedRecipients, boolean sign,
+                                 boolean encrypt, long timeToLiveInMillis, int hopLimit)
+            throws SharkMessengerException, IOException {
+
         this.checkComponentRunning();
 
+        SharkMessengerSendEvent event = new SharkMessengerSendEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long expiryTime = timeToLiveInMillis > 0 ?
+                System.currentTimeMillis() + timeToLiveInMillis : SharkMessageHeader.NO_EXPIRY;
+
         // lets serialize and send asap messages.
+        String outcome = SharkMessengerSendEvent.FAILED;
         try {
-            if (encrypt && selectedRecipients != null && selectedRecipients.size() > 1) {
-                // more than one receiver and encrypted. Send one message for each.
-                for(CharSequence receiver : selectedRecipients) {
-                    this.asapPeer.sendASAPMessage(SHARK_MESSENGER_FORMAT, uri,
-                            // we have at most one receiver - this method can handle all combinations
-                            InMemoSharkMessage.serializeMessage(
-                                    content,
-                                    this.asapPeer.getPeerID(),
-                                    receiver,
-                                    sign, encrypt,
-                                    this.sharkPKIComponent));
-                }
-            } else {
-                this.asapPeer.sendASAPMessage(SHARK_MESSENGER_FORMAT, uri,
-                    // we have at most one receiver - this method can handle all combinations
-                    InMemoSharkMessage.serializeMessage(
-                            content,
-                            this.asapPeer.getPeerID(),
-                            selectedRecipients,
-                            sign, encrypt,
-                            this.sharkPKIComponent));
+            for(byte[] serializedMessage : this.serializeMessages(
+                    content, selectedRecipients, sign, encrypt, false, expiryTime, hopLimit)) {
+                this.storeAndSend(uri, serializedMessage);
+            }
+            outcome = SharkMessengerSendEvent.SENT;
+        } catch (ASAPException e) {
+            throw new SharkMessengerException("when serialising and sending message: " + e.getLocalizedMessage(), e);
+        } finally {
+            event.commit(uri, content, selectedRecipients, sign, encrypt, false, outcome);
+        }
+        this.metrics.record(SharkMessengerOperation.SEND, uri, start);
+    }
+
+    @Override
+    public void sendEphemeralSharkMessage(byte[] content, CharSequence uri,
+                                          Set<CharSequence> selectedRecipients, boolean sign,
+                                          boolean encrypt)
+            throws SharkMessengerException, IOException {
+
+        this.checkComponentRunning();
+
+        SharkMessengerSendEvent event = new SharkMessengerSendEvent();
+        event.begin();
+        long start = System.nanoTime();
+        String outcome = SharkMessengerSendEvent.FAILED;
+        try {
+            for(byte[] serializedMessage : this.serializeMessages(content, selectedRecipients, sign, encrypt, true,
+                    SharkMessageHeader.NO_EXPIRY, SharkMessageHeader.NO_HOP_LIMIT)) {
+                // connected peers only - never stored by asap engine
+                this.sendToConnectedPeers(uri, serializedMessage);
+                this.getEphemeralRing(uri).append(serializedMessage);
             }
+            outcome = SharkMessengerSendEvent.SENT;
         } catch (ASAPException e) {
             throw new SharkMessengerException("when serialising and sending message: " + e.getLocalizedMessage(), e);
+        } finally {
+            event.commit(uri, content, selectedRecipients, sign, encrypt, true, outcome);
+        }
+        this.metrics.record(SharkMessengerOperation.SEND, uri, start);
+    }
+
+    /**
+     * @return one serialized message - or one for each receiver if encrypted for more than one receiver
+     */
+    private List<byte[]> serializeMessages(byte[] content, Set<CharSequence> selectedRecipients,
+                                           boolean sign, boolean encrypt, boolean ephemeral,
+                                           long expiryTime, int hopLimit)
+            throws IOException, ASAPException {
+
+        List<byte[]> serializedMessages = new ArrayList<>();
+        if (encrypt && selectedRecipients != null && selectedRecipients.size() > 1 && this.sharedResources != null) {
+            // more than one receiver and encrypted - encrypt for each receiver in parallel, keep receiver order
+            List<Future<byte[]>> serializations = new ArrayList<>();
+            for(CharSequence receiver : selectedRecipients) {
+                Set<CharSequence> singleReceiver = new HashSet<>();
+                singleReceiver.add(receiver);
+                serializations.add(this.sharedResources.getCryptoExecutor().submit(() ->
+                        InMemoSharkMessage.serializeMessage(
+                                content,
+                                this.asapPeer.getPeerID(),
+                                singleReceiver,
+                                sign, encrypt, ephemeral, expiryTime, hopLimit, this.deliveryTracing,
+                                this.sharkPKIComponent)));
+            }
+            for(Future<byte[]> serialization : serializations) {
+                try {
+                    serializedMessages.add(serialization.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while encrypting message", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if(cause instanceof IOException) throw (IOException) cause;
+                    if(cause instanceof ASAPException) throw (ASAPException) cause;
+                    throw new IOException(cause.getLocalizedMessage(), cause);
+                }
+            }
+        } else if (encrypt && selectedRecipients != null && selectedRecipients.size() > 1) {
+            // more than one receiver and encrypted. Send one message for each.
+            for(CharSequence receiver : selectedRecipients) {
+                Set<CharSequence> singleReceiver = new HashSet<>();
+                singleReceiver.add(receiver);
+                serializedMessages.add(InMemoSharkMessage.serializeMessage(
+                        content,
+                        this.asapPeer.getPeerID(),
+                        singleReceiver,
+                        sign, encrypt, ephemeral, expiryTime, hopLimit, this.deliveryTracing,
+                        this.sharkPKIComponent));
+            }
+        } else {
+            // we have at most one receiver - this method can handle all combinations
+            serializedMessages.add(InMemoSharkMessage.serializeMessage(
+                    content,
+                    this.asapPeer.getPeerID(),
+                    selectedRecipients,
+                    sign, encrypt, ephemeral, expiryTime, hopLimit, this.deliveryTracing,
+                    this.sharkPKIComponent));
         }
+        return serializedMessages;
+    }
+
+    private EphemeralSharkMessageRing getEphemeralRing(CharSequence uri) {
+        return this.ephemeralMessages.computeIfAbsent(uri.toString(), EphemeralSharkMessageRing::new);
+    }
+
+    @Override
+    public SharkMessageList getEphemeralMessages(CharSequence uri) throws SharkMessengerException, IOException {
+        this.checkComponentRunning();
+        return new SharkMessageListImpl(this.sharkPKIComponent, this.getEphemeralRing(uri), false, true);
+    }
+
+    @Override
+    public SharkMessengerMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    @Override
+    public void setDeliveryTracing(boolean on) {
+        this.deliveryTracing = on;
+    }
+
+    @Override
+    public boolean isDeliveryTracing() {
+        return this.deliveryTracing;
+    }
+
+    @Override
+    public void setHubFanOut(boolean on) {
+        this.hubFanOut = on;
+    }
+
+    @Override
+    public boolean isHubFanOut() {
+        return this.hubFanOut;
+    }
+
+    @Override
+    public synchronized ASAPConnectionHandler getConnectionHandler() throws SharkMessengerException {
+        this.checkComponentRunning();
+        if(this.connections == null) {
+            if(!(this.asapPeer instanceof ASAPConnectionHandler)) {
+                throw new SharkMessengerException("asap peer is not a connection handler");
+            }
+            this.connections = new SharkMessengerConnections(
+                    (ASAPConnectionHandler) this.asapPeer, this.asapPeer.getPeerID());
+        }
+        return this.connections;
+    }
+
+    @Override
+    public SharkMessengerDeliveryTracer getDeliveryTracer() {
+        return this.deliveryTracer;
+    }
+
+    @Override
+    public void addMessageStoreHook(CharSequence uri, SharkMessageStoreIndexHook hook) throws IOException {
+        this.messageStorage.getStore(uri).addIndexHook(hook);
+        this.getEphemeralRing(uri).addIndexHook(hook);
+    }
+
+    @Override
+    public void removeMessageStoreHook(CharSequence uri, SharkMessageStoreIndexHook hook) throws IOException {
+        this.messageStorage.getStore(uri).removeIndexHook(hook);
+        this.getEphemeralRing(uri).removeIndexHook(hook);
+    }
+
+    @Override
+    public void setTransferSchedule(List<SharkMessengerTransferPriority> priorities, int byteBudget,
+                                    long timeBudgetInMillis) {
+        this.transferScheduler.configure(priorities, byteBudget, timeBudgetInMillis);
     }
 
     public SharkMessengerClosedChannel createClosedChannel(CharSequence uri, CharSequence name)
@@ -108,7 +482,8 @@ class SharkMessengerComponentImpl extends SharkMessagesReceivedListenerManager
 
             ASAPChannel channel = asapStorage.getChannel(uri);
 
-            return new SharkMessengerChannelImpl(this.asapPeer, this.sharkPKIComponent, channel);
+            return new SharkMessengerChannelImpl(this.asapPeer, this.sharkPKIComponent, channel,
+                    this.messageStorage.getStore(uri), this.routingTable, this.duplicateIndex);
         }
         catch(ASAPException asapException) {
             throw new SharkMessengerException(asapException);
@@ -146,8 +521,10 @@ class SharkMessengerComponentImpl extends SharkMessagesReceivedListenerManager
 
             asapStorage.createChannel(uri);
             ASAPChannel channel = asapStorage.getChannel(uri);
+            this.routingTable.add(channel);
 
-            return new SharkMessengerChannelImpl(this.asapPeer, this.sharkPKIComponent, channel, name);
+            return new SharkMessengerChannelImpl(this.asapPeer, this.sharkPKIComponent, channel,
+                    this.messageStorage.getStore(uri), this.routingTable, this.duplicateIndex, name);
         }
         catch(ASAPException asapException) {
             throw new SharkMessengerException(asapException);
@@ -166,14 +543,45 @@ class SharkMessengerComponentImpl extends SharkMessagesReceivedListenerManager
 
     @Override
     public void removeChannel(CharSequence uri) throws IOException, SharkMessengerException {
-        Log.writeLog(this, "removeChannel", "not yet implemented");
-        throw new SharkNotSupportedException("not yet implemented");
+        this.checkComponentRunning();
+        try {
+            ASAPStorage asapStorage =
+                    this.asapPeer.getASAPStorage(SharkMessengerComponent.SHARK_MESSENGER_FORMAT);
+
+            if(!asapStorage.channelExists(uri)) throw new SharkMessengerException("unknown channel: " + uri);
+            this.removeChannel(asapStorage, uri);
+        }
+        catch(ASAPException asapException) {
+            throw new SharkMessengerException(asapException);
+        }
     }
 
     @Override
     public void removeAllChannels() throws IOException {
-        Log.writeLog(this, "removeAllChannels", "not yet implemented");
-        throw new SharkNotSupportedException("not yet implemented");
+        try {
+            ASAPStorage asapStorage =
+                    this.asapPeer.getASAPStorage(SharkMessengerComponent.SHARK_MESSENGER_FORMAT);
+
+            // copy - list changes while removing
+            for(CharSequence uri : new ArrayList<>(asapStorage.getChannelURIs())) {
+                this.removeChannel(asapStorage, uri);
+            }
+        }
+        catch(ASAPException asapException) {
+            throw new IOException(asapException.getLocalizedMessage(), asapException);
+        }
+    }
+
+    /**
+     * Channel disappears at once. Stored messages are deleted in background.
+     */
+    private void removeChannel(ASAPStorage asapStorage, CharSequence uri) throws IOException {
+        asapStorage.removeChannel(uri);
+        this.routingTable.remove(uri);
+        if(this.duplicateIndex != null) this.duplicateIndex.remove(uri);
+        if(this.deliveryWatermarks != null) this.deliveryWatermarks.remove(uri);
+        this.messageStorage.removeStore(uri);
+        Log.writeLog(this, "channel removed: " + uri);
     }
 
     public void setChannelBehaviour(CharSequence uri, String behaviour) throws SharkUnknownBehaviourException, SharkMessengerException {
@@ -229,9 +637,95 @@ class SharkMessengerComponentImpl extends SharkMessagesReceivedListenerManager
         CharSequence uri = asapMessages.getURI();
         Log.writeLog(this, "MAKE URI LISTENER PUBLIC AGAIN. Thank you :)");
 
+        SharkMessengerReceiveEvent event = new SharkMessengerReceiveEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int messages = 0;
+        int kept = 0;
+        long size = 0;
+        String outcome = SharkMessengerReceiveEvent.RECEIVED;
+        try {
+            long now = System.currentTimeMillis();
+            Iterator<byte[]> messageIter = asapMessages.getMessages();
+            while(messageIter.hasNext()) {
+                byte[] message = messageIter.next();
+                messages++;
+                size += message.length;
+                if(this.assimilate(uri, message, asapHops, now)) kept++;
+            }
+        } catch (IOException e) {
+            Log.writeLogErr(this, "cannot store received messages: " + e.getLocalizedMessage());
+            outcome = SharkMessengerReceiveEvent.FAILED;
+        }
+        this.metrics.record(SharkMessengerOperation.RECEIVED_BATCH, uri, start);
+        event.commit(uri, messages, kept, size, asapHops, outcome);
+
         this.notifySharkMessageReceivedListener(uri);
     }
 
+    /**
+     * Keep a message received from another peer - as ephemeral message or in its channel store.
+     * @param route route of this message - first hop is its sender
+     * @return false if message was dropped
+     */
+    @Override
+    public boolean assimilate(CharSequence uri, byte[] message, List<ASAPHop> route, long now) throws IOException {
+
+        if(!this.routingTable.getPolicy(uri).accepts(route)) {
+            Log.writeLog(this, "drop message that came on a route not allowed by age of channel " + uri);
+            return false;
+        }
+
+        // unencrypted head decides - no parsing, no decryption
+        SharkMessageHeader header;
+        try {
+            header = SharkMessageHeader.read(message);
+        } catch (IOException e) {
+            Log.writeLogErr(this, "drop malformed message in " + uri + ": " + e.getLocalizedMessage());
+            return false;
+        }
+        if(header.isOutdated(now, route == null ? 0 : route.size())) {
+            Log.writeLog(this, "drop outdated message (expired or hop limit exceeded) in " + uri);
+            return false;
+        }
+        // no duplicate index for ephemeral messages and asap stores - copies that came over another hub are
+        // dropped here, no matter if fan-out is on here. A duplicate index drops them as well and keeps their routes.
+        if((header.isEphemeral() || this.isDeduplicatedByIdWindow(uri))
+                && !this.idWindow.firstSeen(SharkMessengerSync.digest(message), now)) {
+            Log.writeLog(this, "drop duplicate copy of message in " + uri);
+            return false;
+        }
+        if(header.isEphemeral()) {
+            this.getEphemeralRing(uri).assimilate(message, route);
+            this.deliveryTracer.messageReceived(uri, header, route, now);
+            return true;
+        }
+
+        if(!this.messageStorage.persistedByASAP()) {
+            try {
+                this.getOrCreateASAPChannel(uri);
+            } catch (ASAPException e) {
+                throw new IOException("cannot create channel " + uri + ": " + e.getLocalizedMessage(), e);
+            }
+        }
+        SharkMessageStore messageStore = this.messageStorage.getStore(uri);
+        // copies arriving at the same time: only one gets the reservation
+        if(this.duplicateIndex != null && !this.duplicateIndex.tryReserve(messageStore, message, route)) {
+            Log.writeLog(this, "drop duplicate message in " + uri);
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            messageStore.assimilate(message, route);
+        } catch (IOException e) {
+            if(this.duplicateIndex != null) this.duplicateIndex.release(uri, message);
+            throw e;
+        }
+        this.metrics.record(SharkMessengerOperation.STORAGE_APPEND, uri, start);
+        this.deliveryTracer.messageReceived(uri, header, route, now);
+        return true;
+    }
+
     /////////////////////////////////////////////////////////////////////////////////////////////
     //                       backdoor - remove it when finished implementing                   //
     /////////////////////////////////////////////////////////////////////////////////////////////
@@ -0,0 +1,167 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPConnectionHandler;
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.EncounterConnectionType;
+import net.sharksystem.asap.protocol.ASAPConnection;
+import net.sharksystem.asap.protocol.ASAPConnectionListener;
+import net.sharksystem.asap.protocol.ASAPOnlineMessageSource;
+import net.sharksystem.asap.protocol.ASAP_1_0;
+import net.sharksystem.asap.protocol.ASAP_Modem_Impl;
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Connection handler between encounter manager and ASAP peer. It keeps track of open ASAP connections and how
+ * they were made (e.g. via an ASAP hub). Messages can be pushed over each of them: a message is handed to each
+ * connection which sends it with its own online message sender thread. Connections - and hubs behind them - are
+ * served side by side, a slow one does not hold up the others.
+ */
+public class SharkMessengerConnections implements ASAPConnectionHandler, ASAPConnectionListener {
+    /** transient messages carry no era - asap engine uses the same value */
+    static final int TRANSIENT_ERA = Integer.MAX_VALUE;
+
+    private final ASAPConnectionHandler peer;
+    private final CharSequence owner;
+    private final ASAP_1_0 protocol = new ASAP_Modem_Impl();
+    private final Map<ASAPConnection, EncounterConnectionType> connections = new ConcurrentHashMap<>();
+
+    /**
+     * @param peer handles connections - usually an ASAP peer
+     * @param owner id of that peer
+     */
+    public SharkMessengerConnections(ASAPConnectionHandler peer, CharSequence owner) {
+        this.peer = peer;
+        this.owner = owner;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                          connection handler                                            //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public ASAPConnection handleConnection(InputStream is, OutputStream os, boolean encrypt, boolean sign,
+                                           Set<CharSequence> appsWhiteList, Set<CharSequence> appsBlackList)
+            throws IOException, ASAPException {
+        return this.track(this.peer.handleConnection(is, os, encrypt, sign, appsWhiteList, appsBlackList),
+                EncounterConnectionType.UNKNOWN);
+    }
+
+    @Override
+    public ASAPConnection handleConnection(InputStream is, OutputStream os, boolean encrypt, boolean sign,
+                                           EncounterConnectionType connectionType,
+                                           Set<CharSequence> appsWhiteList, Set<CharSequence> appsBlackList)
+            throws IOException, ASAPException {
+        return this.track(this.peer.handleConnection(
+                is, os, encrypt, sign, connectionType, appsWhiteList, appsBlackList), connectionType);
+    }
+
+    @Override
+    public ASAPConnection handleConnection(InputStream is, OutputStream os) throws IOException, ASAPException {
+        return this.track(this.peer.handleConnection(is, os), EncounterConnectionType.UNKNOWN);
+    }
+
+    @Override
+    public ASAPConnection handleConnection(InputStream is, OutputStream os, EncounterConnectionType connectionType)
+            throws IOException, ASAPException {
+        return this.track(this.peer.handleConnection(is, os, connectionType), connectionType);
+    }
+
+    private ASAPConnection track(ASAPConnection connection, EncounterConnectionType connectionType) {
+        if(connection == null) return null;
+        this.connections.put(connection, connectionType == null ? EncounterConnectionType.UNKNOWN : connectionType);
+        connection.addASAPConnectionListener(this);
+        return connection;
+    }
+
+    @Override
+    public void asapConnectionStarted(String remotePeerName, ASAPConnection connection) {
+        // tracked since handed over
+    }
+
+    @Override
+    public void asapConnectionTerminated(Exception terminatingException, ASAPConnection connection) {
+        this.connections.remove(connection);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                                 push                                                   //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return open connections made via an ASAP hub
+     */
+    public int getHubConnectionCount() {
+        int count = 0;
+        for(EncounterConnectionType type : this.connections.values()) {
+            if(type == EncounterConnectionType.ASAP_HUB) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return open connections - hub connections included
+     */
+    public int getConnectionCount() {
+        return this.connections.size();
+    }
+
+    /**
+     * Push a transient message over each open connection. Returns at once - each connection sends with its
+     * own thread.
+     * @return number of connections the message was handed to
+     */
+    int push(CharSequence format, CharSequence uri, byte[] message) {
+        return this.push(format, uri, message, SharkMessengerRoutingPolicy.ANY_TRANSPORT);
+    }
+
+    /**
+     * Push a transient message over each open connection the routing policy of its channel allows - e.g. no
+     * hub connection for stone and bronze age channels.
+     * @return number of connections the message was handed to
+     */
+    int push(CharSequence format, CharSequence uri, byte[] message, SharkMessengerRoutingPolicy policy) {
+        List<ASAPConnection> targets = new ArrayList<>();
+        for(Map.Entry<ASAPConnection, EncounterConnectionType> entry : this.connections.entrySet()) {
+            if(policy.allowsTransport(entry.getValue())) targets.add(entry.getKey());
+        }
+        for(ASAPConnection connection : targets) {
+            connection.addOnlineMessageSource(new PushedMessage(format, uri, message));
+        }
+        return targets.size();
+    }
+
+    /**
+     * One message for one connection - asap connection drops a source once it was sent.
+     */
+    private class PushedMessage implements ASAPOnlineMessageSource {
+        private final CharSequence format;
+        private final CharSequence uri;
+        private final byte[] message;
+
+        PushedMessage(CharSequence format, CharSequence uri, byte[] message) {
+            this.format = format;
+            this.uri = uri;
+            this.message = message;
+        }
+
+        @Override
+        public void sendStoredMessages(ASAPConnection connection, OutputStream os) throws IOException {
+            try {
+                protocol.assimilate(owner, connection.getEncounteredPeer(), this.format, this.uri,
+                        TRANSIENT_ERA, null, null, this.message, os, connection.isSigned());
+            } catch (ASAPException e) {
+                Log.writeLogErr(SharkMessengerConnections.this, "cannot push message in " + this.uri
+                        + " to " + connection.getEncounteredPeer() + ": " + e.getLocalizedMessage());
+            }
+        }
+    }
+}
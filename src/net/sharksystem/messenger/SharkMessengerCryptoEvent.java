@@ -0,0 +1,31 @@
+package net.sharksystem.messenger;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event: sign, encrypt, decrypt or verify a message.
+ */
+@Name("net.sharksystem.messenger.Crypto")
+@Label("Message Crypto")
+@Category({"Shark Messenger"})
+@StackTrace(false)
+class SharkMessengerCryptoEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Size")
+    @DataAmount
+    int size;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    void commit(SharkMessengerOperation operation, int size, boolean succeeded) {
+        this.end();
+        if(!this.shouldCommit()) return;
+        this.operation = operation.name();
+        this.size = size;
+        this.succeeded = succeeded;
+        this.commit();
+    }
+}
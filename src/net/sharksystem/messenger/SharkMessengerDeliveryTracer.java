@@ -0,0 +1,187 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.EncounterConnectionType;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Delivery latency of traced messages arriving at this peer - per channel, per route length and per transport.
+ * Latency is receive time on this peer minus send time in the message head.
+ * <br/><br/>
+ * Messages are immutable on their way - a digest or signature covers them. Forwarding peers cannot add their
+ * receive time. Each peer keeps the receive time of recent traces instead. Compare them by trace id to see the
+ * time a message spent on each hop.
+ * <br/><br/>
+ * Note: send time is taken from the clock of the sender. Clocks of peers are not synchronized.
+ * @see SharkMessage#getTraceID()
+ */
+public class SharkMessengerDeliveryTracer {
+    public enum Transport {
+        /** route without hub */
+        DIRECT,
+        /** any hop came through a hub */
+        HUB
+    }
+
+    public static final int MAX_RECENT_TRACES = 100;
+
+    private final Map<String, SharkMessengerMetrics.Metric> byChannel = new ConcurrentHashMap<>();
+    private final Map<Integer, SharkMessengerMetrics.Metric> byRouteLength = new ConcurrentHashMap<>();
+    private final Map<Transport, SharkMessengerMetrics.Metric> byTransport = new EnumMap<>(Transport.class);
+    private final Deque<Trace> recentTraces = new ArrayDeque<>();
+
+    SharkMessengerDeliveryTracer() {
+        for(Transport transport : Transport.values()) {
+            this.byTransport.put(transport, new SharkMessengerMetrics.Metric());
+        }
+    }
+
+    /**
+     * A message was kept on this peer. Untraced messages are ignored.
+     */
+    void messageReceived(CharSequence uri, SharkMessageHeader header, List<ASAPHop> route, long receivedAt) {
+        if(header.getTraceID() == SharkMessage.NO_TRACE) return;
+
+        long latency = Math.max(0, receivedAt - header.getSendTime());
+        int routeLength = route == null ? 0 : route.size();
+        Transport transport = Transport.DIRECT;
+        List<CharSequence> peers = new ArrayList<>();
+        if(route != null) {
+            for(ASAPHop hop : route) {
+                peers.add(hop.sender());
+                if(hop.getConnectionType() == EncounterConnectionType.ASAP_HUB) transport = Transport.HUB;
+            }
+        }
+
+        this.byChannel.computeIfAbsent(uri.toString(), k -> new SharkMessengerMetrics.Metric()).record(latency);
+        this.byRouteLength.computeIfAbsent(routeLength, k -> new SharkMessengerMetrics.Metric()).record(latency);
+        this.byTransport.get(transport).record(latency);
+
+        Trace trace = new Trace(header.getTraceID(), uri.toString(), header.getSendTime(), receivedAt,
+                routeLength, transport, peers);
+        synchronized(this.recentTraces) {
+            this.recentTraces.addFirst(trace);
+            if(this.recentTraces.size() > MAX_RECENT_TRACES) this.recentTraces.removeLast();
+        }
+    }
+
+    /**
+     * @return latency distributions - by channel, route length and transport. Transports without traces are left out.
+     */
+    public List<Distribution> getDistributions() {
+        List<Distribution> distributions = new ArrayList<>();
+        for(Map.Entry<String, SharkMessengerMetrics.Metric> entry : new TreeMap<>(this.byChannel).entrySet()) {
+            distributions.add(Distribution.of("channel", entry.getKey(), entry.getValue()));
+        }
+        for(Map.Entry<Integer, SharkMessengerMetrics.Metric> entry : new TreeMap<>(this.byRouteLength).entrySet()) {
+            distributions.add(Distribution.of("route length", entry.getKey().toString(), entry.getValue()));
+        }
+        for(Map.Entry<Transport, SharkMessengerMetrics.Metric> entry : this.byTransport.entrySet()) {
+            Distribution distribution = Distribution.of("transport", entry.getKey().name(), entry.getValue());
+            if(distribution.getCount() > 0) distributions.add(distribution);
+        }
+        return distributions;
+    }
+
+    /**
+     * @return recently received traces - latest first
+     */
+    public List<Trace> getRecentTraces() {
+        synchronized(this.recentTraces) {
+            return new ArrayList<>(this.recentTraces);
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                       snapshots                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Delivery latencies (in milliseconds) of messages with a channel, route length or transport in common.
+     */
+    public static class Distribution {
+        private final String dimension;
+        private final String key;
+        private final long count;
+        private final long mean;
+        private final long p50;
+        private final long p95;
+        private final long p99;
+        private final long max;
+
+        Distribution(String dimension, String key, long count, long mean, long p50, long p95, long p99, long max) {
+            this.dimension = dimension;
+            this.key = key;
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        static Distribution of(String dimension, String key, SharkMessengerMetrics.Metric metric) {
+            // metric records plain numbers - milliseconds here
+            SharkMessengerMetrics.OperationSnapshot snapshot = metric.snapshot(dimension, key);
+            return new Distribution(dimension, key, snapshot.getCount(), snapshot.getMeanNanos(),
+                    snapshot.getP50Nanos(), snapshot.getP95Nanos(), snapshot.getP99Nanos(), snapshot.getMaxNanos());
+        }
+
+        public String getDimension() { return this.dimension; }
+        public String getKey() { return this.key; }
+        public long getCount() { return this.count; }
+        public long getMeanMillis() { return this.mean; }
+        public long getP50Millis() { return this.p50; }
+        public long getP95Millis() { return this.p95; }
+        public long getP99Millis() { return this.p99; }
+        public long getMaxMillis() { return this.max; }
+
+        @Override
+        public String toString() {
+            return this.dimension + " " + this.key + ": " + this.count + " | mean " + this.mean + " ms | p50 "
+                    + this.p50 + " ms | p95 " + this.p95 + " ms | p99 " + this.p99 + " ms | max " + this.max + " ms";
+        }
+    }
+
+    /**
+     * A traced message that arrived on this peer.
+     */
+    public static class Trace {
+        private final long traceID;
+        private final String uri;
+        private final long sendTime;
+        private final long receivedAt;
+        private final int routeLength;
+        private final Transport transport;
+        private final List<CharSequence> route;
+
+        Trace(long traceID, String uri, long sendTime, long receivedAt, int routeLength, Transport transport,
+              List<CharSequence> route) {
+            this.traceID = traceID;
+            this.uri = uri;
+            this.sendTime = sendTime;
+            this.receivedAt = receivedAt;
+            this.routeLength = routeLength;
+            this.transport = transport;
+            this.route = route;
+        }
+
+        public long getTraceID() { return this.traceID; }
+        public String getURI() { return this.uri; }
+        public long getSendTime() { return this.sendTime; }
+        public long getReceivedAt() { return this.receivedAt; }
+        public long getLatencyMillis() { return Math.max(0, this.receivedAt - this.sendTime); }
+        public int getRouteLength() { return this.routeLength; }
+        public Transport getTransport() { return this.transport; }
+        /** @return peers this message came through - its sender first */
+        public List<CharSequence> getRoute() { return this.route; }
+
+        @Override
+        public String toString() {
+            return Long.toHexString(this.traceID) + " | " + this.uri + " | " + this.getLatencyMillis() + " ms | "
+                    + this.transport + " | route " + this.route;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPChannel;
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPStorage;
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which messages of a channel another peer holds - for each peer. A watermark is a store position: the
+ * peer holds any message before it. Messages beyond it that were acknowledged are kept in memory until the
+ * watermark passes them.
+ * <br/><br/>
+ * An encounter that breaks during a transfer resumes from the watermark. Messages the peer acknowledged are not
+ * sent again - even if a channel is too different for reconciliation.
+ * <br/><br/>
+ * Watermarks are persisted in channel extra data: position:digest of the message before that position. Compaction
+ * shifts positions - a watermark that does not match its digest anymore is reset.
+ * <br/><br/>
+ * At most MAX_HELD digests beyond a watermark are kept for each peer - oldest are forgotten first. A forgotten
+ * message is at worst sent again.
+ */
+class SharkMessengerDeliveryWatermarks {
+    static final String KEY_WATERMARK_PREFIX = "sharkMessengerWatermark/";
+    static final int MAX_HELD = 8192;
+
+    private final ASAPStorage asapStorage;
+    /** channel uri -> peer -> watermark */
+    private final Map<String, Map<String, Watermark>> watermarks = new ConcurrentHashMap<>();
+
+    private static class Watermark {
+        int position = 0;
+        long digest = 0;
+        /** in order of acknowledgement */
+        final Set<Long> held = new LinkedHashSet<>();
+
+        void hold(Collection<Long> digests) {
+            this.held.addAll(digests);
+            Iterator<Long> oldest = this.held.iterator();
+            for(int i = this.held.size() - MAX_HELD; i > 0; i--) {
+                oldest.next();
+                oldest.remove();
+            }
+        }
+    }
+
+    /**
+     * @param asapStorage keeps channel extra data - can be null: watermarks are not persisted
+     */
+    SharkMessengerDeliveryWatermarks(ASAPStorage asapStorage) {
+        this.asapStorage = asapStorage;
+    }
+
+    /**
+     * @param storeDigests digests of all messages in store order
+     * @param number messages in store - entries of storeDigests that are taken
+     * @return watermark - peer holds any message before that position
+     */
+    int get(CharSequence peer, CharSequence uri, long[] storeDigests, int number) {
+        Watermark watermark = this.getWatermark(peer, uri);
+        synchronized(watermark) {
+            this.validate(watermark, storeDigests, number);
+            return watermark.position;
+        }
+    }
+
+    /**
+     * @return true if peer is known to hold message with this digest at that position
+     */
+    boolean isHeld(CharSequence peer, CharSequence uri, int position, long digest) {
+        Watermark watermark = this.getWatermark(peer, uri);
+        synchronized(watermark) {
+            return position < watermark.position || watermark.held.contains(digest);
+        }
+    }
+
+    /**
+     * Peer holds messages with these digests - it acknowledged them or reconciliation told so.
+     * @param storeDigests digests of all messages in store order
+     * @param number messages in store - entries of storeDigests that are taken
+     */
+    void held(CharSequence peer, CharSequence uri, Collection<Long> digests, long[] storeDigests, int number) {
+        Watermark watermark = this.getWatermark(peer, uri);
+        int before;
+        int after;
+        long digest;
+        synchronized(watermark) {
+            this.validate(watermark, storeDigests, number);
+            before = watermark.position;
+            watermark.hold(digests);
+            while(watermark.position < number
+                    && watermark.held.remove(storeDigests[watermark.position])) {
+                watermark.position++;
+            }
+            if(watermark.position > 0) watermark.digest = storeDigests[watermark.position - 1];
+            after = watermark.position;
+            digest = watermark.digest;
+        }
+        if(after != before) this.persist(peer, uri, after, digest);
+    }
+
+    private void validate(Watermark watermark, long[] storeDigests, int number) {
+        if(watermark.position == 0) return;
+        if(watermark.position > number
+                || storeDigests[watermark.position - 1] != watermark.digest) {
+            // store was compacted - positions and digests of dropped messages are meaningless
+            watermark.position = 0;
+            watermark.digest = 0;
+            watermark.held.clear();
+        }
+    }
+
+    private Watermark getWatermark(CharSequence peer, CharSequence uri) {
+        return this.watermarks.computeIfAbsent(uri.toString(), key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(peer.toString(), key -> this.load(peer, uri));
+    }
+
+    private Watermark load(CharSequence peer, CharSequence uri) {
+        Watermark watermark = new Watermark();
+        if(this.asapStorage == null) return watermark;
+        try {
+            HashMap<String, String> extraData = this.asapStorage.getChannel(uri).getExtraData();
+            String value = extraData == null ? null : extraData.get(KEY_WATERMARK_PREFIX + peer);
+            if(value != null) {
+                int separator = value.indexOf(':');
+                watermark.position = Integer.parseInt(value.substring(0, separator));
+                watermark.digest = Long.parseLong(value.substring(separator + 1));
+            }
+        } catch (IOException | ASAPException | RuntimeException e) {
+            Log.writeLogErr(this, "cannot read watermark of " + peer + " in " + uri + ": " + e.getLocalizedMessage());
+        }
+        return watermark;
+    }
+
+    private void persist(CharSequence peer, CharSequence uri, int position, long digest) {
+        if(this.asapStorage == null) return;
+        try {
+            ASAPChannel channel = this.asapStorage.getChannel(uri);
+            channel.putExtraData(KEY_WATERMARK_PREFIX + peer, position + ":" + digest);
+        } catch (IOException | ASAPException e) {
+            // kept in memory - next run starts lower
+            Log.writeLogErr(this, "cannot write watermark of " + peer + " in " + uri + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Forget a channel - like after it was removed.
+     */
+    void remove(CharSequence uri) {
+        this.watermarks.remove(uri.toString());
+    }
+}
@@ -0,0 +1,215 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.utils.Log;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and latencies of messenger operations in each channel - for all messengers in this process. Recording
+ * takes no lock: counters are striped, histogram buckets are updated atomically.
+ * <br/><br/>
+ * Latency histograms have log-linear buckets: eight buckets for each power of two. A percentile is exact up to
+ * about 6%.
+ * <br/><br/>
+ * Usage: long start = System.nanoTime(); ...; metrics.record(operation, uri, start);
+ * <br/>
+ * Operations without a channel (like signing) are recorded in ALL_CHANNELS. Metrics are registered as platform
+ * MBean {@link #OBJECT_NAME}.
+ */
+public class SharkMessengerMetrics implements SharkMessengerMetricsMXBean {
+    public static final String OBJECT_NAME = "net.sharksystem.messenger:type=SharkMessengerMetrics";
+    public static final String ALL_CHANNELS = "";
+
+    private static SharkMessengerMetrics metrics = null;
+
+    /**
+     * @return metrics of this process - registered as platform MBean on first call
+     */
+    public static synchronized SharkMessengerMetrics getMetrics() {
+        if(metrics == null) {
+            metrics = new SharkMessengerMetrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+            } catch (Exception e) {
+                // works without jmx
+                Log.writeLogErr(SharkMessengerMetrics.class, "cannot register metrics mbean: " + e.getLocalizedMessage());
+            }
+        }
+        return metrics;
+    }
+
+    private final Map<SharkMessengerOperation, Map<String, Metric>> operations =
+            new EnumMap<>(SharkMessengerOperation.class);
+
+    SharkMessengerMetrics() {
+        for(SharkMessengerOperation operation : SharkMessengerOperation.values()) {
+            this.operations.put(operation, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * @param uri channel - null: ALL_CHANNELS
+     * @param startNanos System.nanoTime() when operation started
+     */
+    public void record(SharkMessengerOperation operation, CharSequence uri, long startNanos) {
+        this.getMetric(operation, uri).record(System.nanoTime() - startNanos);
+    }
+
+    private Metric getMetric(SharkMessengerOperation operation, CharSequence uri) {
+        String channel = uri == null ? ALL_CHANNELS : uri.toString();
+        Map<String, Metric> channels = this.operations.get(operation);
+        Metric metric = channels.get(channel);
+        if(metric != null) return metric;
+
+        Metric newMetric = new Metric();
+        metric = channels.putIfAbsent(channel, newMetric);
+        return metric == null ? newMetric : metric;
+    }
+
+    @Override
+    public List<OperationSnapshot> getSnapshot() {
+        List<OperationSnapshot> snapshot = new ArrayList<>();
+        for(Map.Entry<SharkMessengerOperation, Map<String, Metric>> operation : this.operations.entrySet()) {
+            for(Map.Entry<String, Metric> channel : operation.getValue().entrySet()) {
+                snapshot.add(channel.getValue().snapshot(operation.getKey(), channel.getKey()));
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return snapshot of an operation in a channel - null if never recorded
+     */
+    public OperationSnapshot getSnapshot(SharkMessengerOperation operation, CharSequence uri) {
+        Metric metric = this.operations.get(operation).get(uri == null ? ALL_CHANNELS : uri.toString());
+        return metric == null ? null : metric.snapshot(operation, uri == null ? ALL_CHANNELS : uri.toString());
+    }
+
+    @Override
+    public void reset() {
+        for(Map<String, Metric> channels : this.operations.values()) channels.clear();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                          metric                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    static class Metric {
+        static final int SUB_BUCKET_BITS = 3;
+        static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        /** values below are counted exactly */
+        static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+        static final int BUCKETS = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        void record(long nanos) {
+            if(nanos < 0) nanos = 0;
+            this.count.increment();
+            this.totalNanos.add(nanos);
+            this.buckets.incrementAndGet(bucket(nanos));
+            long max = this.maxNanos.get();
+            while(nanos > max && !this.maxNanos.compareAndSet(max, nanos)) max = this.maxNanos.get();
+        }
+
+        static int bucket(long value) {
+            if(value < LINEAR_LIMIT) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BUCKET_BITS + 1
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+        }
+
+        /**
+         * @return middle of the value range of a bucket
+         */
+        static long value(int bucket) {
+            if(bucket < LINEAR_LIMIT) return bucket;
+            int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+            int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+            long width = 1L << (exponent - SUB_BUCKET_BITS);
+            return (1L << exponent) + subBucket * width + width / 2;
+        }
+
+        private long percentile(long[] counts, long total, double percentile) {
+            long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for(int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if(seen >= rank && counts[i] > 0) return value(i);
+            }
+            return 0;
+        }
+
+        OperationSnapshot snapshot(SharkMessengerOperation operation, String channel) {
+            return this.snapshot(operation.name(), channel);
+        }
+
+        OperationSnapshot snapshot(String operation, String channel) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for(int i = 0; i < BUCKETS; i++) {
+                counts[i] = this.buckets.get(i);
+                total += counts[i];
+            }
+            long count = this.count.sum();
+            return new OperationSnapshot(operation, channel, count,
+                    count == 0 ? 0 : this.totalNanos.sum() / count,
+                    this.percentile(counts, total, 0.5),
+                    this.percentile(counts, total, 0.95),
+                    this.percentile(counts, total, 0.99),
+                    this.maxNanos.get());
+        }
+    }
+
+    /**
+     * Count and latencies (in nanoseconds) of an operation in a channel when snapshot was taken.
+     */
+    public static class OperationSnapshot {
+        private final String operation;
+        private final String channel;
+        private final long count;
+        private final long meanNanos;
+        private final long p50Nanos;
+        private final long p95Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+
+        public OperationSnapshot(String operation, String channel, long count, long meanNanos,
+                                 long p50Nanos, long p95Nanos, long p99Nanos, long maxNanos) {
+            this.operation = operation;
+            this.channel = channel;
+            this.count = count;
+            this.meanNanos = meanNanos;
+            this.p50Nanos = p50Nanos;
+            this.p95Nanos = p95Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String getOperation() { return this.operation; }
+        public String getChannel() { return this.channel; }
+        public long getCount() { return this.count; }
+        public long getMeanNanos() { return this.meanNanos; }
+        public long getP50Nanos() { return this.p50Nanos; }
+        public long getP95Nanos() { return this.p95Nanos; }
+        public long getP99Nanos() { return this.p99Nanos; }
+        public long getMaxNanos() { return this.maxNanos; }
+
+        @Override
+        public String toString() {
+            return this.operation + (this.channel.isEmpty() ? "" : " " + this.channel) + ": " + this.count
+                    + " | mean " + this.meanNanos / 1000 + " us | p50 " + this.p50Nanos / 1000
+                    + " us | p95 " + this.p95Nanos / 1000 + " us | p99 " + this.p99Nanos / 1000
+                    + " us | max " + this.maxNanos / 1000 + " us";
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package net.sharksystem.messenger;
+
+import java.util.List;
+
+/**
+ * Messenger metrics as platform MBean - see {@link SharkMessengerMetrics#OBJECT_NAME}.
+ */
+public interface SharkMessengerMetricsMXBean {
+    /**
+     * @return count and latencies of each operation in each channel
+     */
+    List<SharkMessengerMetrics.OperationSnapshot> getSnapshot();
+
+    /**
+     * Forget anything measured so far.
+     */
+    void reset();
+}
@@ -0,0 +1,22 @@
+package net.sharksystem.messenger;
+
+/**
+ * Operations measured by messenger metrics.
+ * @see SharkMessengerMetrics
+ */
+public enum SharkMessengerOperation {
+    /** serialize, store and send a message */
+    SEND,
+    SIGN,
+    ENCRYPT,
+    DECRYPT,
+    VERIFY,
+    /** parse a serialized message - including decryption and verification */
+    PARSE,
+    /** append a message to a channel store - sent or received */
+    STORAGE_APPEND,
+    /** tell listeners about new messages */
+    LISTENER_DISPATCH,
+    /** keep a batch of messages received from another peer */
+    RECEIVED_BATCH
+}
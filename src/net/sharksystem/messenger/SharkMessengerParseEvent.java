@@ -0,0 +1,41 @@
+package net.sharksystem.messenger;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event: parse a serialized message - including decryption and verification. Both are recorded
+ * as nested crypto events.
+ * @see SharkMessengerCryptoEvent
+ */
+@Name("net.sharksystem.messenger.Parse")
+@Label("Parse Message")
+@Category({"Shark Messenger"})
+@StackTrace(false)
+class SharkMessengerParseEvent extends Event {
+    static final String PARSED = "parsed";
+    static final String NOT_FOR_ME = "not for me";
+    static final String FAILED = "failed";
+
+    @Label("Size")
+    @DataAmount
+    int size;
+
+    @Label("Flags")
+    byte flags;
+
+    @Label("Verified")
+    boolean verified;
+
+    @Label("Outcome")
+    String outcome;
+
+    void commit(int size, byte flags, boolean verified, String outcome) {
+        this.end();
+        if(!this.shouldCommit()) return;
+        this.size = size;
+        this.flags = flags;
+        this.verified = verified;
+        this.outcome = outcome;
+        this.commit();
+    }
+}
@@ -0,0 +1,49 @@
+package net.sharksystem.messenger;
+
+import jdk.jfr.*;
+import net.sharksystem.asap.ASAPHop;
+
+import java.util.List;
+
+/**
+ * Flight recorder event: a batch of messages received from another peer was assimilated.
+ */
+@Name("net.sharksystem.messenger.Receive")
+@Label("Receive Messages")
+@Category({"Shark Messenger"})
+@StackTrace(false)
+class SharkMessengerReceiveEvent extends Event {
+    static final String RECEIVED = "received";
+    static final String FAILED = "failed";
+
+    @Label("Channel URI Hash")
+    int channelHash;
+
+    @Label("Messages")
+    int messages;
+
+    @Label("Kept")
+    int kept;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    @Label("Route Length")
+    int routeLength;
+
+    @Label("Outcome")
+    String outcome;
+
+    void commit(CharSequence uri, int messages, int kept, long size, List<ASAPHop> route, String outcome) {
+        this.end();
+        if(!this.shouldCommit()) return;
+        this.channelHash = uri == null ? 0 : uri.toString().hashCode();
+        this.messages = messages;
+        this.kept = kept;
+        this.size = size;
+        this.routeLength = route == null ? 0 : route.size();
+        this.outcome = outcome;
+        this.commit();
+    }
+}
@@ -0,0 +1,124 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPChannel;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Retention rules of a channel. Messages are dropped if they are older than a maximum age, or if a channel holds
+ * more messages or bytes than allowed. Oldest messages are dropped first. A value of 0 (or less) means: no limit.
+ * <br/><br/>
+ * Rules are kept in channel extra data - like the channel name. They are applied by a background compactor.
+ */
+public class SharkMessengerRetentionPolicy {
+    static final String KEY_RETENTION_MAX_AGE = "sharkMessengerRetentionMaxAge";
+    static final String KEY_RETENTION_MAX_COUNT = "sharkMessengerRetentionMaxCount";
+    static final String KEY_RETENTION_MAX_BYTES = "sharkMessengerRetentionMaxBytes";
+
+    public static final SharkMessengerRetentionPolicy UNLIMITED = new SharkMessengerRetentionPolicy(0, 0, 0);
+
+    private final long maxAgeInMillis;
+    private final int maxCount;
+    private final long maxBytes;
+
+    /**
+     * @param maxAgeInMillis messages older than this are dropped - 0: no limit
+     * @param maxCount maximum number of messages in channel - 0: no limit
+     * @param maxBytes maximum number of bytes of all messages in channel - 0: no limit
+     */
+    public SharkMessengerRetentionPolicy(long maxAgeInMillis, int maxCount, long maxBytes) {
+        this.maxAgeInMillis = Math.max(0, maxAgeInMillis);
+        this.maxCount = Math.max(0, maxCount);
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    public long getMaxAgeInMillis() {
+        return this.maxAgeInMillis;
+    }
+
+    public int getMaxCount() {
+        return this.maxCount;
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    public boolean isUnlimited() {
+        return this.maxAgeInMillis == 0 && this.maxCount == 0 && this.maxBytes == 0;
+    }
+
+    /**
+     * Calculate how many messages must be dropped from the head of a store (oldest first).
+     * @param appendTimes time each message was stored - in storage order
+     * @param sizes size of each message - in storage order
+     * @param number number of messages
+     * @param now current time
+     * @return number of messages to be dropped from head
+     */
+    int messagesToDrop(long[] appendTimes, int[] sizes, int number, long now) {
+        int drop = 0;
+        if(this.maxCount > 0 && number > this.maxCount) drop = number - this.maxCount;
+
+        if(this.maxAgeInMillis > 0) {
+            long oldestAllowed = now - this.maxAgeInMillis;
+            int expired = 0;
+            while(expired < number && appendTimes[expired] < oldestAllowed) expired++;
+            drop = Math.max(drop, expired);
+        }
+
+        if(this.maxBytes > 0) {
+            long bytes = 0;
+            for(int i = 0; i < number; i++) bytes += sizes[i];
+            int tooMuch = 0;
+            while(tooMuch < number && bytes > this.maxBytes) bytes -= sizes[tooMuch++];
+            drop = Math.max(drop, tooMuch);
+        }
+
+        return drop;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                     channel extra data                                        //
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+
+    static SharkMessengerRetentionPolicy readFromChannel(ASAPChannel asapChannel) throws IOException {
+        HashMap<String, String> extraData = asapChannel.getExtraData();
+        if(extraData == null) return UNLIMITED;
+
+        try {
+            return new SharkMessengerRetentionPolicy(
+                    parse(extraData.get(KEY_RETENTION_MAX_AGE)),
+                    (int) parse(extraData.get(KEY_RETENTION_MAX_COUNT)),
+                    parse(extraData.get(KEY_RETENTION_MAX_BYTES)));
+        }
+        catch(NumberFormatException e) {
+            throw new IOException("corrupted retention policy in channel " + asapChannel.getUri(), e);
+        }
+    }
+
+    private static long parse(String value) {
+        return value == null ? 0 : Long.parseLong(value);
+    }
+
+    void writeToChannel(ASAPChannel asapChannel) throws IOException {
+        if(this.isUnlimited()) {
+            asapChannel.removeExtraData(KEY_RETENTION_MAX_AGE);
+            asapChannel.removeExtraData(KEY_RETENTION_MAX_COUNT);
+            asapChannel.removeExtraData(KEY_RETENTION_MAX_BYTES);
+        } else {
+            asapChannel.putExtraData(KEY_RETENTION_MAX_AGE, Long.toString(this.maxAgeInMillis));
+            asapChannel.putExtraData(KEY_RETENTION_MAX_COUNT, Integer.toString(this.maxCount));
+            asapChannel.putExtraData(KEY_RETENTION_MAX_BYTES, Long.toString(this.maxBytes));
+        }
+    }
+
+    @Override
+    public String toString() {
+        if(this.isUnlimited()) return "unlimited";
+        return "maxAge: " + (this.maxAgeInMillis > 0 ? this.maxAgeInMillis + " ms" : "-")
+                + " | maxCount: " + (this.maxCount > 0 ? this.maxCount : "-")
+                + " | maxBytes: " + (this.maxBytes > 0 ? this.maxBytes : "-");
+    }
+}
@@ -0,0 +1,77 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.EncounterConnectionType;
+
+import java.util.List;
+
+/**
+ * Routing rules derived from a channel communication age. They are consulted on each send and route decision.
+ * <br/><br/>
+ * Sending: new messages and sync PDUs of a restricted channel are pushed over connections this policy allows
+ * only - the messenger must be the connection handler of the encounter manager to tell how a connection was made
+ * (see {@link SharkMessengerComponent#getConnectionHandler()}). Otherwise, they go over each connection.
+ * ASAP stores are exchanged era by era by the asap engine when peers meet - that exchange cannot be restricted per
+ * channel. A peer that meets another one via hub gets stored messages of such channels as well.
+ * <br/><br/>
+ * Receiving: messages are only accepted - and listed - if they came on a route this policy allows.
+ *
+ * @see SharkCommunicationAge
+ * @see SharkMessengerChannel
+ */
+public enum SharkMessengerRoutingPolicy {
+    /** stone age: messages are exchanged directly with their sender and only in ad-hoc networks */
+    DIRECT_ONLY,
+    /** bronze age: messages can be routed - but only over ad-hoc networks */
+    AD_HOC_ROUTING,
+    /** network age: messages can be routed over any transport - including hubs and Internet */
+    ANY_TRANSPORT;
+
+    /**
+     * @param age channel communication age
+     * @return routing rules of that age. Channels without a defined age are not restricted.
+     */
+    public static SharkMessengerRoutingPolicy of(SharkCommunicationAge age) {
+        if(age == null) return ANY_TRANSPORT;
+        switch (age) {
+            case STONE_AGE: return DIRECT_ONLY;
+            case BRONZE_AGE: return AD_HOC_ROUTING;
+            case NETWORK_AGE:
+            case UNDEFINED:
+            default: return ANY_TRANSPORT;
+        }
+    }
+
+    /**
+     * @param connectionType type of a connection to another peer
+     * @return true if messages of this channel can be exchanged over such a connection
+     */
+    public boolean allowsTransport(EncounterConnectionType connectionType) {
+        if(this == ANY_TRANSPORT) return true;
+        // unknown: a local connection (like in tests) - we cannot tell better
+        return connectionType == null
+                || connectionType == EncounterConnectionType.AD_HOC_LAYER_2_NETWORK
+                || connectionType == EncounterConnectionType.UNKNOWN;
+    }
+
+    /**
+     * @return true if a peer is allowed to forward messages it received from another peer
+     */
+    public boolean allowsRouting() {
+        return this != DIRECT_ONLY;
+    }
+
+    /**
+     * @param route route of a received message - first hop is its sender
+     * @return true if a message that came on this route can be accepted
+     */
+    public boolean accepts(List<ASAPHop> route) {
+        if(route == null || route.isEmpty()) return true; // produced on this peer
+        if(this == ANY_TRANSPORT) return true;
+        if(!this.allowsRouting() && route.size() > 1) return false;
+        for(ASAPHop hop : route) {
+            if(!this.allowsTransport(hop.getConnectionType())) return false;
+        }
+        return true;
+    }
+}
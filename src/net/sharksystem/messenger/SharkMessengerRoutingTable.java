@@ -0,0 +1,83 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPChannel;
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPStorage;
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Communication age of each channel. Ages are persisted in channel extra data. They are read once when the
+ * messenger starts and kept in this table afterwards. Any lookup is a single hash map access - no extra data is
+ * read per message.
+ */
+class SharkMessengerRoutingTable {
+    static final String KEY_AGE_SHARK_MESSENGER_CHANNEL = "sharkMessengerAge";
+
+    private final Map<String, SharkCommunicationAge> ages = new ConcurrentHashMap<>();
+
+    /**
+     * Read ages of all channels.
+     */
+    void load(ASAPStorage asapStorage) throws IOException {
+        this.ages.clear();
+        for(CharSequence uri : asapStorage.getChannelURIs()) {
+            try {
+                this.ages.put(uri.toString(), readAge(asapStorage.getChannel(uri)));
+            } catch (ASAPException e) {
+                Log.writeLogErr(this, "cannot read age of channel " + uri + ": " + e.getLocalizedMessage());
+            }
+        }
+        Log.writeLog(this, "loaded communication ages of " + this.ages.size() + " channels");
+    }
+
+    static SharkCommunicationAge readAge(ASAPChannel asapChannel) throws IOException {
+        HashMap<String, String> extraData = asapChannel.getExtraData();
+        if(extraData == null) return SharkCommunicationAge.UNDEFINED;
+        String age = extraData.get(KEY_AGE_SHARK_MESSENGER_CHANNEL);
+        if(age == null) return SharkCommunicationAge.UNDEFINED;
+        try {
+            return SharkCommunicationAge.valueOf(age);
+        } catch (IllegalArgumentException e) {
+            Log.writeLogErr(SharkMessengerRoutingTable.class, "unknown communication age: " + age);
+            return SharkCommunicationAge.UNDEFINED;
+        }
+    }
+
+    /**
+     * Persist age of a channel and update table.
+     */
+    void setAge(ASAPChannel asapChannel, SharkCommunicationAge age) throws IOException {
+        if(age == null || age == SharkCommunicationAge.UNDEFINED) {
+            asapChannel.removeExtraData(KEY_AGE_SHARK_MESSENGER_CHANNEL);
+            age = SharkCommunicationAge.UNDEFINED;
+        } else {
+            asapChannel.putExtraData(KEY_AGE_SHARK_MESSENGER_CHANNEL, age.name());
+        }
+        this.ages.put(asapChannel.getUri().toString(), age);
+    }
+
+    SharkCommunicationAge getAge(CharSequence uri) {
+        SharkCommunicationAge age = this.ages.get(uri.toString());
+        return age != null ? age : SharkCommunicationAge.UNDEFINED;
+    }
+
+    SharkMessengerRoutingPolicy getPolicy(CharSequence uri) {
+        return SharkMessengerRoutingPolicy.of(this.getAge(uri));
+    }
+
+    /**
+     * A new channel - read its age once.
+     */
+    void add(ASAPChannel asapChannel) throws IOException {
+        this.ages.put(asapChannel.getUri().toString(), readAge(asapChannel));
+    }
+
+    void remove(CharSequence uri) {
+        this.ages.remove(uri.toString());
+    }
+}
@@ -0,0 +1,54 @@
+package net.sharksystem.messenger;
+
+import jdk.jfr.*;
+
+import java.util.Set;
+
+/**
+ * Flight recorder event: serialize, store and send a message. Cheap enough to stay enabled - fields are set only
+ * if the event is recorded.
+ */
+@Name("net.sharksystem.messenger.Send")
+@Label("Send Message")
+@Category({"Shark Messenger"})
+@StackTrace(false)
+class SharkMessengerSendEvent extends Event {
+    static final String SENT = "sent";
+    static final String FAILED = "failed";
+
+    @Label("Channel URI Hash")
+    int channelHash;
+
+    @Label("Payload Size")
+    @DataAmount
+    int payloadSize;
+
+    @Label("Receivers")
+    int receivers;
+
+    @Label("Signed")
+    boolean signed;
+
+    @Label("Encrypted")
+    boolean encrypted;
+
+    @Label("Ephemeral")
+    boolean ephemeral;
+
+    @Label("Outcome")
+    String outcome;
+
+    void commit(CharSequence uri, byte[] content, Set<CharSequence> receivers, boolean sign, boolean encrypt,
+                boolean ephemeral, String outcome) {
+        this.end();
+        if(!this.shouldCommit()) return;
+        this.channelHash = uri == null ? 0 : uri.toString().hashCode();
+        this.payloadSize = content == null ? 0 : content.length;
+        this.receivers = receivers == null ? 0 : receivers.size();
+        this.signed = sign;
+        this.encrypted = encrypt;
+        this.ephemeral = ephemeral;
+        this.outcome = outcome;
+        this.commit();
+    }
+}
@@ -0,0 +1,82 @@
+package net.sharksystem.messenger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resources shared by messengers of many peers in one process - like a relay hosting many identities:
+ * <ul>
+ *     <li>background threads for compaction and deleting removed stores</li>
+ *     <li>crypto workers - a message encrypted for more than one receiver is encrypted for each in parallel</li>
+ *     <li>a budget of cached channel message views - least recently used ones are dropped first</li>
+ * </ul>
+ * Storage folders and key stores are never shared. Metrics are shared by all messengers in a process anyway.
+ * @see SharkMessengerComponentFactory#SharkMessengerComponentFactory(net.sharksystem.pki.SharkPKIComponent,
+ *      SharkMessageStoreType, CharSequence, SharkMessengerSharedResources)
+ */
+public class SharkMessengerSharedResources {
+    public static final int DEFAULT_BACKGROUND_THREADS = 2;
+    public static final int DEFAULT_CACHED_CHANNELS = 256;
+
+    private final ScheduledExecutorService backgroundExecutor;
+    private final ExecutorService cryptoExecutor;
+    private final SharkMessengerCacheBudget cacheBudget;
+
+    public SharkMessengerSharedResources() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CACHED_CHANNELS);
+    }
+
+    /**
+     * @param cryptoThreads number of crypto workers
+     * @param cachedChannels maximum number of channels (of all peers) with cached message views
+     */
+    public SharkMessengerSharedResources(int cryptoThreads, int cachedChannels) {
+        this.backgroundExecutor = Executors.newScheduledThreadPool(DEFAULT_BACKGROUND_THREADS,
+                daemonThreads("SharkMessengerCompactor"));
+        this.cryptoExecutor = Executors.newFixedThreadPool(cryptoThreads, daemonThreads("SharkMessengerCrypto"));
+        this.cacheBudget = new SharkMessengerCacheBudget(cachedChannels);
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger number = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @return background threads - also for periodic work of applications, e.g. keeping hubs connected. Tasks
+     * must not run for long: all hosted peers share these threads.
+     */
+    public ScheduledExecutorService getBackgroundExecutor() {
+        return this.backgroundExecutor;
+    }
+
+    ExecutorService getCryptoExecutor() {
+        return this.cryptoExecutor;
+    }
+
+    SharkMessengerCacheBudget getCacheBudget() {
+        return this.cacheBudget;
+    }
+
+    /**
+     * @return number of channels with cached message views right now
+     */
+    public int getCachedChannels() {
+        return this.cacheBudget.size();
+    }
+
+    /**
+     * Stop all threads - messengers using these resources must not be used afterwards.
+     */
+    public void shutdown() {
+        this.backgroundExecutor.shutdown();
+        this.cryptoExecutor.shutdown();
+    }
+}
@@ -0,0 +1,429 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.*;
+import net.sharksystem.asap.utils.ASAPSerialization;
+import net.sharksystem.utils.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Set reconciliation of channels during an encounter. Message stores that are not persisted by ASAP
+ * (in-memory, mapped files) are not exchanged by the ASAP engine. Peers exchange a digest of each channel
+ * instead - an invertible Bloom lookup table over message digests. Each peer subtracts the received table from its
+ * own and sends only messages the other peer lacks. Messages both peers hold are never transferred - no matter on
+ * which route they arrived.
+ * <br/><br/>
+ * PDU layout: byte type | sender peer id | recipient peer id | payload<br/>
+ * DIGEST payload: table (see InvertibleBloomLookupTable)<br/>
+ * MESSAGES payload: int number | number * (hop list | message)<br/>
+ * ACK payload: int number | number * long digest - messages the sender of this pdu holds now
+ * <br/><br/>
+ * Transient ASAP messages reach each connected peer. PDUs are addressed to find its recipient.
+ * <br/><br/>
+ * Missing messages are sent in order and within budget of a transfer scheduler. They are split into PDUs of
+ * about MESSAGES_PDU_SIZE bytes - what was sent before a connection drops has arrived. Received messages are
+ * acknowledged. Acknowledged messages are never sent again to that peer.
+ * <br/><br/>
+ * PDUs are accepted from the encountered peer only - its id must be the sender field.
+ *
+ * @see SharkMessengerDeliveryWatermarks
+ */
+class SharkMessengerSync implements ASAPEnvironmentChangesListener, ASAPMessageReceivedListener {
+    static final byte DIGEST = 1;
+    static final byte MESSAGES = 2;
+    static final byte ACK = 3;
+
+    /** differences of about 20 messages are decoded with the first digest - larger ones double the table */
+    static final int INITIAL_CELLS = 64;
+    /** larger differences are not decoded - all messages are sent */
+    static final int MAX_CELLS = 4096;
+    static final int MESSAGES_PDU_SIZE = 16 * 1024;
+
+    private final SharkMessengerSyncContext messenger;
+    private final SharkMessengerTransferScheduler scheduler;
+    private final SharkMessengerDeliveryWatermarks watermarks;
+    private final Map<String, ChannelDigests> channelDigests = new ConcurrentHashMap<>();
+    private Set<CharSequence> onlinePeers = new HashSet<>();
+
+    SharkMessengerSync(SharkMessengerSyncContext messenger, SharkMessengerTransferScheduler scheduler,
+                       SharkMessengerDeliveryWatermarks watermarks) {
+        this.messenger = messenger;
+        this.scheduler = scheduler;
+        this.watermarks = watermarks;
+    }
+
+    /**
+     * @return first 64 bit of sha-256 of a serialized message
+     */
+    static long digest(byte[] message) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(message);
+            long digest = 0;
+            for(int i = 0; i < Long.BYTES; i++) digest = (digest << 8) | (hash[i] & 0xFF);
+            return digest;
+        } catch (NoSuchAlgorithmException e) {
+            // each java platform must support sha-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                     channel digests                                     //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Digests of all messages of a channel and their positions. Built once - each appended message is hashed when
+     * the store tells about it. Invalid after compaction or if the store cannot tell a position - built again
+     * when needed.
+     * <br/><br/>
+     * Entries are never changed, the array is only replaced when it grows: read size first, array second.
+     */
+    private static class ChannelDigests implements SharkMessageStoreIndexHook {
+        final SharkMessageStore store;
+        private final Map<Long, Integer> positions = new HashMap<>();
+        /** digests in store order */
+        private long[] digests = new long[64];
+        private int size = 0;
+        private boolean built = false;
+        private volatile boolean valid = true;
+
+        ChannelDigests(SharkMessageStore store) {
+            this.store = store;
+        }
+
+        synchronized void build() throws IOException {
+            if(this.built) return;
+            int storeSize = this.store.size();
+            for(int position = 0; position < storeSize; position++) {
+                this.add(position, digest(this.store.getMessage(position)));
+            }
+            this.built = true;
+        }
+
+        private void add(int position, long digest) {
+            if(position == this.digests.length) this.digests = Arrays.copyOf(this.digests, position * 2);
+            this.digests[position] = digest;
+            this.positions.put(digest, position);
+            this.size = position + 1;
+        }
+
+        @Override
+        public synchronized void messageAppended(CharSequence uri, int position, byte[] message,
+                                                 List<ASAPHop> hops) {
+            if(!this.built || position >= 0 && position < this.size) return; // read by build
+            if(position == this.size) this.add(position, digest(message));
+            else this.valid = false; // position unknown or missed
+        }
+
+        @Override
+        public void storeCompacted(CharSequence uri) {
+            this.valid = false;
+        }
+
+        boolean isValid() {
+            return this.valid;
+        }
+
+        synchronized int size() {
+            return this.size;
+        }
+
+        /**
+         * @return digests in store order - at least {@link #size()} entries
+         */
+        synchronized long[] array() {
+            return this.digests;
+        }
+
+        synchronized Integer positionOf(long digest) {
+            return this.positions.get(digest);
+        }
+
+        synchronized boolean contains(long digest) {
+            return this.positions.containsKey(digest);
+        }
+
+        synchronized void insertInto(InvertibleBloomLookupTable table) {
+            for(long digest : this.positions.keySet()) table.insert(digest);
+        }
+    }
+
+    private ChannelDigests getChannelDigests(SharkMessageStore store) throws IOException {
+        String uri = store.getURI().toString();
+        ChannelDigests digests;
+        synchronized(this.channelDigests) {
+            digests = this.channelDigests.get(uri);
+            if(digests == null || !digests.isValid() || digests.store != store) {
+                if(digests != null) digests.store.removeIndexHook(digests);
+                digests = new ChannelDigests(store);
+                // hook first - no message is missed while building
+                store.addIndexHook(digests);
+                this.channelDigests.put(uri, digests);
+            }
+        }
+        digests.build();
+        return digests;
+    }
+
+    InvertibleBloomLookupTable createTable(SharkMessageStore store, int cells) throws IOException {
+        InvertibleBloomLookupTable table = new InvertibleBloomLookupTable(cells);
+        this.getChannelDigests(store).insertInto(table);
+        return table;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                        encounter                                        //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public synchronized void onlinePeersChanged(Set<CharSequence> peers) {
+        Set<CharSequence> newPeers = new HashSet<>(peers);
+        newPeers.removeAll(this.onlinePeers);
+        for(CharSequence peer : this.onlinePeers) {
+            if(!peers.contains(peer)) this.scheduler.encounterEnded(peer);
+        }
+        this.onlinePeers = new HashSet<>(peers);
+        if(newPeers.isEmpty()) return;
+
+        long now = System.currentTimeMillis();
+        try {
+            // digests of important channels first - their messages are sent first
+            List<CharSequence> uris = this.messenger.getChannelUris();
+            Map<CharSequence, Integer> channelPriorities = new HashMap<>();
+            for(CharSequence uri : uris) {
+                channelPriorities.put(uri, this.messenger.getTransferPriority(uri));
+            }
+            uris = this.scheduler.orderChannels(uris, channelPriorities);
+
+            for(CharSequence peer : newPeers) {
+                this.scheduler.encounterStarted(peer, now);
+                for(CharSequence uri : uris) {
+                    this.sendDigest(uri, peer, INITIAL_CELLS);
+                }
+            }
+        } catch (IOException | SharkMessengerException e) {
+            Log.writeLogErr(this, "cannot start sync: " + e.getLocalizedMessage());
+        }
+    }
+
+    private void sendDigest(CharSequence uri, CharSequence peer, int cells) throws IOException {
+        SharkMessageStore store = this.messenger.getStore(uri);
+        ByteArrayOutputStream baos = this.startPDU(DIGEST, peer);
+        this.createTable(store, cells).write(baos);
+        this.send(uri, baos.toByteArray());
+    }
+
+    private ByteArrayOutputStream startPDU(byte type, CharSequence recipient) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ASAPSerialization.writeByteParameter(type, baos);
+        ASAPSerialization.writeCharSequenceParameter(this.messenger.getPeerID(), baos);
+        ASAPSerialization.writeCharSequenceParameter(recipient, baos);
+        return baos;
+    }
+
+    private void send(CharSequence uri, byte[] pdu) throws IOException {
+        this.messenger.sendSyncPDU(uri, pdu);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                      received pdus                                      //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void asapMessagesReceived(ASAPMessages asapMessages, String senderE2E, List<ASAPHop> asapHops)
+            throws IOException {
+
+        Iterator<byte[]> pduIter = asapMessages.getMessages();
+        while(pduIter.hasNext()) {
+            this.pduReceived(asapMessages.getURI(), pduIter.next(), asapHops);
+        }
+    }
+
+    /**
+     * @param hops route of this pdu - last hop is the encountered peer
+     */
+    void pduReceived(CharSequence uri, byte[] pdu, List<ASAPHop> hops) throws IOException {
+        ByteArrayInputStream bais = new ByteArrayInputStream(pdu);
+        try {
+            byte type = ASAPSerialization.readByteParameter(bais);
+            String sender = ASAPSerialization.readCharSequenceParameter(bais);
+            String recipient = ASAPSerialization.readCharSequenceParameter(bais);
+            if(!recipient.equals(this.messenger.getPeerID().toString())) return; // not for us
+
+            // sender field is not signed - peer must be the one we encountered
+            CharSequence encounteredPeer = hops == null || hops.isEmpty() ? null : hops.get(hops.size() - 1).sender();
+            if(encounteredPeer == null || !sender.equals(encounteredPeer.toString())) {
+                Log.writeLogErr(this, "drop sync pdu in " + uri + ": sender " + sender
+                        + " is not encountered peer " + encounteredPeer);
+                return;
+            }
+
+            switch (type) {
+                case DIGEST:
+                    this.digestReceived(uri, sender, InvertibleBloomLookupTable.read(bais));
+                    break;
+                case MESSAGES:
+                    this.messagesReceived(uri, sender, bais, hops);
+                    break;
+                case ACK:
+                    this.ackReceived(uri, sender, bais);
+                    break;
+                default:
+                    Log.writeLogErr(this, "unknown sync pdu type: " + type);
+            }
+        } catch (ASAPException | IllegalArgumentException e) {
+            Log.writeLogErr(this, "malformed sync pdu in " + uri + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    private void digestReceived(CharSequence uri, CharSequence peer, InvertibleBloomLookupTable remote)
+            throws IOException {
+
+        SharkMessageStore store = this.messenger.getStore(uri);
+        Set<Long> onlyHere = new HashSet<>();
+        Set<Long> onlyThere = new HashSet<>();
+        ChannelDigests digests = this.getChannelDigests(store);
+        if(this.createTable(store, remote.getCells()).subtract(remote).decode(onlyHere, onlyThere)) {
+            Log.writeLog(this, "sync " + uri + " with " + peer + ": " + onlyHere.size() + " missing there, "
+                    + onlyThere.size() + " missing here");
+            // peer holds anything else
+            int number = digests.size();
+            long[] storeDigests = digests.array();
+            List<Long> held = new ArrayList<>(number);
+            for(int i = 0; i < number; i++) if(!onlyHere.contains(storeDigests[i])) held.add(storeDigests[i]);
+            this.watermarks.held(peer, uri, held, storeDigests, number);
+
+            if(!onlyHere.isEmpty()) this.sendMessages(uri, peer, store, onlyHere, digests);
+            return;
+        }
+
+        // difference too large for this table
+        if(remote.getCells() * 2 <= MAX_CELLS) {
+            this.sendDigest(uri, peer, remote.getCells() * 2);
+        } else {
+            // resume from what peer acknowledged before
+            int number = digests.size();
+            long[] storeDigests = digests.array();
+            int watermark = this.watermarks.get(peer, uri, storeDigests, number);
+            Log.writeLog(this, "sync " + uri + " with " + peer
+                    + ": difference too large - send all messages from position " + watermark);
+            Set<Long> keys = new HashSet<>();
+            for(int i = watermark; i < number; i++) keys.add(storeDigests[i]);
+            this.sendMessages(uri, peer, store, keys, digests);
+        }
+    }
+
+    private void sendMessages(CharSequence uri, CharSequence peer, SharkMessageStore store,
+                              Set<Long> keys, ChannelDigests digests) throws IOException {
+
+        SharkMessengerRoutingPolicy policy = this.messenger.getRoutingPolicy(uri);
+        long now = System.currentTimeMillis();
+        List<SharkMessengerTransferScheduler.Candidate> candidates = new ArrayList<>();
+        for(long key : keys) {
+            Integer position = digests.positionOf(key);
+            if(position == null || position >= store.size()) continue;
+            byte[] message = store.getMessage(position);
+            if(digest(message) != key) continue; // store was compacted meanwhile
+            if(this.watermarks.isHeld(peer, uri, position, key)) continue; // acknowledged meanwhile
+            List<ASAPHop> hops = store.getASAPHops(position);
+            if(!hops.isEmpty() && !policy.allowsRouting()) continue;
+            if(SharkMessageHeader.read(message).isOutdated(now, hops.size() + 1)) continue;
+            candidates.add(new SharkMessengerTransferScheduler.Candidate(
+                    position, message, hops, this.isAddressedTo(message, peer)));
+        }
+        this.scheduler.order(candidates);
+
+        List<SharkMessengerTransferScheduler.Candidate> batch = new ArrayList<>();
+        int batchSize = 0;
+        int deferred = 0;
+        for(SharkMessengerTransferScheduler.Candidate candidate : candidates) {
+            if(!this.scheduler.consume(peer, candidate.message.length, System.currentTimeMillis())) {
+                deferred++;
+                continue;
+            }
+            batch.add(candidate);
+            batchSize += candidate.message.length;
+            if(batchSize >= MESSAGES_PDU_SIZE) {
+                this.sendMessages(uri, peer, batch);
+                batch.clear();
+                batchSize = 0;
+            }
+        }
+        this.sendMessages(uri, peer, batch);
+        if(deferred > 0) {
+            Log.writeLog(this, "sync " + uri + " with " + peer + ": " + deferred
+                    + " messages exceed encounter budget - wait for next encounter");
+        }
+    }
+
+    private void sendMessages(CharSequence uri, CharSequence peer,
+                              List<SharkMessengerTransferScheduler.Candidate> batch) throws IOException {
+        if(batch.isEmpty()) return;
+        ByteArrayOutputStream baos = this.startPDU(MESSAGES, peer);
+        ASAPSerialization.writeIntegerParameter(batch.size(), baos);
+        for(SharkMessengerTransferScheduler.Candidate candidate : batch) {
+            ASAPSerialization.writeASAPHopList(candidate.hops, baos);
+            ASAPSerialization.writeByteArray(candidate.message, baos);
+        }
+        this.send(uri, baos.toByteArray());
+    }
+
+    private boolean isAddressedTo(byte[] message, CharSequence peer) {
+        if(!this.scheduler.getPriorities().contains(SharkMessengerTransferPriority.DIRECT_RECIPIENT)) return false;
+        try {
+            for(CharSequence receiver : InMemoSharkMessage.readReceivers(message)) {
+                if(receiver.toString().equals(peer.toString())) return true;
+            }
+        } catch (IOException | ASAPException e) {
+            // malformed - no priority
+        }
+        return false;
+    }
+
+    private void messagesReceived(CharSequence uri, CharSequence peer, ByteArrayInputStream bais,
+                                  List<ASAPHop> deliveryHops) throws IOException, ASAPException {
+
+        SharkMessageStore store = this.messenger.getStore(uri);
+        ChannelDigests digests = this.getChannelDigests(store);
+        Set<Long> receivedNow = new HashSet<>();
+        long now = System.currentTimeMillis();
+        int number = ASAPSerialization.readIntegerParameter(bais);
+        int assimilated = 0;
+        List<Long> received = new ArrayList<>(number);
+        for(int i = 0; i < number; i++) {
+            List<ASAPHop> route = new ArrayList<>(ASAPSerialization.readASAPHopList(bais));
+            byte[] message = ASAPSerialization.readByteArray(bais);
+            long digest = digest(message);
+            // dropped messages are acknowledged as well - they must not be sent again
+            received.add(digest);
+            if(digests.contains(digest) || !receivedNow.add(digest)) continue; // got it meanwhile
+            if(deliveryHops != null) route.addAll(deliveryHops);
+            if(this.messenger.assimilate(uri, message, route, now)) assimilated++;
+        }
+        Log.writeLog(this, "sync " + uri + " with " + peer + ": " + assimilated + " of " + number + " assimilated");
+
+        ByteArrayOutputStream baos = this.startPDU(ACK, peer);
+        ASAPSerialization.writeIntegerParameter(received.size(), baos);
+        for(long digest : received) ASAPSerialization.writeLongParameter(digest, baos);
+        this.send(uri, baos.toByteArray());
+
+        if(assimilated > 0) this.messenger.syncedMessagesReceived(uri);
+    }
+
+    private void ackReceived(CharSequence uri, CharSequence peer, ByteArrayInputStream bais)
+            throws IOException, ASAPException {
+
+        int number = ASAPSerialization.readIntegerParameter(bais);
+        List<Long> acknowledged = new ArrayList<>(number);
+        for(int i = 0; i < number; i++) acknowledged.add(ASAPSerialization.readLongParameter(bais));
+        ChannelDigests digests = this.getChannelDigests(this.messenger.getStore(uri));
+        int storeSize = digests.size();
+        this.watermarks.held(peer, uri, acknowledged, digests.array(), storeSize);
+    }
+}
@@ -0,0 +1,44 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPHop;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * What channel sync requires from a messenger: its channels, their stores and a way to send pdus. The messenger
+ * component provides it on top of an ASAP peer. Simulations can provide it without any network.
+ *
+ * @see SharkMessengerSync
+ */
+interface SharkMessengerSyncContext {
+    CharSequence getPeerID();
+
+    List<CharSequence> getChannelUris() throws IOException, SharkMessengerException;
+
+    SharkMessageStore getStore(CharSequence uri) throws IOException;
+
+    /**
+     * @return transfer priority of a channel
+     * @see SharkMessengerChannel#getTransferPriority()
+     */
+    int getTransferPriority(CharSequence uri) throws IOException, SharkMessengerException;
+
+    SharkMessengerRoutingPolicy getRoutingPolicy(CharSequence uri);
+
+    /**
+     * Keep a message received during sync.
+     * @return false if message was dropped
+     */
+    boolean assimilate(CharSequence uri, byte[] message, List<ASAPHop> route, long now) throws IOException;
+
+    /**
+     * Sync has assimilated new messages in a channel - tell listeners.
+     */
+    void syncedMessagesReceived(CharSequence uri);
+
+    /**
+     * Send a pdu to connected peers. It is fine if there are none.
+     */
+    void sendSyncPDU(CharSequence uri, byte[] pdu) throws IOException;
+}
@@ -0,0 +1,18 @@
+package net.sharksystem.messenger;
+
+/**
+ * Criteria that decide which messages are sent first during an encounter. Contact time can be short - messages
+ * sent first are most likely to arrive.
+ *
+ * @see SharkMessengerComponent#setTransferSchedule(java.util.List, int, long)
+ */
+public enum SharkMessengerTransferPriority {
+    /** channels with higher transfer priority first */
+    CHANNEL_PRIORITY,
+    /** messages addressed to the peer we met before broadcast messages and messages for others */
+    DIRECT_RECIPIENT,
+    /** newest messages first */
+    RECENCY,
+    /** smaller messages first */
+    SMALL_SIZE
+}
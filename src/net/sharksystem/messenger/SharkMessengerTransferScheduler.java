@@ -0,0 +1,127 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPHop;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides order and amount of messages sent to a peer during an encounter. Criteria are applied in given order -
+ * the first one decides, others break ties. Each encounter has a byte and time budget. Messages beyond that budget
+ * wait for the next encounter.
+ */
+class SharkMessengerTransferScheduler {
+    static final List<SharkMessengerTransferPriority> DEFAULT_PRIORITIES = List.of(
+            SharkMessengerTransferPriority.CHANNEL_PRIORITY,
+            SharkMessengerTransferPriority.DIRECT_RECIPIENT,
+            SharkMessengerTransferPriority.RECENCY);
+    static final int UNLIMITED = 0;
+
+    private volatile List<SharkMessengerTransferPriority> priorities = DEFAULT_PRIORITIES;
+    private volatile int byteBudget = UNLIMITED;
+    private volatile long timeBudgetInMillis = UNLIMITED;
+    private final Map<String, Encounter> encounters = new ConcurrentHashMap<>();
+
+    /**
+     * A message that could be sent to a peer.
+     */
+    static class Candidate {
+        final int position;
+        final byte[] message;
+        final List<ASAPHop> hops;
+        final boolean direct;
+
+        /**
+         * @param position position in store - larger is newer
+         * @param direct true if addressed to the peer we met
+         */
+        Candidate(int position, byte[] message, List<ASAPHop> hops, boolean direct) {
+            this.position = position;
+            this.message = message;
+            this.hops = hops;
+            this.direct = direct;
+        }
+    }
+
+    private static class Encounter {
+        final long startTime;
+        long bytesSent = 0;
+
+        Encounter(long startTime) {
+            this.startTime = startTime;
+        }
+    }
+
+    void configure(List<SharkMessengerTransferPriority> priorities, int byteBudget, long timeBudgetInMillis) {
+        this.priorities = priorities == null || priorities.isEmpty() ?
+                DEFAULT_PRIORITIES : List.copyOf(priorities);
+        this.byteBudget = Math.max(UNLIMITED, byteBudget);
+        this.timeBudgetInMillis = Math.max(UNLIMITED, timeBudgetInMillis);
+    }
+
+    List<SharkMessengerTransferPriority> getPriorities() {
+        return this.priorities;
+    }
+
+    void encounterStarted(CharSequence peer, long now) {
+        this.encounters.put(peer.toString(), new Encounter(now));
+    }
+
+    void encounterEnded(CharSequence peer) {
+        this.encounters.remove(peer.toString());
+    }
+
+    /**
+     * @param channelPriorities transfer priority of each channel
+     * @return channels in order their messages should be offered
+     */
+    List<CharSequence> orderChannels(List<CharSequence> uris, Map<CharSequence, Integer> channelPriorities) {
+        List<CharSequence> ordered = new ArrayList<>(uris);
+        if(this.priorities.contains(SharkMessengerTransferPriority.CHANNEL_PRIORITY)) {
+            // stable - same priority keeps channel order
+            ordered.sort((a, b) -> Integer.compare(
+                    channelPriorities.getOrDefault(b, 0), channelPriorities.getOrDefault(a, 0)));
+        }
+        return ordered;
+    }
+
+    /**
+     * Sort messages of a channel. Channel priority is the same for all of them - it is ignored.
+     */
+    void order(List<Candidate> candidates) {
+        Comparator<Candidate> comparator = (a, b) -> 0;
+        for(SharkMessengerTransferPriority priority : this.priorities) {
+            switch (priority) {
+                case DIRECT_RECIPIENT:
+                    comparator = comparator.thenComparing((a, b) -> Boolean.compare(b.direct, a.direct));
+                    break;
+                case RECENCY:
+                    comparator = comparator.thenComparing((a, b) -> Integer.compare(b.position, a.position));
+                    break;
+                case SMALL_SIZE:
+                    comparator = comparator.thenComparingInt(c -> c.message.length);
+                    break;
+                case CHANNEL_PRIORITY:
+                default:
+                    break;
+            }
+        }
+        candidates.sort(comparator);
+    }
+
+    /**
+     * Take bytes from the budget of an encounter.
+     * @return false if budget is exhausted - nothing was taken in that case
+     */
+    boolean consume(CharSequence peer, int bytes, long now) {
+        Encounter encounter = this.encounters.computeIfAbsent(peer.toString(), p -> new Encounter(now));
+        synchronized(encounter) {
+            if(this.timeBudgetInMillis != UNLIMITED && now - encounter.startTime > this.timeBudgetInMillis) {
+                return false;
+            }
+            if(this.byteBudget != UNLIMITED && encounter.bytesSent + bytes > this.byteBudget) return false;
+            encounter.bytesSent += bytes;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package net.sharksystem.cmdline.sharkmessengerUI;
+
+import net.sharksystem.SharkException;
+import net.sharksystem.hub.HubConnectionManager;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.hub.peerside.TCPHubConnectorDescriptionImpl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class HubConnectionSupervisorTests {
+    /** connects if hub is up - like the hub connection manager, outcome shows on next check */
+    private static class HubConnectionManagerMock implements HubConnectionManager {
+        boolean hubUp = true;
+        int connectCalls = 0;
+        final List<HubConnectorDescription> connectedHubs = new ArrayList<>();
+
+        @Override
+        public void connectHub(HubConnectorDescription hubDescription) {
+            this.connectCalls++;
+            if(this.hubUp && this.connectedHubs.isEmpty()) this.connectedHubs.add(hubDescription);
+        }
+
+        @Override
+        public void disconnectHub(HubConnectorDescription hubDescription) {
+            this.connectedHubs.clear();
+        }
+
+        @Override
+        public void disconnectHub(int index) {
+            this.connectedHubs.clear();
+        }
+
+        @Override
+        public List<HubConnectorDescription> getConnectedHubs() {
+            return this.connectedHubs;
+        }
+
+        @Override
+        public List<FailedConnectionAttempt> getFailedConnectionAttempts() {
+            return new ArrayList<>();
+        }
+    }
+
+    @Test
+    public void lostConnectionIsReestablished() throws IOException, SharkException {
+        HubConnectionManagerMock manager = new HubConnectionManagerMock();
+        HubConnectionSupervisor supervisor =
+                new HubConnectionSupervisor(manager, hub -> manager.hubUp, new Random(42));
+        HubConnectorDescription hub = new TCPHubConnectorDescriptionImpl("localhost", 6907);
+
+        supervisor.supervise(hub);
+        manager.connectHub(hub);
+        long now = System.currentTimeMillis();
+        supervisor.check(now);
+        Assertions.assertEquals("CONNECTED", supervisor.getHubs().get(0).getState());
+
+        // hub restarts - down for a while
+        manager.hubUp = false;
+        manager.connectedHubs.clear();
+        supervisor.check(now += 500);
+        Assertions.assertEquals(1, supervisor.getHubs().get(0).getDrops());
+        supervisor.check(now += 500); // first attempt right away - fails
+        supervisor.check(now += HubConnectionSupervisor.CONNECT_TIMEOUT_IN_MILLIS);
+        Assertions.assertEquals("BACKOFF", supervisor.getHubs().get(0).getState());
+
+        // back up - reconnected within backoff
+        manager.hubUp = true;
+        supervisor.check(now += HubConnectionSupervisor.INITIAL_BACKOFF_IN_MILLIS);
+        supervisor.check(now += 500);
+        HubConnectionSupervisor.HubSnapshot snapshot = supervisor.getHubs().get(0);
+        Assertions.assertEquals("CONNECTED", snapshot.getState());
+        Assertions.assertEquals(2, snapshot.getConnects());
+        Assertions.assertEquals(0, snapshot.getConsecutiveFailures());
+
+        // released hubs are left alone
+        supervisor.release(hub);
+        manager.connectedHubs.clear();
+        int connectCalls = manager.connectCalls;
+        supervisor.check(now += 500);
+        supervisor.check(now += 500);
+        Assertions.assertEquals(connectCalls, manager.connectCalls);
+        Assertions.assertTrue(supervisor.getHubs().isEmpty());
+    }
+
+    @Test
+    public void circuitOpensAfterFailures() throws IOException {
+        HubConnectionManagerMock manager = new HubConnectionManagerMock();
+        manager.hubUp = false;
+        HubConnectionSupervisor supervisor =
+                new HubConnectionSupervisor(manager, hub -> manager.hubUp, new Random(42));
+        supervisor.supervise(new TCPHubConnectorDescriptionImpl("localhost", 6907));
+
+        long now = System.currentTimeMillis();
+        for(int i = 0; i < 1000 && !supervisor.getHubs().get(0).getState().equals("CIRCUIT_OPEN"); i++) {
+            supervisor.check(now += 250);
+        }
+        HubConnectionSupervisor.HubSnapshot snapshot = supervisor.getHubs().get(0);
+        Assertions.assertEquals("CIRCUIT_OPEN", snapshot.getState());
+        Assertions.assertEquals(HubConnectionSupervisor.FAILURES_TO_OPEN_CIRCUIT, snapshot.getConsecutiveFailures());
+
+        // no attempts while open - a failing probe keeps it open
+        int connectCalls = manager.connectCalls;
+        supervisor.check(now += HubConnectionSupervisor.CIRCUIT_OPEN_IN_MILLIS / 2);
+        supervisor.check(now += HubConnectionSupervisor.CIRCUIT_OPEN_IN_MILLIS / 2);
+        Assertions.assertEquals(connectCalls, manager.connectCalls);
+        Assertions.assertEquals("CIRCUIT_OPEN", supervisor.getHubs().get(0).getState());
+
+        // half open: probe succeeds, single attempt
+        manager.hubUp = true;
+        supervisor.check(now += HubConnectionSupervisor.CIRCUIT_OPEN_IN_MILLIS);
+        supervisor.check(now += 250);
+        Assertions.assertEquals(connectCalls + 1, manager.connectCalls);
+        Assertions.assertEquals("CONNECTED", supervisor.getHubs().get(0).getState());
+    }
+
+    @Test
+    public void backoffIsJitteredAndBounded() {
+        HubConnectionSupervisor supervisor =
+                new HubConnectionSupervisor(new HubConnectionManagerMock(), hub -> true, new Random(42));
+        for(int failures = 1; failures < 40; failures++) {
+            long delay = Math.min(HubConnectionSupervisor.MAX_BACKOFF_IN_MILLIS,
+                    HubConnectionSupervisor.INITIAL_BACKOFF_IN_MILLIS << Math.min(failures - 1, 30));
+            long backoff = supervisor.backoff(failures);
+            Assertions.assertTrue(backoff >= delay / 2 && backoff <= delay, failures + ": " + backoff);
+        }
+    }
+
+    @Test
+    public void unhealthyHubIsReconnected() throws IOException {
+        HubConnectionManagerMock manager = new HubConnectionManagerMock();
+        boolean[] healthy = {true};
+        HubConnectionSupervisor supervisor =
+                new HubConnectionSupervisor(manager, hub -> healthy[0], new Random(42));
+        HubConnectorDescription hub = new TCPHubConnectorDescriptionImpl("localhost", 6907);
+        supervisor.supervise(hub);
+        manager.connectHub(hub);
+        long now = System.currentTimeMillis();
+        supervisor.check(now);
+
+        // connection still listed but hub does not answer
+        healthy[0] = false;
+        supervisor.check(now += HubConnectionSupervisor.HEALTH_CHECK_INTERVAL_IN_MILLIS);
+        Assertions.assertTrue(manager.connectedHubs.isEmpty());
+        Assertions.assertEquals(1, supervisor.getHubs().get(0).getDrops());
+
+        healthy[0] = true;
+        supervisor.check(now += 500);
+        supervisor.check(now += 500);
+        Assertions.assertEquals("CONNECTED", supervisor.getHubs().get(0).getState());
+    }
+
+    @Test
+    public void probeRunsWithoutHubLock() throws IOException {
+        HubConnectionManagerMock manager = new HubConnectionManagerMock();
+        HubConnectionSupervisor[] supervisor = new HubConnectionSupervisor[1];
+        boolean[] snapshotTaken = {false};
+        supervisor[0] = new HubConnectionSupervisor(manager, hub -> {
+            // e.g. a user looking at hub states while a slow hub is probed
+            Thread reader = new Thread(() -> snapshotTaken[0] = !supervisor[0].getHubs().isEmpty());
+            reader.start();
+            try {
+                reader.join(HubConnectionSupervisor.PROBE_TIMEOUT_IN_MILLIS);
+            } catch (InterruptedException e) {
+                // fails below
+            }
+            return true;
+        }, new Random(42));
+        HubConnectorDescription hub = new TCPHubConnectorDescriptionImpl("localhost", 6907);
+        supervisor[0].supervise(hub);
+        manager.connectHub(hub);
+        long now = System.currentTimeMillis();
+        supervisor[0].check(now);
+        supervisor[0].check(now + HubConnectionSupervisor.HEALTH_CHECK_INTERVAL_IN_MILLIS);
+        Assertions.assertTrue(snapshotTaken[0]);
+        Assertions.assertEquals("CONNECTED", supervisor[0].getHubs().get(0).getState());
+    }
+
+    @Test
+    public void probeExpectsStatusReply() throws IOException {
+        SharkMessengerEmbeddedHub hub =
+                new SharkMessengerEmbeddedHub(0, 2, SharkMessengerEmbeddedHub.THREAD_PER_CONNECTION);
+        hub.start("SupervisorProbeTestPeer");
+        // accepts tcp connections but does not speak hub protocol
+        try(ServerSocket silent = new ServerSocket(0)) {
+            Assertions.assertTrue(HubConnectionSupervisor.isReachable(
+                    new TCPHubConnectorDescriptionImpl("localhost", hub.getPort())));
+            Assertions.assertFalse(HubConnectionSupervisor.isReachable(
+                    new TCPHubConnectorDescriptionImpl("localhost", silent.getLocalPort())));
+        } finally {
+            hub.close();
+        }
+    }
+}
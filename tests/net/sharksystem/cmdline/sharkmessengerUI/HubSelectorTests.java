@@ -0,0 +1,91 @@
+package net.sharksystem.cmdline.sharkmessengerUI;
+
+import net.sharksystem.hub.hubside.ASAPTCPHub;
+import net.sharksystem.hub.peerside.HubConnectorDescription;
+import net.sharksystem.hub.peerside.TCPHubConnectorDescriptionImpl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.*;
+
+public class HubSelectorTests {
+    private static int freePort() throws IOException {
+        try(ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    @Test
+    public void hubStatusIsMeasured() throws IOException, InterruptedException {
+        int port = freePort();
+        ASAPTCPHub hub = new ASAPTCPHub(port, false);
+        new Thread(hub).start();
+        Thread.sleep(200);
+        try {
+            HubConnectorDescription hubDescription = new TCPHubConnectorDescriptionImpl("localhost", port);
+            HubSelector.Measurement measurement = HubSelector.measureHubStatus(hubDescription);
+            Assertions.assertTrue(measurement.roundTripNanos > 0);
+            Assertions.assertTrue(measurement.bytesPerSecond > 0);
+
+            // probing leaves hub intact
+            Assertions.assertNotNull(HubSelector.measureHubStatus(hubDescription));
+        } finally {
+            hub.kill();
+        }
+
+        Assertions.assertThrows(IOException.class, () -> HubSelector.measureHubStatus(
+                new TCPHubConnectorDescriptionImpl("localhost", freePort())));
+    }
+
+    @Test
+    public void bestHubsAreSelectedWithoutFlapping() throws IOException {
+        HubConnectorDescription europe = new TCPHubConnectorDescriptionImpl("localhost", 7001);
+        HubConnectorDescription america = new TCPHubConnectorDescriptionImpl("localhost", 7002);
+        HubConnectorDescription asia = new TCPHubConnectorDescriptionImpl("localhost", 7003);
+        List<HubConnectorDescription> candidates = Arrays.asList(europe, america, asia);
+
+        // round trip in millis - null: unreachable
+        Map<Integer, Long> roundTrips = new HashMap<>();
+        roundTrips.put(7001, 20L);
+        roundTrips.put(7002, 90L);
+        roundTrips.put(7003, 250L);
+        HubSelector selector = new HubSelector(null, hubDescription -> {
+            try {
+                Long millis = roundTrips.get(hubDescription.getPortNumber());
+                if(millis == null) throw new IOException("unreachable");
+                return new HubSelector.Measurement(millis * 1000000, 10 * 1024 * 1024);
+            } catch (net.sharksystem.hub.ASAPHubException e) {
+                throw new IOException(e);
+            }
+        });
+        for(HubConnectorDescription candidate : candidates) selector.measure(candidate);
+
+        List<HubConnectorDescription> selected = selector.select(candidates, new ArrayList<>(), 2);
+        Assertions.assertEquals(2, selected.size());
+        Assertions.assertTrue(selected.get(0).isSame(europe));
+        Assertions.assertTrue(selected.get(1).isSame(america));
+
+        // asia gets a bit better than america - not enough to switch
+        roundTrips.put(7003, 80L);
+        for(int i = 0; i < 10; i++) for(HubConnectorDescription candidate : candidates) selector.measure(candidate);
+        selected = selector.select(candidates, selected, 2);
+        Assertions.assertTrue(selected.get(1).isSame(america));
+
+        // america slows down - switch
+        roundTrips.put(7002, 400L);
+        for(int i = 0; i < 10; i++) for(HubConnectorDescription candidate : candidates) selector.measure(candidate);
+        selected = selector.select(candidates, selected, 2);
+        Assertions.assertTrue(selected.get(0).isSame(europe));
+        Assertions.assertTrue(selected.get(1).isSame(asia));
+
+        // europe fails - no unreachable hub is selected
+        roundTrips.remove(7001);
+        selector.measure(europe);
+        selected = selector.select(candidates, selected, 2);
+        Assertions.assertEquals(2, selected.size());
+        for(HubConnectorDescription hub : selected) Assertions.assertFalse(hub.isSame(europe));
+        Assertions.assertTrue(selector.describeHubs().get(2).endsWith("unreachable"));
+    }
+}
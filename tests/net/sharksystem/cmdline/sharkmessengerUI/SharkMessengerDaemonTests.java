@@ -0,0 +1,190 @@
+package net.sharksystem.cmdline.sharkmessengerUI;
+
+import net.sharksystem.messenger.SharkMessengerSharedResources;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class SharkMessengerDaemonTests {
+    private static final String PEER_NAME = "DaemonTestPeer";
+    private static final String URI = "sn2://daemon";
+
+    @Test
+    public void jsonRoundTrip() {
+        String line = "{\"id\":7, \"cmd\":\"send\", \"content\":\"a \\\"quoted\\\"\\nline \\u00e4\", "
+                + "\"receivers\":[\"Bob\",\"Clara\"], \"sign\":true, \"ttl\":1.5, \"none\":null}";
+        Map<String, Object> request = JSON.parseObject(line);
+        Assertions.assertEquals(7L, request.get("id"));
+        Assertions.assertEquals("a \"quoted\"\nline \u00e4", request.get("content"));
+        Assertions.assertEquals(Arrays.asList("Bob", "Clara"), request.get("receivers"));
+        Assertions.assertEquals(Boolean.TRUE, request.get("sign"));
+        Assertions.assertEquals(1.5, request.get("ttl"));
+        Assertions.assertTrue(request.containsKey("none"));
+
+        Assertions.assertEquals(request, JSON.parseObject(JSON.write(request)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> JSON.parseObject("{\"id\":1"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> JSON.parseObject("[1]"));
+    }
+
+    @Test
+    public void pipelinedRequests() throws Exception {
+        deleteRecursively(Path.of("sharkMessengerDataStorage", PEER_NAME));
+        SharkMessengerApp sharkMessengerApp = new SharkMessengerApp(PEER_NAME);
+        SharkMessengerDaemon daemon = new SharkMessengerDaemon(sharkMessengerApp, 4);
+        int port = daemon.start(0);
+
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+            writer.write("{\"id\":0, \"cmd\":\"mkChannel\", \"uri\":\"" + URI + "\", \"name\":\"daemon\"}\n");
+            // don't wait - sends on the same channel run after channel creation
+            int sends = 50;
+            for(int i = 1; i <= sends; i++) {
+                writer.write("{\"id\":" + i + ", \"cmd\":\"send\", \"uri\":\"" + URI
+                        + "\", \"content\":\"message " + i + "\"}\n");
+            }
+            writer.write("{\"id\":\"x\", \"cmd\":\"nonsense\"}\n");
+            writer.flush();
+
+            Map<Object, Map<String, Object>> responses = new HashMap<>();
+            for(int i = 0; i < sends + 2; i++) {
+                Map<String, Object> response = JSON.parseObject(reader.readLine());
+                responses.put(response.get("id"), response);
+            }
+            for(long i = 0; i <= sends; i++) {
+                Assertions.assertEquals(Boolean.TRUE, responses.get(i).get("ok"), responses.get(i).toString());
+            }
+            Assertions.assertEquals(Boolean.FALSE, responses.get("x").get("ok"));
+
+            writer.write("{\"id\":100, \"cmd\":\"lsMessages\", \"uri\":\"" + URI + "\", \"from\":0, \"count\":10}\n");
+            writer.flush();
+            Map<String, Object> response = JSON.parseObject(reader.readLine());
+            List<?> messages = (List<?>) response.get("messages");
+            Assertions.assertEquals(10, messages.size());
+            Assertions.assertEquals("message 1", ((Map<?, ?>) messages.get(0)).get("content"));
+            Assertions.assertEquals(PEER_NAME, ((Map<?, ?>) messages.get(0)).get("sender"));
+        } finally {
+            daemon.close();
+        }
+    }
+
+    @Test
+    public void hostileRequestsAreAnswered() throws Exception {
+        String nested = "[".repeat(JSON.MAX_DEPTH + 1) + "]".repeat(JSON.MAX_DEPTH + 1);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> JSON.parseObject("{\"a\":" + nested + "}"));
+        String deepest = "[".repeat(JSON.MAX_DEPTH - 1) + "]".repeat(JSON.MAX_DEPTH - 1);
+        Assertions.assertNotNull(JSON.parseObject("{\"a\":" + deepest + "}").get("a"));
+
+        deleteRecursively(Path.of("sharkMessengerDataStorage", PEER_NAME));
+        SharkMessengerApp sharkMessengerApp = new SharkMessengerApp(PEER_NAME);
+        SharkMessengerDaemon daemon = new SharkMessengerDaemon(sharkMessengerApp, 2);
+        int port = daemon.start(0);
+
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+            // would overflow the stack without depth limit
+            writer.write("{\"id\":1, \"a\":" + "[".repeat(100000) + "}\n");
+            writer.write("{\"id\":2, \"content\":\"" + "x".repeat(SharkMessengerDaemon.MAX_LINE_LENGTH) + "\"}\n");
+            // more requests than may be in progress - client is just read slower
+            int pings = SharkMessengerDaemon.MAX_PENDING_REQUESTS * 2;
+            for(int i = 0; i < pings; i++) writer.write("{\"id\":" + (i + 3) + ", \"cmd\":\"ping\"}\n");
+            writer.flush();
+
+            Map<String, Object> response = JSON.parseObject(reader.readLine());
+            Assertions.assertEquals(Boolean.FALSE, response.get("ok"));
+            Assertions.assertTrue(response.get("error").toString().contains("nested"), response.toString());
+            response = JSON.parseObject(reader.readLine());
+            Assertions.assertEquals(Boolean.FALSE, response.get("ok"));
+            Assertions.assertTrue(response.get("error").toString().contains("longer"), response.toString());
+            // connection survived
+            for(int i = 0; i < pings; i++) {
+                Assertions.assertEquals(Boolean.TRUE, JSON.parseObject(reader.readLine()).get("ok"));
+            }
+        } finally {
+            daemon.close();
+        }
+    }
+
+    @Test
+    public void hostSharesThreadsAmongPeers() throws Exception {
+        String[] peerNames = {"HostTestPeerA", "HostTestPeerB", "HostTestPeerC"};
+        for(String peerName : peerNames) deleteRecursively(Path.of("sharkMessengerDataStorage", peerName));
+        Path socketFolder = Files.createTempDirectory("sharkMessengerHost");
+
+        int compactorsBefore = countThreads("SharkMessengerCompactor");
+        SharkMessengerHost host = new SharkMessengerHost(new SharkMessengerSharedResources(2, 8), 2);
+        try {
+            for(String peerName : peerNames) host.addPeer(peerName);
+            host.serve(socketFolder);
+
+            Set<CharSequence> peerIDs = new HashSet<>();
+            for(String peerName : peerNames) {
+                peerIDs.add(host.getPeer(peerName).getSharkPeer().getASAPPeer().getPeerID().toString());
+                Assertions.assertTrue(Files.exists(Path.of("sharkMessengerDataStorage", peerName)));
+                Assertions.assertTrue(Files.exists(socketFolder.resolve(peerName + ".sock")));
+            }
+            Assertions.assertEquals(peerNames.length, peerIDs.size());
+            // one background pool for all peers
+            Assertions.assertTrue(countThreads("SharkMessengerCompactor") - compactorsBefore
+                    <= SharkMessengerSharedResources.DEFAULT_BACKGROUND_THREADS);
+            // hub supervision runs on these threads as well
+            for(String peerName : peerNames) Assertions.assertEquals(0, countThreads("SharkMessengerApp " + peerName));
+
+            for(String peerName : peerNames) {
+                try(SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(
+                        socketFolder.resolve(peerName + ".sock")))) {
+                    Writer writer = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+                    BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+                    writer.write("{\"id\":1, \"cmd\":\"mkChannel\", \"uri\":\"" + URI + "\", \"name\":\"host\"}\n");
+                    writer.write("{\"id\":2, \"cmd\":\"send\", \"uri\":\"" + URI
+                            + "\", \"content\":\"from " + peerName + "\"}\n");
+                    writer.write("{\"id\":3, \"cmd\":\"lsMessages\", \"uri\":\"" + URI + "\"}\n");
+                    writer.flush();
+
+                    Map<Object, Map<String, Object>> responses = new HashMap<>();
+                    for(int i = 0; i < 3; i++) {
+                        Map<String, Object> response = JSON.parseObject(reader.readLine());
+                        responses.put(response.get("id"), response);
+                    }
+                    List<?> messages = (List<?>) responses.get(3L).get("messages");
+                    Assertions.assertEquals(1, messages.size());
+                    Assertions.assertEquals(peerName, ((Map<?, ?>) messages.get(0)).get("sender"));
+                }
+            }
+            Assertions.assertTrue(host.getSharedResources().getCachedChannels() <= 8);
+        } finally {
+            host.close();
+        }
+    }
+
+    private static int countThreads(String namePrefix) {
+        int number = 0;
+        for(Thread thread : Thread.getAllStackTraces().keySet()) {
+            if(thread.getName().startsWith(namePrefix)) number++;
+        }
+        return number;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if(!Files.exists(path)) return;
+        try(var paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
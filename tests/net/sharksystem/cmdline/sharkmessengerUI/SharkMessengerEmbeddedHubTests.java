@@ -0,0 +1,95 @@
+package net.sharksystem.cmdline.sharkmessengerUI;
+
+import net.sharksystem.SharkException;
+import net.sharksystem.hub.peerside.TCPHubConnectorDescriptionImpl;
+import net.sharksystem.messenger.SharkMessengerChannel;
+import net.sharksystem.messenger.SharkMessengerComponent;
+import net.sharksystem.utils.fs.FSUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.function.BooleanSupplier;
+
+public class SharkMessengerEmbeddedHubTests {
+    private static final String URI = "sn2://embeddedHub";
+
+    private static boolean waitFor(BooleanSupplier condition, long timeoutInMillis) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutInMillis;
+        while(!condition.getAsBoolean()) {
+            if(System.currentTimeMillis() > end) return false;
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+    @Test
+    public void connectionsAreLimitedAndCounted() throws Exception {
+        SharkMessengerEmbeddedHub hub = new SharkMessengerEmbeddedHub(0, 2, 2);
+        hub.start("EmbeddedHubTestPeer");
+        try {
+            // hub protocol works
+            Assertions.assertNotNull(HubSelector.measureHubStatus(
+                    new TCPHubConnectorDescriptionImpl("localhost", hub.getPort())));
+            Assertions.assertTrue(hub.getBytesReceived() > 0);
+            Assertions.assertTrue(hub.getBytesSent() > 0);
+            Assertions.assertTrue(waitFor(() -> hub.getOpenConnections() == 0, 5000));
+
+            try(Socket first = new Socket(InetAddress.getLoopbackAddress(), hub.getPort());
+                Socket second = new Socket(InetAddress.getLoopbackAddress(), hub.getPort())) {
+                Assertions.assertTrue(first.isConnected() && second.isConnected());
+                Assertions.assertTrue(waitFor(() -> hub.getOpenConnections() == 2, 5000));
+
+                // limit reached - closed right away
+                try(Socket third = new Socket(InetAddress.getLoopbackAddress(), hub.getPort())) {
+                    third.setSoTimeout(5000);
+                    Assertions.assertEquals(-1, third.getInputStream().read());
+                }
+                Assertions.assertEquals(1, hub.getRejectedConnections());
+                Assertions.assertEquals(2, hub.getOpenConnections());
+            }
+            Assertions.assertTrue(waitFor(() -> hub.getOpenConnections() == 0, 5000));
+        } finally {
+            hub.close();
+        }
+    }
+
+    @Test
+    public void peersRelayThroughEmbeddedHub() throws Exception {
+        FSUtils.removeFolder("sharkMessengerDataStorage/EmbeddedHubAlice");
+        FSUtils.removeFolder("sharkMessengerDataStorage/EmbeddedHubBob");
+        SharkMessengerApp alice = new SharkMessengerApp("EmbeddedHubAlice");
+        SharkMessengerApp bob = new SharkMessengerApp("EmbeddedHubBob");
+        SharkMessengerEmbeddedHub hub = alice.startEmbeddedHub(0, 8, SharkMessengerEmbeddedHub.THREAD_PER_CONNECTION);
+        try {
+            SharkMessengerComponent aliceMessenger = alice.getMessengerComponent();
+            aliceMessenger.createChannel(URI, "embedded hub", true);
+            aliceMessenger.sendSharkMessage("via embedded hub".getBytes(), URI, false, false);
+
+            // bob meets alice via her hub
+            bob.connectHub(new TCPHubConnectorDescriptionImpl("localhost", hub.getPort()));
+            Assertions.assertTrue(waitFor(() -> hub.getConnectedPeers().size() == 2, 10000),
+                    hub.getConnectedPeers().toString());
+
+            SharkMessengerComponent bobMessenger = bob.getMessengerComponent();
+            Assertions.assertTrue(waitFor(() -> received(bobMessenger), 20000), hub.toString());
+            Assertions.assertTrue(hub.getRelayedChannels() > 0, hub.toString());
+        } finally {
+            alice.stopEmbeddedHub();
+            alice.getHubConnectionSupervisor().stop();
+            bob.getHubConnectionSupervisor().stop();
+        }
+        Assertions.assertNull(alice.getEmbeddedHub());
+    }
+
+    private static boolean received(SharkMessengerComponent messenger) {
+        try {
+            SharkMessengerChannel channel = messenger.getChannel(URI);
+            return channel.getMessages().size() > 0;
+        } catch (SharkException | IOException e) {
+            return false;
+        }
+    }
+}
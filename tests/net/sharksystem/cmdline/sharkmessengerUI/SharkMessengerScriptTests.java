@@ -0,0 +1,193 @@
+package net.sharksystem.cmdline.sharkmessengerUI;
+
+import net.sharksystem.messenger.SharkMessengerComponent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+public class SharkMessengerScriptTests {
+    private static final String URI = "sn2://script";
+
+    @Test
+    public void tokenizeAndQuote() {
+        List<String> tokens = SharkMessengerUI.tokenize("  sendMessage 0 true  false \"hello \\\"world\\\"\" \"\"");
+        Assertions.assertEquals(Arrays.asList("sendMessage", "0", "true", "false", "hello \"world\"", ""), tokens);
+        Assertions.assertEquals(tokens, SharkMessengerUI.tokenize(SharkMessengerUI.toCommandLine(tokens)));
+        Assertions.assertTrue(SharkMessengerUI.tokenize("   ").isEmpty());
+    }
+
+    @Test
+    public void scriptIsRunAndRecorded() throws Exception {
+        List<String> lines = Arrays.asList(
+                "# create a channel and send into it",
+                "mkChannel " + URI + " \"script channel\"",
+                "",
+                "sendMessage 0 false false \"hello script\" \"\"",
+                "sendMessage 0 false false",
+                "exit",
+                "sendMessage 0 false false ignored \"\"");
+        SharkMessengerScript script = SharkMessengerScript.parse(lines);
+        Assertions.assertEquals(3, script.getCommands().size());
+
+        String peerName = "ScriptTestPeer";
+        deleteRecursively(Path.of("sharkMessengerDataStorage", peerName));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true);
+        SharkMessengerApp sharkMessengerApp = new SharkMessengerApp(peerName);
+        SharkMessengerUI sharkMessengerUI = SharkMessengerUI.createSharkMessengerUI(
+                InputStream.nullInputStream(), out, out, sharkMessengerApp);
+
+        script.run(sharkMessengerUI);
+
+        SharkMessengerComponent messenger = sharkMessengerApp.getMessengerComponent();
+        Assertions.assertEquals(1, messenger.getChannel(URI).getMessages().size());
+        // command with too few arguments is not executed - history can be replayed as it is
+        Assertions.assertTrue(output.toString().contains("expected 5 arguments"));
+        Assertions.assertEquals(Arrays.asList(
+                        "mkChannel " + URI + " \"script channel\"",
+                        "sendMessage 0 false false \"hello script\" \"\""),
+                sharkMessengerUI.getCommandHistory());
+    }
+
+    @Test
+    public void recursiveScriptIsRefused() throws Exception {
+        Path folder = Files.createTempDirectory("sharkMessengerScripts");
+        Path first = folder.resolve("first.txt"), second = folder.resolve("second.txt");
+        // first runs second which runs first again
+        Files.write(first, Arrays.asList("runScript " + SharkMessengerUI.toCommandLine(List.of(second.toString()))));
+        Files.write(second, Arrays.asList("runScript " + SharkMessengerUI.toCommandLine(List.of(first.toString())),
+                "runScript " + SharkMessengerUI.toCommandLine(List.of(second.toString()))));
+
+        String peerName = "RecursiveScriptTestPeer";
+        deleteRecursively(Path.of("sharkMessengerDataStorage", peerName));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true);
+        SharkMessengerUI sharkMessengerUI = SharkMessengerUI.createSharkMessengerUI(
+                InputStream.nullInputStream(), out, out, new SharkMessengerApp(peerName));
+
+        for(int run = 0; run < 2; run++) {
+            // second run: finished scripts can run again
+            output.reset();
+            sharkMessengerUI.handleCommand(List.of("runScript", first.toString()));
+            String printed = output.toString();
+            Assertions.assertTrue(printed.contains("not run again: " + first.toRealPath()), printed);
+            Assertions.assertTrue(printed.contains("not run again: " + second.toRealPath()), printed);
+        }
+        deleteRecursively(folder);
+    }
+
+    @Test
+    public void listMessagesIsPaged() throws Exception {
+        String peerName = "PagingTestPeer";
+        deleteRecursively(Path.of("sharkMessengerDataStorage", peerName));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true);
+        SharkMessengerUI sharkMessengerUI = SharkMessengerUI.createSharkMessengerUI(
+                InputStream.nullInputStream(), out, out, new SharkMessengerApp(peerName));
+
+        sharkMessengerUI.handleUserInput("mkChannel " + URI + " paging");
+        for(int i = 0; i < 5; i++) {
+            sharkMessengerUI.handleUserInput("sendMessage 0 false false \"message " + i + "\" \"\"");
+        }
+        output.reset();
+
+        // second and third latest message
+        sharkMessengerUI.handleUserInput("listMessages 0 2 1 true");
+        String page = output.toString();
+        Assertions.assertTrue(page.contains("#3"));
+        Assertions.assertTrue(page.contains("#2"));
+        Assertions.assertFalse(page.contains("#4"));
+        Assertions.assertFalse(page.contains("#1"));
+        Assertions.assertTrue(page.contains("messages 1..2 of 5"));
+
+        output.reset();
+        sharkMessengerUI.handleUserInput("listMessages 0 0 0 false");
+        page = output.toString();
+        for(int i = 0; i < 5; i++) Assertions.assertTrue(page.contains("#" + i + System.lineSeparator()));
+        Assertions.assertTrue(page.indexOf("message 0") < page.indexOf("message 4"));
+    }
+
+    @Test
+    public void tailPostsArrivingMessages() throws Exception {
+        String peerName = "TailTestPeer";
+        deleteRecursively(Path.of("sharkMessengerDataStorage", peerName));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true);
+        SharkMessengerApp sharkMessengerApp = new SharkMessengerApp(peerName);
+        SharkMessengerUI sharkMessengerUI = SharkMessengerUI.createSharkMessengerUI(
+                InputStream.nullInputStream(), out, out, sharkMessengerApp);
+
+        sharkMessengerUI.handleUserInput("mkChannel " + URI + " tail");
+        sharkMessengerUI.handleUserInput("sendMessage 0 false false \"before tail\" \"\"");
+        sharkMessengerUI.handleUserInput("tail 0 true");
+        sharkMessengerUI.handleUserInput("sendMessage 0 false false \"while tail\" \"\"");
+
+        // tail posts notifications - user interface renders them between prompts
+        StringBuilder notifications = new StringBuilder();
+        long deadline = System.currentTimeMillis() + 5000;
+        while(!notifications.toString().contains(peerName + ": while tail") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            sharkMessengerApp.getNotifications().drain().forEach(n -> notifications.append(n).append('\n'));
+        }
+        Assertions.assertTrue(notifications.toString().contains("[" + URI + "] "));
+        Assertions.assertTrue(notifications.toString().contains(peerName + ": while tail"));
+        Assertions.assertFalse(notifications.toString().contains(": before tail"));
+        Assertions.assertFalse(output.toString().contains(": while tail"));
+
+        sharkMessengerUI.handleUserInput("tail 0 false");
+        sharkMessengerUI.handleUserInput("sendMessage 0 false false \"after tail\" \"\"");
+        Thread.sleep(300);
+        Assertions.assertTrue(sharkMessengerApp.getNotifications().isEmpty());
+    }
+
+    @Test
+    public void notificationsAreRenderedBetweenPrompts() throws Exception {
+        String peerName = "NotificationTestPeer";
+        deleteRecursively(Path.of("sharkMessengerDataStorage", peerName));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true);
+        SharkMessengerApp sharkMessengerApp = new SharkMessengerApp(peerName);
+        PipedOutputStream keyboard = new PipedOutputStream();
+        SharkMessengerUI sharkMessengerUI = SharkMessengerUI.createSharkMessengerUI(
+                new PipedInputStream(keyboard), out, out, sharkMessengerApp);
+
+        // posting never blocks - even if nobody renders
+        for(int i = 0; i < SharkMessengerNotifications.DEFAULT_CAPACITY + 10; i++) {
+            sharkMessengerApp.getNotifications().post("notification " + i);
+        }
+
+        Thread uiThread = new Thread(sharkMessengerUI::runCommandLoop);
+        uiThread.start();
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while(!output.toString().contains("notification 1009") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            Thread.sleep(2 * SharkMessengerUI.NOTIFICATION_INTERVAL_IN_MILLIS);
+            String rendered = output.toString();
+            Assertions.assertTrue(rendered.contains("* ... 10 notifications dropped"));
+            Assertions.assertTrue(rendered.contains("* notification 1009"));
+            Assertions.assertFalse(rendered.contains("* notification 9" + System.lineSeparator()));
+            // prompt is printed again after notifications
+            Assertions.assertTrue(rendered.endsWith("Run a command by entering its name from the list above:"));
+        } finally {
+            // input closed - command loop ends
+            keyboard.close();
+        }
+        uiThread.join(5000);
+        Assertions.assertFalse(uiThread.isAlive());
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if(!Files.exists(path)) return;
+        try(var paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
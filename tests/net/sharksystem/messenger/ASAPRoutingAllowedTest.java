@@ -1,10 +1,14 @@
 package net.sharksystem.messenger;
 
 import net.sharksystem.SharkException;
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.ASAPHopImpl;
+import net.sharksystem.asap.EncounterConnectionType;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * For communication benefits, this test was separated in a new class
@@ -29,4 +33,30 @@ public class ASAPRoutingAllowedTest extends TestHelper {
         this.bobPeer.getASAPTestPeerFS().setASAPRoutingAllowed("shark/messenger",false);
         Assertions.assertFalse(this.bobPeer.getASAPTestPeerFS().isASAPRoutingAllowed("shark/messenger"));
     }
+
+    /**
+     * Communication age of a channel decides which routes are accepted.
+     */
+    @Test
+    public void channelAgeRestrictsRoutes() {
+        ASAPHop adHoc = new ASAPHopImpl("Alice", false, false, EncounterConnectionType.AD_HOC_LAYER_2_NETWORK);
+        ASAPHop hub = new ASAPHopImpl("Clara", false, false, EncounterConnectionType.ASAP_HUB);
+        List<ASAPHop> direct = List.of(adHoc);
+        List<ASAPHop> routed = List.of(adHoc, adHoc);
+        List<ASAPHop> viaHub = List.of(hub);
+
+        SharkMessengerRoutingPolicy stone = SharkMessengerRoutingPolicy.of(SharkCommunicationAge.STONE_AGE);
+        Assertions.assertTrue(stone.accepts(direct));
+        Assertions.assertFalse(stone.accepts(routed));
+        Assertions.assertFalse(stone.accepts(viaHub));
+
+        SharkMessengerRoutingPolicy bronze = SharkMessengerRoutingPolicy.of(SharkCommunicationAge.BRONZE_AGE);
+        Assertions.assertTrue(bronze.accepts(routed));
+        Assertions.assertFalse(bronze.accepts(viaHub));
+
+        // no age - no restriction
+        SharkMessengerRoutingPolicy undefined = SharkMessengerRoutingPolicy.of(SharkCommunicationAge.UNDEFINED);
+        Assertions.assertTrue(undefined.accepts(viaHub));
+        Assertions.assertTrue(SharkMessengerRoutingPolicy.of(SharkCommunicationAge.NETWORK_AGE).accepts(viaHub));
+    }
 }
@@ -32,6 +32,58 @@ public class SharkMessageASAPSerializationTests {
         Assertions.assertFalse(sharkNetMessage.encrypted());
     }
 
+    @Test
+    public void serializationTestEphemeral() throws ASAPException, IOException {
+        InMemoASAPKeyStore keyStorageAlice = new InMemoASAPKeyStore(ALICE_ID);
+        KeyPair bobKeyPair = keyStorageAlice.createTestPeer(BOB_ID); // Alice knows Bob
+
+        InMemoASAPKeyStore keyStorageBob = new InMemoASAPKeyStore(BOB_ID, bobKeyPair, System.currentTimeMillis());
+        keyStorageBob.addKeyPair(ALICE_ID, keyStorageAlice.getKeyPair()); // Bob knows Alice
+
+        Set<CharSequence> recipients = new HashSet<>();
+        recipients.add(BOB_ID);
+        byte[] serializedSNMessage = InMemoSharkMessage.serializeMessage(
+                MESSAGE.getBytes(), ALICE_ID, recipients, true, true, true, keyStorageAlice);
+
+        // flag can be read without decryption
+        Assertions.assertTrue(InMemoSharkMessage.isEphemeral(serializedSNMessage));
+        Assertions.assertFalse(InMemoSharkMessage.isEphemeral(
+                InMemoSharkMessage.serializeMessage(MESSAGE.getBytes(), ALICE_ID, BOB_ID)));
+
+        InMemoSharkMessage sharkNetMessage =
+                InMemoSharkMessage.parseMessage(serializedSNMessage, new ArrayList<>(), keyStorageBob);
+
+        Assertions.assertEquals(MESSAGE, new String(sharkNetMessage.getContent()));
+        Assertions.assertTrue(sharkNetMessage.isEphemeral());
+        Assertions.assertTrue(sharkNetMessage.verified());
+        Assertions.assertTrue(sharkNetMessage.encrypted());
+    }
+
+    @Test
+    public void serializationTestExpiryAndHopLimit() throws ASAPException, IOException {
+        InMemoASAPKeyStore keyStorageAlice = new InMemoASAPKeyStore(ALICE_ID);
+        long expiryTime = System.currentTimeMillis() + 1000;
+
+        byte[] serializedSNMessage = InMemoSharkMessage.serializeMessage(
+                MESSAGE.getBytes(), ALICE_ID, null, false, false, false, expiryTime, 3, keyStorageAlice);
+
+        // head can be read without parsing
+        SharkMessageHeader header = SharkMessageHeader.read(serializedSNMessage);
+        Assertions.assertEquals(expiryTime, header.getExpiryTime());
+        Assertions.assertEquals(3, header.getHopLimit());
+        Assertions.assertFalse(header.isOutdated(expiryTime - 1, 3));
+        Assertions.assertTrue(header.isOutdated(expiryTime + 1, 3));
+        Assertions.assertTrue(header.isOutdated(expiryTime - 1, 4));
+
+        InMemoSharkMessage sharkNetMessage =
+                InMemoSharkMessage.parseMessage(serializedSNMessage, new ArrayList<>(), keyStorageAlice);
+
+        Assertions.assertEquals(MESSAGE, new String(sharkNetMessage.getContent()));
+        Assertions.assertEquals(expiryTime, sharkNetMessage.getExpiryTime());
+        Assertions.assertEquals(3, sharkNetMessage.getHopLimit());
+        Assertions.assertFalse(sharkNetMessage.isEphemeral());
+    }
+
     @Test
     public void serializationTestSigned() throws ASAPException, IOException {
         InMemoASAPKeyStore keyStorageAlice = new InMemoASAPKeyStore(ALICE_ID);
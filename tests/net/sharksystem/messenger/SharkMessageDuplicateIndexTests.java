@@ -0,0 +1,89 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.ASAPHopImpl;
+import net.sharksystem.asap.EncounterConnectionType;
+import net.sharksystem.utils.fs.FSUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.sharksystem.messenger.TestConstants.*;
+
+public class SharkMessageDuplicateIndexTests {
+    private static final String INDEX_FOLDER = ROOT_DIRECTORY + SharkMessageDuplicateIndexTests.class.getSimpleName();
+    private static final List<ASAPHop> DIRECT =
+            List.of(new ASAPHopImpl(ALICE_ID, false, false, EncounterConnectionType.INTERNET));
+    private static final List<ASAPHop> VIA_HUB =
+            List.of(new ASAPHopImpl(ALICE_ID, false, false, EncounterConnectionType.ASAP_HUB));
+
+    @Test
+    public void duplicatesAreRecognized() throws IOException, ASAPException {
+        FSUtils.removeFolder(INDEX_FOLDER);
+        File storeFolder = new File(INDEX_FOLDER + "/dedup");
+        File indexFolder = new File(INDEX_FOLDER + "/dedupIndex");
+        MappedSharkMessageStore store = new MappedSharkMessageStore(URI, storeFolder);
+        byte[] message = InMemoSharkMessage.serializeMessage("hi".getBytes(), ALICE_ID, BOB_ID);
+
+        SharkMessageDuplicateIndex index = new SharkMessageDuplicateIndex(indexFolder);
+        Assertions.assertTrue(index.tryReserve(store, message, DIRECT));
+        store.assimilate(message, DIRECT);
+        Assertions.assertFalse(index.tryReserve(store, message, VIA_HUB));
+        Assertions.assertEquals(List.of(VIA_HUB), index.getAlternativeRoutes(URI, message));
+
+        // index and alternative routes survive a restart
+        SharkMessageDuplicateIndex reopened = new SharkMessageDuplicateIndex(indexFolder);
+        MappedSharkMessageStore reopenedStore = new MappedSharkMessageStore(URI, storeFolder);
+        Assertions.assertFalse(reopened.tryReserve(reopenedStore, message, VIA_HUB));
+        Assertions.assertEquals(2, reopened.getAlternativeRoutes(URI, message).size());
+        Assertions.assertEquals(EncounterConnectionType.ASAP_HUB,
+                reopened.getAlternativeRoutes(URI, message).get(0).get(0).getConnectionType());
+
+        // released reservations can be taken again
+        byte[] other = InMemoSharkMessage.serializeMessage("other".getBytes(), ALICE_ID, BOB_ID);
+        Assertions.assertTrue(reopened.tryReserve(reopenedStore, other, DIRECT));
+        reopened.release(URI, other);
+        Assertions.assertTrue(reopened.tryReserve(reopenedStore, other, VIA_HUB));
+    }
+
+    @Test
+    public void copiesArrivingTogetherAreStoredOnce() throws Exception {
+        InMemoSharkMessageStore store = new InMemoSharkMessageStore(URI);
+        SharkMessageDuplicateIndex index = new SharkMessageDuplicateIndex(null);
+        int messages = 200;
+        byte[][] messageCopies = new byte[messages][];
+        for(int i = 0; i < messages; i++) {
+            messageCopies[i] = InMemoSharkMessage.serializeMessage(("message " + i).getBytes(), ALICE_ID, BOB_ID);
+        }
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        AtomicInteger failures = new AtomicInteger();
+
+        // same messages over a direct link and via a hub
+        Thread[] links = new Thread[2];
+        for(int l = 0; l < links.length; l++) {
+            List<ASAPHop> route = l == 0 ? DIRECT : VIA_HUB;
+            links[l] = new Thread(() -> {
+                try {
+                    for(int i = 0; i < messages; i++) {
+                        byte[] message = messageCopies[i];
+                        barrier.await();
+                        if(index.tryReserve(store, message, route)) store.assimilate(message, route);
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                }
+            });
+            links[l].start();
+        }
+        for(Thread link : links) link.join();
+
+        Assertions.assertEquals(0, failures.get());
+        Assertions.assertEquals(messages, store.size());
+    }
+}
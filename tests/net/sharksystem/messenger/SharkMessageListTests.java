@@ -0,0 +1,119 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.ASAPHopImpl;
+import net.sharksystem.asap.EncounterConnectionType;
+import net.sharksystem.asap.crypto.InMemoASAPKeyStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.sharksystem.messenger.TestConstants.*;
+
+public class SharkMessageListTests {
+    private static final List<ASAPHop> AD_HOC =
+            List.of(new ASAPHopImpl(BOB_ID, false, false, EncounterConnectionType.AD_HOC_LAYER_2_NETWORK));
+    private static final List<ASAPHop> VIA_HUB =
+            List.of(new ASAPHopImpl(BOB_ID, false, false, EncounterConnectionType.ASAP_HUB));
+
+    /**
+     * Counts messages read from store.
+     */
+    private static class CountingStore extends InMemoSharkMessageStore {
+        private int reads = 0;
+
+        CountingStore() {
+            super(URI);
+        }
+
+        @Override
+        public synchronized byte[] getMessage(int position) {
+            this.reads++;
+            return super.getMessage(position);
+        }
+    }
+
+    private static String content(SharkMessageList list, int position, boolean chronologically)
+            throws SharkMessengerException, IOException, ASAPException {
+        return new String(list.getSharkMessage(position, chronologically).getContent());
+    }
+
+    @Test
+    public void listIsFilteredWithStoreIndex() throws IOException, ASAPException, SharkMessengerException {
+        InMemoASAPKeyStore keyStore = new InMemoASAPKeyStore(ALICE_ID);
+        long now = System.currentTimeMillis();
+        CountingStore store = new CountingStore();
+        List<String> visible = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            String text = "message " + i;
+            byte[] message = InMemoSharkMessage.serializeMessage(text.getBytes(), ALICE_ID, BOB_ID);
+            switch(i % 4) {
+                case 0: store.append(message); visible.add(text); break;
+                case 1: store.assimilate(message, AD_HOC); visible.add(text); break;
+                case 2: store.assimilate(message, VIA_HUB); break; // route not allowed in bronze age
+                default: // expired
+                    store.append(InMemoSharkMessage.serializeMessage(text.getBytes(), ALICE_ID, null,
+                            false, false, false, now - 1000, 0, keyStore));
+            }
+        }
+
+        SharkMessageList list = new SharkMessageListImpl(
+                null, store, false, false, SharkMessengerRoutingPolicy.AD_HOC_ROUTING);
+        Assertions.assertEquals(20, store.reads); // index built - each message read once
+        Assertions.assertEquals(visible.size(), list.size());
+        Assertions.assertEquals(20, store.reads); // counted with index
+
+        // both directions - latest first and oldest first
+        Assertions.assertEquals(visible.get(visible.size() - 1), content(list, 0, false));
+        Assertions.assertEquals(visible.get(0), content(list, 0, true));
+        for(int i = 0; i < visible.size(); i++) {
+            Assertions.assertEquals(visible.get(i), content(list, i, true));
+            Assertions.assertEquals(visible.get(visible.size() - 1 - i), content(list, i, false));
+        }
+        Assertions.assertThrows(SharkMessengerException.class, () -> list.getSharkMessage(visible.size(), true));
+
+        // only new messages are indexed - a page reads its messages only
+        store.append(InMemoSharkMessage.serializeMessage("latest".getBytes(), ALICE_ID, BOB_ID));
+        store.reads = 0;
+        SharkMessageList nextList = new SharkMessageListImpl(
+                null, store, false, false, SharkMessengerRoutingPolicy.AD_HOC_ROUTING);
+        Assertions.assertEquals(visible.size() + 1, nextList.size());
+        Assertions.assertEquals("latest", content(nextList, 0, false));
+        Assertions.assertEquals(visible.get(visible.size() - 1), content(nextList, 1, false));
+        Assertions.assertEquals(3, store.reads);
+
+        // sent messages only
+        Assertions.assertEquals(6, new SharkMessageListImpl(null, store, true, false).size());
+    }
+
+    @Test
+    public void listIsOrderedByCreationTime() throws IOException, ASAPException, SharkMessengerException,
+            InterruptedException {
+        byte[] older = InMemoSharkMessage.serializeMessage(MESSAGE_1_BYTE, BOB_ID, ALICE_ID);
+        Thread.sleep(5);
+        byte[] newer = InMemoSharkMessage.serializeMessage(MESSAGE_2_BYTE, BOB_ID, ALICE_ID);
+
+        CountingStore store = new CountingStore();
+        // newer one arrived first
+        store.assimilate(newer, AD_HOC);
+        store.assimilate(older, AD_HOC);
+
+        SharkMessageList ordered = new SharkMessageListImpl(null, store, false, true);
+        Assertions.assertEquals(MESSAGE_1, content(ordered, 0, true));
+        Assertions.assertEquals(MESSAGE_2, content(ordered, 0, false));
+        SharkMessageList unordered = new SharkMessageListImpl(null, store, false, false);
+        Assertions.assertEquals(MESSAGE_2, content(unordered, 0, true));
+
+        // creation times are taken once
+        store.reads = 0;
+        new SharkMessageListImpl(null, store, false, true);
+        Assertions.assertEquals(0, store.reads);
+
+        int[] order = SharkMessageListIndex.sortByKeys(new long[] {3, 1, 2, 1, 0}, 5);
+        Assertions.assertArrayEquals(new int[] {4, 1, 3, 2, 0}, order);
+    }
+}
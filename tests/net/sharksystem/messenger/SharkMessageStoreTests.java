@@ -0,0 +1,175 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.ASAPHopImpl;
+import net.sharksystem.asap.EncounterConnectionType;
+import net.sharksystem.asap.crypto.InMemoASAPKeyStore;
+import net.sharksystem.utils.fs.FSUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.sharksystem.messenger.TestConstants.*;
+
+public class SharkMessageStoreTests {
+    private static final String STORE_FOLDER = ROOT_DIRECTORY + SharkMessageStoreTests.class.getSimpleName();
+
+    private void appendAndRead(SharkMessageStore store) throws IOException, ASAPException {
+        byte[] message1 = InMemoSharkMessage.serializeMessage(MESSAGE_1_BYTE, ALICE_ID, BOB_ID);
+        byte[] message2 = InMemoSharkMessage.serializeMessage(MESSAGE_2_BYTE, BOB_ID, ALICE_ID);
+
+        List<ASAPHop> hops = new ArrayList<>();
+        hops.add(new ASAPHopImpl(BOB_ID, false, false, EncounterConnectionType.AD_HOC_LAYER_2_NETWORK));
+
+        List<Integer> hookedPositions = new ArrayList<>();
+        store.addIndexHook((uri, position, message, hopsList) -> hookedPositions.add(position));
+
+        store.append(message1);
+        store.assimilate(message2, hops);
+
+        Assertions.assertEquals(2, store.size());
+        Assertions.assertArrayEquals(message1, store.getMessage(0));
+        Assertions.assertArrayEquals(message2, store.getMessage(1));
+        Assertions.assertTrue(store.getASAPHops(0).isEmpty());
+        Assertions.assertEquals(1, store.getASAPHops(1).size());
+        Assertions.assertEquals(BOB_ID, store.getASAPHops(1).get(0).sender().toString());
+
+        List<byte[]> range = store.getMessages(1, 2);
+        Assertions.assertEquals(1, range.size());
+        Assertions.assertArrayEquals(message2, range.get(0));
+
+        Assertions.assertEquals(2, hookedPositions.size());
+        Assertions.assertEquals(0, hookedPositions.get(0));
+        Assertions.assertEquals(1, hookedPositions.get(1));
+
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> store.getMessage(2));
+    }
+
+    @Test
+    public void inMemoStore() throws IOException, ASAPException {
+        this.appendAndRead(new InMemoSharkMessageStore(URI));
+    }
+
+    @Test
+    public void mappedFileStore() throws IOException, ASAPException {
+        FSUtils.removeFolder(STORE_FOLDER);
+        File folder = new File(STORE_FOLDER + "/mapped");
+        this.appendAndRead(new MappedSharkMessageStore(URI, folder));
+
+        // reopen - index is rebuilt from segment files
+        MappedSharkMessageStore reopened = new MappedSharkMessageStore(URI, folder);
+        Assertions.assertEquals(2, reopened.size());
+        Assertions.assertEquals(1, reopened.getASAPHops(1).size());
+    }
+
+    @Test
+    public void mappedFileStoreSegmentRollover() throws IOException, ASAPException {
+        FSUtils.removeFolder(STORE_FOLDER);
+        File folder = new File(STORE_FOLDER + "/rollover");
+        // tiny segments - each record needs a new one
+        MappedSharkMessageStore store = new MappedSharkMessageStore(URI, folder, 64);
+        byte[] bigContent = new byte[1000];
+        byte[] message = InMemoSharkMessage.serializeMessage(bigContent, ALICE_ID, BOB_ID);
+        for(int i = 0; i < 10; i++) store.append(message);
+
+        Assertions.assertEquals(10, store.size());
+        Assertions.assertArrayEquals(message, store.getMessage(9));
+
+        store.delete();
+        Assertions.assertFalse(folder.exists());
+    }
+
+    private void compactByCount(SharkMessageStore store) throws IOException, ASAPException {
+        List<byte[]> messages = new ArrayList<>();
+        for(int i = 0; i < 10; i++) {
+            messages.add(InMemoSharkMessage.serializeMessage(new byte[] {(byte) i}, ALICE_ID, BOB_ID));
+            store.append(messages.get(i));
+        }
+
+        // nothing to do
+        Assertions.assertEquals(0, store.compact(SharkMessengerRetentionPolicy.UNLIMITED, System.currentTimeMillis()));
+
+        int dropped = store.compact(new SharkMessengerRetentionPolicy(0, 4, 0), System.currentTimeMillis());
+        Assertions.assertEquals(6, dropped);
+        Assertions.assertEquals(4, store.size());
+        // oldest remaining message
+        Assertions.assertArrayEquals(messages.get(6), store.getMessage(0));
+        Assertions.assertArrayEquals(messages.get(9), store.getMessage(3));
+
+        // still writable
+        store.append(messages.get(0));
+        Assertions.assertEquals(5, store.size());
+
+        // anything is too old an hour later
+        long anHourLater = System.currentTimeMillis() + 60 * 60 * 1000;
+        Assertions.assertEquals(5, store.compact(new SharkMessengerRetentionPolicy(1000, 0, 0), anHourLater));
+        Assertions.assertEquals(0, store.size());
+    }
+
+    @Test
+    public void inMemoStoreCompaction() throws IOException, ASAPException {
+        this.compactByCount(new InMemoSharkMessageStore(URI));
+    }
+
+    @Test
+    public void mappedFileStoreCompaction() throws IOException, ASAPException {
+        FSUtils.removeFolder(STORE_FOLDER);
+        File folder = new File(STORE_FOLDER + "/compaction");
+        // small segments - compaction spans some of them
+        this.compactByCount(new MappedSharkMessageStore(URI, folder, 256));
+
+        MappedSharkMessageStore reopened = new MappedSharkMessageStore(URI, folder, 256);
+        Assertions.assertEquals(0, reopened.size());
+    }
+
+    @Test
+    public void expiredMessagesArePurged() throws IOException, ASAPException {
+        FSUtils.removeFolder(STORE_FOLDER);
+        InMemoASAPKeyStore keyStore = new InMemoASAPKeyStore(ALICE_ID);
+        long now = System.currentTimeMillis();
+        byte[] expiring = InMemoSharkMessage.serializeMessage(
+                MESSAGE_1_BYTE, ALICE_ID, null, false, false, false, now + 1000, 0, keyStore);
+        byte[] lasting = InMemoSharkMessage.serializeMessage(MESSAGE_2_BYTE, ALICE_ID, BOB_ID);
+
+        SharkMessageStore[] stores = {
+                new InMemoSharkMessageStore(URI),
+                new MappedSharkMessageStore(URI, new File(STORE_FOLDER + "/expiry"))
+        };
+        for(SharkMessageStore store : stores) {
+            // expiring message in the middle
+            store.append(lasting);
+            store.append(expiring);
+            store.append(lasting);
+
+            Assertions.assertEquals(3, new SharkMessageListImpl(null, store, false, false).size());
+            Assertions.assertEquals(0, store.compact(SharkMessengerRetentionPolicy.UNLIMITED, now));
+
+            // expired later on - compaction removes it
+            long later = now + 2000;
+            Assertions.assertEquals(1, store.compact(SharkMessengerRetentionPolicy.UNLIMITED, later));
+            Assertions.assertEquals(2, store.size());
+            Assertions.assertArrayEquals(lasting, store.getMessage(1));
+        }
+    }
+
+    @Test
+    public void ephemeralRing() throws IOException, ASAPException {
+        EphemeralSharkMessageRing ring = new EphemeralSharkMessageRing(URI, 3);
+        List<byte[]> messages = new ArrayList<>();
+        for(int i = 0; i < 5; i++) {
+            messages.add(InMemoSharkMessage.serializeMessage(new byte[] {(byte) i}, ALICE_ID, BOB_ID));
+            ring.append(messages.get(i));
+        }
+
+        // oldest two are overwritten
+        Assertions.assertEquals(3, ring.size());
+        Assertions.assertArrayEquals(messages.get(2), ring.getMessage(0));
+        Assertions.assertArrayEquals(messages.get(4), ring.getMessage(2));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> ring.getMessage(3));
+    }
+}
@@ -0,0 +1,137 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.crypto.InMemoASAPKeyStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.security.KeyPair;
+import java.util.*;
+
+import static net.sharksystem.messenger.TestConstants.*;
+
+/**
+ * Bytes allocated per operation on send and receive paths - measured with thread allocation counters. Each
+ * operation has a recorded budget. A change that allocates more than BUDGET_TOLERANCE above budget fails.
+ * <br/><br/>
+ * Run main to print current numbers - record them as new budgets after an intended change.
+ */
+public class SharkMessengerAllocationTests {
+    /** allowed regression above a budget */
+    static final double BUDGET_TOLERANCE = 0.25;
+    static final int WARMUP = 2000;
+    static final int ITERATIONS = 5000;
+    static final int PAYLOAD_SIZE = 1024;
+
+    /** recorded budgets - bytes per operation */
+    static final Map<String, Long> BUDGETS = new LinkedHashMap<>();
+    static {
+        BUDGETS.put("serialize", 7600L);
+        BUDGETS.put("serializeSignedEncrypted", 81500L);
+        BUDGETS.put("parse", 2600L);
+        BUDGETS.put("parseSignedEncrypted", 67100L);
+        BUDGETS.put("listGetMessage", 2600L);
+        BUDGETS.put("compare", 5100L);
+    }
+
+    interface Operation {
+        Object run() throws Exception;
+    }
+
+    /**
+     * @return bytes allocated by this thread per operation
+     */
+    static long allocatedBytesPerOperation(Operation operation) throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if(!threadMXBean.isThreadAllocatedMemorySupported()) {
+            throw new IllegalStateException("jvm does not count allocated bytes");
+        }
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        Object sink = null;
+        for(int i = 0; i < WARMUP; i++) sink = operation.run();
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for(int i = 0; i < ITERATIONS; i++) sink = operation.run();
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        if(sink == null) throw new IllegalStateException("operation produced nothing");
+        return allocated / ITERATIONS;
+    }
+
+    private static void assertWithinBudget(String name, Operation operation) throws Exception {
+        long perOperation = allocatedBytesPerOperation(operation);
+        long budget = BUDGETS.get(name);
+        System.out.println(name + ": " + perOperation + " bytes / operation (budget " + budget + ")");
+        Assertions.assertTrue(perOperation <= budget * (1 + BUDGET_TOLERANCE),
+                name + " allocates " + perOperation + " bytes per operation - budget is " + budget);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                        operations                                       //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    static Map<String, Operation> operations() throws IOException, ASAPException {
+        InMemoASAPKeyStore aliceKeyStore = new InMemoASAPKeyStore(ALICE_ID);
+        KeyPair bobKeyPair = aliceKeyStore.createTestPeer(BOB_ID);
+        InMemoASAPKeyStore bobKeyStore = new InMemoASAPKeyStore(BOB_ID, bobKeyPair, System.currentTimeMillis());
+        bobKeyStore.addKeyPair(ALICE_ID, aliceKeyStore.getKeyPair());
+
+        byte[] content = new byte[PAYLOAD_SIZE];
+        Set<CharSequence> bob = new HashSet<>();
+        bob.add(BOB_ID);
+        byte[] plain = InMemoSharkMessage.serializeMessage(content, ALICE_ID, BOB_ID);
+        byte[] reply = InMemoSharkMessage.serializeMessage(content, BOB_ID, ALICE_ID);
+        byte[] signedEncrypted = InMemoSharkMessage.serializeMessage(
+                content, ALICE_ID, bob, true, true, aliceKeyStore);
+        List<ASAPHop> noHops = new ArrayList<>();
+
+        InMemoSharkMessageStore store = new InMemoSharkMessageStore(URI);
+        for(int i = 0; i < 100; i++) store.append(InMemoSharkMessage.serializeMessage(content, ALICE_ID, BOB_ID));
+        // plain messages need no pki
+        SharkMessageList messageList = new SharkMessageListImpl(null, store, false, true);
+        SharkMessageComparison comparison = new SharkMessageComparison(null);
+        int[] position = {0};
+
+        Map<String, Operation> operations = new LinkedHashMap<>();
+        operations.put("serialize", () -> InMemoSharkMessage.serializeMessage(content, ALICE_ID, BOB_ID));
+        operations.put("serializeSignedEncrypted", () -> InMemoSharkMessage.serializeMessage(
+                content, ALICE_ID, bob, true, true, aliceKeyStore));
+        operations.put("parse", () -> InMemoSharkMessage.parseMessage(plain, noHops, bobKeyStore));
+        operations.put("parseSignedEncrypted",
+                () -> InMemoSharkMessage.parseMessage(signedEncrypted, noHops, bobKeyStore));
+        operations.put("listGetMessage", () -> messageList.getSharkMessage(position[0]++ % 100, true));
+        operations.put("compare", () -> comparison.earlier(plain, reply));
+        return operations;
+    }
+
+    @Test
+    public void sendPathWithinBudget() throws Exception {
+        Map<String, Operation> operations = operations();
+        assertWithinBudget("serialize", operations.get("serialize"));
+        assertWithinBudget("serializeSignedEncrypted", operations.get("serializeSignedEncrypted"));
+    }
+
+    @Test
+    public void receivePathWithinBudget() throws Exception {
+        Map<String, Operation> operations = operations();
+        assertWithinBudget("parse", operations.get("parse"));
+        assertWithinBudget("parseSignedEncrypted", operations.get("parseSignedEncrypted"));
+        assertWithinBudget("listGetMessage", operations.get("listGetMessage"));
+        assertWithinBudget("compare", operations.get("compare"));
+    }
+
+    /**
+     * Print allocated bytes per operation - to record new budgets.
+     */
+    public static void main(String[] args) throws Exception {
+        for(Map.Entry<String, Operation> entry : operations().entrySet()) {
+            System.out.println("BUDGETS.put(\"" + entry.getKey() + "\", "
+                    + allocatedBytesPerOperation(entry.getValue()) + "L);");
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package net.sharksystem.messenger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SharkMessengerCacheBudgetTests {
+    @Test
+    public void cacheBudgetDropsLeastRecentlyUsed() {
+        SharkMessengerCacheBudget budget = new SharkMessengerCacheBudget(2);
+        List<String> dropped = new ArrayList<>();
+        SharkMessengerCacheBudget.Cache a = () -> dropped.add("a");
+        SharkMessengerCacheBudget.Cache b = () -> dropped.add("b");
+        SharkMessengerCacheBudget.Cache c = () -> dropped.add("c");
+
+        budget.used(a);
+        budget.used(b);
+        budget.used(a); // b is least recently used now
+        budget.used(c);
+        Assertions.assertEquals(List.of("b"), dropped);
+        Assertions.assertEquals(2, budget.size());
+
+        budget.released(a);
+        budget.used(b);
+        Assertions.assertEquals(List.of("b"), dropped);
+        Assertions.assertEquals(2, budget.size());
+    }
+}
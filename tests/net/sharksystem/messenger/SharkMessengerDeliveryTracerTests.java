@@ -0,0 +1,50 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.ASAPHopImpl;
+import net.sharksystem.asap.EncounterConnectionType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static net.sharksystem.messenger.TestConstants.*;
+
+public class SharkMessengerDeliveryTracerTests {
+    @Test
+    public void deliveryLatencyIsTraced() throws IOException, ASAPException {
+        byte[] traced = InMemoSharkMessage.serializeMessage(MESSAGE_1_BYTE, ALICE_ID, (Set<CharSequence>) null,
+                false, false, false, SharkMessageHeader.NO_EXPIRY, SharkMessageHeader.NO_HOP_LIMIT, true, null);
+        SharkMessageHeader header = SharkMessageHeader.read(traced);
+        Assertions.assertNotEquals(SharkMessage.NO_TRACE, header.getTraceID());
+        Assertions.assertEquals(header.getTraceID(),
+                InMemoSharkMessage.parseMessage(traced, new ArrayList<>(), null).getTraceID());
+
+        SharkMessengerDeliveryTracer tracer = new SharkMessengerDeliveryTracer();
+        List<ASAPHop> viaHub = new ArrayList<>();
+        viaHub.add(new ASAPHopImpl(ALICE_ID, false, false, EncounterConnectionType.ASAP_HUB));
+        viaHub.add(new ASAPHopImpl(BOB_ID, false, false, EncounterConnectionType.AD_HOC_LAYER_2_NETWORK));
+        tracer.messageReceived(URI, header, viaHub, header.getSendTime() + 1000);
+
+        // untraced messages are ignored
+        byte[] untraced = InMemoSharkMessage.serializeMessage(MESSAGE_2_BYTE, ALICE_ID, BOB_ID);
+        tracer.messageReceived(URI, SharkMessageHeader.read(untraced), viaHub, System.currentTimeMillis());
+
+        List<SharkMessengerDeliveryTracer.Distribution> distributions = tracer.getDistributions();
+        Assertions.assertEquals(3, distributions.size()); // channel, route length 2, hub
+        for(SharkMessengerDeliveryTracer.Distribution distribution : distributions) {
+            Assertions.assertEquals(1, distribution.getCount());
+            Assertions.assertEquals(1000, distribution.getMaxMillis());
+        }
+        Assertions.assertEquals("2", distributions.get(1).getKey());
+        Assertions.assertEquals("HUB", distributions.get(2).getKey());
+
+        SharkMessengerDeliveryTracer.Trace trace = tracer.getRecentTraces().get(0);
+        Assertions.assertEquals(header.getTraceID(), trace.getTraceID());
+        Assertions.assertEquals(2, trace.getRoute().size());
+    }
+}
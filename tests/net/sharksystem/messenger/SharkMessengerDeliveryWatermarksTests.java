@@ -0,0 +1,67 @@
+package net.sharksystem.messenger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.sharksystem.messenger.TestConstants.*;
+
+public class SharkMessengerDeliveryWatermarksTests {
+    @Test
+    public void deliveryWatermarkAdvancesWithAcknowledgements() {
+        SharkMessengerDeliveryWatermarks watermarks = new SharkMessengerDeliveryWatermarks(null);
+        long[] storeDigests = {10, 11, 12, 13, 14};
+
+        // newest first - watermark waits for the gap
+        watermarks.held(BOB_ID, URI, List.of(14L, 13L), storeDigests, storeDigests.length);
+        Assertions.assertEquals(0, watermarks.get(BOB_ID, URI, storeDigests, storeDigests.length));
+        Assertions.assertTrue(watermarks.isHeld(BOB_ID, URI, 4, 14));
+        Assertions.assertFalse(watermarks.isHeld(BOB_ID, URI, 0, 10));
+
+        watermarks.held(BOB_ID, URI, List.of(10L, 11L), storeDigests, storeDigests.length);
+        Assertions.assertEquals(2, watermarks.get(BOB_ID, URI, storeDigests, storeDigests.length));
+        watermarks.held(BOB_ID, URI, List.of(12L), storeDigests, storeDigests.length);
+        Assertions.assertEquals(5, watermarks.get(BOB_ID, URI, storeDigests, storeDigests.length));
+
+        // other peers are not affected
+        Assertions.assertEquals(0, watermarks.get(ALICE_ID, URI, storeDigests, storeDigests.length));
+
+        // compaction dropped oldest messages - watermark does not match anymore
+        Assertions.assertEquals(0, watermarks.get(BOB_ID, URI, new long[] {12, 13, 14}, 3));
+    }
+
+    @Test
+    public void channelIsRemovedByExactURI() {
+        SharkMessengerDeliveryWatermarks watermarks = new SharkMessengerDeliveryWatermarks(null);
+        long[] storeDigests = {10, 11};
+        String otherURI = "sn2://other/" + URI; // ends with same uri
+        watermarks.held(BOB_ID, URI, List.of(10L, 11L), storeDigests, storeDigests.length);
+        watermarks.held(BOB_ID, otherURI, List.of(10L, 11L), storeDigests, storeDigests.length);
+
+        watermarks.remove(URI);
+        Assertions.assertEquals(0, watermarks.get(BOB_ID, URI, storeDigests, storeDigests.length));
+        Assertions.assertEquals(2, watermarks.get(BOB_ID, otherURI, storeDigests, storeDigests.length));
+    }
+
+    @Test
+    public void heldDigestsAreBounded() {
+        SharkMessengerDeliveryWatermarks watermarks = new SharkMessengerDeliveryWatermarks(null);
+        long[] storeDigests = {-1, 0, 1};
+        // acknowledged beyond watermark - first message is missing there
+        List<Long> acknowledged = new ArrayList<>();
+        for(long digest = 0; digest < SharkMessengerDeliveryWatermarks.MAX_HELD + 10; digest++) {
+            acknowledged.add(digest);
+        }
+        watermarks.held(BOB_ID, URI, acknowledged, storeDigests, storeDigests.length);
+        Assertions.assertFalse(watermarks.isHeld(BOB_ID, URI, 1, 0)); // oldest forgotten
+        Assertions.assertTrue(watermarks.isHeld(BOB_ID, URI, 2, SharkMessengerDeliveryWatermarks.MAX_HELD + 9));
+
+        // compaction resets watermark - held digests are dropped with it
+        watermarks.held(BOB_ID, URI, List.of(-1L), storeDigests, storeDigests.length);
+        Assertions.assertEquals(1, watermarks.get(BOB_ID, URI, storeDigests, storeDigests.length));
+        Assertions.assertEquals(0, watermarks.get(BOB_ID, URI, new long[] {5}, 1));
+        Assertions.assertFalse(watermarks.isHeld(BOB_ID, URI, 2, SharkMessengerDeliveryWatermarks.MAX_HELD + 9));
+    }
+}
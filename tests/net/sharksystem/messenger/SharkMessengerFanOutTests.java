@@ -0,0 +1,191 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.SharkException;
+import net.sharksystem.SharkTestPeerFS;
+import net.sharksystem.asap.ASAPConnectionHandler;
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.ASAPHopImpl;
+import net.sharksystem.asap.EncounterConnectionType;
+import net.sharksystem.asap.protocol.ASAPConnection;
+import net.sharksystem.asap.protocol.ASAPConnectionListener;
+import net.sharksystem.asap.protocol.ASAPOnlineMessageSource;
+import net.sharksystem.asap.protocol.ASAP_AssimilationPDU_1_0;
+import net.sharksystem.asap.protocol.ASAP_Modem_Impl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static net.sharksystem.messenger.TestConstants.*;
+
+public class SharkMessengerFanOutTests {
+    @Test
+    public void idWindowLetsFirstCopyPass() {
+        SharkMessageIdWindow window = new SharkMessageIdWindow(2, 1000);
+        long now = System.currentTimeMillis();
+        Assertions.assertTrue(window.firstSeen(1, now));
+        Assertions.assertFalse(window.firstSeen(1, now + 10)); // copy over another hub
+
+        // bounded by size - oldest id is forgotten
+        Assertions.assertTrue(window.firstSeen(2, now + 20));
+        Assertions.assertTrue(window.firstSeen(3, now + 30));
+        Assertions.assertEquals(2, window.size());
+        Assertions.assertTrue(window.firstSeen(1, now + 40));
+
+        // bounded by age
+        Assertions.assertTrue(window.firstSeen(4, now + 2000));
+        Assertions.assertEquals(1, window.size());
+
+        window.forget(4);
+        Assertions.assertTrue(window.firstSeen(4, now + 2010));
+    }
+
+    @Test
+    public void messageIsPushedOverEachConnection() throws IOException, ASAPException {
+        ConnectionRecorder peer = new ConnectionRecorder();
+        SharkMessengerConnections connections = new SharkMessengerConnections(peer, ALICE_ID);
+
+        connections.handleConnection(null, null, EncounterConnectionType.ASAP_HUB);
+        connections.handleConnection(null, null, EncounterConnectionType.ASAP_HUB);
+        connections.handleConnection(null, null, EncounterConnectionType.AD_HOC_LAYER_2_NETWORK);
+        Assertions.assertEquals(3, connections.getConnectionCount());
+        Assertions.assertEquals(2, connections.getHubConnectionCount());
+
+        // one hub is gone
+        RecordedConnection lost = peer.connections.get(1);
+        for(ASAPConnectionListener listener : lost.listeners) listener.asapConnectionTerminated(null, lost);
+        Assertions.assertEquals(1, connections.getHubConnectionCount());
+
+        byte[] message = InMemoSharkMessage.serializeMessage(MESSAGE_1_BYTE, ALICE_ID, BOB_ID);
+        Assertions.assertEquals(2, connections.push(SharkMessengerComponent.SHARK_MESSENGER_FORMAT, URI, message));
+        Assertions.assertTrue(lost.sources.isEmpty());
+
+        for(RecordedConnection connection : List.of(peer.connections.get(0), peer.connections.get(2))) {
+            // handed over - sent by sender thread of that connection
+            Assertions.assertEquals(1, connection.sources.size());
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            connection.sources.get(0).sendStoredMessages(connection, os);
+
+            ASAP_AssimilationPDU_1_0 pdu = (ASAP_AssimilationPDU_1_0)
+                    new ASAP_Modem_Impl().readPDU(new ByteArrayInputStream(os.toByteArray()));
+            Assertions.assertEquals(ALICE_ID, pdu.getSender());
+            Assertions.assertEquals(URI, pdu.getChannelUri());
+            Assertions.assertEquals(SharkMessengerConnections.TRANSIENT_ERA, pdu.getEra());
+            Assertions.assertArrayEquals(message, pdu.getData());
+        }
+    }
+
+    @Test
+    public void restrictedChannelIsNotPushedOverHubs() throws IOException, ASAPException {
+        ConnectionRecorder peer = new ConnectionRecorder();
+        SharkMessengerConnections connections = new SharkMessengerConnections(peer, ALICE_ID);
+        connections.handleConnection(null, null, EncounterConnectionType.ASAP_HUB);
+        connections.handleConnection(null, null, EncounterConnectionType.AD_HOC_LAYER_2_NETWORK);
+
+        byte[] message = InMemoSharkMessage.serializeMessage(MESSAGE_1_BYTE, ALICE_ID, BOB_ID);
+        Assertions.assertEquals(1, connections.push(SharkMessengerComponent.SHARK_MESSENGER_FORMAT, URI, message,
+                SharkMessengerRoutingPolicy.AD_HOC_ROUTING));
+        Assertions.assertTrue(peer.connections.get(0).sources.isEmpty());
+        Assertions.assertEquals(1, peer.connections.get(1).sources.size());
+
+        Assertions.assertEquals(2, connections.push(SharkMessengerComponent.SHARK_MESSENGER_FORMAT, URI, message,
+                SharkMessengerRoutingPolicy.ANY_TRANSPORT));
+    }
+
+    @Test
+    public void copiesAreDroppedWithoutLocalFanOut() throws SharkException, IOException, ASAPException {
+        String folder = ROOT_DIRECTORY + "fanOutReceiver";
+        SharkTestPeerFS.removeFolder(folder);
+        SharkTestPeerFS bobPeer = new SharkTestPeerFS(BOB_ID, folder);
+        TestHelper.addComponentsToSharkPeer(bobPeer);
+        bobPeer.start();
+        SharkMessengerComponentImpl bobMessenger =
+                (SharkMessengerComponentImpl) bobPeer.getComponent(SharkMessengerComponent.class);
+        Assertions.assertFalse(bobMessenger.isHubFanOut());
+        bobMessenger.createChannel(URI, "fan out").setAge(SharkCommunicationAge.NETWORK_AGE);
+
+        // sender fans out - same message over two hubs
+        byte[] message = InMemoSharkMessage.serializeMessage(MESSAGE_1_BYTE, ALICE_ID, BOB_ID);
+        List<ASAPHop> route = List.of(new ASAPHopImpl(ALICE_ID, false, false, EncounterConnectionType.ASAP_HUB));
+        long now = System.currentTimeMillis();
+        Assertions.assertTrue(bobMessenger.assimilate(URI, message, route, now));
+        Assertions.assertFalse(bobMessenger.assimilate(URI, message, route, now + 10));
+    }
+
+    private static class ConnectionRecorder implements ASAPConnectionHandler {
+        private final List<RecordedConnection> connections = new ArrayList<>();
+
+        @Override
+        public ASAPConnection handleConnection(InputStream is, OutputStream os, boolean encrypt, boolean sign,
+                                               Set<CharSequence> appsWhiteList, Set<CharSequence> appsBlackList) {
+            return this.handleConnection(is, os);
+        }
+
+        @Override
+        public ASAPConnection handleConnection(InputStream is, OutputStream os, boolean encrypt, boolean sign,
+                                               EncounterConnectionType connectionType,
+                                               Set<CharSequence> appsWhiteList, Set<CharSequence> appsBlackList) {
+            return this.handleConnection(is, os);
+        }
+
+        @Override
+        public ASAPConnection handleConnection(InputStream is, OutputStream os) {
+            RecordedConnection connection = new RecordedConnection();
+            this.connections.add(connection);
+            return connection;
+        }
+
+        @Override
+        public ASAPConnection handleConnection(InputStream is, OutputStream os,
+                                               EncounterConnectionType connectionType) {
+            return this.handleConnection(is, os);
+        }
+    }
+
+    private static class RecordedConnection implements ASAPConnection {
+        private final List<ASAPOnlineMessageSource> sources = new ArrayList<>();
+        private final List<ASAPConnectionListener> listeners = new ArrayList<>();
+
+        @Override
+        public CharSequence getEncounteredPeer() {
+            return BOB_ID;
+        }
+
+        @Override
+        public void addOnlineMessageSource(ASAPOnlineMessageSource source) {
+            this.sources.add(source);
+        }
+
+        @Override
+        public void removeOnlineMessageSource(ASAPOnlineMessageSource source) {
+            this.sources.remove(source);
+        }
+
+        @Override
+        public void addASAPConnectionListener(ASAPConnectionListener listener) {
+            this.listeners.add(listener);
+        }
+
+        @Override
+        public void removeASAPConnectionListener(ASAPConnectionListener listener) {
+            this.listeners.remove(listener);
+        }
+
+        @Override
+        public boolean isSigned() {
+            return false;
+        }
+
+        @Override
+        public void kill() {
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.crypto.InMemoASAPKeyStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static net.sharksystem.messenger.TestConstants.*;
+
+public class SharkMessengerFlightRecorderTests {
+    @Test
+    public void flightRecorderEventsAreEmitted() throws IOException, ASAPException {
+        Path recordingFile = Files.createTempFile("sharkMessenger", ".jfr");
+        try(Recording recording = new Recording()) {
+            recording.enable("net.sharksystem.messenger.Parse");
+            recording.enable("net.sharksystem.messenger.Crypto");
+            recording.start();
+            InMemoASAPKeyStore aliceKeyStore = new InMemoASAPKeyStore(ALICE_ID);
+            InMemoASAPKeyStore bobKeyStore = new InMemoASAPKeyStore(BOB_ID,
+                    aliceKeyStore.createTestPeer(BOB_ID), System.currentTimeMillis());
+            bobKeyStore.addKeyPair(ALICE_ID, aliceKeyStore.getKeyPair());
+            byte[] message = InMemoSharkMessage.serializeMessage(
+                    MESSAGE_1_BYTE, ALICE_ID, (Set<CharSequence>) null, true, false, aliceKeyStore);
+            InMemoSharkMessage.parseMessage(message, new ArrayList<>(), bobKeyStore);
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<String> events = new ArrayList<>();
+        for(RecordedEvent event : RecordingFile.readAllEvents(recordingFile)) {
+            String name = event.getEventType().getName();
+            events.add(name.equals("net.sharksystem.messenger.Crypto") ? event.getString("operation") : name);
+            if(name.equals("net.sharksystem.messenger.Parse")) {
+                Assertions.assertEquals("parsed", event.getString("outcome"));
+                Assertions.assertTrue(event.getBoolean("verified"));
+            }
+        }
+        Files.delete(recordingFile);
+        Assertions.assertTrue(events.contains("SIGN"));
+        Assertions.assertTrue(events.contains("VERIFY"));
+        Assertions.assertTrue(events.contains("net.sharksystem.messenger.Parse"));
+    }
+}
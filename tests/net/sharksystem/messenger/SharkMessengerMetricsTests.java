@@ -0,0 +1,48 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.crypto.InMemoASAPKeyStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+import static net.sharksystem.messenger.TestConstants.*;
+
+public class SharkMessengerMetricsTests {
+    @Test
+    public void metricsHistogramsAndCounters() throws IOException, ASAPException, MalformedObjectNameException {
+        // log-linear buckets - any value is found within about 6%
+        for(long value : new long[] {0, 7, 15, 16, 1000, 123456, 987654321L}) {
+            long estimate = SharkMessengerMetrics.Metric.value(SharkMessengerMetrics.Metric.bucket(value));
+            Assertions.assertTrue(Math.abs(estimate - value) <= value / 16 + 1, value + " / " + estimate);
+        }
+
+        SharkMessengerMetrics.Metric metric = new SharkMessengerMetrics.Metric();
+        for(int i = 1; i <= 100; i++) metric.record(i * 1000L);
+        SharkMessengerMetrics.OperationSnapshot snapshot = metric.snapshot(SharkMessengerOperation.STORAGE_APPEND, URI);
+        Assertions.assertEquals(100, snapshot.getCount());
+        Assertions.assertEquals(50500, snapshot.getMeanNanos());
+        Assertions.assertEquals(100000, snapshot.getMaxNanos());
+        Assertions.assertTrue(Math.abs(snapshot.getP50Nanos() - 50000) <= 50000 / 16);
+        Assertions.assertTrue(Math.abs(snapshot.getP99Nanos() - 99000) <= 99000 / 16);
+
+        SharkMessengerMetrics metrics = new SharkMessengerMetrics();
+        metrics.record(SharkMessengerOperation.STORAGE_APPEND, URI, System.nanoTime());
+        Assertions.assertEquals(1, metrics.getSnapshot(SharkMessengerOperation.STORAGE_APPEND, URI).getCount());
+        Assertions.assertNull(metrics.getSnapshot(SharkMessengerOperation.SEND, URI));
+
+        // crypto is measured in process metrics - also a platform mbean
+        SharkMessengerMetrics processMetrics = SharkMessengerMetrics.getMetrics();
+        InMemoASAPKeyStore keyStore = new InMemoASAPKeyStore(ALICE_ID);
+        keyStore.getKeyPair(); // generates keys
+        InMemoSharkMessage.serializeMessage(MESSAGE_1_BYTE, ALICE_ID, (Set<CharSequence>) null, true, false, keyStore);
+        Assertions.assertTrue(processMetrics.getSnapshot(SharkMessengerOperation.SIGN, null).getCount() > 0);
+        Assertions.assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(
+                new ObjectName(SharkMessengerMetrics.OBJECT_NAME)));
+    }
+}
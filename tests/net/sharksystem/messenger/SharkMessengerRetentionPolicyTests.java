@@ -0,0 +1,14 @@
+package net.sharksystem.messenger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SharkMessengerRetentionPolicyTests {
+    @Test
+    public void retentionPolicyByBytes() {
+        SharkMessengerRetentionPolicy policy = new SharkMessengerRetentionPolicy(0, 0, 100);
+        long[] times = {1, 2, 3, 4};
+        int[] sizes = {40, 40, 40, 40};
+        Assertions.assertEquals(2, policy.messagesToDrop(times, sizes, 4, 10));
+    }
+}
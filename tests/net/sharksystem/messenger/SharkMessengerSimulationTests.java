@@ -0,0 +1,35 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+public class SharkMessengerSimulationTests {
+    @Test
+    public void ringDeliversEverything() throws IOException, ASAPException {
+        // each message travels at most once around the ring
+        SharkMessengerSimulator simulator = SharkMessengerSimulator.simulate(
+                20, 2, 2 * 20, SharkMessengerSimulator.Schedule.RING, 1);
+        System.out.println(simulator.report());
+        Assertions.assertEquals(1.0, simulator.getDeliveryRatio());
+        Assertions.assertEquals(0, simulator.getDuplicates());
+    }
+
+    @Test
+    public void hubAndSpokeDeliversEverything() throws IOException, ASAPException {
+        SharkMessengerSimulator simulator = SharkMessengerSimulator.simulate(
+                20, 2, 2 * 19, SharkMessengerSimulator.Schedule.HUB_AND_SPOKE, 1);
+        System.out.println(simulator.report());
+        Assertions.assertEquals(1.0, simulator.getDeliveryRatio());
+    }
+
+    @Test
+    public void randomEncountersSpreadMessages() throws IOException, ASAPException {
+        SharkMessengerSimulator simulator = SharkMessengerSimulator.simulate(
+                50, 1, 50 * 20, SharkMessengerSimulator.Schedule.RANDOM, 42);
+        System.out.println(simulator.report());
+        Assertions.assertTrue(simulator.getDeliveryRatio() > 0.99);
+    }
+}
@@ -0,0 +1,315 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.ASAPHopImpl;
+import net.sharksystem.asap.EncounterConnectionType;
+import net.sharksystem.asap.utils.ASAPSerialization;
+import net.sharksystem.utils.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+
+/**
+ * Runs hundreds of messenger peers in a single JVM. Peers reconcile their channels with the messenger sync
+ * protocol. PDUs are handed over in memory: no sockets, no threads, no sleeps. Time is simulated - each encounter
+ * is a tick.
+ * <br/><br/>
+ * Usage (scale run): SharkMessengerSimulator [peers] [encounters] [RANDOM|RING|HUB_AND_SPOKE] [seed]
+ */
+public class SharkMessengerSimulator {
+    public enum Schedule { RANDOM, RING, HUB_AND_SPOKE }
+
+    private static final CharSequence URI = TestConstants.URI;
+
+    private final List<SimulatedPeer> peers = new ArrayList<>();
+    private final Deque<Delivery> deliveries = new ArrayDeque<>();
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    /** message digest -> tick of its creation */
+    private final Map<Long, Integer> created = new HashMap<>();
+    private final List<Integer> latencies = new ArrayList<>();
+    private int tick = 0;
+    private int encounters = 0;
+
+    public SharkMessengerSimulator(int numberOfPeers) {
+        for(int i = 0; i < numberOfPeers; i++) this.peers.add(new SimulatedPeer("peer_" + i));
+    }
+
+    public List<SimulatedPeer> getPeers() {
+        return this.peers;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                     simulated peer                                      //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    public class SimulatedPeer implements SharkMessengerSyncContext {
+        private final String peerID;
+        private final InMemoSharkMessageStore store = new InMemoSharkMessageStore(URI);
+        private final Set<Long> digests = new HashSet<>();
+        private final SharkMessengerSync sync;
+        private final Set<SimulatedPeer> connected = new HashSet<>();
+
+        long bytesSent = 0;
+        long pdusSent = 0;
+        long duplicates = 0;
+        long cpuNanos = 0;
+
+        SimulatedPeer(String peerID) {
+            this.peerID = peerID;
+            this.sync = new SharkMessengerSync(this, new SharkMessengerTransferScheduler(),
+                    new SharkMessengerDeliveryWatermarks(null));
+        }
+
+        public void publish(byte[] content) throws IOException, ASAPException {
+            byte[] message = InMemoSharkMessage.serializeMessage(content, this.peerID, (CharSequence) null);
+            SharkMessengerSimulator.this.created.put(SharkMessengerSync.digest(message), SharkMessengerSimulator.this.tick);
+            this.digests.add(SharkMessengerSync.digest(message));
+            this.store.append(message);
+        }
+
+        public int size() {
+            return this.store.size();
+        }
+
+        @Override
+        public CharSequence getPeerID() {
+            return this.peerID;
+        }
+
+        @Override
+        public List<CharSequence> getChannelUris() {
+            return List.of(URI);
+        }
+
+        @Override
+        public SharkMessageStore getStore(CharSequence uri) {
+            return this.store;
+        }
+
+        @Override
+        public int getTransferPriority(CharSequence uri) {
+            return 0;
+        }
+
+        @Override
+        public SharkMessengerRoutingPolicy getRoutingPolicy(CharSequence uri) {
+            return SharkMessengerRoutingPolicy.ANY_TRANSPORT;
+        }
+
+        @Override
+        public boolean assimilate(CharSequence uri, byte[] message, List<ASAPHop> route, long now) {
+            long digest = SharkMessengerSync.digest(message);
+            if(!this.digests.add(digest)) return false;
+            this.store.assimilate(message, route);
+            Integer createdAt = SharkMessengerSimulator.this.created.get(digest);
+            if(createdAt != null) SharkMessengerSimulator.this.latencies.add(SharkMessengerSimulator.this.tick - createdAt);
+            return true;
+        }
+
+        @Override
+        public void syncedMessagesReceived(CharSequence uri) { }
+
+        @Override
+        public void sendSyncPDU(CharSequence uri, byte[] pdu) {
+            this.bytesSent += pdu.length;
+            this.pdusSent++;
+            // transient messages reach each connected peer
+            for(SimulatedPeer peer : this.connected) {
+                SharkMessengerSimulator.this.deliveries.add(new Delivery(this, peer, uri, pdu));
+            }
+        }
+    }
+
+    private static class Delivery {
+        final SimulatedPeer sender;
+        final SimulatedPeer receiver;
+        final CharSequence uri;
+        final byte[] pdu;
+
+        Delivery(SimulatedPeer sender, SimulatedPeer receiver, CharSequence uri, byte[] pdu) {
+            this.sender = sender;
+            this.receiver = receiver;
+            this.uri = uri;
+            this.pdu = pdu;
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                       encounters                                        //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Two peers meet, reconcile and separate. All pdus are delivered before this method returns.
+     */
+    public void encounter(SimulatedPeer a, SimulatedPeer b) throws IOException {
+        this.tick++;
+        this.encounters++;
+        a.connected.add(b);
+        b.connected.add(a);
+        this.measured(a, () -> a.sync.onlinePeersChanged(Set.of(b.peerID)));
+        this.measured(b, () -> b.sync.onlinePeersChanged(Set.of(a.peerID)));
+
+        while(!this.deliveries.isEmpty()) {
+            Delivery delivery = this.deliveries.poll();
+            this.countDuplicates(delivery);
+            List<ASAPHop> hops = List.of(new ASAPHopImpl(
+                    delivery.sender.peerID, false, false, EncounterConnectionType.AD_HOC_LAYER_2_NETWORK));
+            IOException[] failure = new IOException[1];
+            this.measured(delivery.receiver, () -> {
+                try {
+                    delivery.receiver.sync.pduReceived(delivery.uri, delivery.pdu, hops);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if(failure[0] != null) throw failure[0];
+        }
+
+        a.connected.remove(b);
+        b.connected.remove(a);
+        this.measured(a, () -> a.sync.onlinePeersChanged(Collections.emptySet()));
+        this.measured(b, () -> b.sync.onlinePeersChanged(Collections.emptySet()));
+    }
+
+    private void measured(SimulatedPeer peer, Runnable work) {
+        long start = this.threadMXBean.getCurrentThreadCpuTime();
+        work.run();
+        peer.cpuNanos += this.threadMXBean.getCurrentThreadCpuTime() - start;
+    }
+
+    /**
+     * A message in a MESSAGES pdu that its receiver already holds was transferred in vain.
+     */
+    private void countDuplicates(Delivery delivery) {
+        try {
+            ByteArrayInputStream bais = new ByteArrayInputStream(delivery.pdu);
+            if(ASAPSerialization.readByteParameter(bais) != SharkMessengerSync.MESSAGES) return;
+            ASAPSerialization.readCharSequenceParameter(bais); // sender
+            if(!ASAPSerialization.readCharSequenceParameter(bais).equals(delivery.receiver.peerID)) return;
+            int number = ASAPSerialization.readIntegerParameter(bais);
+            for(int i = 0; i < number; i++) {
+                ASAPSerialization.readASAPHopList(bais);
+                byte[] message = ASAPSerialization.readByteArray(bais);
+                if(delivery.receiver.digests.contains(SharkMessengerSync.digest(message))) {
+                    delivery.receiver.duplicates++;
+                }
+            }
+        } catch (IOException | ASAPException e) {
+            throw new IllegalStateException("malformed pdu: " + e.getLocalizedMessage(), e);
+        }
+    }
+
+    /**
+     * Run a number of encounters following a schedule.
+     */
+    public void run(Schedule schedule, int numberOfEncounters, Random random) throws IOException {
+        int n = this.peers.size();
+        for(int i = 0; i < numberOfEncounters; i++) {
+            switch (schedule) {
+                case RING:
+                    this.encounter(this.peers.get(i % n), this.peers.get((i + 1) % n));
+                    break;
+                case HUB_AND_SPOKE:
+                    this.encounter(this.peers.get(0), this.peers.get(1 + i % (n - 1)));
+                    break;
+                case RANDOM:
+                default:
+                    int a = random.nextInt(n);
+                    int b = random.nextInt(n - 1);
+                    if(b >= a) b++;
+                    this.encounter(this.peers.get(a), this.peers.get(b));
+            }
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////
+    //                                          report                                         //
+    /////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return share of (message, peer) pairs that arrived - 1.0 if each peer holds each message
+     */
+    public double getDeliveryRatio() {
+        long expected = (long) this.created.size() * this.peers.size();
+        long held = 0;
+        for(SimulatedPeer peer : this.peers) held += peer.digests.size();
+        return expected == 0 ? 1.0 : (double) held / expected;
+    }
+
+    public long getDuplicates() {
+        long duplicates = 0;
+        for(SimulatedPeer peer : this.peers) duplicates += peer.duplicates;
+        return duplicates;
+    }
+
+    public long getBytesSent() {
+        long bytes = 0;
+        for(SimulatedPeer peer : this.peers) bytes += peer.bytesSent;
+        return bytes;
+    }
+
+    public String report() {
+        List<Integer> sorted = new ArrayList<>(this.latencies);
+        Collections.sort(sorted);
+        long pdus = 0;
+        long cpuNanos = 0;
+        for(SimulatedPeer peer : this.peers) {
+            pdus += peer.pdusSent;
+            cpuNanos += peer.cpuNanos;
+        }
+        int n = this.peers.size();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("peers: ").append(n).append(" | encounters: ").append(this.encounters)
+                .append(" | messages: ").append(this.created.size()).append("\n");
+        sb.append("delivery ratio: ").append(String.format("%.3f", this.getDeliveryRatio())).append("\n");
+        if(!sorted.isEmpty()) {
+            sb.append("latency (encounters): p50 ").append(sorted.get(sorted.size() / 2))
+                    .append(" | p95 ").append(sorted.get((int) (sorted.size() * 0.95)))
+                    .append(" | max ").append(sorted.get(sorted.size() - 1)).append("\n");
+        }
+        sb.append("duplicates: ").append(this.getDuplicates()).append("\n");
+        sb.append("bytes: ").append(this.getBytesSent()).append(" (").append(this.getBytesSent() / n)
+                .append(" per peer) | pdus: ").append(pdus).append("\n");
+        sb.append("cpu: ").append(cpuNanos / 1000000).append(" ms (")
+                .append(cpuNanos / n / 1000).append(" us per peer)");
+        return sb.toString();
+    }
+
+    /**
+     * Each peer publishes messages, then peers meet following a schedule. Logging is switched off meanwhile.
+     */
+    public static SharkMessengerSimulator simulate(int numberOfPeers, int messagesPerPeer, int numberOfEncounters,
+                                                  Schedule schedule, long seed) throws IOException, ASAPException {
+        PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+        Log.setOutStream(quiet);
+        try {
+            SharkMessengerSimulator simulator = new SharkMessengerSimulator(numberOfPeers);
+            for(SimulatedPeer peer : simulator.getPeers()) {
+                for(int i = 0; i < messagesPerPeer; i++) peer.publish((peer.peerID + " " + i).getBytes());
+            }
+            simulator.run(schedule, numberOfEncounters, new Random(seed));
+            return simulator;
+        } finally {
+            Log.setOutStream(System.out);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, ASAPException {
+        int numberOfPeers = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int numberOfEncounters = args.length > 1 ? Integer.parseInt(args[1]) : numberOfPeers * 20;
+        Schedule schedule = args.length > 2 ? Schedule.valueOf(args[2]) : Schedule.RANDOM;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+
+        long start = System.currentTimeMillis();
+        SharkMessengerSimulator simulator = simulate(numberOfPeers, 1, numberOfEncounters, schedule, seed);
+        System.out.println(simulator.report());
+        System.out.println("wall clock: " + (System.currentTimeMillis() - start) + " ms");
+    }
+}
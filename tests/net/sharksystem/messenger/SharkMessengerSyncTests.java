@@ -0,0 +1,196 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPHop;
+import net.sharksystem.asap.ASAPHopImpl;
+import net.sharksystem.asap.EncounterConnectionType;
+import net.sharksystem.asap.utils.ASAPSerialization;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static net.sharksystem.messenger.TestConstants.*;
+
+public class SharkMessengerSyncTests {
+    private static final String MALLORY_ID = "Mallory_42";
+
+    @Test
+    public void digestTableDecodesDifference() throws IOException {
+        InMemoSharkMessageStore aliceStore = new InMemoSharkMessageStore(URI);
+        InMemoSharkMessageStore bobStore = new InMemoSharkMessageStore(URI);
+        // 500 shared messages, 10 only with Alice, 5 only with Bob. Fixed bytes - same digests each run
+        for(int i = 0; i < 515; i++) {
+            byte[] message = ("message " + i).getBytes();
+            if(i < 510) aliceStore.append(message);
+            if(i < 500 || i >= 510) bobStore.append(message);
+        }
+
+        // decoding is probabilistic - table size is doubled like in a sync after a failure
+        SharkMessengerSync sync = new SharkMessengerSync(null, null, null);
+        Set<Long> onlyAlice = new HashSet<>();
+        Set<Long> onlyBob = new HashSet<>();
+        boolean decoded = false;
+        for(int cells = SharkMessengerSync.INITIAL_CELLS; !decoded && cells <= SharkMessengerSync.MAX_CELLS; cells *= 2) {
+            onlyAlice.clear();
+            onlyBob.clear();
+            decoded = sync.createTable(aliceStore, cells).subtract(sync.createTable(bobStore, cells))
+                    .decode(onlyAlice, onlyBob);
+        }
+        Assertions.assertTrue(decoded);
+        Assertions.assertEquals(10, onlyAlice.size());
+        Assertions.assertEquals(5, onlyBob.size());
+        Assertions.assertTrue(onlyBob.contains(SharkMessengerSync.digest(bobStore.getMessage(500))));
+
+        // difference too large for a tiny table
+        InvertibleBloomLookupTable small = new InvertibleBloomLookupTable(6);
+        for(int i = 0; i < 100; i++) small.insert(i);
+        Assertions.assertFalse(small.subtract(new InvertibleBloomLookupTable(6))
+                .decode(new HashSet<>(), new HashSet<>()));
+    }
+
+    @Test
+    public void digestsFollowAppendsAndCompaction() throws IOException {
+        CountingStore store = new CountingStore();
+        for(int i = 0; i < 10; i++) store.append(("message " + i).getBytes());
+
+        SharkMessengerSync sync = new SharkMessengerSync(null, null, null);
+        sync.createTable(store, SharkMessengerSync.INITIAL_CELLS);
+        Assertions.assertEquals(10, store.reads);
+
+        // appended messages are hashed when appended - store is not read again
+        store.append("message 10".getBytes());
+        InvertibleBloomLookupTable table = sync.createTable(store, SharkMessengerSync.INITIAL_CELLS);
+        Assertions.assertEquals(10, store.reads);
+        assertSameDigests(store, table);
+
+        // compaction followed by as many appends - same size, other messages
+        store.compact(new SharkMessengerRetentionPolicy(0, 5, 0), System.currentTimeMillis());
+        for(int i = 11; i < 17; i++) store.append(("message " + i).getBytes());
+        Assertions.assertEquals(11, store.size());
+        assertSameDigests(store, sync.createTable(store, SharkMessengerSync.INITIAL_CELLS));
+    }
+
+    private static void assertSameDigests(SharkMessageStore store, InvertibleBloomLookupTable table)
+            throws IOException {
+        // fresh sync - digests taken from store
+        InvertibleBloomLookupTable expected = new SharkMessengerSync(null, null, null)
+                .createTable(store, SharkMessengerSync.INITIAL_CELLS);
+        Set<Long> onlyExpected = new HashSet<>();
+        Set<Long> onlyTable = new HashSet<>();
+        Assertions.assertTrue(expected.subtract(table).decode(onlyExpected, onlyTable));
+        Assertions.assertTrue(onlyExpected.isEmpty());
+        Assertions.assertTrue(onlyTable.isEmpty());
+    }
+
+    @Test
+    public void pduFromOtherPeerIsDropped() throws IOException, ASAPException {
+        SyncContext bob = new SyncContext(BOB_ID);
+        SharkMessengerSync sync = new SharkMessengerSync(bob, new SharkMessengerTransferScheduler(),
+                new SharkMessengerDeliveryWatermarks(null));
+        byte[] message = InMemoSharkMessage.serializeMessage(MESSAGE_1_BYTE, ALICE_ID, BOB_ID);
+
+        // Mallory claims to be Alice
+        sync.pduReceived(URI, messagesPDU(ALICE_ID, BOB_ID, message), route(MALLORY_ID));
+        Assertions.assertEquals(0, bob.store.size());
+        Assertions.assertTrue(bob.sent.isEmpty());
+        sync.pduReceived(URI, messagesPDU(ALICE_ID, BOB_ID, message), null);
+        Assertions.assertEquals(0, bob.store.size());
+
+        // Alice herself
+        sync.pduReceived(URI, messagesPDU(ALICE_ID, BOB_ID, message), route(ALICE_ID));
+        Assertions.assertEquals(1, bob.store.size());
+        Assertions.assertEquals(1, bob.sent.size()); // acknowledged
+    }
+
+    private static List<ASAPHop> route(CharSequence encounteredPeer) {
+        return List.of(new ASAPHopImpl(encounteredPeer, false, false, EncounterConnectionType.AD_HOC_LAYER_2_NETWORK));
+    }
+
+    private static byte[] messagesPDU(CharSequence sender, CharSequence recipient, byte[] message)
+            throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ASAPSerialization.writeByteParameter(SharkMessengerSync.MESSAGES, baos);
+        ASAPSerialization.writeCharSequenceParameter(sender, baos);
+        ASAPSerialization.writeCharSequenceParameter(recipient, baos);
+        ASAPSerialization.writeIntegerParameter(1, baos);
+        ASAPSerialization.writeASAPHopList(new ArrayList<>(), baos);
+        ASAPSerialization.writeByteArray(message, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Counts messages read from store.
+     */
+    private static class CountingStore extends InMemoSharkMessageStore {
+        private int reads = 0;
+
+        CountingStore() {
+            super(URI);
+        }
+
+        @Override
+        public synchronized byte[] getMessage(int position) {
+            this.reads++;
+            return super.getMessage(position);
+        }
+    }
+
+    /**
+     * One channel in memory - pdus are kept.
+     */
+    private static class SyncContext implements SharkMessengerSyncContext {
+        private final CharSequence peerID;
+        private final InMemoSharkMessageStore store = new InMemoSharkMessageStore(URI);
+        private final List<byte[]> sent = new ArrayList<>();
+
+        SyncContext(CharSequence peerID) {
+            this.peerID = peerID;
+        }
+
+        @Override
+        public CharSequence getPeerID() {
+            return this.peerID;
+        }
+
+        @Override
+        public List<CharSequence> getChannelUris() {
+            return List.of(URI);
+        }
+
+        @Override
+        public SharkMessageStore getStore(CharSequence uri) {
+            return this.store;
+        }
+
+        @Override
+        public int getTransferPriority(CharSequence uri) {
+            return 0;
+        }
+
+        @Override
+        public SharkMessengerRoutingPolicy getRoutingPolicy(CharSequence uri) {
+            return SharkMessengerRoutingPolicy.AD_HOC_ROUTING;
+        }
+
+        @Override
+        public boolean assimilate(CharSequence uri, byte[] message, List<ASAPHop> route, long now) {
+            this.store.assimilate(message, route);
+            return true;
+        }
+
+        @Override
+        public void syncedMessagesReceived(CharSequence uri) {
+        }
+
+        @Override
+        public void sendSyncPDU(CharSequence uri, byte[] pdu) {
+            this.sent.add(pdu);
+        }
+    }
+}
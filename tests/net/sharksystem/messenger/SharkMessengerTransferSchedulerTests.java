@@ -0,0 +1,44 @@
+package net.sharksystem.messenger;
+
+import net.sharksystem.asap.ASAPException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.sharksystem.messenger.TestConstants.*;
+
+public class SharkMessengerTransferSchedulerTests {
+    @Test
+    public void transferScheduleOrdersAndLimits() throws IOException, ASAPException {
+        SharkMessengerTransferScheduler scheduler = new SharkMessengerTransferScheduler();
+        byte[] broadcast = InMemoSharkMessage.serializeMessage("all".getBytes(), ALICE_ID, (CharSequence) null);
+        Assertions.assertTrue(InMemoSharkMessage.readReceivers(broadcast).contains(SharkMessage.ANY_RECEIVER));
+
+        List<SharkMessengerTransferScheduler.Candidate> candidates = new ArrayList<>();
+        candidates.add(new SharkMessengerTransferScheduler.Candidate(0, new byte[10], AbstractSharkMessageStore.NO_HOPS, false));
+        candidates.add(new SharkMessengerTransferScheduler.Candidate(1, new byte[10], AbstractSharkMessageStore.NO_HOPS, true));
+        candidates.add(new SharkMessengerTransferScheduler.Candidate(2, new byte[10], AbstractSharkMessageStore.NO_HOPS, false));
+
+        // default: direct recipient first, newest next
+        scheduler.order(candidates);
+        Assertions.assertEquals(1, candidates.get(0).position);
+        Assertions.assertEquals(2, candidates.get(1).position);
+        Assertions.assertEquals(0, candidates.get(2).position);
+
+        scheduler.configure(List.of(SharkMessengerTransferPriority.RECENCY), 25, 1000);
+        scheduler.order(candidates);
+        Assertions.assertEquals(2, candidates.get(0).position);
+
+        // budget per encounter
+        scheduler.encounterStarted(BOB_ID, 0);
+        Assertions.assertTrue(scheduler.consume(BOB_ID, 10, 10));
+        Assertions.assertTrue(scheduler.consume(BOB_ID, 10, 10));
+        Assertions.assertFalse(scheduler.consume(BOB_ID, 10, 10));
+        Assertions.assertTrue(scheduler.consume(BOB_ID, 5, 10));
+        scheduler.encounterStarted(BOB_ID, 2000);
+        Assertions.assertFalse(scheduler.consume(BOB_ID, 10, 3001));
+    }
+}